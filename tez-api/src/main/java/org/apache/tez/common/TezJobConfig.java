@@ -274,6 +274,16 @@ public class TezJobConfig {
   public static final String TEZ_RUNTIME_GROUP_COMPARATOR_CLASS = 
       "tez.runtime.group.comparator.class";
   
+  /**
+   * Whether to use the raw comparator of the grouping comparator when
+   * detecting key group boundaries in sorted input, instead of deserializing
+   * every key. Keys with identical bytes are always considered part of the
+   * same group.
+   */
+  public static final String TEZ_RUNTIME_GROUP_RAW_COMPARISON =
+      "tez.runtime.group.raw-comparison";
+  public static final boolean DEFAULT_TEZ_RUNTIME_GROUP_RAW_COMPARISON = true;
+
   // TODO Better name.
   public static final String TEZ_RUNTIME_INTERNAL_SORTER_CLASS = 
       "tez.runtime.internal.sorter.class";
@@ -317,5 +327,127 @@ public class TezJobConfig {
   
   public static final String TEZ_RUNTIME_BROADCAST_DATA_VIA_EVENTS_MAX_SIZE = "tez.runtime.broadcast.data-via-events.max-size";
   public static final int TEZ_RUNTIME_BROADCAST_DATA_VIA_EVENTS_MAX_SIZE_DEFAULT = 200 << 10;// 200KB
-  
+
+  /**
+   * Whether small partitions of sorted outputs are sent to the consumers inside
+   * the DataMovementEvents, instead of being fetched from the shuffle service.
+   */
+  public static final String TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_ENABLED =
+      "tez.runtime.sorted.data-via-events.enabled";
+  public static final boolean TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_ENABLED_DEFAULT =
+      false;
+
+  /**
+   * Maximum size, in bytes, of a partition of a sorted output which is sent
+   * inside its DataMovementEvent.
+   */
+  public static final String TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_PARTITION_SIZE =
+      "tez.runtime.sorted.data-via-events.max-partition-size";
+  public static final int TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_PARTITION_SIZE_DEFAULT =
+      8 << 10;
+
+  /**
+   * Maximum total size, in bytes, of the partitions of a sorted output which
+   * are sent inside events. Limits the event traffic through the AM.
+   */
+  public static final String TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_TOTAL_SIZE =
+      "tez.runtime.sorted.data-via-events.max-total-size";
+  public static final int TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_TOTAL_SIZE_DEFAULT =
+      200 << 10;
+
+  /**
+   * Whether fetched broadcast inputs are cached on local disk and shared with
+   * other tasks consuming the same outputs in the same container, or on the
+   * same node. Only inputs which are fetched to disk, because they do not fit
+   * in the shuffle memory of the task, are cached. Smaller inputs are fetched
+   * into memory by each task, as without caching.
+   */
+  public static final String TEZ_RUNTIME_BROADCAST_CACHE_ENABLED =
+      "tez.runtime.broadcast.cache.enabled";
+  public static final boolean TEZ_RUNTIME_BROADCAST_CACHE_ENABLED_DEFAULT =
+      false;
+
+  /**
+   * Memory, in MB, used to buffer records per partition in the unordered
+   * partitioned output before they are spilled to disk.
+   */
+  public static final String TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB =
+      "tez.runtime.unordered.output.buffer.size-mb";
+  public static final int TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB_DEFAULT =
+      100;
+
+  /**
+   * Class of the RawValueCombiner used to aggregate the records of an
+   * unordered input by key. Aggregation is disabled if not set.
+   */
+  public static final String TEZ_RUNTIME_UNORDERED_INPUT_COMBINER_CLASS =
+      "tez.runtime.unordered.input.combiner.class";
+
+  /**
+   * Memory, in MB, of the hash table used to aggregate an unordered input
+   * before aggregated records are spilled to disk.
+   */
+  public static final String TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB =
+      "tez.runtime.unordered.input.aggregation.buffer.size-mb";
+  public static final int TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB_DEFAULT =
+      100;
+
+  /**
+   * Class of the RawValueCombiner used to combine records with equal keys in
+   * memory before they are written to the sort buffer. Disabled if not set.
+   */
+  public static final String TEZ_RUNTIME_SORT_HASH_COMBINER_CLASS =
+      "tez.runtime.sort.hash-combiner.class";
+
+  /**
+   * Memory, in MB, of the hash table used to combine records before they are
+   * sorted. This is used in addition to the sort buffer.
+   */
+  public static final String TEZ_RUNTIME_SORT_HASH_COMBINER_BUFFER_SIZE_MB =
+      "tez.runtime.sort.hash-combiner.buffer.size-mb";
+  public static final int TEZ_RUNTIME_SORT_HASH_COMBINER_BUFFER_SIZE_MB_DEFAULT =
+      16;
+
+  /**
+   * Minimum fraction of records which need to be combined by the hash
+   * combiner for it to stay enabled. Checked every time it is flushed.
+   */
+  public static final String TEZ_RUNTIME_SORT_HASH_COMBINER_MIN_HIT_RATE =
+      "tez.runtime.sort.hash-combiner.min-hit-rate";
+  public static final float TEZ_RUNTIME_SORT_HASH_COMBINER_MIN_HIT_RATE_DEFAULT =
+      0.2f;
+
+  /**
+   * Size, in bytes, of the blocks of records pushed by a pipelined output to
+   * its consumers. Smaller blocks reduce latency at the cost of throughput.
+   */
+  public static final String TEZ_RUNTIME_PIPELINED_BLOCK_SIZE =
+      "tez.runtime.pipelined.block-size";
+  public static final int TEZ_RUNTIME_PIPELINED_BLOCK_SIZE_DEFAULT = 64 << 10;
+
+  /**
+   * Number of blocks buffered per pipelined input ahead of the reader.
+   */
+  public static final String TEZ_RUNTIME_PIPELINED_QUEUE_SIZE =
+      "tez.runtime.pipelined.queue-size";
+  public static final int TEZ_RUNTIME_PIPELINED_QUEUE_SIZE_DEFAULT = 16;
+
+  /**
+   * Time, in milliseconds, that the two ends of a pipelined edge wait for
+   * each other to connect before failing the task.
+   */
+  public static final String TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT =
+      "tez.runtime.pipelined.connect.timeout";
+  public static final int TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT_DEFAULT =
+      10 * 60 * 1000;
+
+  /**
+   * Time, in milliseconds, that a pipelined output waits for its consumers to
+   * acknowledge the end of the data once it is closed, before failing.
+   */
+  public static final String TEZ_RUNTIME_PIPELINED_ACK_TIMEOUT =
+      "tez.runtime.pipelined.ack.timeout";
+  public static final int TEZ_RUNTIME_PIPELINED_ACK_TIMEOUT_DEFAULT =
+      10 * 60 * 1000;
+
 }
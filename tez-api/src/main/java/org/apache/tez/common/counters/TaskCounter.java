@@ -63,4 +63,16 @@ public enum TaskCounter {
   SHUFFLE_BYTES,
   SHUFFLED_TASKS, 
   MERGED_TASK_OUTPUTS,
+  SHUFFLE_BYTES_TO_MEM,
+  SHUFFLE_BYTES_TO_DISK,
+
+  HASH_COMBINE_INPUT_RECORDS,
+  HASH_COMBINE_OUTPUT_RECORDS,
+
+  EVENT_ROUTING_BATCHES,
+  EVENT_ROUTING_TIME_MILLIS,
+
+  OBJECT_REGISTRY_HITS,
+  OBJECT_REGISTRY_MISSES,
+  OBJECT_REGISTRY_EVICTIONS,
 }
@@ -33,6 +33,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.LocalResourceType;
 import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
 import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
 import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
 import org.apache.tez.dag.api.VertexLocationHint.TaskLocationHint;
@@ -251,12 +252,23 @@ public class DAG { // FIXME rename to Topology
     if (restricted) {
       for (Edge e : edges) {
         vertexMap.get(e.getInputVertex().getVertexName()).outDegree++;
-        if (e.getEdgeProperty().getDataSourceType() !=
+        EdgeProperty edgeProperty = e.getEdgeProperty();
+        if (edgeProperty.getDataSourceType() == DataSourceType.EPHEMERAL) {
+          // Pipelined edges. Data is only available while the source runs, and
+          // every source output is pushed to a single destination task.
+          if (edgeProperty.getSchedulingType() != SchedulingType.CONCURRENT) {
+            throw new IllegalStateException(
+              "Ephemeral edges require concurrent scheduling. " + e);
+          }
+          if (edgeProperty.getDataMovementType() == DataMovementType.BROADCAST) {
+            throw new IllegalStateException(
+              "Unsupported data movement type on ephemeral edge. " + e);
+          }
+        } else if (edgeProperty.getDataSourceType() !=
           DataSourceType.PERSISTED) {
           throw new IllegalStateException(
             "Unsupported source type on edge. " + e);
-        }
-        if (e.getEdgeProperty().getSchedulingType() !=
+        } else if (edgeProperty.getSchedulingType() !=
           SchedulingType.SEQUENTIAL) {
           throw new IllegalStateException(
             "Unsupported scheduling type on edge. " + e);
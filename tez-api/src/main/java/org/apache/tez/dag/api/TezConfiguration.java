@@ -46,6 +46,22 @@ public class TezConfiguration extends Configuration {
   public static final String TEZ_APPLICATION_MASTER_CLASS =
       "org.apache.tez.dag.app.DAGAppMaster";
 
+  /**
+   * Run the AM and all tasks as threads within the client JVM, without YARN.
+   * Task outputs are read directly from the local disk instead of through
+   * the shuffle service. Outputs check this in their own configuration, so
+   * it also has to be set in the user payload of outputs which are fetched,
+   * like OnFileSortedOutput. Without it, an output which finds no shuffle
+   * service fails.
+   */
+  public static final String TEZ_LOCAL_MODE = TEZ_PREFIX + "local.mode";
+  public static final boolean TEZ_LOCAL_MODE_DEFAULT = false;
+
+  /** Number of tasks which run concurrently in local mode. */
+  public static final String TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS =
+      TEZ_AM_PREFIX + "local.max-concurrent-tasks";
+  public static final int TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS_DEFAULT = 1;
+
   /** Root Logging level passed to the Tez app master.*/
   public static final String TEZ_AM_LOG_LEVEL = TEZ_AM_PREFIX+"log.level";
   public static final String TEZ_AM_LOG_LEVEL_DEFAULT = "INFO";
@@ -87,6 +103,15 @@ public class TezConfiguration extends Configuration {
   public static final String TEZ_AM_CLIENT_THREAD_COUNT =
       TEZ_AM_PREFIX + "client.am.thread-count";
   public static final int TEZ_AM_CLIENT_THREAD_COUNT_DEFAULT = 1;
+
+  /**
+   * Maximum time that a client request waiting for a DAG status update may
+   * hold a client RPC handler thread in the AM. Long waits block other client
+   * requests unless {@link #TEZ_AM_CLIENT_THREAD_COUNT} is increased.
+   */
+  public static final String TEZ_AM_CLIENT_STATUS_UPDATE_MAX_WAIT_MS =
+      TEZ_AM_PREFIX + "client.status-update.max-wait-ms";
+  public static final long TEZ_AM_CLIENT_STATUS_UPDATE_MAX_WAIT_MS_DEFAULT = 1000;
   /**
    * Range of ports that the AM can use when binding. Leave blank
    * if you want all possible ports.
@@ -165,6 +190,32 @@ public class TezConfiguration extends Configuration {
       + "max-events-per-heartbeat.max";
   public static final int TEZ_TASK_MAX_EVENTS_PER_HEARTBEAT_DEFAULT = 100;
 
+  /**
+   * Memory budget, in MB, for the objects with a SESSION, DAG or VERTEX
+   * life-cycle in the ObjectRegistry of a task container. Once a budget is
+   * exceeded, the least recently used objects of that life-cycle are evicted.
+   * Objects report their size by implementing SizedObject. -1 means no limit.
+   * The DAG budget is bounded by default, as task outputs served from memory
+   * are held with that life-cycle.
+   */
+  public static final String TEZ_TASK_OBJECT_REGISTRY_SESSION_MAX_SIZE_MB =
+      TEZ_TASK_PREFIX + "object-registry.session.max-size-mb";
+  public static final int TEZ_TASK_OBJECT_REGISTRY_SESSION_MAX_SIZE_MB_DEFAULT = -1;
+  public static final String TEZ_TASK_OBJECT_REGISTRY_DAG_MAX_SIZE_MB =
+      TEZ_TASK_PREFIX + "object-registry.dag.max-size-mb";
+  public static final int TEZ_TASK_OBJECT_REGISTRY_DAG_MAX_SIZE_MB_DEFAULT = 256;
+  public static final String TEZ_TASK_OBJECT_REGISTRY_VERTEX_MAX_SIZE_MB =
+      TEZ_TASK_PREFIX + "object-registry.vertex.max-size-mb";
+  public static final int TEZ_TASK_OBJECT_REGISTRY_VERTEX_MAX_SIZE_MB_DEFAULT = -1;
+
+  /**
+   * Whether the ObjectRegistry of a task container holds objects through soft
+   * references, so that they can be garbage collected under memory pressure.
+   */
+  public static final String TEZ_TASK_OBJECT_REGISTRY_SOFT_VALUES =
+      TEZ_TASK_PREFIX + "object-registry.soft-values";
+  public static final boolean TEZ_TASK_OBJECT_REGISTRY_SOFT_VALUES_DEFAULT = false;
+
   /**
    * Configuration to specify whether container should be reused.
    */
@@ -244,10 +295,41 @@ public class TezConfiguration extends Configuration {
   public static long TEZ_AM_GROUPING_SPLIT_MIN_SIZE_DEFAULT = 
       50*1024*1024L;
 
+  /**
+   * Whether to limit the number of node local groups created on any one node
+   * to that node's share of the desired number of groups, based on the number
+   * of nodes in the cluster. Splits in excess of this are grouped rack local
+   * instead, which spreads the groups across the cluster.
+   */
+  public static final String TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY =
+      TEZ_AM_PREFIX + "grouping.by-node-capacity";
+  public static final boolean TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY_DEFAULT = false;
+
   public static final String TEZ_AM_GROUPING_RACK_SPLIT_SIZE_REDUCTION = 
       TEZ_AM_PREFIX + "grouping.rack-split-reduction";
   public static final float TEZ_AM_GROUPING_RACK_SPLIT_SIZE_REDUCTION_DEFAULT = 0.75f;
 
+  /**
+   * Number of threads used to generate splits in the AM for inputs with
+   * multiple input directories. Splits for each directory are generated in
+   * parallel by the wrapped FileInputFormat, which must be thread-safe. This
+   * only applies to the mapreduce API. The mapred FileInputFormat sizes splits
+   * based on the size of all input directories, so its splits are always
+   * generated in one call. A value of 1 disables parallel split generation.
+   */
+  public static final String TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS =
+      TEZ_AM_PREFIX + "grouping.split-generation.threads";
+  public static final int TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS_DEFAULT = 1;
+
+  /**
+   * Number of wrapped splits within a grouped split whose record readers are
+   * opened ahead of time on a background thread, while the current split is
+   * being read. A value of 0 disables prefetching.
+   */
+  public static final String TEZ_TASK_GROUPING_SPLIT_READER_PREFETCH =
+      TEZ_TASK_PREFIX + "grouping.split-reader.prefetch";
+  public static final int TEZ_TASK_GROUPING_SPLIT_READER_PREFETCH_DEFAULT = 0;
+
 
   /**
    * Session-related properties
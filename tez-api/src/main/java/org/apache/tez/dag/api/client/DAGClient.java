@@ -56,6 +56,26 @@ public interface DAGClient extends Closeable {
   public DAGStatus getDAGStatus(Set<StatusGetOpts> statusOptions)
       throws IOException, TezException;
 
+  /**
+   * Wait for the status of the DAG to change, instead of polling
+   * {@link #getDAGStatus(Set)}. Returns as soon as the status version is
+   * greater than <code>lastSeenVersion</code>, or once the timeout expires.
+   * The AM may cap the timeout.
+   *
+   * The vertex progress of the returned status only includes the vertices
+   * whose status changed after <code>lastSeenVersion</code>. The DAG progress
+   * always covers all vertices.
+   *
+   * @param statusOptions Optionally, retrieve additional information based on
+   *                      specified options
+   * @param lastSeenVersion the {@link DAGStatus#getVersion()} of the last
+   *                        status seen, or -1 to get the current status
+   * @param timeoutMillis maximum time to wait for a change
+   */
+  public DAGStatus getDAGStatusUpdate(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis)
+      throws IOException, TezException;
+
   /**
    * Get the status of a Vertex of a DAG
    * @param statusOptions Optionally, retrieve additional information based on
@@ -128,6 +128,18 @@ public class DAGStatus {
     return vertexProgress;
   }
 
+  /**
+   * Get the version of this status. Versions increase whenever the state,
+   * diagnostics or task counts of the DAG or any of its vertices change, and
+   * can be passed to {@link DAGClient#getDAGStatusUpdate} to wait for the next
+   * change.
+   *
+   * @return the status version, or -1 if not known
+   */
+  public long getVersion() {
+    return proxy.hasVersion() ? proxy.getVersion() : -1;
+  }
+
   public TezCounters getDAGCounters() {
     if (countersInitialized.get()) {
       return dagCounters;
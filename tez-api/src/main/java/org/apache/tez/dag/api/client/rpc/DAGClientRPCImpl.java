@@ -90,6 +90,23 @@ public class DAGClientRPCImpl implements DAGClient {
     return getDAGStatusViaRM();
   }
 
+  @Override
+  public DAGStatus getDAGStatusUpdate(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis)
+      throws IOException, TezException {
+    if(createAMProxyIfNeeded()) {
+      try {
+        return getDAGStatusUpdateViaAM(statusOptions, lastSeenVersion,
+            timeoutMillis);
+      } catch (TezException e) {
+        resetProxy(e); // create proxy again
+      }
+    }
+
+    // Later maybe from History
+    return getDAGStatusViaRM();
+  }
+
   @Override
   public VertexStatus getVertexStatus(String vertexName,
       Set<StatusGetOpts> statusOptions)
@@ -171,6 +188,34 @@ public class DAGClientRPCImpl implements DAGClient {
     }
   }
 
+  DAGStatus getDAGStatusUpdateViaAM(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis)
+      throws IOException, TezException {
+    if(LOG.isDebugEnabled()) {
+      LOG.debug("GetDAGStatusUpdate via AM for app: " + appId + " dag:" + dagId
+          + " lastSeenVersion: " + lastSeenVersion);
+    }
+    GetDAGStatusRequestProto.Builder requestProtoBuilder =
+        GetDAGStatusRequestProto.newBuilder()
+          .setDagId(dagId)
+          .setLastSeenVersion(lastSeenVersion)
+          .setTimeoutMillis(timeoutMillis);
+
+    if (statusOptions != null) {
+      requestProtoBuilder.addAllStatusOptions(
+        DagTypeConverters.convertStatusGetOptsToProto(statusOptions));
+    }
+
+    try {
+      return new DAGStatus(
+        proxy.getDAGStatus(null,
+          requestProtoBuilder.build()).getDagStatus());
+    } catch (ServiceException e) {
+      // TEZ-151 retrieve wrapped TezException
+      throw new TezException(e);
+    }
+  }
+
   DAGStatus getDAGStatusViaRM() throws TezException, IOException {
     if(LOG.isDebugEnabled()) {
       LOG.debug("GetDAGStatus via AM for app: " + appId + " dag:" + dagId);
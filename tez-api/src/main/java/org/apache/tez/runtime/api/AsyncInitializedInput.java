@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.api;
+
+import java.io.IOException;
+
+/**
+ * A {@link LogicalInput} which may be handed to the {@link LogicalIOProcessor}
+ * while its <code>initialize</code> method is still running, so that the setup
+ * of the input overlaps with processing other inputs. Events and reads
+ * received before initialization completes must block until it does.
+ */
+public interface AsyncInitializedInput extends LogicalInput {
+
+  /**
+   * Check if the input is ready for consumption
+   * 
+   * @return true if the input is ready for consumption, or if an error
+   *         occurred. false if the input is still being initialized or
+   *         prepared
+   */
+  public boolean isInputReady();
+
+  /**
+   * Waits for the input to become ready for consumption
+   * 
+   * @throws IOException
+   *           if initializing or preparing the input failed
+   * @throws InterruptedException
+   */
+  public void waitForInputReady() throws IOException, InterruptedException;
+}
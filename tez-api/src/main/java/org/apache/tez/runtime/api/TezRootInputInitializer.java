@@ -25,6 +25,11 @@ import java.util.List;
  * within the AM. They can be used to distribute data across the tasks for the
  * vertex, determine the number of tasks at runtime, update the Input payload
  * etc.
+ * 
+ * Initializers which generate a large number of events may stream them to the
+ * vertex via {@link TezRootInputInitializerContext#sendEvents(List)} as they
+ * are generated, and return only the remaining events (if any) from
+ * {@link #initialize(TezRootInputInitializerContext)}.
  */
 public interface TezRootInputInitializer {
   
@@ -18,7 +18,10 @@
 
 package org.apache.tez.runtime.api;
 
+import java.util.List;
+
 import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.counters.TezCounters;
 
 public interface TezRootInputInitializerContext {
 
@@ -31,4 +34,34 @@ public interface TezRootInputInitializerContext {
   byte[] getUserPayload();
   
   int getNumTasks();
+
+  /**
+   * Get the number of nodes in the cluster, as last reported by the
+   * ResourceManager.
+   * @return the number of cluster nodes, or 0 if not known
+   */
+  int getNumClusterNodes();
+
+  /**
+   * Get the counters for this initializer. These are merged into the counters
+   * of the vertex once the initializer completes successfully.
+   * @return the initializer counters
+   */
+  TezCounters getCounters();
+
+  /**
+   * Send events to the vertex while the initializer is still running. Events
+   * sent via this method are processed in order, and before any events
+   * returned by {@link TezRootInputInitializer#initialize}.
+   * 
+   * Once the number of tasks is known (either configured upfront, or via a
+   * {@link org.apache.tez.runtime.api.events.RootInputConfigureVertexTasksEvent}
+   * which must be the first event sent), the vertex may start scheduling tasks
+   * as their {@link org.apache.tez.runtime.api.events.RootInputDataInformationEvent}s
+   * arrive, instead of waiting for the initializer to complete.
+   * 
+   * @param events
+   *          the events to be sent to the vertex
+   */
+  void sendEvents(List<Event> events);
 }
@@ -18,6 +18,8 @@
 
 package org.apache.tez.runtime.common.objectregistry;
 
+import java.util.concurrent.Callable;
+
 /**
  * Preliminary version of a simple shared object cache to re-use
  * objects across multiple tasks within the same container/JVM.
@@ -45,6 +47,19 @@ public interface ObjectRegistry {
    */
   public Object get(String key);
 
+  /**
+   * Return the object associated with the provided key, creating and
+   * inserting it if there is none. Concurrent callers for the same key wait
+   * for a single creation instead of creating the object several times.
+   * @param lifeCycle What life-cycle is the Object valid for, if created
+   * @param key Key to identify the Object
+   * @param creator Creates the Object if it is not present
+   * @return the existing or the newly created Object
+   * @throws Exception if the creator failed
+   */
+  public Object getOrCreate(ObjectLifeCycle lifeCycle, String key,
+      Callable<?> creator) throws Exception;
+
   /**
    * Delete the object associated with the provided key
    * @param lifeCycle What life-cycle is the Object valid for
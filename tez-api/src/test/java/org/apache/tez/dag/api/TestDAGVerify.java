@@ -116,7 +116,7 @@ public class TestDAGVerify {
     dag.verify();
   }
 
-  @Test(expected = IllegalStateException.class)  
+  @Test  
   public void testVerify4() {
     Vertex v1 = new Vertex("v1",
         new ProcessorDescriptor(dummyProcessorClassName),
@@ -136,6 +136,26 @@ public class TestDAGVerify {
     dag.verify();
   }
 
+  @Test(expected = IllegalStateException.class)
+  public void testVerifyEphemeralBroadcast() {
+    Vertex v1 = new Vertex("v1",
+        new ProcessorDescriptor(dummyProcessorClassName),
+        dummyTaskCount, dummyTaskResource);
+    Vertex v2 = new Vertex("v2",
+        new ProcessorDescriptor("MapProcessor"),
+        dummyTaskCount, dummyTaskResource);
+    Edge e1 = new Edge(v1, v2,
+        new EdgeProperty(DataMovementType.BROADCAST,
+            DataSourceType.EPHEMERAL, SchedulingType.CONCURRENT,
+            new OutputDescriptor(dummyOutputClassName),
+            new InputDescriptor(dummyInputClassName)));
+    DAG dag = new DAG("testDag");
+    dag.addVertex(v1);
+    dag.addVertex(v2);
+    dag.addEdge(e1);
+    dag.verify();
+  }
+
   //    v1 <----
   //      |     ^
   //       v2   ^
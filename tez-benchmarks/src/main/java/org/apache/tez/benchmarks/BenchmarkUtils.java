@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.impl.TezOutputContextImpl;
+import org.apache.tez.runtime.library.api.Partitioner;
+
+/**
+ * Data generation and runtime setup shared by the benchmarks.
+ */
+public final class BenchmarkUtils {
+
+  private static final char[] CHARS =
+      "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"
+          .toCharArray();
+
+  private BenchmarkUtils() {
+  }
+
+  /**
+   * Partitions on the hash of the key, like the MR HashPartitioner.
+   */
+  public static class HashPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  public static File createWorkDir(String name) throws IOException {
+    File workDir = new File(System.getProperty("java.io.tmpdir"),
+        "tez-benchmarks-" + name + "-" + System.nanoTime());
+    if (!workDir.mkdirs()) {
+      throw new IOException("Could not create " + workDir);
+    }
+    return workDir;
+  }
+
+  public static void deleteWorkDir(File workDir) {
+    if (workDir != null) {
+      FileUtil.fullyDelete(workDir);
+    }
+  }
+
+  /**
+   * A configuration for Text keys and values, using workDir as the local dir.
+   */
+  public static Configuration createConf(File workDir) {
+    Configuration conf = new Configuration();
+    conf.set("fs.defaultFS", "file:///");
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.getAbsolutePath());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        HashPartitioner.class.getName());
+    return conf;
+  }
+
+  public static TezOutputContext createOutputContext(Configuration conf)
+      throws IOException {
+    TezDAGID dagID = TezDAGID.getInstance("2000", 1, 1);
+    TezVertexID vertexID = TezVertexID.getInstance(dagID, 1);
+    TezTaskID taskID = TezTaskID.getInstance(vertexID, 1);
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(taskID, 1);
+    return new TezOutputContextImpl(conf, 1, null, "source", "destination",
+        taskAttemptID, new TezCounters(), null, null, null,
+        new HashMap<String, String>());
+  }
+
+  /**
+   * Generates random Text records. Keys are drawn from numDistinctKeys
+   * different values.
+   */
+  public static Text[] generateText(int numRecords, int length,
+      int numDistinctKeys, long seed) {
+    Random random = new Random(seed);
+    Text[] distinct = new Text[numDistinctKeys];
+    for (int i = 0; i < numDistinctKeys; i++) {
+      distinct[i] = new Text(randomString(random, length));
+    }
+    Text[] records = new Text[numRecords];
+    for (int i = 0; i < numRecords; i++) {
+      records[i] = distinct[random.nextInt(numDistinctKeys)];
+    }
+    return records;
+  }
+
+  public static Text[] generateSortedText(int numRecords, int length,
+      int numDistinctKeys, long seed) {
+    Text[] records = generateText(numRecords, length, numDistinctKeys, seed);
+    Arrays.sort(records);
+    return records;
+  }
+
+  private static String randomString(Random random, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = CHARS[random.nextInt(CHARS.length)];
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writes and reads IFiles of generated records, with and without a
+ * compression codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IFileBenchmark {
+
+  @Param({"none", "org.apache.hadoop.io.compress.DefaultCodec"})
+  public String codecClass;
+
+  @Param({"true", "false"})
+  public boolean readAhead;
+
+  @Param({"1000000"})
+  public int numRecords;
+
+  private File workDir;
+  private Configuration conf;
+  private FileSystem fs;
+  private CompressionCodec codec;
+  private Path readFile;
+  private Path writeFile;
+  private Text[] keys;
+  private Text[] values;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, ClassNotFoundException {
+    workDir = BenchmarkUtils.createWorkDir("ifile");
+    conf = BenchmarkUtils.createConf(workDir);
+    fs = FileSystem.getLocal(conf).getRaw();
+    if (!"none".equals(codecClass)) {
+      codec = (CompressionCodec) ReflectionUtils.newInstance(
+          conf.getClassByName(codecClass), conf);
+    }
+    keys = BenchmarkUtils.generateSortedText(numRecords, 10, numRecords / 10, 1);
+    values = BenchmarkUtils.generateText(numRecords, 30, 1000, 2);
+    readFile = new Path(workDir.getAbsolutePath(), "read.out");
+    writeFile = new Path(workDir.getAbsolutePath(), "write.out");
+    writeRecords(readFile);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkUtils.deleteWorkDir(workDir);
+  }
+
+  private void writeRecords(Path file) throws IOException {
+    IFile.Writer writer = new IFile.Writer(conf, fs, file, Text.class,
+        Text.class, codec, null);
+    for (int i = 0; i < numRecords; i++) {
+      writer.append(keys[i], values[i]);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    writeRecords(writeFile);
+  }
+
+  @Benchmark
+  public void read(Blackhole bh) throws IOException {
+    IFile.Reader reader = new IFile.Reader(fs, readFile, codec, null,
+        readAhead, TezJobConfig.TEZ_RUNTIME_IFILE_READAHEAD_BYTES_DEFAULT,
+        TezJobConfig.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT);
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    while (reader.nextRawKey(key)) {
+      reader.nextRawValue(value);
+      bh.consume(key);
+      bh.consume(value);
+    }
+    reader.close();
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.Progressable;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.GenericCounter;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezMerger;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Merges sorted IFile segments with {@link TezMerger} and reads the merged
+ * records. The records are spread over fanIn segments, which are merged in
+ * passes of at most mergeFactor segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergerBenchmark {
+
+  private static final Progressable NULL_PROGRESSABLE = new Progressable() {
+    @Override
+    public void progress() {
+    }
+  };
+
+  @Param({"2", "10", "100"})
+  public int fanIn;
+
+  @Param({"100"})
+  public int mergeFactor;
+
+  @Param({"1000000"})
+  public int numRecords;
+
+  private File workDir;
+  private Configuration conf;
+  private FileSystem fs;
+  private Path[] segments;
+  private Path tmpDir;
+  @SuppressWarnings("rawtypes")
+  private RawComparator comparator;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    workDir = BenchmarkUtils.createWorkDir("merger");
+    conf = BenchmarkUtils.createConf(workDir);
+    fs = FileSystem.getLocal(conf).getRaw();
+    comparator = WritableComparator.get(Text.class);
+    tmpDir = new Path(workDir.getAbsolutePath(), "tmp");
+    segments = new Path[fanIn];
+    int recordsPerSegment = numRecords / fanIn;
+    for (int i = 0; i < fanIn; i++) {
+      segments[i] = new Path(workDir.getAbsolutePath(), "segment_" + i);
+      Text[] keys = BenchmarkUtils.generateSortedText(recordsPerSegment, 10,
+          recordsPerSegment, i);
+      Text[] values = BenchmarkUtils.generateText(recordsPerSegment, 30, 1000,
+          fanIn + i);
+      IFile.Writer writer = new IFile.Writer(conf, fs, segments[i],
+          Text.class, Text.class, null, null);
+      for (int j = 0; j < recordsPerSegment; j++) {
+        writer.append(keys[j], values[j]);
+      }
+      writer.close();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkUtils.deleteWorkDir(workDir);
+  }
+
+  @Benchmark
+  public void merge(Blackhole bh) throws IOException {
+    TezRawKeyValueIterator iter = TezMerger.merge(conf, fs, Text.class,
+        Text.class, null, false, 0,
+        TezJobConfig.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT, segments, false,
+        mergeFactor, tmpDir, comparator, NULL_PROGRESSABLE,
+        new GenericCounter("reads", "reads"),
+        new GenericCounter("writes", "writes"), new Progress());
+    while (iter.next()) {
+      bh.consume(iter.getKey());
+      bh.consume(iter.getValue());
+    }
+    iter.close();
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.apache.tez.runtime.library.common.sort.impl.PipelinedSorter;
+import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collects, sorts and spills generated records through an
+ * {@link ExternalSorter}, including the final merge done on flush. A small
+ * sort buffer forces intermediate spills.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SorterBenchmark {
+
+  @Param({"DefaultSorter", "PipelinedSorter"})
+  public String sorterType;
+
+  @Param({"1000000"})
+  public int numRecords;
+
+  @Param({"16", "256"})
+  public int sortMb;
+
+  @Param({"10"})
+  public int numPartitions;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  private File workDir;
+  private Configuration conf;
+  private TezOutputContext outputContext;
+  private Text[] keys;
+  private Text[] values;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    workDir = BenchmarkUtils.createWorkDir("sorter");
+    conf = BenchmarkUtils.createConf(workDir);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_MB, sortMb);
+    conf.setBoolean(
+        TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_SHOULD_COMPRESS, compress);
+    outputContext = BenchmarkUtils.createOutputContext(conf);
+    keys = BenchmarkUtils.generateText(numRecords, 10, numRecords / 10, 1);
+    values = BenchmarkUtils.generateText(numRecords, 30, 1000, 2);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkUtils.deleteWorkDir(workDir);
+  }
+
+  private ExternalSorter createSorter() {
+    if ("PipelinedSorter".equals(sorterType)) {
+      return new PipelinedSorter();
+    }
+    return new DefaultSorter();
+  }
+
+  @Benchmark
+  public void collectSortSpill() throws IOException {
+    ExternalSorter sorter = createSorter();
+    sorter.initialize(outputContext, new Configuration(conf), numPartitions);
+    for (int i = 0; i < numRecords; i++) {
+      sorter.write(keys[i], values[i]);
+    }
+    sorter.flush();
+    sorter.close();
+  }
+}
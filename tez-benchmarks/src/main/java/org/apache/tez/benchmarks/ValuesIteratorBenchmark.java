@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.Progress;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.GenericCounter;
+import org.apache.tez.runtime.library.common.ValuesIterator;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Groups sorted records held in memory with {@link ValuesIterator}, so that
+ * only the grouping itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ValuesIteratorBenchmark {
+
+  @Param({"1000000"})
+  public int numRecords;
+
+  @Param({"1", "10", "1000"})
+  public int valuesPerKey;
+
+  @Param({"true", "false"})
+  public boolean rawComparison;
+
+  private Configuration conf;
+  private byte[][] keys;
+  private byte[][] values;
+
+  /**
+   * Serves serialized records out of memory.
+   */
+  private static class InMemoryRawIterator implements TezRawKeyValueIterator {
+    private final byte[][] keys;
+    private final byte[][] values;
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private int index = -1;
+
+    InMemoryRawIterator(byte[][] keys, byte[][] values) {
+      this.keys = keys;
+      this.values = values;
+    }
+
+    @Override
+    public DataInputBuffer getKey() throws IOException {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() throws IOException {
+      return value;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if (++index >= keys.length) {
+        return false;
+      }
+      key.reset(keys[index], keys[index].length);
+      value.reset(values[index], values[index].length);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public Progress getProgress() {
+      return null;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    conf = new Configuration();
+    conf.setBoolean(TezJobConfig.TEZ_RUNTIME_GROUP_RAW_COMPARISON,
+        rawComparison);
+    keys = serialize(BenchmarkUtils.generateSortedText(numRecords, 10,
+        Math.max(1, numRecords / valuesPerKey), 1));
+    values = serialize(BenchmarkUtils.generateText(numRecords, 30, 1000, 2));
+  }
+
+  private static byte[][] serialize(Text[] records) throws IOException {
+    byte[][] serialized = new byte[records.length][];
+    DataOutputBuffer out = new DataOutputBuffer();
+    for (int i = 0; i < records.length; i++) {
+      out.reset();
+      records[i].write(out);
+      serialized[i] = new byte[out.getLength()];
+      System.arraycopy(out.getData(), 0, serialized[i], 0, out.getLength());
+    }
+    return serialized;
+  }
+
+  @Benchmark
+  public void iterateGroups(Blackhole bh) throws IOException {
+    @SuppressWarnings("unchecked")
+    ValuesIterator<Text, Text> iter = new ValuesIterator<Text, Text>(
+        new InMemoryRawIterator(keys, values),
+        WritableComparator.get(Text.class), Text.class, Text.class, conf,
+        new GenericCounter("keys", "keys"),
+        new GenericCounter("values", "values"));
+    while (iter.moveToNext()) {
+      bh.consume(iter.getKey());
+      for (Text value : iter.getValues()) {
+        bh.consume(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.tez.dag.api.DAG;
+import org.apache.tez.dag.api.Edge;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
+import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.ProcessorDescriptor;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.Vertex;
+import org.apache.tez.dag.api.client.DAGClient;
+import org.apache.tez.dag.api.client.DAGStatus;
+import org.apache.tez.dag.api.client.LocalDAGClient;
+import org.apache.tez.dag.api.client.StatusGetOpts;
+
+/**
+ * Runs a synthetic DAG through a real AM without a cluster, to measure how
+ * the AM scales with the number of tasks and edges. Tasks run in
+ * {@link MockContainer}s which only exchange events with the AM, so the run
+ * time is dominated by the AM. A summary report is printed at the end of the
+ * run.
+ *
+ * The DAG is a chain of vertices where every vertex consumes the outputs of
+ * up to <code>edges-per-vertex</code> preceding vertices. The shape of the DAG
+ * and the behaviour of the containers are set with the tez.benchmark.am.*
+ * properties, e.g.
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.apache.tez.benchmarks.am.AMScaleBenchmark \
+ *   -Dtez.benchmark.am.num-vertices=4 \
+ *   -Dtez.benchmark.am.tasks-per-vertex=25000
+ * </pre>
+ */
+public class AMScaleBenchmark extends Configured implements Tool {
+
+  public static final String PREFIX = "tez.benchmark.am.";
+
+  public static final String NUM_VERTICES = PREFIX + "num-vertices";
+  public static final int NUM_VERTICES_DEFAULT = 3;
+
+  public static final String TASKS_PER_VERTEX = PREFIX + "tasks-per-vertex";
+  public static final int TASKS_PER_VERTEX_DEFAULT = 1000;
+
+  public static final String EDGES_PER_VERTEX = PREFIX + "edges-per-vertex";
+  public static final int EDGES_PER_VERTEX_DEFAULT = 1;
+
+  /** One of SCATTER_GATHER, BROADCAST or ONE_TO_ONE. */
+  public static final String EDGE_TYPE = PREFIX + "edge-type";
+  public static final String EDGE_TYPE_DEFAULT =
+      DataMovementType.SCATTER_GATHER.name();
+
+  public static final String CONCURRENT_TASKS = PREFIX + "concurrent-tasks";
+  public static final int CONCURRENT_TASKS_DEFAULT = 200;
+
+  public static final String HEARTBEAT_INTERVAL_MS =
+      PREFIX + "heartbeat-interval-ms";
+  public static final long HEARTBEAT_INTERVAL_MS_DEFAULT = 100;
+
+  /** Size of the payload of every synthetic DataMovementEvent. */
+  public static final String PAYLOAD_BYTES = PREFIX + "payload-bytes";
+  public static final int PAYLOAD_BYTES_DEFAULT = 64;
+
+  private static final String SYNTHETIC_CLASS = "SyntheticDescriptor";
+
+  static DAG createDAG(String name, int numVertices, int tasksPerVertex,
+      int edgesPerVertex, DataMovementType edgeType) {
+    DAG dag = new DAG(name);
+    List<Vertex> vertices = new ArrayList<Vertex>(numVertices);
+    for (int i = 0; i < numVertices; i++) {
+      Vertex vertex = new Vertex("v" + i,
+          new ProcessorDescriptor(SYNTHETIC_CLASS), tasksPerVertex,
+          Resource.newInstance(64, 1));
+      dag.addVertex(vertex);
+      for (int j = Math.max(0, i - edgesPerVertex); j < i; j++) {
+        dag.addEdge(new Edge(vertices.get(j), vertex, new EdgeProperty(
+            edgeType, DataSourceType.PERSISTED, SchedulingType.SEQUENTIAL,
+            new OutputDescriptor(SYNTHETIC_CLASS),
+            new InputDescriptor(SYNTHETIC_CLASS))));
+      }
+      vertices.add(vertex);
+    }
+    return dag;
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    TezConfiguration conf = new TezConfiguration(getConf());
+    int numVertices = conf.getInt(NUM_VERTICES, NUM_VERTICES_DEFAULT);
+    int tasksPerVertex = conf.getInt(TASKS_PER_VERTEX,
+        TASKS_PER_VERTEX_DEFAULT);
+    int edgesPerVertex = conf.getInt(EDGES_PER_VERTEX,
+        EDGES_PER_VERTEX_DEFAULT);
+    DataMovementType edgeType = DataMovementType.valueOf(
+        conf.get(EDGE_TYPE, EDGE_TYPE_DEFAULT));
+    long heartbeatInterval = conf.getLong(HEARTBEAT_INTERVAL_MS,
+        HEARTBEAT_INTERVAL_MS_DEFAULT);
+    int payloadBytes = conf.getInt(PAYLOAD_BYTES, PAYLOAD_BYTES_DEFAULT);
+
+    conf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+    conf.setInt(TezConfiguration.TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS,
+        conf.getInt(CONCURRENT_TASKS, CONCURRENT_TASKS_DEFAULT));
+    // consumers only start once all their sources are done, so that they
+    // cannot take up all slots while waiting for their inputs
+    conf.setFloat(
+        TezConfiguration.TEZ_AM_SHUFFLE_VERTEX_MANAGER_MIN_SRC_FRACTION, 1.0f);
+    conf.setFloat(
+        TezConfiguration.TEZ_AM_SHUFFLE_VERTEX_MANAGER_MAX_SRC_FRACTION, 1.0f);
+
+    System.out.println("Running " + numVertices + " vertices x "
+        + tasksPerVertex + " tasks, " + edgeType + " edges from up to "
+        + edgesPerVertex + " preceding vertices");
+
+    ApplicationId appId = ApplicationId.newInstance(
+        System.currentTimeMillis(), 1);
+    ScaleMetrics metrics = new ScaleMetrics();
+    ScaleTestAppMaster appMaster = new ScaleTestAppMaster(
+        ApplicationAttemptId.newInstance(appId, 1), metrics,
+        heartbeatInterval, payloadBytes);
+    ScaleTestAppMaster.start(appMaster, conf);
+    DAGStatus status;
+    long retainedHeapUsed;
+    try {
+      metrics.start(100);
+      DAG dag = createDAG("AMScaleBenchmark", numVertices, tasksPerVertex,
+          edgesPerVertex, edgeType);
+      String dagId = appMaster.getClientHandler().submitDAG(
+          dag.createDag(conf));
+      DAGClient dagClient = new LocalDAGClient(appId, dagId,
+          appMaster.getClientHandler());
+      Set<StatusGetOpts> statusOpts = EnumSet.noneOf(StatusGetOpts.class);
+      status = dagClient.getDAGStatus(statusOpts);
+      while (!status.isCompleted()) {
+        status = dagClient.getDAGStatusUpdate(statusOpts, status.getVersion(),
+            1000);
+      }
+      metrics.stop();
+      // the completed DAG is still referenced by the AM
+      System.gc();
+      retainedHeapUsed =
+          ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    } finally {
+      appMaster.stop();
+    }
+
+    System.out.println();
+    System.out.println("DAG finished with state " + status.getState());
+    metrics.printReport(System.out, retainedHeapUsed);
+    return status.getState() == DAGStatus.State.SUCCEEDED ? 0 : 1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new Configuration(), new AMScaleBenchmark(),
+        args));
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import org.apache.hadoop.yarn.event.AsyncDispatcher;
+import org.apache.hadoop.yarn.event.Event;
+
+/**
+ * Records the number of events and the time spent handling them for each
+ * event type.
+ */
+class CountingDispatcher extends AsyncDispatcher {
+
+  private final ScaleMetrics metrics;
+
+  CountingDispatcher(ScaleMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  protected void dispatch(Event event) {
+    long start = System.nanoTime();
+    try {
+      super.dispatch(event);
+    } finally {
+      metrics.recordDispatch(event.getType(), System.nanoTime() - start);
+    }
+  }
+}
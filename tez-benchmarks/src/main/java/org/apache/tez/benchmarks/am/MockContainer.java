@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.tez.common.ContainerContext;
+import org.apache.tez.common.ContainerTask;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.TezException;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.TaskAttemptCompletedEvent;
+import org.apache.tez.runtime.api.events.TaskStatusUpdateEvent;
+import org.apache.tez.runtime.api.impl.EventMetaData;
+import org.apache.tez.runtime.api.impl.EventMetaData.EventProducerConsumerType;
+import org.apache.tez.runtime.api.impl.EventType;
+import org.apache.tez.runtime.api.impl.InputSpec;
+import org.apache.tez.runtime.api.impl.OutputSpec;
+import org.apache.tez.runtime.api.impl.TaskSpec;
+import org.apache.tez.runtime.api.impl.TezEvent;
+import org.apache.tez.runtime.api.impl.TezHeartbeatRequest;
+import org.apache.tez.runtime.api.impl.TezHeartbeatResponse;
+
+/**
+ * A container which runs synthetic tasks against the umbilical of the AM.
+ * A task heartbeats until it has received a DataMovementEvent for each of
+ * its physical inputs, and then completes after sending a DataMovementEvent
+ * for each of its physical outputs.
+ */
+class MockContainer implements Runnable {
+
+  private static final Log LOG = LogFactory.getLog(MockContainer.class);
+
+  private final String containerIdStr;
+  private final TezTaskUmbilicalProtocol umbilical;
+  private final ScaleMetrics metrics;
+  private final long heartbeatInterval;
+  private final int maxEventsPerHeartbeat;
+  private final byte[] payload;
+  private long requestCounter = 0;
+
+  MockContainer(String containerIdStr, TezTaskUmbilicalProtocol umbilical,
+      ScaleMetrics metrics, long heartbeatInterval, int maxEventsPerHeartbeat,
+      byte[] payload) {
+    this.containerIdStr = containerIdStr;
+    this.umbilical = umbilical;
+    this.metrics = metrics;
+    this.heartbeatInterval = heartbeatInterval;
+    this.maxEventsPerHeartbeat = maxEventsPerHeartbeat;
+    this.payload = payload;
+  }
+
+  @Override
+  public void run() {
+    ContainerContext containerContext =
+        new ContainerContext(containerIdStr, "");
+    try {
+      while (true) {
+        ContainerTask containerTask = null;
+        for (int idle = 0; containerTask == null; ++idle) {
+          if (idle > 0) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(idle * 10, 200));
+          }
+          metrics.recordGetTask();
+          containerTask = umbilical.getTask(containerContext);
+        }
+        if (containerTask.shouldDie() || !runTask(containerTask.getTaskSpec())) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Container " + containerIdStr + " interrupted");
+    } catch (Exception e) {
+      throw new RuntimeException("Error in mock container " + containerIdStr,
+          e);
+    }
+  }
+
+  /**
+   * @return false if the AM asked the container to die
+   */
+  private boolean runTask(TaskSpec taskSpec) throws IOException,
+      TezException, InterruptedException {
+    TezTaskAttemptID taskAttemptID = taskSpec.getTaskAttemptID();
+    String vertexName = taskSpec.getVertexName();
+    EventMetaData systemInfo = new EventMetaData(
+        EventProducerConsumerType.SYSTEM, vertexName, "", taskAttemptID);
+
+    int expectedInputEvents = 0;
+    for (InputSpec inputSpec : taskSpec.getInputs()) {
+      expectedInputEvents += inputSpec.getPhysicalEdgeCount();
+    }
+    int inputEvents = 0;
+    int eventCounter = 0;
+    while (inputEvents < expectedInputEvents) {
+      List<TezEvent> events = new ArrayList<TezEvent>(1);
+      events.add(new TezEvent(new TaskStatusUpdateEvent(new TezCounters(),
+          0.5f), systemInfo));
+      TezHeartbeatResponse response = heartbeat(events, taskAttemptID,
+          eventCounter);
+      if (response.shouldDie()) {
+        return false;
+      }
+      List<TezEvent> received = response.getEvents();
+      if (received != null) {
+        eventCounter += received.size();
+        metrics.recordEventsReceived(received.size());
+        for (TezEvent event : received) {
+          if (event.getEventType() == EventType.DATA_MOVEMENT_EVENT) {
+            inputEvents++;
+          }
+        }
+      }
+      if (inputEvents < expectedInputEvents) {
+        Thread.sleep(heartbeatInterval);
+      }
+    }
+
+    List<TezEvent> events = new ArrayList<TezEvent>();
+    for (OutputSpec outputSpec : taskSpec.getOutputs()) {
+      EventMetaData outputInfo = new EventMetaData(
+          EventProducerConsumerType.OUTPUT, vertexName,
+          outputSpec.getDestinationVertexName(), taskAttemptID);
+      for (int i = 0; i < outputSpec.getPhysicalEdgeCount(); i++) {
+        events.add(new TezEvent(new DataMovementEvent(i, payload), outputInfo));
+      }
+    }
+    metrics.recordEventsSent(events.size());
+    events.add(new TezEvent(new TaskStatusUpdateEvent(new TezCounters(), 1.0f),
+        systemInfo));
+    events.add(new TezEvent(new TaskAttemptCompletedEvent(), systemInfo));
+    TezHeartbeatResponse response = heartbeat(events, taskAttemptID,
+        eventCounter);
+    metrics.recordTaskRun();
+    return !response.shouldDie();
+  }
+
+  private TezHeartbeatResponse heartbeat(List<TezEvent> events,
+      TezTaskAttemptID taskAttemptID, int eventCounter) throws IOException,
+      TezException {
+    long start = System.nanoTime();
+    TezHeartbeatResponse response = umbilical.heartbeat(new TezHeartbeatRequest(
+        ++requestCounter, events, containerIdStr, taskAttemptID, eventCounter,
+        maxEventsPerHeartbeat));
+    metrics.recordHeartbeat(System.nanoTime() - start);
+    return response;
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerState;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.launcher.ContainerLauncher;
+import org.apache.tez.dag.app.rm.NMCommunicatorEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEventCompleted;
+import org.apache.tez.dag.app.rm.container.AMContainerEventLaunched;
+import org.apache.tez.dag.app.rm.container.AMContainerEventType;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Launches {@link MockContainer}s on threads of the AM instead of asking a
+ * NodeManager for containers.
+ */
+class MockContainerLauncher extends AbstractService implements
+    ContainerLauncher {
+
+  private static final Log LOG =
+      LogFactory.getLog(MockContainerLauncher.class);
+
+  private final AppContext context;
+  private final TezTaskUmbilicalProtocol umbilical;
+  private final ScaleMetrics metrics;
+  private final long heartbeatInterval;
+  private final byte[] payload;
+  private final Map<ContainerId, Future<?>> runningContainers =
+      new ConcurrentHashMap<ContainerId, Future<?>>();
+  private ExecutorService containerExecutor;
+  private int maxEventsPerHeartbeat;
+
+  MockContainerLauncher(AppContext context, TezTaskUmbilicalProtocol umbilical,
+      ScaleMetrics metrics, long heartbeatInterval, int payloadBytes) {
+    super(MockContainerLauncher.class.getName());
+    this.context = context;
+    this.umbilical = umbilical;
+    this.metrics = metrics;
+    this.heartbeatInterval = heartbeatInterval;
+    this.payload = new byte[payloadBytes];
+  }
+
+  @Override
+  public void serviceInit(org.apache.hadoop.conf.Configuration conf) {
+    maxEventsPerHeartbeat = conf.getInt(
+        TezConfiguration.TEZ_TASK_MAX_EVENTS_PER_HEARTBEAT,
+        TezConfiguration.TEZ_TASK_MAX_EVENTS_PER_HEARTBEAT_DEFAULT);
+  }
+
+  @Override
+  public void serviceStart() {
+    containerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("MockContainer #%d").setDaemon(true).build());
+  }
+
+  @Override
+  public void serviceStop() {
+    if (containerExecutor != null) {
+      containerExecutor.shutdownNow();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void handle(NMCommunicatorEvent event) {
+    final ContainerId containerId = event.getContainerId();
+    switch (event.getType()) {
+    case CONTAINER_LAUNCH_REQUEST:
+      final MockContainer container = new MockContainer(containerId.toString(),
+          umbilical, metrics, heartbeatInterval, maxEventsPerHeartbeat,
+          payload);
+      context.getEventHandler().handle(
+          new AMContainerEventLaunched(containerId));
+      Future<?> future = containerExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          int exitStatus = ContainerExitStatus.SUCCESS;
+          String diagnostics = "";
+          try {
+            container.run();
+          } catch (Throwable t) {
+            LOG.error("Mock container " + containerId + " failed", t);
+            exitStatus = ContainerExitStatus.INVALID;
+            diagnostics = StringUtils.stringifyException(t);
+          } finally {
+            runningContainers.remove(containerId);
+            context.getEventHandler().handle(new AMContainerEventCompleted(
+                ContainerStatus.newInstance(containerId,
+                    ContainerState.COMPLETE, diagnostics, exitStatus)));
+          }
+        }
+      });
+      runningContainers.put(containerId, future);
+      if (future.isDone()) {
+        runningContainers.remove(containerId);
+      }
+      break;
+    case CONTAINER_STOP_REQUEST:
+      Future<?> running = runningContainers.get(containerId);
+      if (running != null) {
+        running.cancel(true);
+      }
+      context.getEventHandler().handle(new AMContainerEvent(containerId,
+          AMContainerEventType.C_NM_STOP_SENT));
+      break;
+    }
+  }
+}
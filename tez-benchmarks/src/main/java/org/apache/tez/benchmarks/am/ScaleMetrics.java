@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measurements collected during an AM scale run.
+ */
+public class ScaleMetrics {
+
+  private static final int TOP_EVENT_TYPES = 15;
+
+  static class EventTypeStats {
+    final String name;
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong nanos = new AtomicLong();
+
+    EventTypeStats(String name) {
+      this.name = name;
+    }
+  }
+
+  private final Map<Enum<?>, EventTypeStats> dispatchStats =
+      new ConcurrentHashMap<Enum<?>, EventTypeStats>();
+  private final AtomicLong dispatchedEvents = new AtomicLong();
+  private final AtomicLong dispatchNanos = new AtomicLong();
+
+  private final AtomicLong heartbeats = new AtomicLong();
+  private final AtomicLong heartbeatNanos = new AtomicLong();
+  private final AtomicLong maxHeartbeatNanos = new AtomicLong();
+  private final AtomicLong getTaskCalls = new AtomicLong();
+
+  private final AtomicLong tasksRun = new AtomicLong();
+  private final AtomicLong eventsSent = new AtomicLong();
+  private final AtomicLong eventsReceived = new AtomicLong();
+
+  private final AtomicLong peakHeapUsed = new AtomicLong();
+  private volatile Thread heapSampler;
+
+  private long startTime;
+  private long endTime;
+
+  void recordDispatch(Enum<?> type, long nanos) {
+    EventTypeStats stats = dispatchStats.get(type);
+    if (stats == null) {
+      // only the dispatcher thread adds entries
+      stats = new EventTypeStats(type.getDeclaringClass().getSimpleName()
+          + "." + type.name());
+      dispatchStats.put(type, stats);
+    }
+    stats.count.incrementAndGet();
+    stats.nanos.addAndGet(nanos);
+    dispatchedEvents.incrementAndGet();
+    dispatchNanos.addAndGet(nanos);
+  }
+
+  void recordHeartbeat(long nanos) {
+    heartbeats.incrementAndGet();
+    heartbeatNanos.addAndGet(nanos);
+    long max = maxHeartbeatNanos.get();
+    while (nanos > max && !maxHeartbeatNanos.compareAndSet(max, nanos)) {
+      max = maxHeartbeatNanos.get();
+    }
+  }
+
+  void recordGetTask() {
+    getTaskCalls.incrementAndGet();
+  }
+
+  void recordTaskRun() {
+    tasksRun.incrementAndGet();
+  }
+
+  void recordEventsSent(int count) {
+    eventsSent.addAndGet(count);
+  }
+
+  void recordEventsReceived(int count) {
+    eventsReceived.addAndGet(count);
+  }
+
+  /**
+   * Start the clock and sample the heap usage of the JVM until
+   * {@link #stop()}.
+   */
+  public void start(final long heapSampleIntervalMs) {
+    startTime = System.nanoTime();
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    heapSampler = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+          long used = memory.getHeapMemoryUsage().getUsed();
+          if (used > peakHeapUsed.get()) {
+            peakHeapUsed.set(used);
+          }
+          try {
+            Thread.sleep(heapSampleIntervalMs);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+    });
+    heapSampler.setName("HeapSampler");
+    heapSampler.setDaemon(true);
+    heapSampler.start();
+  }
+
+  public void stop() {
+    endTime = System.nanoTime();
+    if (heapSampler != null) {
+      heapSampler.interrupt();
+    }
+  }
+
+  public void printReport(PrintStream out, long retainedHeapUsed) {
+    double seconds = (endTime - startTime) / 1e9;
+    long numHeartbeats = heartbeats.get();
+    long numDispatched = dispatchedEvents.get();
+    out.println("Run time (s)                : " + format(seconds));
+    out.println("Tasks run                   : " + tasksRun.get()
+        + " (" + format(tasksRun.get() / seconds) + "/s)");
+    out.println("Dispatched events           : " + numDispatched
+        + " (" + format(numDispatched / seconds) + "/s)");
+    out.println("Dispatcher busy (s)         : "
+        + format(dispatchNanos.get() / 1e9));
+    out.println("Heartbeats                  : " + numHeartbeats
+        + " (" + format(numHeartbeats / seconds) + "/s)");
+    out.println("Heartbeat latency avg (ms)  : " + format(numHeartbeats == 0 ? 0
+        : heartbeatNanos.get() / 1e6 / numHeartbeats));
+    out.println("Heartbeat latency max (ms)  : "
+        + format(maxHeartbeatNanos.get() / 1e6));
+    out.println("getTask calls               : " + getTaskCalls.get());
+    out.println("Events sent by tasks        : " + eventsSent.get());
+    out.println("Events routed to tasks      : " + eventsReceived.get()
+        + " (" + format(eventsReceived.get() / seconds) + "/s)");
+    out.println("Peak heap used (MB)         : "
+        + (peakHeapUsed.get() >> 20));
+    out.println("Heap used after run (MB)    : " + (retainedHeapUsed >> 20));
+
+    List<EventTypeStats> stats =
+        new ArrayList<EventTypeStats>(dispatchStats.values());
+    Collections.sort(stats, new Comparator<EventTypeStats>() {
+      @Override
+      public int compare(EventTypeStats s1, EventTypeStats s2) {
+        long n1 = s1.nanos.get();
+        long n2 = s2.nanos.get();
+        return n1 < n2 ? 1 : (n1 == n2 ? 0 : -1);
+      }
+    });
+    out.println();
+    out.println("Dispatch cost by event type (top " + TOP_EVENT_TYPES + ")");
+    out.println(String.format("%-50s %12s %12s %12s", "event type", "count",
+        "total (ms)", "avg (us)"));
+    for (EventTypeStats s : stats.subList(0,
+        Math.min(TOP_EVENT_TYPES, stats.size()))) {
+      long count = s.count.get();
+      long nanos = s.nanos.get();
+      out.println(String.format("%-50s %12d %12d %12s", s.name, count,
+          TimeUnit.NANOSECONDS.toMillis(nanos),
+          format(count == 0 ? 0 : nanos / 1e3 / count)));
+    }
+  }
+
+  private static String format(double value) {
+    return String.format("%.2f", value);
+  }
+}
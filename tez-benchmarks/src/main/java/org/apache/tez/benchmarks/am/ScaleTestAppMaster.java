@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.am;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.event.Dispatcher;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.DAGAppMaster;
+import org.apache.tez.dag.app.launcher.ContainerLauncher;
+
+/**
+ * A local mode AM whose containers are {@link MockContainer}s, and whose
+ * dispatcher records the cost of every event.
+ */
+class ScaleTestAppMaster extends DAGAppMaster {
+
+  private final ScaleMetrics metrics;
+  private final long heartbeatInterval;
+  private final int payloadBytes;
+
+  ScaleTestAppMaster(ApplicationAttemptId attemptId, ScaleMetrics metrics,
+      long heartbeatInterval, int payloadBytes) {
+    super(attemptId, ContainerId.newInstance(attemptId, 0), "localhost", 0, 0,
+        System.currentTimeMillis(), true);
+    this.metrics = metrics;
+    this.heartbeatInterval = heartbeatInterval;
+    this.payloadBytes = payloadBytes;
+  }
+
+  static void start(ScaleTestAppMaster appMaster, Configuration conf)
+      throws IOException, InterruptedException {
+    initAndStartAppMaster(appMaster, conf,
+        UserGroupInformation.getCurrentUser().getShortUserName());
+  }
+
+  @Override
+  protected Dispatcher createDispatcher() {
+    return new CountingDispatcher(metrics);
+  }
+
+  @Override
+  protected ContainerLauncher createContainerLauncher(AppContext context) {
+    return new MockContainerLauncher(context,
+        (TezTaskUmbilicalProtocol) getTaskAttemptListener(), metrics,
+        heartbeatInterval, payloadBytes);
+  }
+
+  @Override
+  protected void sysexit() {
+    // the JVM belongs to the benchmark
+  }
+}
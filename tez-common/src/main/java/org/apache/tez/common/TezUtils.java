@@ -22,7 +22,9 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
@@ -38,13 +40,54 @@ import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.records.DAGProtos.ConfigurationProto;
 import org.apache.tez.dag.api.records.DAGProtos.PlanKeyValuePair;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.protobuf.ByteString;
 
 public class TezUtils {
   
   private static final Log LOG = LogFactory.getLog(TezUtils.class);
+
+  private static final int MAX_CACHED_PAYLOAD_CONFS = 64;
+
+  // Decoded configurations, keyed by the payload they were read from. These
+  // are never handed out, only copied.
+  private static final Cache<PayloadKey, Configuration> payloadConfCache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PAYLOAD_CONFS)
+          .softValues().build();
+  private static final AtomicLong payloadDecodes = new AtomicLong();
+
+  /** Compares user payloads by content. */
+  private static final class PayloadKey {
+    private final byte[] payload;
+    private final int hashCode;
+
+    PayloadKey(byte[] payload) {
+      this.payload = payload;
+      this.hashCode = Arrays.hashCode(payload);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof PayloadKey)) {
+        return false;
+      }
+      PayloadKey other = (PayloadKey) obj;
+      return hashCode == other.hashCode
+          && Arrays.equals(payload, other.payload);
+    }
+  }
   
   public static void addUserSpecifiedTezConfiguration(Configuration conf) 
       throws IOException {
@@ -101,10 +144,29 @@ public class TezUtils {
     return conf;
   }
   
+  /**
+   * Create a Configuration from a payload created by
+   * {@link #createUserPayloadFromConf(Configuration)}. Decoded payloads are
+   * cached by content, so that the inputs, outputs and processors of the
+   * tasks run in a container only parse each distinct payload once. Every
+   * call returns a separate copy which the caller is free to modify.
+   */
   public static Configuration createConfFromUserPayload(byte[] bb)
       throws IOException {
-    // TODO Avoid copy ?
     Preconditions.checkNotNull(bb, "Bytes must be specified");
+    Configuration cachedConf = payloadConfCache.getIfPresent(new PayloadKey(bb));
+    if (cachedConf == null) {
+      cachedConf = decodeUserPayload(bb);
+      // copy the key, the caller still owns the payload
+      payloadConfCache.put(new PayloadKey(bb.clone()), cachedConf);
+    }
+    return new Configuration(cachedConf);
+  }
+
+  private static Configuration decodeUserPayload(byte[] bb)
+      throws IOException {
+    payloadDecodes.incrementAndGet();
+    // TODO Avoid copy ?
     byte[] uncompressed = uncompressBytes(bb);
     DataInputBuffer dib = new DataInputBuffer();
     dib.reset(uncompressed, 0, uncompressed.length);
@@ -113,6 +175,15 @@ public class TezUtils {
     return conf;
   }
 
+  /**
+   * The number of user payloads which were not found in the cache, and had to
+   * be decoded.
+   */
+  @VisibleForTesting
+  static long getNumPayloadDecodes() {
+    return payloadDecodes.get();
+  }
+
   public static byte[] compressBytes(byte[] inBytes) throws IOException {
     Stopwatch sw = null;
     if (LOG.isDebugEnabled()) {
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.apache.tez.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+public class TestTezUtils {
+
+  private static byte[] createPayload(String key, String value)
+      throws IOException {
+    Configuration conf = new Configuration(false);
+    conf.set(key, value);
+    return TezUtils.createUserPayloadFromConf(conf);
+  }
+
+  @Test
+  public void testConfFromUserPayload() throws IOException {
+    byte[] payload = createPayload("test.key", "value");
+    long decodes = TezUtils.getNumPayloadDecodes();
+    assertEquals("value",
+        TezUtils.createConfFromUserPayload(payload).get("test.key"));
+    assertEquals(decodes + 1, TezUtils.getNumPayloadDecodes());
+    // served from the cache, also for an equal payload in another array
+    assertEquals("value",
+        TezUtils.createConfFromUserPayload(payload).get("test.key"));
+    assertEquals("value",
+        TezUtils.createConfFromUserPayload(payload.clone()).get("test.key"));
+    assertEquals(decodes + 1, TezUtils.getNumPayloadDecodes());
+    assertEquals("other", TezUtils.createConfFromUserPayload(
+        createPayload("test.key", "other")).get("test.key"));
+    assertEquals(decodes + 2, TezUtils.getNumPayloadDecodes());
+  }
+
+  @Test
+  public void testCachedConfIsCopied() throws IOException {
+    byte[] payload = createPayload("test.copy.key", "value");
+    Configuration conf1 = TezUtils.createConfFromUserPayload(payload);
+    Configuration conf2 = TezUtils.createConfFromUserPayload(payload);
+    assertNotSame(conf1, conf2);
+
+    // changes to one copy are not seen by the others, or by later callers
+    conf1.set("test.copy.key", "changed");
+    conf1.set("test.copy.added", "added");
+    assertEquals("value", conf2.get("test.copy.key"));
+    assertNull(conf2.get("test.copy.added"));
+    Configuration conf3 = TezUtils.createConfFromUserPayload(payload);
+    assertEquals("value", conf3.get("test.copy.key"));
+    assertNull(conf3.get("test.copy.added"));
+  }
+}
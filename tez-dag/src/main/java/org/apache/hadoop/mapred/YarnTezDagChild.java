@@ -292,7 +292,7 @@ public class YarnTezDagChild {
     DefaultMetricsSystem.initialize("VertexTask");
     YarnTezDagChild.containerIdStr = containerIdentifier;
 
-    ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl();
+    final ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl(defaultConf);
     @SuppressWarnings("unused")
     Injector injector = Guice.createInjector(
         new ObjectRegistryModule(objectRegistry));
@@ -493,6 +493,7 @@ public class YarnTezDagChild {
               currentTaskComplete.set(true);
               // TODONEWTEZ Should the container continue to run if the running task reported a fatal error ?
               if (!currentTask.hadFatalError()) {
+                objectRegistry.reportCounters(currentTask.getCounters());
                 TezEvent statusUpdateEvent =
                     new TezEvent(new TaskStatusUpdateEvent(
                         currentTask.getCounters(), currentTask.getProgress()),
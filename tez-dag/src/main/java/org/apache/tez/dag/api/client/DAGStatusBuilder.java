@@ -55,6 +55,10 @@ public class DAGStatusBuilder extends DAGStatus {
         DagTypeConverters.convertTezCountersToProto(counters));
   }
 
+  public void setVersion(long version) {
+    getBuilder().setVersion(version);
+  }
+
   public void addVertexProgress(String name, ProgressBuilder progress) {
     StringProgressPairProto.Builder builder = StringProgressPairProto.newBuilder();
     builder.setKey(name);
@@ -0,0 +1,85 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.api.client;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.tez.dag.api.TezException;
+import org.apache.tez.dag.app.DAGAppMaster.DAGClientHandler;
+
+/**
+ * DAGClient for a DAG running in an AM within the same JVM. Calls go to the
+ * client handler of the AM directly instead of over RPC.
+ */
+public class LocalDAGClient implements DAGClient {
+
+  private final ApplicationId appId;
+  private final String dagId;
+  private final DAGClientHandler clientHandler;
+
+  public LocalDAGClient(ApplicationId appId, String dagId,
+      DAGClientHandler clientHandler) {
+    this.appId = appId;
+    this.dagId = dagId;
+    this.clientHandler = clientHandler;
+  }
+
+  @Override
+  public ApplicationId getApplicationId() {
+    return appId;
+  }
+
+  @Override
+  public ApplicationReport getApplicationReport() {
+    // there is no YARN application in local mode
+    return null;
+  }
+
+  @Override
+  public DAGStatus getDAGStatus(Set<StatusGetOpts> statusOptions)
+      throws IOException, TezException {
+    return clientHandler.getDAGStatus(dagId, statusOptions);
+  }
+
+  @Override
+  public DAGStatus getDAGStatusUpdate(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis)
+      throws IOException, TezException {
+    return clientHandler.getDAGStatus(dagId, statusOptions, lastSeenVersion,
+        timeoutMillis);
+  }
+
+  @Override
+  public VertexStatus getVertexStatus(String vertexName,
+      Set<StatusGetOpts> statusOptions) throws IOException, TezException {
+    return clientHandler.getVertexStatus(dagId, vertexName, statusOptions);
+  }
+
+  @Override
+  public void tryKillDAG() throws IOException, TezException {
+    clientHandler.tryKillDAG(dagId);
+  }
+
+  @Override
+  public void close() throws IOException {
+  }
+}
@@ -74,9 +74,16 @@ public class DAGClientAMProtocolBlockingPBServerImpl implements
     try {
       String dagId = request.getDagId();
       DAGStatus status;
-      status = real.getDAGStatus(dagId,
-        DagTypeConverters.convertStatusGetOptsFromProto(
-          request.getStatusOptionsList()));
+      if (request.hasLastSeenVersion()) {
+        status = real.getDAGStatus(dagId,
+          DagTypeConverters.convertStatusGetOptsFromProto(
+            request.getStatusOptionsList()),
+          request.getLastSeenVersion(), request.getTimeoutMillis());
+      } else {
+        status = real.getDAGStatus(dagId,
+          DagTypeConverters.convertStatusGetOptsFromProto(
+            request.getStatusOptionsList()));
+      }
       assert status instanceof DAGStatusBuilder;
       DAGStatusBuilder builder = (DAGStatusBuilder) status;
       return GetDAGStatusResponseProto.newBuilder().
@@ -78,6 +78,7 @@ import org.apache.hadoop.yarn.util.Clock;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.hadoop.yarn.util.SystemClock;
 import org.apache.tez.client.TezSessionStatus;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.common.security.JobTokenIdentifier;
 import org.apache.tez.dag.api.DagTypeConverters;
@@ -111,6 +112,7 @@ import org.apache.tez.dag.app.dag.event.VertexEventType;
 import org.apache.tez.dag.app.dag.impl.DAGImpl;
 import org.apache.tez.dag.app.launcher.ContainerLauncher;
 import org.apache.tez.dag.app.launcher.ContainerLauncherImpl;
+import org.apache.tez.dag.app.launcher.LocalContainerLauncher;
 import org.apache.tez.dag.app.rm.AMSchedulerEventType;
 import org.apache.tez.dag.app.rm.NMCommunicatorEventType;
 import org.apache.tez.dag.app.rm.TaskSchedulerEventHandler;
@@ -158,6 +160,7 @@ public class DAGAppMaster extends AbstractService {
 
   private Clock clock;
   private final boolean isSession;
+  private boolean isLocal;
   private long appsStartTime;
   private final long startTime;
   private final long appSubmitTime;
@@ -247,7 +250,10 @@ public class DAGAppMaster extends AbstractService {
   public synchronized void serviceInit(final Configuration conf) throws Exception {
 
     this.amConf = conf;
-    conf.setBoolean(Dispatcher.DISPATCHER_EXIT_ON_ERROR_KEY, true);
+    this.isLocal = conf.getBoolean(TezConfiguration.TEZ_LOCAL_MODE,
+        TezConfiguration.TEZ_LOCAL_MODE_DEFAULT);
+    // the JVM is shared with the client in local mode
+    conf.setBoolean(Dispatcher.DISPATCHER_EXIT_ON_ERROR_KEY, !isLocal);
 
     context = new RunningAppContext(conf);
 
@@ -326,7 +332,7 @@ public class DAGAppMaster extends AbstractService {
             TezConfiguration.TEZ_SESSION_AM_DAG_SUBMIT_TIMEOUT_SECS,
             TezConfiguration.TEZ_SESSION_AM_DAG_SUBMIT_TIMEOUT_SECS_DEFAULT);
 
-    if (isSession) {
+    if (isSession && !isLocal) {
       FileInputStream sessionResourcesStream = null;
       try {
         sessionResourcesStream = new FileInputStream(
@@ -553,6 +559,10 @@ public class DAGAppMaster extends AbstractService {
 
   protected ContainerLauncher
       createContainerLauncher(final AppContext context) {
+    if (isLocal) {
+      return new LocalContainerLauncher(context,
+          (TezTaskUmbilicalProtocol) taskAttemptListener);
+    }
     return new ContainerLauncherImpl(context);
   }
 
@@ -734,6 +744,22 @@ public class DAGAppMaster extends AbstractService {
       return getDAG(dagIdStr).getDAGStatus(statusOptions);
     }
 
+    public DAGStatus getDAGStatus(String dagIdStr,
+        Set<StatusGetOpts> statusOptions, long lastSeenVersion,
+        long timeoutMillis) throws TezException {
+      DAG dag = getDAG(dagIdStr);
+      long maxWait = amConf.getLong(
+          TezConfiguration.TEZ_AM_CLIENT_STATUS_UPDATE_MAX_WAIT_MS,
+          TezConfiguration.TEZ_AM_CLIENT_STATUS_UPDATE_MAX_WAIT_MS_DEFAULT);
+      try {
+        return dag.getDAGStatus(statusOptions, lastSeenVersion,
+            Math.min(timeoutMillis, maxWait));
+      } catch (InterruptedException e) {
+        throw new TezException("Interrupted while waiting for status of dag: "
+            + dagIdStr, e);
+      }
+    }
+
     public VertexStatus getVertexStatus(String dagIdStr, String vertexName,
         Set<StatusGetOpts> statusOptions)
         throws TezException{
@@ -1279,6 +1305,14 @@ public class DAGAppMaster extends AbstractService {
     return isSession;
   }
 
+  public boolean isLocal() {
+    return isLocal;
+  }
+
+  public DAGClientHandler getClientHandler() {
+    return clientHandler;
+  }
+
   public static void main(String[] args) {
     try {
       Thread.setDefaultUncaughtExceptionHandler(new YarnUncaughtExceptionHandler());
@@ -0,0 +1,110 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.tez.dag.api.DAG;
+import org.apache.tez.dag.api.SessionNotRunning;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.TezException;
+import org.apache.tez.dag.api.client.DAGClient;
+import org.apache.tez.dag.api.client.LocalDAGClient;
+import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
+
+/**
+ * Runs DAGs in local mode. A session AM is started within the JVM of the
+ * client, and tasks run as threads of the AM. Processor, input and output
+ * classes are loaded from the classpath of the client - local resources of
+ * the DAG are not localized.
+ *
+ * Meant for tests and small jobs. See
+ * {@link TezConfiguration#TEZ_LOCAL_MODE}, which also has to be set in the
+ * configuration of outputs which are fetched by other tasks.
+ */
+public class LocalTezClient {
+
+  private static final Log LOG = LogFactory.getLog(LocalTezClient.class);
+
+  private static final AtomicInteger APP_COUNTER = new AtomicInteger(0);
+  private static final long CLUSTER_TIMESTAMP = System.currentTimeMillis();
+
+  private final TezConfiguration conf;
+  private ApplicationId appId;
+  private DAGAppMaster appMaster;
+
+  public LocalTezClient(TezConfiguration conf) {
+    this.conf = new TezConfiguration(conf);
+    this.conf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+  }
+
+  public synchronized void start() throws TezException, IOException {
+    if (appMaster != null) {
+      return;
+    }
+    appId = ApplicationId.newInstance(CLUSTER_TIMESTAMP,
+        APP_COUNTER.incrementAndGet());
+    ApplicationAttemptId attemptId = ApplicationAttemptId.newInstance(appId, 1);
+    DAGAppMaster am = new DAGAppMaster(attemptId,
+        ContainerId.newInstance(attemptId, 0), "localhost", 0, 0,
+        System.currentTimeMillis(), true) {
+      @Override
+      protected void sysexit() {
+        // the JVM belongs to the client
+      }
+    };
+    LOG.info("Starting local AM for application " + appId);
+    try {
+      DAGAppMaster.initAndStartAppMaster(am, conf,
+          UserGroupInformation.getCurrentUser().getShortUserName());
+    } catch (InterruptedException e) {
+      throw new TezException("Interrupted while starting local AM", e);
+    }
+    appMaster = am;
+  }
+
+  public synchronized DAGClient submitDAG(DAG dag) throws TezException {
+    if (appMaster == null) {
+      throw new SessionNotRunning("Local client not started");
+    }
+    DAGPlan dagPlan = dag.createDag(conf);
+    String dagId = appMaster.getClientHandler().submitDAG(dagPlan);
+    LOG.info("Submitted dag " + dagId + " to local AM");
+    return new LocalDAGClient(appId, dagId, appMaster.getClientHandler());
+  }
+
+  public synchronized void stop() {
+    if (appMaster != null) {
+      LOG.info("Stopping local AM for application " + appId);
+      appMaster.stop();
+      appMaster = null;
+    }
+  }
+
+  public synchronized ApplicationId getApplicationId() {
+    return appId;
+  }
+}
@@ -69,6 +69,21 @@ public interface DAG {
 
   DAGPlan getJobPlan();
   DAGStatusBuilder getDAGStatus(Set<StatusGetOpts> statusOptions);
+
+  /**
+   * Wait until the status version is greater than lastSeenVersion, or the
+   * timeout expires, and get the status. Vertex progress is only included for
+   * vertices whose status changed after lastSeenVersion.
+   */
+  DAGStatusBuilder getDAGStatus(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis) throws InterruptedException;
+
+  /**
+   * Notify the DAG that the status reported to clients has changed.
+   * @param vertexId the vertex whose status changed, or null if the change is
+   *                 to the DAG itself
+   */
+  void statusUpdated(TezVertexID vertexId);
   VertexStatusBuilder getVertexStatus(String vertexName,
                                       Set<StatusGetOpts> statusOptions);
 
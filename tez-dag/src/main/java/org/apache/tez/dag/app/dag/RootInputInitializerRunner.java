@@ -26,6 +26,7 @@ import java.util.concurrent.Executors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.InputDescriptor;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputFailed;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputInitialized;
@@ -54,18 +55,29 @@ public class RootInputInitializerRunner {
   private final String vertexName;
   private final TezVertexID vertexID;
   private final int numTasks;
+  private final int numClusterNodes;
   @SuppressWarnings("rawtypes")
   private final EventHandler eventHandler;
   private volatile boolean isStopped = false;
+  // Counters from all initializers which have completed successfully.
+  private final TezCounters counters = new TezCounters();
 
   @SuppressWarnings("rawtypes")
   public RootInputInitializerRunner(String dagName, String vertexName,
       TezVertexID vertexID, EventHandler eventHandler, int numTasks) {
+    this(dagName, vertexName, vertexID, eventHandler, numTasks, 0);
+  }
+
+  @SuppressWarnings("rawtypes")
+  public RootInputInitializerRunner(String dagName, String vertexName,
+      TezVertexID vertexID, EventHandler eventHandler, int numTasks,
+      int numClusterNodes) {
     this.dagName = dagName;
     this.vertexName = vertexName;
     this.vertexID = vertexID;
     this.eventHandler = eventHandler;
     this.numTasks = numTasks;
+    this.numClusterNodes = numClusterNodes;
     this.rawExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
         .setDaemon(true).setNameFormat("InputInitializer [" + this.vertexName + "] #%d").build());
     this.executor = MoreExecutors.listeningDecorator(rawExecutor);
@@ -75,7 +87,7 @@ public class RootInputInitializerRunner {
     for (RootInputLeafOutputDescriptor<InputDescriptor> input : inputs) {
       ListenableFuture<List<Event>> future = executor
           .submit(new InputInitializerCallable(input, vertexID, dagName,
-              vertexName, numTasks));
+              vertexName, numTasks, numClusterNodes, eventHandler, counters));
       Futures.addCallback(future, createInputInitializerCallback(input.getEntityName()));
     }
   }
@@ -85,6 +97,18 @@ public class RootInputInitializerRunner {
     return new InputInitializerCallback(entityName, eventHandler, vertexID);
   }
   
+  /**
+   * @return a snapshot of the counters of all initializers which have
+   *         completed successfully
+   */
+  public TezCounters getCounters() {
+    TezCounters snapshot = new TezCounters();
+    synchronized (counters) {
+      snapshot.incrAllCounters(counters);
+    }
+    return snapshot;
+  }
+
   public void shutdown() {
     if (executor != null && !isStopped) {
       // Don't really care about what is running if an error occurs. If no error
@@ -102,14 +126,23 @@ public class RootInputInitializerRunner {
     private final String dagName;
     private final String vertexName;
     private final int numTasks;
+    private final int numClusterNodes;
+    @SuppressWarnings("rawtypes")
+    private final EventHandler eventHandler;
+    private final TezCounters counters;
 
+    @SuppressWarnings("rawtypes")
     public InputInitializerCallable(RootInputLeafOutputDescriptor<InputDescriptor> input,
-        TezVertexID vertexID, String dagName, String vertexName, int numTasks) {
+        TezVertexID vertexID, String dagName, String vertexName, int numTasks,
+        int numClusterNodes, EventHandler eventHandler, TezCounters counters) {
       this.input = input;
       this.vertexID = vertexID;
       this.dagName = dagName;
       this.vertexName = vertexName;
       this.numTasks = numTasks;
+      this.numClusterNodes = numClusterNodes;
+      this.eventHandler = eventHandler;
+      this.counters = counters;
     }
 
     @Override
@@ -117,8 +150,12 @@ public class RootInputInitializerRunner {
       TezRootInputInitializer initializer = createInitializer();
       TezRootInputInitializerContext context = new TezRootInputInitializerContextImpl(
           vertexID, dagName, vertexName, input.getEntityName(), input.getDescriptor(),
-          numTasks);
-      return initializer.initialize(context);
+          numTasks, numClusterNodes, eventHandler);
+      List<Event> events = initializer.initialize(context);
+      synchronized (counters) {
+        counters.incrAllCounters(context.getCounters());
+      }
+      return events;
     }
 
     private TezRootInputInitializer createInitializer()
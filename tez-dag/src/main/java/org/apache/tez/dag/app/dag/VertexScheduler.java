@@ -34,4 +34,5 @@ public interface VertexScheduler {
   void onSourceTaskCompleted(TezTaskAttemptID attemptId);
   void onVertexManagerEventReceived(VertexManagerEvent vmEvent);
   void onRootVertexInitialized(String inputName, InputDescriptor inputDescriptor, List<Event> events);
+  void onRootInputEvents(String inputName, InputDescriptor inputDescriptor, List<Event> events);
 }
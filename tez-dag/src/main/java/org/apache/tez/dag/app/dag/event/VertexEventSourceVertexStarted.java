@@ -22,14 +22,21 @@ import org.apache.tez.dag.records.TezVertexID;
 
 public class VertexEventSourceVertexStarted extends VertexEvent {
 
+  TezVertexID sourceVertexId;
   int sourceDistanceFromRoot;
   
   public VertexEventSourceVertexStarted(TezVertexID vertexId, 
+                                         TezVertexID sourceVertexId,
                                          int distanceFromRoot) {
     super(vertexId, VertexEventType.V_SOURCE_VERTEX_STARTED);
+    this.sourceVertexId = sourceVertexId;
     this.sourceDistanceFromRoot = distanceFromRoot;
   }
   
+  public TezVertexID getSourceVertexId() {
+    return sourceVertexId;
+  }
+  
   public int getSourceDistanceFromRoot() {
     return sourceDistanceFromRoot;
   }
@@ -57,6 +57,7 @@ public enum VertexEventType {
   V_ONE_TO_ONE_SOURCE_SPLIT,
   
   //Producer: VertexInputInitializer
+  V_ROOT_INPUT_EVENTS,
   V_ROOT_INPUT_INITIALIZED,
   V_ROOT_INPUT_FAILED,
   
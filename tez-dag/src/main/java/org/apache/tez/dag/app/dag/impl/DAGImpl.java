@@ -135,6 +135,14 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
   private TezCounters fullCounters = null;
   private Set<TezVertexID> reRunningVertices = new HashSet<TezVertexID>();
 
+  // Version of the status reported to clients, and the version at which the
+  // status of each vertex last changed. Guarded by statusVersionLock, which is
+  // also used to wake up clients waiting for a status update.
+  private final Object statusVersionLock = new Object();
+  private long statusVersion = 0;
+  private final Map<TezVertexID, Long> vertexStatusVersions =
+      new HashMap<TezVertexID, Long>();
+
   public final Configuration conf;
   private final DAGPlan jobPlan;
 
@@ -511,6 +519,48 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
   // monitoring apis
   @Override
   public DAGStatusBuilder getDAGStatus(Set<StatusGetOpts> statusOptions) {
+    long version;
+    synchronized (statusVersionLock) {
+      version = statusVersion;
+    }
+    return getDAGStatus(statusOptions, null, version);
+  }
+
+  @Override
+  public DAGStatusBuilder getDAGStatus(Set<StatusGetOpts> statusOptions,
+      long lastSeenVersion, long timeoutMillis) throws InterruptedException {
+    long version;
+    // All vertices for clients which have not seen a status yet, including
+    // those whose status has not changed since the DAG was created
+    Set<TezVertexID> changedVertices = null;
+    synchronized (statusVersionLock) {
+      long waitUntil = System.currentTimeMillis() + timeoutMillis;
+      long remaining = timeoutMillis;
+      while (statusVersion <= lastSeenVersion && remaining > 0) {
+        statusVersionLock.wait(remaining);
+        remaining = waitUntil - System.currentTimeMillis();
+      }
+      version = statusVersion;
+      if (lastSeenVersion >= 0) {
+        changedVertices = new HashSet<TezVertexID>();
+        for (Map.Entry<TezVertexID, Long> entry :
+            vertexStatusVersions.entrySet()) {
+          if (entry.getValue() > lastSeenVersion) {
+            changedVertices.add(entry.getKey());
+          }
+        }
+      }
+    }
+    // The status is read after the version, so it may include changes made
+    // after this version. Clients see them again with the next version.
+    return getDAGStatus(statusOptions, changedVertices, version);
+  }
+
+  /**
+   * @param vertexIds vertices to include vertex progress for. null for all
+   */
+  private DAGStatusBuilder getDAGStatus(Set<StatusGetOpts> statusOptions,
+      Set<TezVertexID> vertexIds, long version) {
     DAGStatusBuilder status = new DAGStatusBuilder();
     int totalTaskCount = 0;
     int totalSucceededTaskCount = 0;
@@ -521,7 +571,10 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
     try {
       for(Map.Entry<String, Vertex> entry : vertexMap.entrySet()) {
         ProgressBuilder progress = entry.getValue().getVertexProgress();
-        status.addVertexProgress(entry.getKey(), progress);
+        if (vertexIds == null
+            || vertexIds.contains(entry.getValue().getVertexId())) {
+          status.addVertexProgress(entry.getKey(), progress);
+        }
         totalTaskCount += progress.getTotalTaskCount();
         totalSucceededTaskCount += progress.getSucceededTaskCount();
         totalRunningTaskCount += progress.getRunningTaskCount();
@@ -537,6 +590,7 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
       status.setState(getState());
       status.setDiagnostics(diagnostics);
       status.setDAGProgress(dagProgress);
+      status.setVersion(version);
       if (statusOptions.contains(StatusGetOpts.GET_COUNTERS)) {
         status.setDAGCounters(getAllCounters());
       }
@@ -546,6 +600,17 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
     }
   }
 
+  @Override
+  public void statusUpdated(TezVertexID vertexId) {
+    synchronized (statusVersionLock) {
+      statusVersion++;
+      if (vertexId != null) {
+        vertexStatusVersions.put(vertexId, statusVersion);
+      }
+      statusVersionLock.notifyAll();
+    }
+  }
+
   @Override
   public VertexStatusBuilder getVertexStatus(String vertexName,
       Set<StatusGetOpts> statusOptions) {
@@ -590,6 +655,7 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
     try {
       writeLock.lock();
       DAGState oldState = getInternalState();
+      int oldNumDiagnostics = diagnostics.size();
       try {
          getStateMachine().doTransition(event.getType(), event);
       } catch (InvalidStateTransitonException e) {
@@ -604,6 +670,10 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
         LOG.info(dagId + " transitioned from " + oldState + " to "
                  + getInternalState());
       }
+      if (oldState != getInternalState()
+          || oldNumDiagnostics != diagnostics.size()) {
+        statusUpdated(null);
+      }
     }
 
     finally {
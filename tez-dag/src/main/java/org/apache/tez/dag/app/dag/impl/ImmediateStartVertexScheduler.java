@@ -60,4 +60,9 @@ public class ImmediateStartVertexScheduler implements VertexScheduler {
       InputDescriptor inputDescriptor, List<Event> events) {
   }
 
+  @Override
+  public void onRootInputEvents(String inputName,
+      InputDescriptor inputDescriptor, List<Event> events) {
+  }
+
 }
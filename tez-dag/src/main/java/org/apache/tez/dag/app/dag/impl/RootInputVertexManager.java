@@ -18,9 +18,9 @@
 
 package org.apache.tez.dag.app.dag.impl;
 
-import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.event.EventHandler;
@@ -42,7 +42,9 @@ import org.apache.tez.runtime.api.impl.EventMetaData.EventProducerConsumerType;
 import org.apache.tez.runtime.api.impl.TezEvent;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 public class RootInputVertexManager implements VertexScheduler {
   
@@ -51,6 +53,16 @@ public class RootInputVertexManager implements VertexScheduler {
   private final Map<String, EventMetaData> destInfoMap;
   @SuppressWarnings("rawtypes")
   private final EventHandler eventHandler;
+  private final int numInputsWithInitializers;
+  private int numInitializedInputs = 0;
+
+  // Set if an initializer streams events before completing. In this case tasks
+  // are scheduled as their data information events arrive, rather than all at
+  // once when the vertex starts.
+  private boolean streamingEvents = false;
+  private boolean vertexStarted = false;
+  private final Set<TezTaskID> readyTasks = Sets.newLinkedHashSet();
+  private final Set<TezTaskID> scheduledTasks = Sets.newHashSet();
   
   @SuppressWarnings("rawtypes")
   public RootInputVertexManager(Vertex vertex, EventHandler eventHandler) {
@@ -61,12 +73,17 @@ public class RootInputVertexManager implements VertexScheduler {
     Map<String, RootInputLeafOutputDescriptor<InputDescriptor>> inputs = this.managedVertex
         .getAdditionalInputs();
     this.destInfoMap = Maps.newHashMapWithExpectedSize(inputs.size());
+    int inputsWithInitializers = 0;
     for (RootInputLeafOutputDescriptor input : inputs.values()) {
       EventMetaData destInfo = new EventMetaData(
           EventProducerConsumerType.INPUT, vertex.getName(),
           input.getEntityName(), null);
       destInfoMap.put(input.getEntityName(), destInfo);
+      if (input.getInitializerClassName() != null) {
+        inputsWithInitializers++;
+      }
     }
+    this.numInputsWithInitializers = inputsWithInitializers;
   }
 
   @Override
@@ -75,7 +92,12 @@ public class RootInputVertexManager implements VertexScheduler {
 
   @Override
   public void onVertexStarted(List<TezTaskAttemptID> completions) {
-    managedVertex.scheduleTasks(managedVertex.getTasks().keySet());
+    vertexStarted = true;
+    if (!streamingEvents || allInputsInitialized()) {
+      scheduleRemainingTasks();
+    } else {
+      scheduleReadyTasks();
+    }
   }
 
   @Override
@@ -86,16 +108,38 @@ public class RootInputVertexManager implements VertexScheduler {
   public void onVertexManagerEventReceived(VertexManagerEvent vmEvent) {
   }
 
+  @Override
+  public void onRootInputEvents(String inputName,
+      InputDescriptor inputDescriptor, List<Event> events) {
+    streamingEvents = true;
+    processEvents(inputName, inputDescriptor, events);
+    if (vertexStarted) {
+      scheduleReadyTasks();
+    }
+  }
+
   @Override
   public void onRootVertexInitialized(String inputName,
       InputDescriptor inputDescriptor, List<Event> events) {
-    boolean dataInformationEventSeen = false;
-    Preconditions.checkState(EnumSet.of(VertexState.INITIALIZING,
-        VertexState.NEW).contains(managedVertex.getState()));
+    numInitializedInputs++;
+    processEvents(inputName, inputDescriptor, events);
+    if (streamingEvents && vertexStarted) {
+      if (allInputsInitialized()) {
+        scheduleRemainingTasks();
+      } else {
+        scheduleReadyTasks();
+      }
+    }
+  }
+
+  private void processEvents(String inputName,
+      InputDescriptor inputDescriptor, List<Event> events) {
     for (Event event : events) {
       if (event instanceof RootInputConfigureVertexTasksEvent) {
-        // No tasks should have been started yet. Checked by initial state check.
-        Preconditions.checkState(dataInformationEventSeen == false);
+        // No tasks should have been started yet.
+        Preconditions.checkState(managedVertex.getState() == VertexState.INITIALIZING
+            || managedVertex.getState() == VertexState.NEW);
+        Preconditions.checkState(readyTasks.isEmpty() && scheduledTasks.isEmpty());
         Preconditions
             .checkState(
                 managedVertex.getTotalTasks() == -1,
@@ -106,22 +150,56 @@ public class RootInputVertexManager implements VertexScheduler {
         managedVertex.setParallelism(cEvent.getNumTasks(), null);
       }
       if (event instanceof RootInputUpdatePayloadEvent) {
-        // No tasks should have been started yet. Checked by initial state check.
-        Preconditions.checkState(dataInformationEventSeen == false);
+        // No tasks should have been started yet.
+        Preconditions.checkState(managedVertex.getState() == VertexState.INITIALIZING
+            || managedVertex.getState() == VertexState.NEW);
+        Preconditions.checkState(readyTasks.isEmpty() && scheduledTasks.isEmpty());
         inputDescriptor.setUserPayload(((RootInputUpdatePayloadEvent) event)
             .getUserPayload());
       } else if (event instanceof RootInputDataInformationEvent) {
-        dataInformationEventSeen = true;
         // # Tasks should have been set by this point.
         Preconditions.checkState(managedVertex.getTasks().size() != 0);
         TezEvent tezEvent = new TezEvent(event, sourceInfo);
         tezEvent.setDestinationInfo(destInfoMap.get(inputName));
-        sendEventToTask(TezTaskID.getInstance(managedVertex.getVertexId(),
-            ((RootInputDataInformationEvent) event).getIndex()), tezEvent);
+        TezTaskID taskId = TezTaskID.getInstance(managedVertex.getVertexId(),
+            ((RootInputDataInformationEvent) event).getIndex());
+        sendEventToTask(taskId, tezEvent);
+        if (!scheduledTasks.contains(taskId)) {
+          readyTasks.add(taskId);
+        }
       }
     }
   }
 
+  private boolean allInputsInitialized() {
+    return numInitializedInputs >= numInputsWithInitializers;
+  }
+
+  private void scheduleReadyTasks() {
+    if (readyTasks.isEmpty()) {
+      return;
+    }
+    List<TezTaskID> toSchedule = Lists.newArrayList(readyTasks);
+    readyTasks.clear();
+    scheduledTasks.addAll(toSchedule);
+    managedVertex.scheduleTasks(toSchedule);
+  }
+
+  private void scheduleRemainingTasks() {
+    readyTasks.clear();
+    List<TezTaskID> toSchedule = Lists.newArrayList();
+    for (TezTaskID taskId : managedVertex.getTasks().keySet()) {
+      if (!scheduledTasks.contains(taskId)) {
+        toSchedule.add(taskId);
+      }
+    }
+    if (toSchedule.isEmpty()) {
+      return;
+    }
+    scheduledTasks.addAll(toSchedule);
+    managedVertex.scheduleTasks(toSchedule);
+  }
+
   @SuppressWarnings("unchecked")
   private void sendEventToTask(TezTaskID taskId, TezEvent tezEvent) {
     eventHandler.handle(new TaskEventAddTezEvent(taskId, tezEvent));
@@ -450,4 +450,10 @@ public class ShuffleVertexManager implements VertexScheduler {
     // Not allowing this for now. Nothing to do.
   }
 
+  @Override
+  public void onRootInputEvents(String inputName,
+      InputDescriptor inputDescriptor, List<Event> events) {
+    // Not allowing this for now. Nothing to do.
+  }
+
 }
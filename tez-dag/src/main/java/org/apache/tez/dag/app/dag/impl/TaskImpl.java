@@ -57,6 +57,7 @@ import org.apache.tez.dag.app.dag.Task;
 import org.apache.tez.dag.app.dag.TaskAttempt;
 import org.apache.tez.dag.app.dag.TaskAttemptStateInternal;
 import org.apache.tez.dag.app.dag.TaskStateInternal;
+import org.apache.tez.dag.app.dag.DAG;
 import org.apache.tez.dag.app.dag.Vertex;
 import org.apache.tez.dag.app.dag.event.DAGEvent;
 import org.apache.tez.dag.app.dag.event.DAGEventDiagnosticsUpdate;
@@ -510,6 +511,11 @@ public class TaskImpl implements Task, EventHandler<TaskEvent> {
     return diagnostics;
   }
 
+  @VisibleForTesting
+  int getMaxAttempts() {
+    return maxAttempts;
+  }
+
   @VisibleForTesting
   public TaskStateInternal getInternalState() {
     readLock.lock();
@@ -756,6 +762,15 @@ public class TaskImpl implements Task, EventHandler<TaskEvent> {
       if (oldState != getInternalState()) {
         LOG.info(taskId + " Task Transitioned from " + oldState + " to "
             + getInternalState());
+        // the running task count of the vertex changes only when the task
+        // enters or leaves RUNNING. Completions are reported by the vertex.
+        if ((getExternalState(oldState) == TaskState.RUNNING)
+            != (getExternalState(getInternalState()) == TaskState.RUNNING)) {
+          DAG dag = appContext.getCurrentDAG();
+          if (dag != null) {
+            dag.statusUpdated(taskId.getVertexID());
+          }
+        }
       }
     } finally {
       writeLock.unlock();
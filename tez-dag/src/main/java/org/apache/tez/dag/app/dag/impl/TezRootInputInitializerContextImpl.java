@@ -18,9 +18,15 @@
 
 package org.apache.tez.dag.app.dag.impl;
 
+import java.util.List;
+
 import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.app.dag.event.VertexEventRootInputEvents;
 import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.TezRootInputInitializerContext;
 
 public class TezRootInputInitializerContextImpl implements
@@ -31,17 +37,23 @@ public class TezRootInputInitializerContextImpl implements
   private final String inputName;
   private final InputDescriptor inputDescriptor;
   private final int numTasks;
+  private final int numClusterNodes;
+  @SuppressWarnings("rawtypes")
+  private final EventHandler eventHandler;
+  private final TezCounters counters = new TezCounters();
 
-  // TODO Add support for counters - merged with the Vertex counters.
-  
+  @SuppressWarnings("rawtypes")
   public TezRootInputInitializerContextImpl(TezVertexID vertexID,
       String dagName, String vertexName, String inputName,
-      InputDescriptor inputDescriptor, int numTasks) {
+      InputDescriptor inputDescriptor, int numTasks, int numClusterNodes,
+      EventHandler eventHandler) {
     this.vertexID = vertexID;
     this.dagName = dagName;
     this.inputName = inputName;
     this.inputDescriptor = inputDescriptor;
     this.numTasks = numTasks;
+    this.numClusterNodes = numClusterNodes;
+    this.eventHandler = eventHandler;
   }
 
   @Override
@@ -69,4 +81,24 @@ public class TezRootInputInitializerContextImpl implements
     return numTasks;
   }
 
+  @Override
+  public int getNumClusterNodes() {
+    return numClusterNodes;
+  }
+
+  @Override
+  public TezCounters getCounters() {
+    return counters;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void sendEvents(List<Event> events) {
+    if (events == null || events.isEmpty()) {
+      return;
+    }
+    eventHandler.handle(new VertexEventRootInputEvents(vertexID, inputName,
+        events));
+  }
+
 }
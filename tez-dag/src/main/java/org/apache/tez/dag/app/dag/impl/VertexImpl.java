@@ -55,6 +55,8 @@ import org.apache.hadoop.yarn.util.Clock;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.DagTypeConverters;
 import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
+import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
 import org.apache.tez.dag.api.InputDescriptor;
 import org.apache.tez.dag.api.OutputDescriptor;
 import org.apache.tez.dag.api.ProcessorDescriptor;
@@ -99,6 +101,7 @@ import org.apache.tez.dag.app.dag.event.TaskEvent;
 import org.apache.tez.dag.app.dag.event.TaskEventTermination;
 import org.apache.tez.dag.app.dag.event.TaskEventType;
 import org.apache.tez.dag.app.dag.event.VertexEvent;
+import org.apache.tez.dag.app.dag.event.VertexEventRootInputEvents;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputFailed;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputInitialized;
 import org.apache.tez.dag.app.dag.event.VertexEventRouteEvent;
@@ -197,6 +200,12 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   private static final SourceTaskAttemptCompletedEventTransition
       SOURCE_TASK_ATTEMPT_COMPLETED_EVENT_TRANSITION =
           new SourceTaskAttemptCompletedEventTransition();
+  private static final RootInputEventsAfterInitTransition
+      ROOT_INPUT_EVENTS_AFTER_INIT_TRANSITION =
+          new RootInputEventsAfterInitTransition();
+  private static final RootInputInitializedAfterInitTransition
+      ROOT_INPUT_INITIALIZED_AFTER_INIT_TRANSITION =
+          new RootInputInitializedAfterInitTransition();
 
   protected static final
     StateMachineFactory<VertexImpl, VertexState, VertexEventType, VertexEvent>
@@ -224,6 +233,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexState.RUNNING, VertexState.FAILED),
               VertexEventType.V_ROOT_INPUT_INITIALIZED,
               new RootInputInitializedTransition())
+          .addTransition(VertexState.INITIALIZING,
+              EnumSet.of(VertexState.INITIALIZING, VertexState.INITED,
+                  VertexState.RUNNING, VertexState.FAILED),
+              VertexEventType.V_ROOT_INPUT_EVENTS,
+              new RootInputEventsTransition())
           .addTransition(VertexState.INITIALIZING, 
               EnumSet.of(VertexState.FAILED, VertexState.INITED),
               VertexEventType.V_ONE_TO_ONE_SOURCE_SPLIT,
@@ -269,9 +283,18 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           .addTransition(VertexState.INITED,
               VertexState.INITED, VertexEventType.V_ROUTE_EVENT,
               ROUTE_EVENT_TRANSITION)
+          .addTransition(VertexState.INITED, VertexState.INITED,
+              VertexEventType.V_ROOT_INPUT_EVENTS,
+              ROOT_INPUT_EVENTS_AFTER_INIT_TRANSITION)
+          .addTransition(VertexState.INITED, VertexState.INITED,
+              VertexEventType.V_ROOT_INPUT_INITIALIZED,
+              ROOT_INPUT_INITIALIZED_AFTER_INIT_TRANSITION)
+          .addTransition(VertexState.INITED, VertexState.FAILED,
+              VertexEventType.V_ROOT_INPUT_FAILED,
+              new RootInputInitFailedTransition())
           .addTransition(VertexState.INITED, VertexState.KILLED,
               VertexEventType.V_TERMINATE,
-              new TerminateInitedVertexTransition())
+              new TerminateInitingVertexTransition())
           .addTransition(VertexState.INITED, VertexState.ERROR,
               VertexEventType.V_INTERNAL_ERROR,
               INTERNAL_ERROR_TRANSITION)
@@ -308,6 +331,15 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
               VertexState.RUNNING,
               VertexState.RUNNING, VertexEventType.V_ROUTE_EVENT,
               ROUTE_EVENT_TRANSITION)
+          .addTransition(VertexState.RUNNING, VertexState.RUNNING,
+              VertexEventType.V_ROOT_INPUT_EVENTS,
+              ROOT_INPUT_EVENTS_AFTER_INIT_TRANSITION)
+          .addTransition(VertexState.RUNNING, VertexState.RUNNING,
+              VertexEventType.V_ROOT_INPUT_INITIALIZED,
+              ROOT_INPUT_INITIALIZED_AFTER_INIT_TRANSITION)
+          .addTransition(VertexState.RUNNING, VertexState.TERMINATING,
+              VertexEventType.V_ROOT_INPUT_FAILED,
+              new RootInputFailedWhileRunningTransition())
 
           // Transitions from TERMINATING state.
           .addTransition
@@ -325,7 +357,10 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexEventType.V_ROUTE_EVENT,
                   VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
-                  VertexEventType.V_TASK_RESCHEDULED))
+                  VertexEventType.V_TASK_RESCHEDULED,
+                  VertexEventType.V_ROOT_INPUT_EVENTS,
+                  VertexEventType.V_ROOT_INPUT_INITIALIZED,
+                  VertexEventType.V_ROOT_INPUT_FAILED))
 
           // Transitions from SUCCEEDED state
           .addTransition(
@@ -348,7 +383,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
                   // accumulate these in case we get restarted
                   VertexEventType.V_ROUTE_EVENT,
-                  VertexEventType.V_TASK_COMPLETED))
+                  VertexEventType.V_TASK_COMPLETED,
+                  // a streaming root input initializer may complete after all
+                  // tasks have already received their events and succeeded.
+                  VertexEventType.V_ROOT_INPUT_EVENTS,
+                  VertexEventType.V_ROOT_INPUT_INITIALIZED))
 
           // Transitions from FAILED state
           .addTransition(
@@ -364,6 +403,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_TASK_COMPLETED,
                   VertexEventType.V_ONE_TO_ONE_SOURCE_SPLIT,
+                  VertexEventType.V_ROOT_INPUT_EVENTS,
                   VertexEventType.V_ROOT_INPUT_INITIALIZED,
                   VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_ROOT_INPUT_FAILED))
@@ -385,6 +425,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexEventType.V_ONE_TO_ONE_SOURCE_SPLIT,
                   VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_TASK_COMPLETED,
+                  VertexEventType.V_ROOT_INPUT_EVENTS,
                   VertexEventType.V_ROOT_INPUT_INITIALIZED,
                   VertexEventType.V_ROOT_INPUT_FAILED))
 
@@ -403,6 +444,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
                   VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_TASK_RESCHEDULED,
                   VertexEventType.V_INTERNAL_ERROR,
+                  VertexEventType.V_ROOT_INPUT_EVENTS,
                   VertexEventType.V_ROOT_INPUT_INITIALIZED,
                   VertexEventType.V_ROOT_INPUT_FAILED))
           // create the topology tables
@@ -651,6 +693,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       }
 
       TezCounters counters = new TezCounters();
+      incrRootInputInitializerCounters(counters);
       return incrTaskCounters(counters, tasks.values());
 
     } finally {
@@ -658,6 +701,12 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     }
   }
 
+  private void incrRootInputInitializerCounters(TezCounters counters) {
+    if (rootInputInitializer != null) {
+      counters.incrAllCounters(rootInputInitializer.getCounters());
+    }
+  }
+
   public static TezCounters incrTaskCounters(
       TezCounters counters, Collection<Task> tasks) {
     for (Task task : tasks) {
@@ -942,6 +991,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     try {
       writeLock.lock();
       VertexState oldState = getInternalState();
+      int oldNumTasks = numTasks;
+      int oldSucceededTaskCount = succeededTaskCount;
+      int oldFailedTaskCount = failedTaskCount;
+      int oldKilledTaskCount = killedTaskCount;
+      int oldNumDiagnostics = diagnostics.size();
       try {
          getStateMachine().doTransition(event.getType(), event);
       } catch (InvalidStateTransitonException e) {
@@ -959,6 +1013,16 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
         LOG.info(vertexId + " transitioned from " + oldState + " to "
                  + getInternalState());
       }
+      // notify only if the task counts or diagnostics reported to clients
+      // changed
+      if (oldState != getInternalState()
+          || oldNumTasks != numTasks
+          || oldSucceededTaskCount != succeededTaskCount
+          || oldFailedTaskCount != failedTaskCount
+          || oldKilledTaskCount != killedTaskCount
+          || oldNumDiagnostics != diagnostics.size()) {
+        notifyStatusUpdated();
+      }
     }
 
     finally {
@@ -966,6 +1030,13 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     }
   }
 
+  void notifyStatusUpdated() {
+    DAG dag = getDAG();
+    if (dag != null) {
+      dag.statusUpdated(vertexId);
+    }
+  }
+
   private VertexState getInternalState() {
     readLock.lock();
     try {
@@ -1078,6 +1149,16 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
         vertex.abortVertex(VertexStatus.State.KILLED);
         return vertex.finished(VertexState.KILLED);
       }
+      else if(vertex.terminationCause == VertexTerminationCause.ROOT_INPUT_INIT_FAILURE ){
+        vertex.setFinishTime();
+        String diagnosticMsg = "Vertex failed as a root input initializer failed"
+            + " after tasks were started. failedTasks:"
+            + vertex.failedTaskCount;
+        LOG.info(diagnosticMsg);
+        vertex.addDiagnostic(diagnosticMsg);
+        vertex.abortVertex(VertexStatus.State.FAILED);
+        return vertex.finished(VertexState.FAILED);
+      }
       else if(vertex.terminationCause == VertexTerminationCause.OWN_TASK_FAILURE ){
         if(vertex.failedTaskCount == 0){
           LOG.error("task failure accounting error.  terminationCause=TASK_FAILURE but vertex.failedTaskCount == 0");
@@ -1123,6 +1204,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   VertexState finished(VertexState finalState,
       VertexTerminationCause terminationCause) {
     if (finishTime == 0) setFinishTime();
+    if (rootInputInitializer != null) {
+      // A streaming initializer may still be running if the vertex started
+      // before it completed.
+      rootInputInitializer.shutdown();
+    }
 
     switch (finalState) {
       case KILLED:
@@ -1196,8 +1282,32 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     // no code, for now
   }
 
+  private static boolean isConcurrent(Edge edge) {
+    return edge != null && edge.getEdgeProperty().getSchedulingType()
+        == SchedulingType.CONCURRENT;
+  }
+
+  private static boolean hasEphemeralEdge(Map<Vertex, Edge> edges) {
+    if (edges != null) {
+      for (Edge edge : edges.values()) {
+        if (edge.getEdgeProperty().getDataSourceType()
+            == DataSourceType.EPHEMERAL) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private void createTasks() {
     Configuration conf = this.conf;
+    if (hasEphemeralEdge(sourceVertices) || hasEphemeralEdge(targetVertices)) {
+      // Data on ephemeral edges is lost along with the task which produced
+      // it, or consumed by the task reading it. Another attempt can not
+      // recover it, so fail the task on the first failed attempt.
+      conf = new Configuration(this.conf);
+      conf.setInt(TezConfiguration.TEZ_AM_MAX_TASK_ATTEMPTS, 1);
+    }
     boolean useNullLocationHint = true;
     if (this.vertexLocationHint != null
         && this.vertexLocationHint.getTaskLocationHints() != null
@@ -1288,12 +1398,28 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
         }
       }
 
+      boolean hasConcurrentInput = false;
+      if (vertex.sourceVertices != null) {
+        for (Edge edge : vertex.sourceVertices.values()) {
+          if (isConcurrent(edge)) {
+            hasConcurrentInput = true;
+            break;
+          }
+        }
+      }
+
       if (hasBipartite && vertex.inputsWithInitializers != null) {
         LOG.fatal("A vertex with an Initial Input and a Shuffle Input are not supported at the moment");
         return vertex.finished(VertexState.FAILED);
       }
 
-      if (hasBipartite) {
+      if (hasConcurrentInput) {
+        // Tasks need to run alongside their sources, and can not wait for
+        // any of them to complete
+        LOG.info("Setting vertexManager to ImmediateStartVertexManager for "
+            + vertex.logIdentifier + " with concurrent inputs");
+        vertex.vertexScheduler = new ImmediateStartVertexScheduler(vertex);
+      } else if (hasBipartite) {
         // setup vertex scheduler
         // TODO this needs to consider data size and perhaps API.
         // Currently implicitly BIPARTITE is the only edge type
@@ -1406,7 +1532,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       String dagName, String vertexName, TezVertexID vertexID,
       EventHandler eventHandler, int numTasks) {
     return new RootInputInitializerRunner(dagName, vertexName, vertexID,
-        eventHandler, numTasks);
+        eventHandler, numTasks,
+        appContext.getTaskScheduler().getNumClusterNodes());
   }
   
   private VertexState initializeVertexInInitializingState() {
@@ -1461,6 +1588,95 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     }
   }
 
+  /**
+   * Events streamed by an initializer which has not yet completed. Once the
+   * parallelism of the vertex is known, a vertex with a single initializer
+   * moves out of the INITIALIZING state so that tasks can be started as their
+   * data information events arrive.
+   */
+  public static class RootInputEventsTransition implements
+      MultipleArcTransition<VertexImpl, VertexEvent, VertexState> {
+
+    @Override
+    public VertexState transition(VertexImpl vertex, VertexEvent event) {
+      VertexEventRootInputEvents riEvent = (VertexEventRootInputEvents) event;
+
+      vertex.vertexScheduler.onRootInputEvents(riEvent.getInputName(),
+          vertex.getAdditionalInputs().get(riEvent.getInputName())
+              .getDescriptor(), riEvent.getEvents());
+
+      if (vertex.inputsWithInitializers.size() == 1 && vertex.numTasks != -1) {
+        LOG.info("Parallelism for vertex " + vertex.logIdentifier
+            + " determined while root input initializer is running."
+            + " Initializing vertex with " + vertex.numTasks + " tasks");
+        VertexState vertexState = vertex.initializeVertexInInitializingState();
+        if (vertexState == VertexState.FAILED) {
+          vertex.rootInputInitializer.shutdown();
+          return VertexState.FAILED;
+        }
+
+        if (vertex.startSignalPending) {
+          vertex.startVertex();
+          return VertexState.RUNNING;
+        }
+        return vertexState;
+      }
+      return VertexState.INITIALIZING;
+    }
+  }
+
+  private static class RootInputEventsAfterInitTransition implements
+      SingleArcTransition<VertexImpl, VertexEvent> {
+
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      VertexEventRootInputEvents riEvent = (VertexEventRootInputEvents) event;
+      vertex.vertexScheduler.onRootInputEvents(riEvent.getInputName(),
+          vertex.getAdditionalInputs().get(riEvent.getInputName())
+              .getDescriptor(), riEvent.getEvents());
+    }
+  }
+
+  private static class RootInputInitializedAfterInitTransition implements
+      SingleArcTransition<VertexImpl, VertexEvent> {
+
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      VertexEventRootInputInitialized liInitEvent = (VertexEventRootInputInitialized) event;
+
+      vertex.vertexScheduler.onRootVertexInitialized(
+          liInitEvent.getInputName(),
+          vertex.getAdditionalInputs().get(liInitEvent.getInputName())
+              .getDescriptor(), liInitEvent.getEvents());
+
+      vertex.numInitializedInputs++;
+      if (vertex.numInitializedInputs == vertex.inputsWithInitializers.size()) {
+        vertex.rootInputInitializer.shutdown();
+      }
+    }
+  }
+
+  private static class RootInputFailedWhileRunningTransition implements
+      SingleArcTransition<VertexImpl, VertexEvent> {
+
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      VertexEventRootInputFailed fe = (VertexEventRootInputFailed) event;
+      vertex.addDiagnostic("Vertex Input: " + fe.getInputName()
+          + " initializer failed.");
+      if (fe.getError() != null) {
+        LOG.error("Vertex Input: " + fe.getInputName() + " initializer failed",
+            fe.getError());
+        if (fe.getError().getMessage() != null) {
+          vertex.addDiagnostic(fe.getError().getMessage());
+        }
+      }
+      vertex.rootInputInitializer.shutdown();
+      vertex.enactKill(VertexTerminationCause.ROOT_INPUT_INIT_FAILURE,
+          TaskTerminationCause.OTHER_TASK_FAILURE);
+    }
+  }
+
   public static class OneToOneSourceSplitTransition implements
     MultipleArcTransition<VertexImpl, VertexEvent, VertexState> {
 
@@ -1516,6 +1732,13 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       VertexEventSourceVertexStarted startEvent =
                                       (VertexEventSourceVertexStarted) event;
       int distanceFromRoot = startEvent.getSourceDistanceFromRoot() + 1;
+      Vertex sourceVertex = vertex.getDAG().getVertex(
+          startEvent.getSourceVertexId());
+      if (isConcurrent(vertex.sourceVertices.get(sourceVertex))) {
+        // Tasks on both ends of a concurrent edge need to run at the same
+        // time. Schedule them at the same priority.
+        distanceFromRoot--;
+      }
       if(vertex.distanceFromRoot < distanceFromRoot) {
         vertex.distanceFromRoot = distanceFromRoot;
       }
@@ -1571,7 +1794,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     if (targetVertices != null) {
       for (Vertex targetVertex : targetVertices.keySet()) {
         eventHandler.handle(new VertexEventSourceVertexStarted(targetVertex
-            .getVertexId(), distanceFromRoot));
+            .getVertexId(), vertexId, distanceFromRoot));
       }
     }
 
@@ -1610,6 +1833,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   @Private
   public void constructFinalFullcounters() {
     this.fullCounters = new TezCounters();
+    incrRootInputInitializerCounters(this.fullCounters);
     for (Task t : this.tasks.values()) {
       TezCounters counters = t.getCounters();
       this.fullCounters.incrAllCounters(counters);
@@ -0,0 +1,221 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.DataInputByteBuffer;
+import org.apache.hadoop.security.Credentials;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.api.records.ContainerState;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.rm.NMCommunicatorEvent;
+import org.apache.tez.dag.app.rm.NMCommunicatorLaunchRequestEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEventCompleted;
+import org.apache.tez.dag.app.rm.container.AMContainerEventLaunchFailed;
+import org.apache.tez.dag.app.rm.container.AMContainerEventLaunched;
+import org.apache.tez.dag.app.rm.container.AMContainerEventType;
+import org.apache.tez.dag.history.DAGHistoryEvent;
+import org.apache.tez.dag.history.events.ContainerLaunchedEvent;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryImpl;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryModule;
+import org.apache.tez.runtime.library.common.security.TokenCache;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Guice;
+
+/**
+ * Launches containers as threads of the AM, for local mode. Tasks use the
+ * task attempt listener of the AM directly as their umbilical, and all
+ * containers share the same local dirs so that task outputs can be read
+ * without going through a shuffle service.
+ */
+public class LocalContainerLauncher extends AbstractService implements
+    ContainerLauncher {
+
+  private static final Log LOG =
+      LogFactory.getLog(LocalContainerLauncher.class);
+
+  private final AppContext context;
+  private final TezTaskUmbilicalProtocol umbilical;
+  private final Map<ContainerId, Future<?>> runningContainers =
+      new ConcurrentHashMap<ContainerId, Future<?>>();
+  private ExecutorService containerExecutor;
+  private Configuration taskConf;
+  private File createdLocalDir;
+
+  public LocalContainerLauncher(AppContext context,
+      TezTaskUmbilicalProtocol umbilical) {
+    super(LocalContainerLauncher.class.getName());
+    this.context = context;
+    this.umbilical = umbilical;
+  }
+
+  @Override
+  public synchronized void serviceInit(Configuration conf) {
+    taskConf = new Configuration(conf);
+    String[] localDirs = conf.getTrimmedStrings(TezJobConfig.LOCAL_DIRS);
+    if (localDirs == null || localDirs.length == 0) {
+      createdLocalDir = new File(System.getProperty("java.io.tmpdir"),
+          "tez-local-" + context.getApplicationID());
+      localDirs = new String[] { createdLocalDir.getAbsolutePath() };
+      taskConf.setStrings(TezJobConfig.LOCAL_DIRS, localDirs);
+    }
+    LOG.info("Local dirs for tasks: " + StringUtils.arrayToString(localDirs));
+  }
+
+  @Override
+  public void serviceStart() {
+    // Tasks of all containers share the object registry of the AM process
+    Guice.createInjector(new ObjectRegistryModule(new ObjectRegistryImpl()));
+    containerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("LocalContainer #%d").setDaemon(true).build());
+  }
+
+  @Override
+  public void serviceStop() {
+    if (containerExecutor != null) {
+      containerExecutor.shutdownNow();
+    }
+    if (createdLocalDir != null) {
+      FileUtil.fullyDelete(createdLocalDir);
+    }
+  }
+
+  @Override
+  public void handle(NMCommunicatorEvent event) {
+    switch (event.getType()) {
+    case CONTAINER_LAUNCH_REQUEST:
+      launch((NMCommunicatorLaunchRequestEvent) event);
+      break;
+    case CONTAINER_STOP_REQUEST:
+      stop(event.getContainerId());
+      break;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void launch(NMCommunicatorLaunchRequestEvent event) {
+    final ContainerId containerId = event.getContainerId();
+    LOG.info("Launching local container with Id: " + containerId);
+    try {
+      final LocalContainerRunner runner = new LocalContainerRunner(
+          containerId.toString(), umbilical, taskConf,
+          createServiceConsumerMetadata(event.getContainerLaunchContext()),
+          context.getApplicationAttemptId().getAttemptId());
+      context.getEventHandler().handle(
+          new AMContainerEventLaunched(containerId));
+      context.getEventHandler().handle(new DAGHistoryEvent(
+          new ContainerLaunchedEvent(containerId, context.getClock().getTime())));
+      Future<?> container = containerExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          int exitStatus = ContainerExitStatus.SUCCESS;
+          String diagnostics = "";
+          try {
+            runner.run();
+          } catch (Throwable t) {
+            exitStatus = ContainerExitStatus.INVALID;
+            diagnostics = StringUtils.stringifyException(t);
+          } finally {
+            runningContainers.remove(containerId);
+            context.getEventHandler().handle(new AMContainerEventCompleted(
+                ContainerStatus.newInstance(containerId,
+                    ContainerState.COMPLETE, diagnostics, exitStatus)));
+          }
+        }
+      });
+      runningContainers.put(containerId, container);
+      if (container.isDone()) {
+        runningContainers.remove(containerId);
+      }
+    } catch (IOException e) {
+      sendContainerLaunchFailedMsg(containerId, e);
+    } catch (RejectedExecutionException e) {
+      sendContainerLaunchFailedMsg(containerId, e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void stop(ContainerId containerId) {
+    Future<?> container = runningContainers.get(containerId);
+    if (container != null) {
+      LOG.info("Stopping local container with Id: " + containerId);
+      container.cancel(true);
+    }
+    context.getEventHandler().handle(
+        new AMContainerEvent(containerId, AMContainerEventType.C_NM_STOP_SENT));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void sendContainerLaunchFailedMsg(ContainerId containerId,
+      Throwable t) {
+    String message = "Container launch failed for " + containerId + " : "
+        + StringUtils.stringifyException(t);
+    LOG.error(message);
+    context.getEventHandler().handle(
+        new AMContainerEventLaunchFailed(containerId, message));
+  }
+
+  /**
+   * Extract the job token from the launch context, as the NodeManager would
+   * hand it to a task process.
+   */
+  private Map<String, ByteBuffer> createServiceConsumerMetadata(
+      ContainerLaunchContext clc) throws IOException {
+    Credentials credentials = new Credentials();
+    if (clc.getTokens() != null) {
+      DataInputByteBuffer in = new DataInputByteBuffer();
+      in.reset(clc.getTokens().duplicate());
+      credentials.readTokenStorageStream(in);
+    }
+    Map<String, ByteBuffer> serviceConsumerMetadata =
+        new HashMap<String, ByteBuffer>();
+    Token<JobTokenIdentifier> jobToken = TokenCache.getJobToken(credentials);
+    if (jobToken != null) {
+      serviceConsumerMetadata.put(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID,
+          ShuffleUtils.convertJobTokenToBytes(jobToken));
+    }
+    return serviceConsumerMetadata;
+  }
+}
@@ -0,0 +1,296 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.launcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.tez.common.ContainerContext;
+import org.apache.tez.common.ContainerTask;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.TezException;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.runtime.LogicalIOProcessorRuntimeTask;
+import org.apache.tez.runtime.api.events.TaskAttemptCompletedEvent;
+import org.apache.tez.runtime.api.events.TaskAttemptFailedEvent;
+import org.apache.tez.runtime.api.events.TaskStatusUpdateEvent;
+import org.apache.tez.runtime.api.impl.EventMetaData;
+import org.apache.tez.runtime.api.impl.EventMetaData.EventProducerConsumerType;
+import org.apache.tez.runtime.api.impl.TaskSpec;
+import org.apache.tez.runtime.api.impl.TezEvent;
+import org.apache.tez.runtime.api.impl.TezHeartbeatRequest;
+import org.apache.tez.runtime.api.impl.TezHeartbeatResponse;
+import org.apache.tez.runtime.api.impl.TezUmbilical;
+
+/**
+ * Runs the tasks of a single container on a thread of the AM, talking to the
+ * {@link TezTaskUmbilicalProtocol} implementation of the AM directly instead
+ * of over RPC. The task loop and heartbeats follow YarnTezDagChild.
+ */
+class LocalContainerRunner implements Runnable {
+
+  private static final Log LOG = LogFactory.getLog(LocalContainerRunner.class);
+
+  private final String containerIdStr;
+  private final TezTaskUmbilicalProtocol umbilical;
+  private final Configuration conf;
+  private final Map<String, ByteBuffer> serviceConsumerMetadata;
+  private final int appAttemptNumber;
+  private final long amPollInterval;
+  private final int maxEventsToGet;
+
+  private final AtomicBoolean stopped = new AtomicBoolean(false);
+  private final AtomicLong requestCounter = new AtomicLong(0);
+  private final LinkedBlockingQueue<TezEvent> eventsToSend =
+      new LinkedBlockingQueue<TezEvent>();
+  private final ReentrantReadWriteLock taskLock = new ReentrantReadWriteLock();
+  private LogicalIOProcessorRuntimeTask currentTask = null;
+  private TezTaskAttemptID currentTaskAttemptID;
+  private volatile Throwable heartbeatError = null;
+
+  LocalContainerRunner(String containerIdStr,
+      TezTaskUmbilicalProtocol umbilical, Configuration conf,
+      Map<String, ByteBuffer> serviceConsumerMetadata, int appAttemptNumber) {
+    this.containerIdStr = containerIdStr;
+    this.umbilical = umbilical;
+    this.conf = conf;
+    this.serviceConsumerMetadata = serviceConsumerMetadata;
+    this.appAttemptNumber = appAttemptNumber;
+    this.amPollInterval = conf.getLong(
+        TezConfiguration.TEZ_TASK_AM_HEARTBEAT_INTERVAL_MS,
+        TezConfiguration.TEZ_TASK_AM_HEARTBEAT_INTERVAL_MS_DEFAULT);
+    this.maxEventsToGet = conf.getInt(
+        TezConfiguration.TEZ_TASK_MAX_EVENTS_PER_HEARTBEAT,
+        TezConfiguration.TEZ_TASK_MAX_EVENTS_PER_HEARTBEAT_DEFAULT);
+  }
+
+  private Thread startHeartbeatThread() {
+    Thread heartbeatThread = new Thread(new Runnable() {
+      public void run() {
+        while (!stopped.get()) {
+          try {
+            if (!heartbeat(null)) {
+              // AM asked us to die
+              break;
+            }
+            Thread.sleep(amPollInterval);
+          } catch (InterruptedException e) {
+            // interrupted so that we will stop
+            continue;
+          } catch (Throwable t) {
+            LOG.error("Heartbeat error in container " + containerIdStr, t);
+            heartbeatError = t;
+            break;
+          }
+        }
+      }
+    });
+    heartbeatThread.setName("Tez Container Heartbeat Thread ["
+        + containerIdStr + "]");
+    heartbeatThread.setDaemon(true);
+    heartbeatThread.start();
+    return heartbeatThread;
+  }
+
+  private synchronized boolean heartbeat(Collection<TezEvent> outOfBandEvents)
+      throws TezException, IOException {
+    TezTaskAttemptID taskAttemptID = null;
+    int eventCounter = 0;
+    int eventsRange = 0;
+    List<TezEvent> events = new ArrayList<TezEvent>();
+    taskLock.readLock().lock();
+    try {
+      if (currentTask != null) {
+        eventsToSend.drainTo(events);
+        taskAttemptID = currentTaskAttemptID;
+        eventCounter = currentTask.getEventCounter();
+        eventsRange = maxEventsToGet;
+        if (!currentTask.isTaskDone() && !currentTask.hadFatalError()) {
+          events.add(new TezEvent(new TaskStatusUpdateEvent(
+              currentTask.getCounters(), currentTask.getProgress()),
+              new EventMetaData(EventProducerConsumerType.SYSTEM,
+                  currentTask.getVertexName(), "", taskAttemptID)));
+        } else if (outOfBandEvents == null && events.isEmpty()) {
+          // the task has already completed
+          taskAttemptID = null;
+        } else if (outOfBandEvents != null) {
+          events.addAll(outOfBandEvents);
+        }
+      }
+    } finally {
+      taskLock.readLock().unlock();
+    }
+
+    long reqId = requestCounter.incrementAndGet();
+    TezHeartbeatResponse response = umbilical.heartbeat(new TezHeartbeatRequest(
+        reqId, events, containerIdStr, taskAttemptID, eventCounter,
+        eventsRange));
+    if (response.shouldDie()) {
+      LOG.info("Received should die response from AM for container "
+          + containerIdStr);
+      return false;
+    }
+    if (response.getLastRequestId() != reqId) {
+      throw new TezException("AM and Task out of sync"
+          + ", responseReqId=" + response.getLastRequestId()
+          + ", expectedReqId=" + reqId);
+    }
+    taskLock.readLock().lock();
+    try {
+      if (taskAttemptID != null && taskAttemptID.equals(currentTaskAttemptID)
+          && currentTask != null && response.getEvents() != null) {
+        currentTask.handleEvents(response.getEvents());
+      }
+    } finally {
+      taskLock.readLock().unlock();
+    }
+    return true;
+  }
+
+  private final TezUmbilical tezUmbilical = new TezUmbilical() {
+    @Override
+    public void addEvents(Collection<TezEvent> events) {
+      eventsToSend.addAll(events);
+    }
+
+    @Override
+    public void signalFatalError(TezTaskAttemptID taskAttemptID,
+        String diagnostics, EventMetaData sourceInfo) {
+      try {
+        heartbeat(Collections.singletonList(new TezEvent(
+            new TaskAttemptFailedEvent(diagnostics), sourceInfo)));
+      } catch (Throwable t) {
+        LOG.fatal("Failed to communicate task attempt failure to AM", t);
+        heartbeatError = t;
+      }
+    }
+
+    @Override
+    public boolean canCommit(TezTaskAttemptID taskAttemptID)
+        throws IOException {
+      return umbilical.canCommit(taskAttemptID);
+    }
+  };
+
+  @Override
+  public void run() {
+    Thread heartbeatThread = startHeartbeatThread();
+    ContainerContext containerContext =
+        new ContainerContext(containerIdStr, "");
+    int getTaskMaxSleepTime = conf.getInt(
+        TezConfiguration.TEZ_TASK_GET_TASK_SLEEP_INTERVAL_MS_MAX,
+        TezConfiguration.TEZ_TASK_GET_TASK_SLEEP_INTERVAL_MS_MAX_DEFAULT);
+    EventMetaData currentSourceInfo = null;
+    try {
+      while (heartbeatError == null) {
+        ContainerTask containerTask = null;
+        for (int idle = 0; containerTask == null; ++idle) {
+          if (idle > 0) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(idle * 10,
+                getTaskMaxSleepTime));
+          }
+          containerTask = umbilical.getTask(containerContext);
+        }
+        if (containerTask.shouldDie()) {
+          return;
+        }
+        TaskSpec taskSpec = containerTask.getTaskSpec();
+        taskLock.writeLock().lock();
+        try {
+          currentTaskAttemptID = taskSpec.getTaskAttemptID();
+          LOG.info("Running task " + currentTaskAttemptID + " in container "
+              + containerIdStr);
+          currentTask = new LogicalIOProcessorRuntimeTask(taskSpec,
+              appAttemptNumber, new Configuration(conf), tezUmbilical,
+              serviceConsumerMetadata);
+        } finally {
+          taskLock.writeLock().unlock();
+        }
+        EventMetaData sourceInfo = new EventMetaData(
+            EventProducerConsumerType.SYSTEM, taskSpec.getVertexName(), "",
+            currentTaskAttemptID);
+        currentSourceInfo = sourceInfo;
+        try {
+          currentTask.initialize();
+          if (!currentTask.hadFatalError()) {
+            currentTask.run();
+            currentTask.close();
+          }
+          if (!currentTask.hadFatalError()) {
+            TezEvent statusUpdateEvent = new TezEvent(new TaskStatusUpdateEvent(
+                currentTask.getCounters(), currentTask.getProgress()),
+                new EventMetaData(EventProducerConsumerType.SYSTEM,
+                    currentTask.getVertexName(), "",
+                    currentTask.getTaskAttemptID()));
+            heartbeat(Arrays.asList(statusUpdateEvent,
+                new TezEvent(new TaskAttemptCompletedEvent(), sourceInfo)));
+          }
+        } finally {
+          currentTask.cleanup();
+        }
+        taskLock.writeLock().lock();
+        try {
+          currentTask = null;
+          currentTaskAttemptID = null;
+        } finally {
+          taskLock.writeLock().unlock();
+        }
+      }
+      LOG.fatal("Stopping container " + containerIdStr
+          + ", heartbeat error occurred", heartbeatError);
+    } catch (InterruptedException e) {
+      LOG.info("Container " + containerIdStr + " interrupted");
+    } catch (Throwable t) {
+      String cause = StringUtils.stringifyException(t);
+      LOG.fatal("Error running task in container " + containerIdStr
+          + " : " + cause);
+      taskLock.readLock().lock();
+      try {
+        if (currentTask != null && !currentTask.hadFatalError()) {
+          currentTask.setFatalError(t, "Error in local container");
+          heartbeat(Collections.singletonList(new TezEvent(
+              new TaskAttemptFailedEvent(cause), currentSourceInfo)));
+        }
+      } catch (Throwable t2) {
+        LOG.error("Failed to report task failure to AM", t2);
+      } finally {
+        taskLock.readLock().unlock();
+      }
+    } finally {
+      stopped.set(true);
+      heartbeatThread.interrupt();
+    }
+  }
+}
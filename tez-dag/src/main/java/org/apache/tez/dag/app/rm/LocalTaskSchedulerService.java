@@ -0,0 +1,249 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.rm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.util.resource.Resources;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.rm.TaskScheduler.TaskSchedulerAppCallback;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Task scheduler for local mode. Containers are not requested from a
+ * ResourceManager - a container is made up for every task, and at most
+ * {@link TezConfiguration#TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS} of them are
+ * handed out at a time. Pending tasks are served in priority order.
+ * Containers are never re-used.
+ */
+public class LocalTaskSchedulerService extends TaskSchedulerService {
+
+  private static final Log LOG =
+      LogFactory.getLog(LocalTaskSchedulerService.class);
+
+  static final String LOCAL_HOST = "localhost";
+
+  private final ExecutorService appCallbackExecutor;
+  private final TaskSchedulerAppCallback appClientDelegate;
+  private final AppContext appContext;
+  private final NodeId nodeId = NodeId.newInstance(LOCAL_HOST, 0);
+
+  private final PriorityQueue<LocalTaskRequest> pendingRequests =
+      new PriorityQueue<LocalTaskRequest>();
+  private final Map<Object, Container> taskAllocations =
+      new HashMap<Object, Container>();
+  private long requestCounter = 0;
+  private int containerCounter = 0;
+  private int maxConcurrentTasks;
+  private Resource totalResources;
+  private Resource allocatedResources = Resource.newInstance(0, 0);
+
+  private static class LocalTaskRequest
+      implements Comparable<LocalTaskRequest> {
+    final Object task;
+    final Resource capability;
+    final Priority priority;
+    final Object clientCookie;
+    final long sequence;
+
+    LocalTaskRequest(Object task, Resource capability, Priority priority,
+        Object clientCookie, long sequence) {
+      this.task = task;
+      this.capability = capability;
+      this.priority = priority;
+      this.clientCookie = clientCookie;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(LocalTaskRequest other) {
+      // lower values are higher priority
+      if (priority.getPriority() != other.priority.getPriority()) {
+        return priority.getPriority() < other.priority.getPriority() ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+  }
+
+  public LocalTaskSchedulerService(TaskSchedulerAppCallback appClient,
+      AppContext appContext) {
+    super(LocalTaskSchedulerService.class.getName());
+    this.appContext = appContext;
+    this.appCallbackExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("TaskSchedulerAppCaller #%d")
+            .setDaemon(true).build());
+    this.appClientDelegate = new TaskSchedulerAppCallbackWrapper(appClient,
+        appCallbackExecutor);
+  }
+
+  @Override
+  public synchronized void serviceInit(Configuration conf) {
+    maxConcurrentTasks = Math.max(1, conf.getInt(
+        TezConfiguration.TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS,
+        TezConfiguration.TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS_DEFAULT));
+    totalResources = Resource.newInstance(
+        (int) (Runtime.getRuntime().maxMemory() >> 20),
+        Runtime.getRuntime().availableProcessors());
+    LOG.info("Running tasks locally"
+        + ", maxConcurrentTasks=" + maxConcurrentTasks
+        + ", totalResources=" + totalResources);
+  }
+
+  @Override
+  public void serviceStart() {
+    // upcall to app outside locks
+    appClientDelegate.setApplicationRegistrationData(totalResources,
+        Collections.<ApplicationAccessType, String>emptyMap(), null);
+  }
+
+  @Override
+  public void serviceStop() throws InterruptedException {
+    appCallbackExecutor.shutdown();
+    appCallbackExecutor.awaitTermination(1000l, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized Resource getAvailableResources() {
+    return Resources.subtract(totalResources, allocatedResources);
+  }
+
+  @Override
+  public int getClusterNodeCount() {
+    return 1;
+  }
+
+  @Override
+  public void resetMatchLocalityForAllHeldContainers() {
+    // containers are not held
+  }
+
+  @Override
+  public Resource getTotalResources() {
+    return totalResources;
+  }
+
+  @Override
+  public void allocateTask(Object task, Resource capability, String[] hosts,
+      String[] racks, Priority priority, Object containerSignature,
+      Object clientCookie) {
+    synchronized (this) {
+      pendingRequests.add(new LocalTaskRequest(task, capability, priority,
+          clientCookie, requestCounter++));
+    }
+    assignContainers();
+  }
+
+  @Override
+  public boolean deallocateTask(Object task, boolean taskSucceeded) {
+    Container container;
+    synchronized (this) {
+      for (Iterator<LocalTaskRequest> iter = pendingRequests.iterator();
+          iter.hasNext();) {
+        if (iter.next().task.equals(task)) {
+          iter.remove();
+          return false;
+        }
+      }
+      container = taskAllocations.remove(task);
+      if (container == null) {
+        return false;
+      }
+      Resources.subtractFrom(allocatedResources, container.getResource());
+    }
+    LOG.info("Releasing container: " + container.getId()
+        + " of task: " + task + ", taskSucceeded=" + taskSucceeded);
+    // upcall to app outside locks
+    appClientDelegate.containerBeingReleased(container.getId());
+    assignContainers();
+    return true;
+  }
+
+  @Override
+  public Object deallocateContainer(ContainerId containerId) {
+    Object task = null;
+    synchronized (this) {
+      for (Iterator<Entry<Object, Container>> iter =
+          taskAllocations.entrySet().iterator(); iter.hasNext();) {
+        Entry<Object, Container> entry = iter.next();
+        if (entry.getValue().getId().equals(containerId)) {
+          task = entry.getKey();
+          Resources.subtractFrom(allocatedResources,
+              entry.getValue().getResource());
+          iter.remove();
+          break;
+        }
+      }
+    }
+    if (task == null) {
+      LOG.info("Ignoring dealloction of unknown container: " + containerId);
+      return null;
+    }
+    LOG.info("Deallocated container: " + containerId + " from task: " + task);
+    assignContainers();
+    return task;
+  }
+
+  private void assignContainers() {
+    List<LocalTaskRequest> assignedRequests = new ArrayList<LocalTaskRequest>();
+    List<Container> assignedContainers = new ArrayList<Container>();
+    synchronized (this) {
+      while (taskAllocations.size() < maxConcurrentTasks
+          && !pendingRequests.isEmpty()) {
+        LocalTaskRequest request = pendingRequests.poll();
+        ContainerId containerId = ContainerId.newInstance(
+            appContext.getApplicationAttemptId(), ++containerCounter);
+        Container container = Container.newInstance(containerId, nodeId,
+            LOCAL_HOST + ":0", request.capability, request.priority, null);
+        taskAllocations.put(request.task, container);
+        Resources.addTo(allocatedResources, request.capability);
+        assignedRequests.add(request);
+        assignedContainers.add(container);
+      }
+    }
+    // upcall to app outside locks
+    for (int i = 0; i < assignedRequests.size(); i++) {
+      LocalTaskRequest request = assignedRequests.get(i);
+      LOG.info("Assigning container: " + assignedContainers.get(i).getId()
+          + " to task: " + request.task);
+      appClientDelegate.taskAllocated(request.task, request.clientCookie,
+          assignedContainers.get(i));
+    }
+  }
+}
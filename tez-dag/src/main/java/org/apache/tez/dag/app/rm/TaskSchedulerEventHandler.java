@@ -38,6 +38,7 @@ import org.apache.hadoop.yarn.api.records.NodeReport;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.event.Event;
 import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.dag.api.client.DAGClientServer;
 import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
@@ -71,7 +72,7 @@ public class TaskSchedulerEventHandler extends AbstractService
   protected final AppContext appContext;
   @SuppressWarnings("rawtypes")
   private final EventHandler eventHandler;
-  protected TaskScheduler taskScheduler;
+  protected TaskSchedulerService taskScheduler;
   private DAGAppMaster dagAppMaster;
   private Map<ApplicationAccessType, String> appAcls = null;
   private Thread eventHandlingThread;
@@ -109,6 +110,10 @@ public class TaskSchedulerEventHandler extends AbstractService
     return taskScheduler.getTotalResources();
   }
 
+  public int getNumClusterNodes() {
+    return taskScheduler.getClusterNodeCount();
+  }
+
   public synchronized void handleEvent(AMSchedulerEvent sEvent) {
     LOG.info("Processing the event " + sEvent.toString());
     switch (sEvent.getType()) {
@@ -317,8 +322,12 @@ public class TaskSchedulerEventHandler extends AbstractService
   }
 
 
-  protected TaskScheduler createTaskScheduler(String host, int port,
+  protected TaskSchedulerService createTaskScheduler(String host, int port,
       String trackingUrl, AppContext appContext) {
+    if (getConfig().getBoolean(TezConfiguration.TEZ_LOCAL_MODE,
+        TezConfiguration.TEZ_LOCAL_MODE_DEFAULT)) {
+      return new LocalTaskSchedulerService(this, appContext);
+    }
     return new TaskScheduler(this, createContainerSignatureMatcher(),
       host, port, trackingUrl, appContext);
   }
@@ -0,0 +1,271 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.DAG;
+import org.apache.tez.dag.api.Edge;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
+import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.ProcessorDescriptor;
+import org.apache.tez.dag.api.SessionNotRunning;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.Vertex;
+import org.apache.tez.dag.api.client.DAGClient;
+import org.apache.tez.dag.api.client.DAGStatus;
+import org.apache.tez.dag.api.client.StatusGetOpts;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.LogicalIOProcessor;
+import org.apache.tez.runtime.api.LogicalInput;
+import org.apache.tez.runtime.api.LogicalOutput;
+import org.apache.tez.runtime.api.TezProcessorContext;
+import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.KeyValuesReader;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.input.ShuffledMergedInput;
+import org.apache.tez.runtime.library.input.ShuffledUnorderedKVInput;
+import org.apache.tez.runtime.library.output.OnFileSortedOutput;
+import org.apache.tez.runtime.library.output.OnFileUnorderedKVOutput;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalTezClient {
+
+  private static final int NUM_SOURCE_TASKS = 2;
+  private static final int NUM_SINK_TASKS = 2;
+  private static final int NUM_KEYS = 10;
+
+  public static class KeyHashPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  /**
+   * Writes the same keys to all outputs, with the task index as the value.
+   */
+  public static class SourceProcessor implements LogicalIOProcessor {
+
+    private TezProcessorContext context;
+
+    @Override
+    public void initialize(TezProcessorContext processorContext) {
+      this.context = processorContext;
+    }
+
+    @Override
+    public void run(Map<String, LogicalInput> inputs,
+        Map<String, LogicalOutput> outputs) throws Exception {
+      for (LogicalOutput output : outputs.values()) {
+        KeyValueWriter writer = (KeyValueWriter) output.getWriter();
+        for (int i = 0; i < NUM_KEYS; i++) {
+          writer.write(new Text("key" + i),
+              new IntWritable(context.getTaskIndex()));
+        }
+      }
+    }
+
+    @Override
+    public void handleEvents(List<Event> processorEvents) {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Checks that every key was received from all source tasks, sorted on the
+   * scatter-gather edge, and that all records were broadcast.
+   */
+  public static class SinkProcessor implements LogicalIOProcessor {
+
+    @Override
+    public void initialize(TezProcessorContext processorContext) {
+    }
+
+    @Override
+    public void run(Map<String, LogicalInput> inputs,
+        Map<String, LogicalOutput> outputs) throws Exception {
+      KeyValuesReader sortedReader =
+          (KeyValuesReader) inputs.get("source").getReader();
+      String previousKey = null;
+      while (sortedReader.next()) {
+        String key = sortedReader.getCurrentKey().toString();
+        if (previousKey != null && previousKey.compareTo(key) >= 0) {
+          throw new IllegalStateException("Key " + key + " after "
+              + previousKey);
+        }
+        previousKey = key;
+        int numValues = 0;
+        for (Object value : sortedReader.getCurrentValues()) {
+          numValues++;
+        }
+        if (numValues != NUM_SOURCE_TASKS) {
+          throw new IllegalStateException("Got " + numValues
+              + " values for key " + key);
+        }
+      }
+
+      KeyValueReader broadcastReader =
+          (KeyValueReader) inputs.get("broadcast").getReader();
+      int numRecords = 0;
+      while (broadcastReader.next()) {
+        numRecords++;
+      }
+      if (numRecords != NUM_SOURCE_TASKS * NUM_KEYS) {
+        throw new IllegalStateException("Got " + numRecords
+            + " broadcast records");
+      }
+    }
+
+    @Override
+    public void handleEvents(List<Event> processorEvents) {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private File workDir;
+  private TezConfiguration conf;
+  private LocalTezClient client;
+
+  @Before
+  public void setup() {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        TestLocalTezClient.class.getName());
+    FileUtil.fullyDelete(workDir);
+    workDir.mkdirs();
+    conf = new TezConfiguration();
+    conf.set(TezConfiguration.TEZ_AM_STAGING_DIR,
+        new File(workDir, "staging").getAbsolutePath());
+    conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        new File(workDir, "local").getAbsolutePath());
+    conf.setInt(TezConfiguration.TEZ_AM_LOCAL_MAX_CONCURRENT_TASKS, 2);
+    // sinks only start once all sources are done, so that they cannot take
+    // up all the slots while waiting for their inputs
+    conf.setFloat(
+        TezConfiguration.TEZ_AM_SHUFFLE_VERTEX_MANAGER_MIN_SRC_FRACTION, 1.0f);
+    conf.setFloat(
+        TezConfiguration.TEZ_AM_SHUFFLE_VERTEX_MANAGER_MAX_SRC_FRACTION, 1.0f);
+    client = new LocalTezClient(conf);
+  }
+
+  @After
+  public void cleanup() {
+    client.stop();
+    FileUtil.fullyDelete(workDir);
+  }
+
+  private DAG createDAG() throws Exception {
+    Configuration outputConf = new Configuration(false);
+    // no shuffle service is running, outputs are read from the local dirs
+    outputConf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+    outputConf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class, Object.class);
+    outputConf.setClass(
+        TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        IntWritable.class, Object.class);
+    outputConf.setClass(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        KeyHashPartitioner.class, Partitioner.class);
+    byte[] outputPayload = TezUtils.createUserPayloadFromConf(outputConf);
+
+    Configuration inputConf = new Configuration(false);
+    inputConf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class, Object.class);
+    inputConf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_VALUE_CLASS,
+        IntWritable.class, Object.class);
+    byte[] inputPayload = TezUtils.createUserPayloadFromConf(inputConf);
+
+    Vertex source = new Vertex("source", new ProcessorDescriptor(
+        SourceProcessor.class.getName()), NUM_SOURCE_TASKS,
+        Resource.newInstance(64, 1));
+    Vertex broadcast = new Vertex("broadcast", new ProcessorDescriptor(
+        SourceProcessor.class.getName()), NUM_SOURCE_TASKS,
+        Resource.newInstance(64, 1));
+    Vertex sink = new Vertex("sink", new ProcessorDescriptor(
+        SinkProcessor.class.getName()), NUM_SINK_TASKS,
+        Resource.newInstance(64, 1));
+    DAG dag = new DAG("TestLocalTezClient");
+    dag.addVertex(source);
+    dag.addVertex(broadcast);
+    dag.addVertex(sink);
+    dag.addEdge(new Edge(source, sink, new EdgeProperty(
+        DataMovementType.SCATTER_GATHER, DataSourceType.PERSISTED,
+        SchedulingType.SEQUENTIAL,
+        new OutputDescriptor(OnFileSortedOutput.class.getName())
+            .setUserPayload(outputPayload),
+        new InputDescriptor(ShuffledMergedInput.class.getName())
+            .setUserPayload(inputPayload))));
+    dag.addEdge(new Edge(broadcast, sink, new EdgeProperty(
+        DataMovementType.BROADCAST, DataSourceType.PERSISTED,
+        SchedulingType.SEQUENTIAL,
+        new OutputDescriptor(OnFileUnorderedKVOutput.class.getName())
+            .setUserPayload(outputPayload),
+        new InputDescriptor(ShuffledUnorderedKVInput.class.getName())
+            .setUserPayload(inputPayload))));
+    return dag;
+  }
+
+  @Test(timeout = 60000)
+  public void testScatterGatherAndBroadcast() throws Exception {
+    client.start();
+    Assert.assertNotNull(client.getApplicationId());
+    DAGClient dagClient = client.submitDAG(createDAG());
+    DAGStatus status = dagClient.getDAGStatus(
+        EnumSet.noneOf(StatusGetOpts.class));
+    while (!status.isCompleted()) {
+      Thread.sleep(100);
+      status = dagClient.getDAGStatus(EnumSet.noneOf(StatusGetOpts.class));
+    }
+    Assert.assertEquals("Diagnostics: " + status.getDiagnostics(),
+        DAGStatus.State.SUCCEEDED, status.getState());
+  }
+
+  @Test(timeout = 10000)
+  public void testSubmitBeforeStart() throws Exception {
+    try {
+      client.submitDAG(createDAG());
+      Assert.fail("Expected the DAG to be rejected");
+    } catch (SessionNotRunning e) {
+      // expected
+    }
+  }
+}
@@ -20,6 +20,9 @@ package org.apache.tez.dag.app.dag.impl;
 
 import static org.mockito.Mockito.*;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -31,6 +34,8 @@ import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.util.Clock;
 import org.apache.hadoop.yarn.util.SystemClock;
 import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.client.DAGStatusBuilder;
+import org.apache.tez.dag.api.client.StatusGetOpts;
 import org.apache.tez.dag.api.oldrecords.TaskState;
 import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 import org.apache.tez.dag.api.records.DAGProtos.EdgePlan;
@@ -643,6 +648,40 @@ public class TestDAGImpl {
 
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testDAGStatusUpdates() throws InterruptedException {
+    initDAG(dag);
+    startDAG(dag);
+    dispatcher.await();
+
+    Set<StatusGetOpts> statusOpts = EnumSet.noneOf(StatusGetOpts.class);
+    DAGStatusBuilder status = dag.getDAGStatus(statusOpts);
+    long version = status.getVersion();
+    Assert.assertEquals(6, status.getVertexProgress().size());
+
+    // nothing changed. times out with no vertex progress
+    status = dag.getDAGStatus(statusOpts, version, 10);
+    Assert.assertEquals(version, status.getVersion());
+    Assert.assertTrue(status.getVertexProgress().isEmpty());
+
+    TezVertexID vId = TezVertexID.getInstance(dagId, 1);
+    dispatcher.getEventHandler().handle(new VertexEventTaskCompleted(
+        TezTaskID.getInstance(vId, 0), TaskState.SUCCEEDED));
+    dispatcher.await();
+
+    // only the changed vertex is reported
+    status = dag.getDAGStatus(statusOpts, version, 1000);
+    Assert.assertTrue(status.getVersion() > version);
+    Assert.assertEquals(1, status.getVertexProgress().size());
+    Assert.assertEquals(1, status.getVertexProgress()
+        .get(dag.getVertex(vId).getName()).getSucceededTaskCount());
+
+    // a client without a previous status sees all vertices
+    status = dag.getDAGStatus(statusOpts, -1, 1000);
+    Assert.assertEquals(6, status.getVertexProgress().size());
+  }
+
   @SuppressWarnings("unchecked")
   public void testKillStartedDAG() {
     initDAG(dag);
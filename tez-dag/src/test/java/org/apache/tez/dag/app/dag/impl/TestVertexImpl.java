@@ -79,6 +79,7 @@ import org.apache.tez.dag.app.dag.event.DAGEventType;
 import org.apache.tez.dag.app.dag.event.TaskEvent;
 import org.apache.tez.dag.app.dag.event.TaskEventType;
 import org.apache.tez.dag.app.dag.event.VertexEvent;
+import org.apache.tez.dag.app.dag.event.VertexEventRootInputEvents;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputFailed;
 import org.apache.tez.dag.app.dag.event.VertexEventRootInputInitialized;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskAttemptCompleted;
@@ -465,6 +466,89 @@ public class TestVertexImpl {
     return dag;
   }
 
+  private DAGPlan createDAGPlanWithConcurrentEdge() {
+    LOG.info("Setting up dag plan with a concurrent edge");
+    // vertex1 -> vertex2 is pipelined, vertex2 -> vertex3 is a regular
+    // shuffle
+    DAGPlan dag = DAGPlan.newBuilder()
+        .setName("testVertexConcurrentEdge")
+        .addVertex(
+            VertexPlan.newBuilder()
+                .setName("vertex1")
+                .setType(PlanVertexType.NORMAL)
+                .setTaskConfig(
+                    PlanTaskConfiguration.newBuilder()
+                    .setNumTasks(2)
+                    .setVirtualCores(4)
+                    .setMemoryMb(1024)
+                    .setJavaOpts("")
+                    .setTaskModule("x1.y1")
+                    .build()
+                )
+                .addOutEdgeId("e1")
+            .build()
+        )
+        .addVertex(
+            VertexPlan.newBuilder()
+                .setName("vertex2")
+                .setType(PlanVertexType.NORMAL)
+                .setTaskConfig(
+                    PlanTaskConfiguration.newBuilder()
+                    .setNumTasks(2)
+                    .setVirtualCores(4)
+                    .setMemoryMb(1024)
+                    .setJavaOpts("")
+                    .setTaskModule("x2.y2")
+                    .build()
+                )
+                .addInEdgeId("e1")
+                .addOutEdgeId("e2")
+            .build()
+        )
+        .addVertex(
+            VertexPlan.newBuilder()
+                .setName("vertex3")
+                .setType(PlanVertexType.NORMAL)
+                .setTaskConfig(
+                    PlanTaskConfiguration.newBuilder()
+                    .setNumTasks(1)
+                    .setVirtualCores(4)
+                    .setMemoryMb(1024)
+                    .setJavaOpts("")
+                    .setTaskModule("x3.y3")
+                    .build()
+                )
+                .addInEdgeId("e2")
+            .build()
+        )
+        .addEdge(
+            EdgePlan.newBuilder()
+                .setEdgeDestination(TezEntityDescriptorProto.newBuilder().setClassName("v1_v2"))
+                .setInputVertexName("vertex1")
+                .setEdgeSource(TezEntityDescriptorProto.newBuilder().setClassName("o2"))
+                .setOutputVertexName("vertex2")
+                .setDataMovementType(PlanEdgeDataMovementType.SCATTER_GATHER)
+                .setId("e1")
+                .setDataSourceType(PlanEdgeDataSourceType.EPHEMERAL)
+                .setSchedulingType(PlanEdgeSchedulingType.CONCURRENT)
+                .build()
+        )
+        .addEdge(
+            EdgePlan.newBuilder()
+                .setEdgeDestination(TezEntityDescriptorProto.newBuilder().setClassName("v2_v3"))
+                .setInputVertexName("vertex2")
+                .setEdgeSource(TezEntityDescriptorProto.newBuilder().setClassName("o2"))
+                .setOutputVertexName("vertex3")
+                .setDataMovementType(PlanEdgeDataMovementType.SCATTER_GATHER)
+                .setId("e2")
+                .setDataSourceType(PlanEdgeDataSourceType.PERSISTED)
+                .setSchedulingType(PlanEdgeSchedulingType.SEQUENTIAL)
+                .build()
+        )
+    .build();
+    return dag;
+  }
+
   private DAGPlan createTestDAGPlan() {
     LOG.info("Setting up dag plan");
     DAGPlan dag = DAGPlan.newBuilder()
@@ -1191,6 +1275,62 @@ public class TestVertexImpl {
     Assert.assertEquals(1, v6.getDistanceFromRoot());
   }
 
+  private void setupConcurrentEdgeDAG() {
+    setupPreDagCreation();
+    dagPlan = createDAGPlanWithConcurrentEdge();
+    setupPostDagCreation();
+    // source vertices are looked up through the DAG when they start
+    DAG dag = appContext.getCurrentDAG();
+    for (VertexImpl v : vertices.values()) {
+      doReturn(v).when(dag).getVertex(v.getVertexId());
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testConcurrentEdgeVertexScheduler() {
+    setupConcurrentEdgeDAG();
+    initAllVertices(VertexState.INITED);
+
+    // a scatter gather input would use the ShuffleVertexManager, but tasks
+    // with a concurrent input can not wait for their sources to complete
+    Assert.assertTrue(vertices.get("vertex2").getVertexScheduler()
+        instanceof ImmediateStartVertexScheduler);
+    Assert.assertTrue(vertices.get("vertex3").getVertexScheduler()
+        instanceof ShuffleVertexManager);
+  }
+
+  @Test(timeout = 5000)
+  public void testConcurrentEdgeDistanceFromRoot() {
+    setupConcurrentEdgeDAG();
+    initAllVertices(VertexState.INITED);
+
+    startVertex(vertices.get("vertex1"));
+    dispatcher.await();
+    VertexImpl v2 = vertices.get("vertex2");
+    VertexImpl v3 = vertices.get("vertex3");
+    Assert.assertEquals(VertexState.RUNNING, v2.getState());
+    // same priority as its concurrent source
+    Assert.assertEquals(0, v2.getDistanceFromRoot());
+    Assert.assertEquals(1, v3.getDistanceFromRoot());
+  }
+
+  @Test(timeout = 5000)
+  public void testEphemeralEdgeTaskAttempts() {
+    setupConcurrentEdgeDAG();
+    initAllVertices(VertexState.INITED);
+
+    // tasks on either end of the ephemeral edge get a single attempt
+    for (String vName : new String[] { "vertex1", "vertex2" }) {
+      for (Task task : vertices.get(vName).getTasks().values()) {
+        Assert.assertEquals(1, ((TaskImpl) task).getMaxAttempts());
+      }
+    }
+    for (Task task : vertices.get("vertex3").getTasks().values()) {
+      Assert.assertEquals(TezConfiguration.TEZ_AM_MAX_TASK_ATTEMPTS_DEFAULT,
+          ((TaskImpl) task).getMaxAttempts());
+    }
+  }
+
   @Test(timeout = 5000)
   public void testCounters() {
     // FIXME need to test counters at vertex level
@@ -1624,6 +1764,36 @@ public class TestVertexImpl {
     Assert.assertEquals(true, runner2.hasShutDown);
   }
   
+  @SuppressWarnings("unchecked")
+  @Test(timeout = 5000)
+  public void testVertexWithStreamingInitializer() {
+    useCustomInitializer = true;
+    setupPreDagCreation();
+    dagPlan = createDAGPlanWithInputInitializer("TestInputInitializer");
+    setupPostDagCreation();
+
+    VertexImplWithCustomInitializer v1 = (VertexImplWithCustomInitializer) vertices
+        .get("vertex1");
+    dispatcher.getEventHandler().handle(
+        new VertexEvent(v1.getVertexId(), VertexEventType.V_INIT));
+    dispatcher.await();
+    Assert.assertEquals(VertexState.INITIALIZING, v1.getState());
+    RootInputInitializerRunnerControlled runner1 = v1.getRootInputInitializerRunner();
+    List<TaskLocationHint> v1Hints = createTaskLocationHints(5);
+
+    // Vertex moves out of INITIALIZING once parallelism is known.
+    runner1.streamInputEvents(5, v1Hints, 2);
+    Assert.assertEquals(VertexState.INITED, v1.getState());
+    Assert.assertEquals(5, v1.getTotalTasks());
+    Assert.assertEquals(v1Hints, v1.getVertexLocationHint().getTaskLocationHints());
+    Assert.assertEquals(false, runner1.hasShutDown);
+
+    startVertex(v1);
+    runner1.completeStreamedInputInitialization(2, 5);
+    Assert.assertEquals(VertexState.RUNNING, v1.getState());
+    Assert.assertEquals(true, runner1.hasShutDown);
+  }
+
   private List<TaskLocationHint> createTaskLocationHints(int numTasks) {
     List<TaskLocationHint> locationHints = Lists
         .newArrayListWithCapacity(numTasks);
@@ -1744,6 +1914,31 @@ public class TestVertexImpl {
           .get(0).getEntityName(), events));
       dispatcher.await();
     }
+
+    public void streamInputEvents(int targetTasks,
+        List<TaskLocationHint> locationHints, int numSplits) {
+      List<Event> events = Lists.newArrayListWithCapacity(numSplits + 1);
+      events.add(new RootInputConfigureVertexTasksEvent(targetTasks,
+          locationHints));
+      for (int i = 0; i < numSplits; i++) {
+        events.add(new RootInputDataInformationEvent(i, null));
+      }
+      eventHandler.handle(new VertexEventRootInputEvents(vertexID, inputs
+          .get(0).getEntityName(), events));
+      dispatcher.await();
+    }
+
+    public void completeStreamedInputInitialization(int startIndex,
+        int targetTasks) {
+      List<Event> events = Lists.newArrayListWithCapacity(targetTasks
+          - startIndex);
+      for (int i = startIndex; i < targetTasks; i++) {
+        events.add(new RootInputDataInformationEvent(i, null));
+      }
+      eventHandler.handle(new VertexEventRootInputInitialized(vertexID, inputs
+          .get(0).getEntityName(), events));
+      dispatcher.await();
+    }
   }
 
 }
@@ -133,7 +133,7 @@ class TestTaskSchedulerHelpers {
     }
 
     public TaskScheduler getSpyTaskScheduler() {
-      return this.taskScheduler;
+      return (TaskScheduler) this.taskScheduler;
     }
 
     @Override
@@ -436,15 +436,22 @@ public class OrderedWordCount {
         }
 
 
+        long lastPrintedVersion = -1;
         while (dagStatus.getState() == DAGStatus.State.RUNNING) {
           try {
-            ExampleDriver.printDAGStatus(dagClient, vNames);
-            try {
-              Thread.sleep(1000);
-            } catch (InterruptedException e) {
-              // continue;
+            if (dagStatus.getVersion() != lastPrintedVersion) {
+              ExampleDriver.printDAGStatus(dagClient, vNames);
+              lastPrintedVersion = dagStatus.getVersion();
             }
-            dagStatus = dagClient.getDAGStatus(statusGetOpts);
+            // wait for the status to change instead of polling
+            dagStatus = dagClient.getDAGStatusUpdate(statusGetOpts,
+                dagStatus.getVersion(), 1000);
+            if (dagStatus.getVersion() == -1) {
+              // status came from the RM and did not wait for a change
+              Thread.sleep(500);
+            }
+          } catch (InterruptedException e) {
+            // continue;
           } catch (TezException e) {
             LOG.fatal("Failed to get application progress. Exiting");
             System.exit(-1);
@@ -30,6 +30,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
@@ -37,10 +38,14 @@ import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.mapreduce.common.RecordReaderPrefetcher;
+import org.apache.tez.mapreduce.common.SplitGenerationCounter;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 
 public class TezGroupedSplitsInputFormat<K, V> 
   implements InputFormat<K, V>, Configurable{
@@ -49,7 +54,9 @@ public class TezGroupedSplitsInputFormat<K, V>
 
   InputFormat<K, V> wrappedInputFormat;
   int desiredNumSplits = 0;
+  int numClusterNodes = 0;
   Configuration conf;
+  TezCounters counters;
   
   public TezGroupedSplitsInputFormat() {
     
@@ -70,17 +77,44 @@ public class TezGroupedSplitsInputFormat<K, V>
     }
   }
   
+  /**
+   * Number of nodes in the cluster. If known, the number of node local groups
+   * created on any one node is limited to that node's share of the desired
+   * number of splits.
+   */
+  public void setNumClusterNodes(int numClusterNodes) {
+    Preconditions.checkArgument(numClusterNodes >= 0);
+    this.numClusterNodes = numClusterNodes;
+  }
+  
+  /**
+   * Counters to which split generation and grouping statistics are reported.
+   */
+  public void setSplitGenerationCounters(TezCounters counters) {
+    this.counters = counters;
+  }
+  
   class SplitHolder {
     InputSplit split;
+    // cached since they may be expensive to compute for some split types and
+    // are accessed repeatedly while grouping
+    long length;
+    String[] locations;
     boolean isProcessed = false;
-    SplitHolder(InputSplit split) {
+    SplitHolder(InputSplit split) throws IOException {
+      this(split, split.getLength(), split.getLocations());
+    }
+    SplitHolder(InputSplit split, long length, String[] locations) {
       this.split = split;
+      this.length = length;
+      this.locations = locations;
     }
   }
   
   class LocationHolder {
     List<SplitHolder> splits;
     int headIndex = 0;
+    int numGroups = 0;
     LocationHolder(int capacity) {
       splits = new ArrayList<SplitHolder>(capacity);
     }
@@ -117,21 +151,21 @@ public class TezGroupedSplitsInputFormat<K, V>
       // get the desired num splits directly if possible
       numSplits = desiredNumSplits;
     }
-    InputSplit[] originalSplits = wrappedInputFormat.getSplits(job, numSplits);
+    List<SplitHolder> originalSplits = getOriginalSplits(job, numSplits);
     
     if (! (configNumSplits > 0 || 
           originalSplits == null || 
-          originalSplits.length == 0) ) {
+          originalSplits.size() == 0) ) {
       // numSplits has not been overridden by config
       // numSplits has been set at runtime
       // there are splits generated
       // Do sanity checks
       long totalLength = 0;
-      for (InputSplit split : originalSplits) {
-        totalLength += split.getLength();
+      for (SplitHolder split : originalSplits) {
+        totalLength += split.length;
       }
 
-      int splitCount = desiredNumSplits>0?desiredNumSplits:originalSplits.length;
+      int splitCount = desiredNumSplits>0?desiredNumSplits:originalSplits.size();
       long lengthPerGroup = totalLength/splitCount;
       
       long maxLengthPerGroup = job.getLong(
@@ -154,13 +188,13 @@ public class TezGroupedSplitsInputFormat<K, V>
             " Max splitLength: " + maxLengthPerGroup +
             " New desired splits: " + newDesiredNumSplits + 
             " Total length: " + totalLength +
-            " Original splits: " + originalSplits.length);
+            " Original splits: " + originalSplits.size());
         
         desiredNumSplits = newDesiredNumSplits;
-        if (desiredNumSplits > originalSplits.length) {
+        if (desiredNumSplits > originalSplits.size()) {
           // too few splits were produced. See if we can produce more splits
-          LOG.info("Recalculating splits. Original splits: " + originalSplits.length);
-          originalSplits = wrappedInputFormat.getSplits(job, desiredNumSplits);
+          LOG.info("Recalculating splits. Original splits: " + originalSplits.size());
+          originalSplits = getOriginalSplits(job, desiredNumSplits);
         }
       } else if (lengthPerGroup < minLengthPerGroup) {
         // splits too small to work. Need to override with size.
@@ -170,13 +204,13 @@ public class TezGroupedSplitsInputFormat<K, V>
             " Min splitLength: " + minLengthPerGroup +
             " New desired splits: " + newDesiredNumSplits + 
             " Total length: " + totalLength +
-            " Original splits: " + originalSplits.length);
+            " Original splits: " + originalSplits.size());
         
         desiredNumSplits = newDesiredNumSplits;
-        if (desiredNumSplits > originalSplits.length) {
+        if (desiredNumSplits > originalSplits.size()) {
           // too few splits were produced. See if we can produce more splits
-          LOG.info("Recalculating splits. Original splits: " + originalSplits.length);
-          originalSplits = wrappedInputFormat.getSplits(job, desiredNumSplits);
+          LOG.info("Recalculating splits. Original splits: " + originalSplits.size());
+          originalSplits = getOriginalSplits(job, desiredNumSplits);
         }
       }
     }
@@ -185,20 +219,86 @@ public class TezGroupedSplitsInputFormat<K, V>
       LOG.info("Null original splits");
       return null;
     }
-    
+    incrementCounter(SplitGenerationCounter.NUM_ORIGINAL_SPLITS,
+        originalSplits.size());
+
+    Stopwatch sw = new Stopwatch().start();
+    InputSplit[] groupedSplits;
+    try {
+      groupedSplits = groupSplits(originalSplits);
+    } finally {
+      sw.stop();
+      incrementCounter(SplitGenerationCounter.SPLIT_GROUPING_MILLIS,
+          sw.elapsedMillis());
+    }
+    incrementCounter(SplitGenerationCounter.NUM_GROUPED_SPLITS,
+        groupedSplits.length);
+    return groupedSplits;
+  }
+
+  private void incrementCounter(SplitGenerationCounter counter, long value) {
+    if (counters != null) {
+      counters.findCounter(counter).increment(value);
+    }
+  }
+
+  /**
+   * Generate splits using the wrapped InputFormat, wrapped in
+   * {@link SplitHolder}s.
+   * 
+   * Unlike the mapreduce API, splits are not generated per input directory in
+   * parallel. FileInputFormat sizes splits based on the total size of the
+   * input and the requested number of splits, so per directory splits would
+   * differ from the ones for the whole input.
+   * 
+   * @return the generated splits, or null if the wrapped InputFormat returned
+   *         null
+   */
+  private List<SplitHolder> getOriginalSplits(JobConf job, int numSplits)
+      throws IOException {
+    Stopwatch sw = new Stopwatch().start();
+    try {
+      int numInputDirs = 1;
+      if (wrappedInputFormat instanceof FileInputFormat) {
+        numInputDirs = FileInputFormat.getInputPaths(job).length;
+      }
+      incrementCounter(SplitGenerationCounter.SPLIT_GENERATION_INPUT_DIRS,
+          numInputDirs);
+      InputSplit[] splits = wrappedInputFormat.getSplits(job, numSplits);
+      if (splits == null) {
+        return null;
+      }
+      List<SplitHolder> originalSplits =
+          new ArrayList<SplitHolder>(splits.length);
+      for (InputSplit split : splits) {
+        originalSplits.add(new SplitHolder(split));
+      }
+      return originalSplits;
+    } finally {
+      sw.stop();
+      incrementCounter(SplitGenerationCounter.SPLIT_GENERATION_MILLIS,
+          sw.elapsedMillis());
+    }
+  }
+
+  private InputSplit[] groupSplits(List<SplitHolder> originalSplits) {
     String wrappedInputFormatName = wrappedInputFormat.getClass().getName();
     if (desiredNumSplits == 0 ||
-        originalSplits.length == 0 ||
-        desiredNumSplits >= originalSplits.length) {
+        originalSplits.size() == 0 ||
+        desiredNumSplits >= originalSplits.size()) {
       // nothing set. so return all the splits as is
-      LOG.info("Using original number of splits: " + originalSplits.length +
+      LOG.info("Using original number of splits: " + originalSplits.size() +
           " desired splits: " + desiredNumSplits);
-      InputSplit[] groupedSplits = new TezGroupedSplit[originalSplits.length];
+      InputSplit[] groupedSplits = new TezGroupedSplit[originalSplits.size()];
       int i=0;
-      for (InputSplit split : originalSplits) {
+      for (SplitHolder split : originalSplits) {
         TezGroupedSplit newSplit = 
-            new TezGroupedSplit(1, wrappedInputFormatName, split.getLocations());
-        newSplit.addSplit(split);
+            new TezGroupedSplit(1, wrappedInputFormatName, split.locations);
+        newSplit.addSplit(split.split);
+        incrementCounter(
+            (split.locations == null || split.locations.length == 0) ?
+                SplitGenerationCounter.NON_LOCAL_GROUPED_SPLITS :
+                SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS, 1);
         groupedSplits[i++] = newSplit;
       }
       return groupedSplits;
@@ -211,9 +311,9 @@ public class TezGroupedSplitsInputFormat<K, V>
     long totalLength = 0;
     Map<String, LocationHolder> distinctLocations = new HashMap<String, LocationHolder>();
     // go through splits and add them to locations
-    for (InputSplit split : originalSplits) {
-      totalLength += split.getLength();
-      String[] locations = split.getLocations();
+    for (SplitHolder split : originalSplits) {
+      totalLength += split.length;
+      String[] locations = split.locations;
       if (locations == null || locations.length == 0) {
         locations = emptyLocations;
       }
@@ -224,17 +324,16 @@ public class TezGroupedSplitsInputFormat<K, V>
     
     long lengthPerGroup = totalLength/desiredNumSplits;
     int numNodeLocations = distinctLocations.size();
-    int numSplitsPerLocation = originalSplits.length/numNodeLocations;
-    int numSplitsInGroup = originalSplits.length/desiredNumSplits;
+    int numSplitsPerLocation = originalSplits.size()/numNodeLocations;
+    int numSplitsInGroup = originalSplits.size()/desiredNumSplits;
 
     // allocation loop here so that we have a good initial size for the lists
     for (String location : distinctLocations.keySet()) {
       distinctLocations.put(location, new LocationHolder(numSplitsPerLocation));
     }
     
-    for (InputSplit split : originalSplits) {
-      SplitHolder splitHolder = new SplitHolder(split);
-      String[] locations = split.getLocations();
+    for (SplitHolder splitHolder : originalSplits) {
+      String[] locations = splitHolder.locations;
       if (locations == null || locations.length == 0) {
         locations = emptyLocations;
       }
@@ -256,13 +355,23 @@ public class TezGroupedSplitsInputFormat<K, V>
               + TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_LENGTH + ", "
               + TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_COUNT);
     }
+    int maxGroupsPerNode = 0;
+    if (numClusterNodes > 0 && conf.getBoolean(
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY,
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY_DEFAULT)) {
+      // spread the groups across the cluster so that they can run in as few
+      // waves as possible. Data on nodes with more than their share of groups
+      // is grouped rack local instead.
+      maxGroupsPerNode = (desiredNumSplits + numClusterNodes - 1)/numClusterNodes;
+    }
     LOG.info("Desired numSplits: " + desiredNumSplits +
         " lengthPerGroup: " + lengthPerGroup +
         " numLocations: " + numNodeLocations +
         " numSplitsPerLocation: " + numSplitsPerLocation +
         " numSplitsInGroup: " + numSplitsInGroup + 
+        " maxGroupsPerNode: " + maxGroupsPerNode +
         " totalLength: " + totalLength +
-        " numOriginalSplits: " + originalSplits.length +
+        " numOriginalSplits: " + originalSplits.size() +
         " . Grouping by length: " + groupByLength + " count: " + groupByCount);
     
     // go through locations and group splits
@@ -272,7 +381,10 @@ public class TezGroupedSplitsInputFormat<K, V>
     boolean allowSmallGroups = false;
     boolean doingRackLocal = false;
     int iterations = 0;
-    while (splitsProcessed < originalSplits.length) {
+    int nodeLocalGroups = 0;
+    int rackLocalGroups = 0;
+    int nonLocalGroups = 0;
+    while (splitsProcessed < originalSplits.size()) {
       iterations++;
       int numFullGroupsCreated = 0;
       for (Map.Entry<String, LocationHolder> entry : distinctLocations.entrySet()) {
@@ -285,18 +397,24 @@ public class TezGroupedSplitsInputFormat<K, V>
           // all splits on node processed
           continue;
         }
+        if (!doingRackLocal && maxGroupsPerNode > 0
+            && !emptyLocation.equals(location)
+            && holder.numGroups >= maxGroupsPerNode) {
+          // node has been allocated its share of groups
+          continue;
+        }
         int oldHeadIndex = holder.headIndex;
         long groupLength = 0;
         int groupNumSplits = 0;
         do {
           group.add(splitHolder);
-          groupLength += splitHolder.split.getLength();
+          groupLength += splitHolder.length;
           groupNumSplits++;
           holder.incrementHeadIndex();
           splitHolder = holder.getUnprocessedHeadSplit();
         } while(splitHolder != null  
             && (!groupByLength || 
-                (groupLength + splitHolder.split.getLength() <= lengthPerGroup))
+                (groupLength + splitHolder.length <= lengthPerGroup))
             && (!groupByCount || 
                 (groupNumSplits + 1 <= numSplitsInGroup)));
 
@@ -310,12 +428,20 @@ public class TezGroupedSplitsInputFormat<K, V>
         }
         
         numFullGroupsCreated++;
+        holder.numGroups++;
+        if (emptyLocation.equals(location)) {
+          nonLocalGroups++;
+        } else if (doingRackLocal) {
+          rackLocalGroups++;
+        } else {
+          nodeLocalGroups++;
+        }
 
         // One split group created
         String[] groupLocation = {location};
         if (doingRackLocal) {
           for (SplitHolder splitH : group) {
-            String[] locations = splitH.split.getLocations();
+            String[] locations = splitH.locations;
             if (locations != null) {
               for (String loc : locations) {
                 groupLocationSet.add(loc);
@@ -323,14 +449,14 @@ public class TezGroupedSplitsInputFormat<K, V>
             }
           }
           groupLocation = groupLocationSet.toArray(groupLocation);
-        } else if (location == emptyLocation) {
+        } else if (emptyLocation.equals(location)) {
           groupLocation = null;
         }
         TezGroupedSplit groupedSplit = 
             new TezGroupedSplit(group.size(), wrappedInputFormatName, 
                 groupLocation, 
                 // pass rack local hint directly to AM
-                ((doingRackLocal && location != emptyLocation)?location:null));
+                ((doingRackLocal && !emptyLocation.equals(location))?location:null));
         for (SplitHolder groupedSplitHolder : group) {
           groupedSplit.addSplit(groupedSplitHolder.split);
           groupedSplitHolder.isProcessed = true;
@@ -348,15 +474,15 @@ public class TezGroupedSplitsInputFormat<K, V>
         // no node could create a node-local group. go rack-local
         doingRackLocal = true;
         // re-create locations
-        int numRemainingSplits = originalSplits.length - splitsProcessed;
-        Set<InputSplit> remainingSplits = new HashSet<InputSplit>(numRemainingSplits);
+        int numRemainingSplits = originalSplits.size() - splitsProcessed;
+        Set<SplitHolder> remainingSplits = new HashSet<SplitHolder>(numRemainingSplits);
         // gather remaining splits.
         for (Map.Entry<String, LocationHolder> entry : distinctLocations.entrySet()) {
           LocationHolder locHolder = entry.getValue();
           while (!locHolder.isEmpty()) {
             SplitHolder splitHolder = locHolder.getUnprocessedHeadSplit();
             if (splitHolder != null) {
-              remainingSplits.add(splitHolder.split);
+              remainingSplits.add(splitHolder);
               locHolder.incrementHeadIndex();
             }
           }
@@ -373,7 +499,7 @@ public class TezGroupedSplitsInputFormat<K, V>
         Map<String, LocationHolder> rackLocations = new HashMap<String, LocationHolder>();
         for (String location : distinctLocations.keySet()) {
           String rack = emptyLocation;
-          if (location != emptyLocation) {
+          if (!emptyLocation.equals(location)) {
             rack = RackResolver.resolve(location).getNetworkLocation();
           }
           locToRackMap.put(location, rack);
@@ -383,10 +509,11 @@ public class TezGroupedSplitsInputFormat<K, V>
           }
         }
         HashSet<String> rackSet = new HashSet<String>(rackLocations.size());
-        for (InputSplit split : remainingSplits) {
+        for (SplitHolder split : remainingSplits) {
           rackSet.clear();
-          SplitHolder splitHolder = new SplitHolder(split);
-          String[] locations = split.getLocations();
+          SplitHolder splitHolder = new SplitHolder(split.split, split.length,
+              split.locations);
+          String[] locations = split.locations;
           if (locations == null || locations.length == 0) {
             locations = emptyLocations;
           }
@@ -401,7 +528,7 @@ public class TezGroupedSplitsInputFormat<K, V>
         distinctLocations.clear();
         distinctLocations = rackLocations;
         // adjust split length to be smaller because the data is non local
-        float rackSplitReduction = job.getFloat(
+        float rackSplitReduction = conf.getFloat(
             TezConfiguration.TEZ_AM_GROUPING_RACK_SPLIT_SIZE_REDUCTION,
             TezConfiguration.TEZ_AM_GROUPING_RACK_SPLIT_SIZE_REDUCTION_DEFAULT);
         if (rackSplitReduction > 0) {
@@ -447,7 +574,16 @@ public class TezGroupedSplitsInputFormat<K, V>
     groupedSplitsList.toArray(groupedSplits);
     LOG.info("Number of splits desired: " + desiredNumSplits + 
         " created: " + groupedSplitsList.size() + 
-        " splitsProcessed: " + splitsProcessed);
+        " splitsProcessed: " + splitsProcessed +
+        " nodeLocal: " + nodeLocalGroups +
+        " rackLocal: " + rackLocalGroups +
+        " nonLocal: " + nonLocalGroups);
+    incrementCounter(SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS,
+        nodeLocalGroups);
+    incrementCounter(SplitGenerationCounter.RACK_LOCAL_GROUPED_SPLITS,
+        rackLocalGroups);
+    incrementCounter(SplitGenerationCounter.NON_LOCAL_GROUPED_SPLITS,
+        nonLocalGroups);
     return groupedSplits;
   }
   
@@ -488,12 +624,33 @@ public class TezGroupedSplitsInputFormat<K, V>
     int idx = 0;
     long progress;
     RecordReader<K, V> curReader;
+    RecordReaderPrefetcher<RecordReader<K, V>> prefetcher;
     
     public TezGroupedSplitsRecordReader(TezGroupedSplit split, JobConf job,
         Reporter reporter) throws IOException {
       this.groupedSplit = split;
       this.job = job;
       this.reporter = reporter;
+      int lookahead = RecordReaderPrefetcher.getLookahead(job);
+      if (lookahead > 0 && split.wrappedSplits.size() > 1) {
+        prefetcher = new RecordReaderPrefetcher<RecordReader<K, V>>(
+            new RecordReaderPrefetcher.RecordReaderFactory<RecordReader<K, V>>() {
+              @Override
+              public RecordReader<K, V> createReader(int index)
+                  throws IOException {
+                return wrappedInputFormat.getRecordReader(
+                    groupedSplit.wrappedSplits.get(index),
+                    TezGroupedSplitsRecordReader.this.job,
+                    TezGroupedSplitsRecordReader.this.reporter);
+              }
+
+              @Override
+              public void closeReader(RecordReader<K, V> reader)
+                  throws IOException {
+                reader.close();
+              }
+            }, split.wrappedSplits.size(), lookahead);
+      }
       initNextRecordReader();
     }
     
@@ -529,6 +686,9 @@ public class TezGroupedSplitsInputFormat<K, V>
         curReader.close();
         curReader = null;
       }
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
     }
     
     protected boolean initNextRecordReader() throws IOException {
@@ -552,8 +712,12 @@ public class TezGroupedSplitsInputFormat<K, V>
 
       // get a record reader for the idx-th chunk
       try {
-        curReader = wrappedInputFormat.getRecordReader(
-            groupedSplit.wrappedSplits.get(idx), job, reporter);
+        if (prefetcher != null) {
+          curReader = prefetcher.nextReader();
+        } else {
+          curReader = wrappedInputFormat.getRecordReader(
+              groupedSplit.wrappedSplits.get(idx), job, reporter);
+        }
       } catch (Exception e) {
         throw new RuntimeException (e);
       }
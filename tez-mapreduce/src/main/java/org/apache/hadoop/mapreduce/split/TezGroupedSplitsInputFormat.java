@@ -30,17 +30,28 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.mapreduce.common.ParallelSplitGenerator;
+import org.apache.tez.mapreduce.common.RecordReaderPrefetcher;
+import org.apache.tez.mapreduce.common.SplitGenerationCounter;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 
 public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
   implements Configurable{
@@ -49,8 +60,10 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
 
   InputFormat<K, V> wrappedInputFormat;
   int desiredNumSplits = 0;
+  int numClusterNodes = 0;
   List<InputSplit> groupedSplits = null;
   Configuration conf;
+  TezCounters counters;
   
   public TezGroupedSplitsInputFormat() {
     
@@ -71,17 +84,44 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     }
   }
   
+  /**
+   * Number of nodes in the cluster. If known, the number of node local groups
+   * created on any one node is limited to that node's share of the desired
+   * number of splits.
+   */
+  public void setNumClusterNodes(int numClusterNodes) {
+    Preconditions.checkArgument(numClusterNodes >= 0);
+    this.numClusterNodes = numClusterNodes;
+  }
+  
+  /**
+   * Counters to which split generation and grouping statistics are reported.
+   */
+  public void setSplitGenerationCounters(TezCounters counters) {
+    this.counters = counters;
+  }
+  
   class SplitHolder {
     InputSplit split;
+    // cached since they may be expensive to compute for some split types and
+    // are accessed repeatedly while grouping
+    long length;
+    String[] locations;
     boolean isProcessed = false;
-    SplitHolder(InputSplit split) {
+    SplitHolder(InputSplit split) throws IOException, InterruptedException {
+      this(split, split.getLength(), split.getLocations());
+    }
+    SplitHolder(InputSplit split, long length, String[] locations) {
       this.split = split;
+      this.length = length;
+      this.locations = locations;
     }
   }
   
   class LocationHolder {
     List<SplitHolder> splits;
     int headIndex = 0;
+    int numGroups = 0;
     LocationHolder(int capacity) {
       splits = new ArrayList<SplitHolder>(capacity);
     }
@@ -115,10 +155,86 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
       LOG.info("Desired numSplits overridden by config to: " + desiredNumSplits);
     }
     
-    List<InputSplit> originalSplits = wrappedInputFormat.getSplits(context);
+    Stopwatch sw = new Stopwatch().start();
+    List<SplitHolder> originalSplits = getOriginalSplits(context);
+    sw.stop();
+    incrementCounter(SplitGenerationCounter.SPLIT_GENERATION_MILLIS,
+        sw.elapsedMillis());
+    incrementCounter(SplitGenerationCounter.NUM_ORIGINAL_SPLITS,
+        originalSplits.size());
+    sw.reset().start();
     
+    try {
+      groupedSplits = groupSplits(originalSplits, configNumSplits);
+    } finally {
+      sw.stop();
+      incrementCounter(SplitGenerationCounter.SPLIT_GROUPING_MILLIS,
+          sw.elapsedMillis());
+    }
+    incrementCounter(SplitGenerationCounter.NUM_GROUPED_SPLITS,
+        groupedSplits.size());
+    return groupedSplits;
+  }
+
+  private void incrementCounter(SplitGenerationCounter counter, long value) {
+    if (counters != null) {
+      counters.findCounter(counter).increment(value);
+    }
+  }
+
+  /**
+   * Generate splits using the wrapped InputFormat. If the wrapped InputFormat
+   * is a FileInputFormat reading multiple directories, splits are generated
+   * for each directory in parallel, and wrapped in {@link SplitHolder}s as
+   * the results for each directory become available.
+   */
+  private List<SplitHolder> getOriginalSplits(JobContext context)
+      throws IOException, InterruptedException {
+    final List<SplitHolder> originalSplits = new ArrayList<SplitHolder>();
+    ParallelSplitGenerator.SplitConsumer<InputSplit> consumer =
+        new ParallelSplitGenerator.SplitConsumer<InputSplit>() {
+      @Override
+      public void consume(List<InputSplit> splits) throws IOException,
+          InterruptedException {
+        for (InputSplit split : splits) {
+          originalSplits.add(new SplitHolder(split));
+        }
+      }
+    };
+
+    Path[] inputDirs = null;
+    if (wrappedInputFormat instanceof FileInputFormat) {
+      inputDirs = FileInputFormat.getInputPaths(context);
+    }
+    if (!ParallelSplitGenerator.isParallelizable(conf, inputDirs)) {
+      incrementCounter(SplitGenerationCounter.SPLIT_GENERATION_INPUT_DIRS,
+          inputDirs == null ? 1 : inputDirs.length);
+      List<InputSplit> splits = wrappedInputFormat.getSplits(context);
+      if (splits != null) {
+        consumer.consume(splits);
+      }
+      return originalSplits;
+    }
+
+    incrementCounter(SplitGenerationCounter.SPLIT_GENERATION_INPUT_DIRS,
+        inputDirs.length);
+    final Configuration jobConf = context.getConfiguration();
+    ParallelSplitGenerator.generateSplits(conf, inputDirs,
+        new ParallelSplitGenerator.DirectorySplitGenerator<InputSplit>() {
+          @Override
+          public List<InputSplit> generateSplits(Path inputDir)
+              throws IOException, InterruptedException {
+            Job dirJob = Job.getInstance(new Configuration(jobConf));
+            FileInputFormat.setInputPaths(dirJob, inputDir);
+            return wrappedInputFormat.getSplits(dirJob);
+          }
+        }, consumer);
+    return originalSplits;
+  }
+
+  private List<InputSplit> groupSplits(List<SplitHolder> originalSplits,
+      int configNumSplits) throws IOException, InterruptedException {
     if (! (configNumSplits > 0 || 
-          originalSplits == null || 
           originalSplits.size() == 0)) {
       // numSplits has not been overridden by config
       // numSplits has been set at runtime
@@ -126,8 +242,8 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
       // desired splits is less than number of splits generated
       // Do sanity checks
       long totalLength = 0;
-      for (InputSplit split : originalSplits) {
-        totalLength += split.getLength();
+      for (SplitHolder split : originalSplits) {
+        totalLength += split.length;
       }
   
       int splitCount = desiredNumSplits>0?desiredNumSplits:originalSplits.size();
@@ -177,11 +293,15 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
       // nothing set. so return all the splits as is
       LOG.info("Using original number of splits: " + originalSplits.size() +
           " desired splits: " + desiredNumSplits);
-      groupedSplits = new ArrayList<InputSplit>(originalSplits.size());
-      for (InputSplit split : originalSplits) {
+      List<InputSplit> groupedSplits = new ArrayList<InputSplit>(originalSplits.size());
+      for (SplitHolder split : originalSplits) {
         TezGroupedSplit newSplit = 
-            new TezGroupedSplit(1, wrappedInputFormatName, split.getLocations());
-        newSplit.addSplit(split);
+            new TezGroupedSplit(1, wrappedInputFormatName, split.locations);
+        newSplit.addSplit(split.split);
+        incrementCounter(
+            (split.locations == null || split.locations.length == 0) ?
+                SplitGenerationCounter.NON_LOCAL_GROUPED_SPLITS :
+                SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS, 1);
         groupedSplits.add(newSplit);
       }
       return groupedSplits;
@@ -189,14 +309,14 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     
     String emptyLocation = "EmptyLocation";
     String[] emptyLocations = {emptyLocation};
-    groupedSplits = new ArrayList<InputSplit>(desiredNumSplits);
+    List<InputSplit> groupedSplits = new ArrayList<InputSplit>(desiredNumSplits);
     
     long totalLength = 0;
     Map<String, LocationHolder> distinctLocations = new HashMap<String, LocationHolder>();
     // go through splits and add them to locations
-    for (InputSplit split : originalSplits) {
-      totalLength += split.getLength();
-      String[] locations = split.getLocations();
+    for (SplitHolder split : originalSplits) {
+      totalLength += split.length;
+      String[] locations = split.locations;
       if (locations == null || locations.length == 0) {
         locations = emptyLocations;
       }
@@ -215,9 +335,8 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
       distinctLocations.put(location, new LocationHolder(numSplitsPerLocation));
     }
     
-    for (InputSplit split : originalSplits) {
-      SplitHolder splitHolder = new SplitHolder(split);
-      String[] locations = split.getLocations();
+    for (SplitHolder splitHolder : originalSplits) {
+      String[] locations = splitHolder.locations;
       if (locations == null || locations.length == 0) {
         locations = emptyLocations;
       }
@@ -239,11 +358,21 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
               + TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_LENGTH + ", "
               + TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_COUNT);
     }
+    int maxGroupsPerNode = 0;
+    if (numClusterNodes > 0 && conf.getBoolean(
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY,
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY_DEFAULT)) {
+      // spread the groups across the cluster so that they can run in as few
+      // waves as possible. Data on nodes with more than their share of groups
+      // is grouped rack local instead.
+      maxGroupsPerNode = (desiredNumSplits + numClusterNodes - 1)/numClusterNodes;
+    }
     LOG.info("Desired numSplits: " + desiredNumSplits +
         " lengthPerGroup: " + lengthPerGroup +
         " numLocations: " + numNodeLocations +
         " numSplitsPerLocation: " + numSplitsPerLocation +
         " numSplitsInGroup: " + numSplitsInGroup + 
+        " maxGroupsPerNode: " + maxGroupsPerNode +
         " totalLength: " + totalLength +
         " numOriginalSplits: " + originalSplits.size() +
         " . Grouping by length: " + groupByLength + " count: " + groupByCount);
@@ -255,6 +384,9 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     boolean allowSmallGroups = false;
     boolean doingRackLocal = false;
     int iterations = 0;
+    int nodeLocalGroups = 0;
+    int rackLocalGroups = 0;
+    int nonLocalGroups = 0;
     while (splitsProcessed < originalSplits.size()) {
       iterations++;
       int numFullGroupsCreated = 0;
@@ -268,18 +400,24 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
           // all splits on node processed
           continue;
         }
+        if (!doingRackLocal && maxGroupsPerNode > 0
+            && !emptyLocation.equals(location)
+            && holder.numGroups >= maxGroupsPerNode) {
+          // node has been allocated its share of groups
+          continue;
+        }
         int oldHeadIndex = holder.headIndex;
         long groupLength = 0;
         int groupNumSplits = 0;
         do {
           group.add(splitHolder);
-          groupLength += splitHolder.split.getLength();
+          groupLength += splitHolder.length;
           groupNumSplits++;
           holder.incrementHeadIndex();
           splitHolder = holder.getUnprocessedHeadSplit();
         } while(splitHolder != null  
             && (!groupByLength || 
-                (groupLength + splitHolder.split.getLength() <= lengthPerGroup))
+                (groupLength + splitHolder.length <= lengthPerGroup))
             && (!groupByCount || 
                 (groupNumSplits + 1 <= numSplitsInGroup)));
 
@@ -293,12 +431,20 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
         }
         
         numFullGroupsCreated++;
+        holder.numGroups++;
+        if (emptyLocation.equals(location)) {
+          nonLocalGroups++;
+        } else if (doingRackLocal) {
+          rackLocalGroups++;
+        } else {
+          nodeLocalGroups++;
+        }
 
         // One split group created
         String[] groupLocation = {location};
         if (doingRackLocal) {
           for (SplitHolder splitH : group) {
-            String[] locations = splitH.split.getLocations();
+            String[] locations = splitH.locations;
             if (locations != null) {
               for (String loc : locations) {
                 groupLocationSet.add(loc);
@@ -306,14 +452,14 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
             }
           }
           groupLocation = groupLocationSet.toArray(groupLocation);
-        } else if (location == emptyLocation) {
+        } else if (emptyLocation.equals(location)) {
           groupLocation = null;
         }
         TezGroupedSplit groupedSplit = 
             new TezGroupedSplit(group.size(), wrappedInputFormatName, 
                 groupLocation,
                 // pass rack local hint directly to AM
-                ((doingRackLocal && location != emptyLocation)?location:null));
+                ((doingRackLocal && !emptyLocation.equals(location))?location:null));
         for (SplitHolder groupedSplitHolder : group) {
           groupedSplit.addSplit(groupedSplitHolder.split);
           groupedSplitHolder.isProcessed = true;
@@ -332,14 +478,14 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
         doingRackLocal = true;
         // re-create locations
         int numRemainingSplits = originalSplits.size() - splitsProcessed;
-        Set<InputSplit> remainingSplits = new HashSet<InputSplit>(numRemainingSplits);
+        Set<SplitHolder> remainingSplits = new HashSet<SplitHolder>(numRemainingSplits);
         // gather remaining splits.
         for (Map.Entry<String, LocationHolder> entry : distinctLocations.entrySet()) {
           LocationHolder locHolder = entry.getValue();
           while (!locHolder.isEmpty()) {
             SplitHolder splitHolder = locHolder.getUnprocessedHeadSplit();
             if (splitHolder != null) {
-              remainingSplits.add(splitHolder.split);
+              remainingSplits.add(splitHolder);
               locHolder.incrementHeadIndex();
             }
           }
@@ -356,7 +502,7 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
         Map<String, LocationHolder> rackLocations = new HashMap<String, LocationHolder>();
         for (String location : distinctLocations.keySet()) {
           String rack = emptyLocation;
-          if (location != emptyLocation) {
+          if (!emptyLocation.equals(location)) {
             rack = RackResolver.resolve(location).getNetworkLocation();
           }
           locToRackMap.put(location, rack);
@@ -366,10 +512,11 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
           }
         }
         HashSet<String> rackSet = new HashSet<String>(rackLocations.size());
-        for (InputSplit split : remainingSplits) {
+        for (SplitHolder split : remainingSplits) {
           rackSet.clear();
-          SplitHolder splitHolder = new SplitHolder(split);
-          String[] locations = split.getLocations();
+          SplitHolder splitHolder = new SplitHolder(split.split, split.length,
+              split.locations);
+          String[] locations = split.locations;
           if (locations == null || locations.length == 0) {
             locations = emptyLocations;
           }
@@ -428,7 +575,16 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     }
     LOG.info("Number of splits desired: " + desiredNumSplits + 
         " created: " + groupedSplits.size() + 
-        " splitsProcessed: " + splitsProcessed);
+        " splitsProcessed: " + splitsProcessed +
+        " nodeLocal: " + nodeLocalGroups +
+        " rackLocal: " + rackLocalGroups +
+        " nonLocal: " + nonLocalGroups);
+    incrementCounter(SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS,
+        nodeLocalGroups);
+    incrementCounter(SplitGenerationCounter.RACK_LOCAL_GROUPED_SPLITS,
+        rackLocalGroups);
+    incrementCounter(SplitGenerationCounter.NON_LOCAL_GROUPED_SPLITS,
+        nonLocalGroups);
     return groupedSplits;
   }
 
@@ -468,6 +624,7 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     int idx = 0;
     long progress;
     RecordReader<K, V> curReader;
+    RecordReaderPrefetcher<RecordReader<K, V>> prefetcher;
     
     public TezGroupedSplitsRecordReader(TezGroupedSplit split,
         TaskAttemptContext context) throws IOException {
@@ -483,6 +640,27 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
       if (this.context != context) {
         throw new TezUncheckedException("Contexts dont match");
       }
+      int lookahead = RecordReaderPrefetcher.getLookahead(
+          context.getConfiguration());
+      if (lookahead > 0 && groupedSplit.wrappedSplits.size() > 1) {
+        prefetcher = new RecordReaderPrefetcher<RecordReader<K, V>>(
+            new RecordReaderPrefetcher.RecordReaderFactory<RecordReader<K, V>>() {
+              @Override
+              public RecordReader<K, V> createReader(int index)
+                  throws IOException, InterruptedException {
+                // Readers may be opened on the prefetch thread while another
+                // one is in use on the task's thread. The task's context is
+                // not thread-safe, so each gets its own.
+                return createWrappedReader(index, createReaderContext());
+              }
+
+              @Override
+              public void closeReader(RecordReader<K, V> reader)
+                  throws IOException {
+                reader.close();
+              }
+            }, groupedSplit.wrappedSplits.size(), lookahead);
+      }
       initNextRecordReader();
     }
     
@@ -509,6 +687,9 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
         curReader.close();
         curReader = null;
       }
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
     }
     
     protected boolean initNextRecordReader() throws IOException {
@@ -531,16 +712,37 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
 
       // get a record reader for the idx-th chunk
       try {
-        curReader = wrappedInputFormat.createRecordReader(
-            groupedSplit.wrappedSplits.get(idx), context);
-
-        curReader.initialize(groupedSplit.wrappedSplits.get(idx), context);
+        if (prefetcher != null) {
+          curReader = prefetcher.nextReader();
+        } else {
+          curReader = createWrappedReader(idx, context);
+        }
       } catch (Exception e) {
         throw new RuntimeException (e);
       }
       idx++;
       return true;
     }
+
+    private RecordReader<K, V> createWrappedReader(int index,
+        TaskAttemptContext readerContext)
+        throws IOException, InterruptedException {
+      InputSplit wrappedSplit = groupedSplit.wrappedSplits.get(index);
+      RecordReader<K, V> reader = wrappedInputFormat.createRecordReader(
+          wrappedSplit, readerContext);
+      reader.initialize(wrappedSplit, readerContext);
+      return reader;
+    }
+
+    /**
+     * Creates a context for a single wrapped reader, with its own copy of the
+     * configuration and its own status.
+     */
+    private TaskAttemptContext createReaderContext() {
+      return new TaskAttemptContextImpl(
+          new Configuration(context.getConfiguration()),
+          context.getTaskAttemptID(), new TaskCounterReporter(context));
+    }
     
     /**
      * return progress based on the amount of data processed so far.
@@ -556,6 +758,43 @@ public class TezGroupedSplitsInputFormat<K, V> extends InputFormat<K, V>
     }
   }
 
+  /**
+   * Reports the counters of a reader opened for prefetching as counters of
+   * the task. Counter lookups go to the task's TezCounters, which are
+   * synchronized. Progress and status are kept with the reader's own context.
+   */
+  private static class TaskCounterReporter extends StatusReporter {
+
+    private final TaskAttemptContext taskContext;
+
+    TaskCounterReporter(TaskAttemptContext taskContext) {
+      this.taskContext = taskContext;
+    }
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return taskContext.getCounter(name);
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return taskContext.getCounter(group, name);
+    }
+
+    @Override
+    public void progress() {
+    }
+
+    @Override
+    public float getProgress() {
+      return 0.0f;
+    }
+
+    @Override
+    public void setStatus(String status) {
+    }
+  }
+
   @Override
   public void setConf(Configuration conf) {
     this.conf = conf;
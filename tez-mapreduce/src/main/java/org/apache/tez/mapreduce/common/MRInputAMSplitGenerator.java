@@ -32,9 +32,9 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.tez.dag.api.VertexLocationHint.TaskLocationHint;
 import org.apache.tez.mapreduce.hadoop.InputSplitInfoMem;
 import org.apache.tez.mapreduce.hadoop.MRHelpers;
+import org.apache.tez.mapreduce.hadoop.MRJobConfig;
 import org.apache.tez.mapreduce.protos.MRRuntimeProtos.MRInputUserPayloadProto;
 import org.apache.tez.mapreduce.protos.MRRuntimeProtos.MRSplitProto;
-import org.apache.tez.mapreduce.protos.MRRuntimeProtos.MRSplitsProto;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.TezRootInputInitializer;
 import org.apache.tez.runtime.api.TezRootInputInitializerContext;
@@ -80,7 +80,11 @@ public class MRInputAMSplitGenerator implements TezRootInputInitializer {
       sw.reset().start();
     }
 
-    InputSplitInfoMem inputSplitInfo = null;
+    int batchSize = conf.getInt(MRJobConfig.MR_TEZ_SPLITS_EVENTS_BATCH_SIZE,
+        MRJobConfig.MR_TEZ_SPLITS_EVENTS_BATCH_SIZE_DEFAULT);
+    SplitEventSender eventSender = new SplitEventSender(rootInputContext,
+        batchSize);
+
     String realInputFormatName = userPayloadProto.getInputFormatName(); 
     if ( realInputFormatName != null && !realInputFormatName.isEmpty()) {
       // split grouping on the AM
@@ -90,17 +94,15 @@ public class MRInputAMSplitGenerator implements TezRootInputInitializer {
         Job job = Job.getInstance(conf);
         org.apache.hadoop.mapreduce.InputSplit[] splits = MRHelpers
             .generateNewSplits(job, realInputFormatName,
-                rootInputContext.getNumTasks());
+                rootInputContext.getNumTasks(),
+                rootInputContext.getNumClusterNodes(),
+                rootInputContext.getCounters());
         SerializationFactory serializationFactory = new SerializationFactory(
             job.getConfiguration());
 
-        MRSplitsProto.Builder splitsBuilder = MRSplitsProto.newBuilder();
-
         List<TaskLocationHint> locationHints = Lists
             .newArrayListWithCapacity(splits.length);
         for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
-          splitsBuilder.addSplits(MRHelpers.createSplitProto(split,
-              serializationFactory));
           String rack = 
               ((org.apache.hadoop.mapreduce.split.TezGroupedSplit) split).getRack();
           if (rack == null) {
@@ -115,18 +117,24 @@ public class MRInputAMSplitGenerator implements TezRootInputInitializer {
                 Collections.singleton(rack)));
           }
         }
-        inputSplitInfo = new InputSplitInfoMem(splitsBuilder.build(),
-            locationHints, splits.length, null);
+        logSplitTime(sw);
+        // The splits are serialized after the vertex has been configured, so
+        // that its tasks can be started while the later splits are pending.
+        eventSender.configure(splits.length, locationHints);
+        for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
+          eventSender.addSplit(MRHelpers.createSplitProto(split,
+              serializationFactory));
+        }
       } else {
         LOG.info("Grouping mapred api input splits");
         org.apache.hadoop.mapred.InputSplit[] splits = MRHelpers
             .generateOldSplits(jobConf, realInputFormatName,
-                rootInputContext.getNumTasks());
+                rootInputContext.getNumTasks(),
+                rootInputContext.getNumClusterNodes(),
+                rootInputContext.getCounters());
         List<TaskLocationHint> locationHints = Lists
             .newArrayListWithCapacity(splits.length);
-        MRSplitsProto.Builder splitsBuilder = MRSplitsProto.newBuilder();
         for (org.apache.hadoop.mapred.InputSplit split : splits) {
-          splitsBuilder.addSplits(MRHelpers.createSplitProto(split));
           String rack = 
               ((org.apache.hadoop.mapred.split.TezGroupedSplit) split).getRack();
           if (rack == null) {
@@ -141,35 +149,75 @@ public class MRInputAMSplitGenerator implements TezRootInputInitializer {
                 Collections.singleton(rack)));
           }
         }
-        inputSplitInfo = new InputSplitInfoMem(splitsBuilder.build(),
-            locationHints, splits.length, null);
+        logSplitTime(sw);
+        eventSender.configure(splits.length, locationHints);
+        for (org.apache.hadoop.mapred.InputSplit split : splits) {
+          eventSender.addSplit(MRHelpers.createSplitProto(split));
+        }
       }
     } else {
-      inputSplitInfo = MRHelpers.generateInputSplitsToMem(conf);
+      InputSplitInfoMem inputSplitInfo = MRHelpers.generateInputSplitsToMem(conf);
+      logSplitTime(sw);
+      eventSender.configure(inputSplitInfo.getNumTasks(),
+          inputSplitInfo.getTaskLocationHints());
+      for (MRSplitProto mrSplit : inputSplitInfo.getSplitsProto()
+          .getSplitsList()) {
+        eventSender.addSplit(mrSplit);
+      }
     }
+    return eventSender.getRemainingEvents();
+  }
+
+  private static void logSplitTime(Stopwatch sw) {
     if (LOG.isDebugEnabled()) {
       sw.stop();
       LOG.debug("Time to create splits to mem: " + sw.elapsedMillis());
     }
+  }
 
-    List<Event> events = Lists.newArrayListWithCapacity(inputSplitInfo
-        .getNumTasks() + 1);
-    
-    RootInputConfigureVertexTasksEvent configureVertexEvent = new RootInputConfigureVertexTasksEvent(
-        inputSplitInfo.getNumTasks(), inputSplitInfo.getTaskLocationHints());
-    events.add(configureVertexEvent);
+  /**
+   * Sends the split events to the vertex in batches as they are created,
+   * after the event which configures the tasks of the vertex. With a batch
+   * size <= 0, all events are kept until split generation completes.
+   */
+  private static class SplitEventSender {
+    private final TezRootInputInitializerContext rootInputContext;
+    private final int batchSize;
+    private List<Event> events = Lists.newArrayList();
+    private int numSplits = 0;
+
+    SplitEventSender(TezRootInputInitializerContext rootInputContext,
+        int batchSize) {
+      this.rootInputContext = rootInputContext;
+      this.batchSize = batchSize;
+    }
 
-    MRSplitsProto splitsProto = inputSplitInfo.getSplitsProto();
+    void configure(int numTasks, List<TaskLocationHint> locationHints) {
+      events.add(new RootInputConfigureVertexTasksEvent(numTasks,
+          locationHints));
+      if (batchSize > 0) {
+        send();
+      }
+    }
 
-    int count = 0;
-    for (MRSplitProto mrSplit : splitsProto.getSplitsList()) {
+    void addSplit(MRSplitProto mrSplit) {
       // Unnecessary array copy, can be avoided by using ByteBuffer instead of a
       // raw array.
-      RootInputDataInformationEvent diEvent = new RootInputDataInformationEvent(
-          count++, mrSplit.toByteArray());
-      events.add(diEvent);
+      events.add(new RootInputDataInformationEvent(numSplits++,
+          mrSplit.toByteArray()));
+      if (events.size() == batchSize) {
+        send();
+      }
+    }
+
+    List<Event> getRemainingEvents() {
+      return events;
+    }
+
+    private void send() {
+      rootInputContext.sendEvents(events);
+      events = Lists.newArrayList();
     }
-    return events;
   }
 
 }
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.tez.dag.api.TezConfiguration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Generates splits for inputs spread over multiple directories by invoking the
+ * wrapped InputFormat once per directory on a thread pool.
+ * 
+ * Results are handed to the {@link SplitConsumer} in input directory order, as
+ * soon as the splits for a directory (and all directories before it) are
+ * available. This lets the caller process splits for the first directories
+ * while the remaining ones are still being listed, and keeps the order of the
+ * generated splits deterministic.
+ */
+@Private
+public class ParallelSplitGenerator {
+
+  private static final Log LOG = LogFactory.getLog(ParallelSplitGenerator.class);
+
+  public interface DirectorySplitGenerator<S> {
+    List<S> generateSplits(Path inputDir) throws IOException,
+        InterruptedException;
+  }
+
+  public interface SplitConsumer<S> {
+    void consume(List<S> splits) throws IOException, InterruptedException;
+  }
+
+  public static int getNumThreads(Configuration conf) {
+    return conf.getInt(
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS,
+        TezConfiguration.TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS_DEFAULT);
+  }
+
+  /**
+   * @return true if splits for the given input directories should be
+   *         generated in parallel
+   */
+  public static boolean isParallelizable(Configuration conf, Path[] inputDirs) {
+    return inputDirs != null && inputDirs.length > 1 && getNumThreads(conf) > 1;
+  }
+
+  public static <S> void generateSplits(Configuration conf, Path[] inputDirs,
+      final DirectorySplitGenerator<S> generator, SplitConsumer<S> consumer)
+      throws IOException, InterruptedException {
+    int numThreads = Math.min(getNumThreads(conf), inputDirs.length);
+    LOG.info("Generating splits for " + inputDirs.length
+        + " input directories using " + numThreads + " threads");
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("SplitGenerator #%d").build());
+    try {
+      List<Future<List<S>>> futures = new ArrayList<Future<List<S>>>(
+          inputDirs.length);
+      for (final Path inputDir : inputDirs) {
+        futures.add(executor.submit(new Callable<List<S>>() {
+          @Override
+          public List<S> call() throws Exception {
+            return generator.generateSplits(inputDir);
+          }
+        }));
+      }
+      for (Future<List<S>> future : futures) {
+        List<S> splits;
+        try {
+          splits = future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new IOException(cause);
+        }
+        if (splits != null) {
+          consumer.consume(splits);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.common;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.dag.api.TezConfiguration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Opens the record readers for the wrapped splits of a grouped split ahead of
+ * time on a background thread, so that moving on to the next wrapped split
+ * does not stall on opening the underlying file.
+ *
+ * Readers are requested strictly in index order. At most <code>lookahead</code>
+ * readers beyond the one being consumed are opened at any time.
+ */
+@Private
+public class RecordReaderPrefetcher<R> {
+
+  private static final Log LOG = LogFactory.getLog(RecordReaderPrefetcher.class);
+
+  public interface RecordReaderFactory<R> {
+    /**
+     * Opens the reader for a wrapped split. Called on the prefetch thread,
+     * possibly while readers handed out earlier are in use on the task's
+     * thread, so it must not touch state which is not thread-safe, such as
+     * the task's context.
+     */
+    R createReader(int index) throws IOException, InterruptedException;
+
+    void closeReader(R reader) throws IOException;
+  }
+
+  private final RecordReaderFactory<R> factory;
+  private final int numReaders;
+  private final int lookahead;
+  private final LinkedList<Future<R>> pending = new LinkedList<Future<R>>();
+  private ExecutorService executor;
+  private int nextToSchedule = 0;
+
+  public RecordReaderPrefetcher(RecordReaderFactory<R> factory,
+      int numReaders, int lookahead) {
+    this.factory = factory;
+    this.numReaders = numReaders;
+    this.lookahead = lookahead;
+  }
+
+  public static int getLookahead(Configuration conf) {
+    return conf.getInt(TezConfiguration.TEZ_TASK_GROUPING_SPLIT_READER_PREFETCH,
+        TezConfiguration.TEZ_TASK_GROUPING_SPLIT_READER_PREFETCH_DEFAULT);
+  }
+
+  /**
+   * @return the reader for the next wrapped split, or null if all readers have
+   *         been handed out
+   */
+  public R nextReader() throws IOException, InterruptedException {
+    if (pending.isEmpty() && nextToSchedule == numReaders) {
+      return null;
+    }
+    if (pending.isEmpty()) {
+      // nothing prefetched yet. Open the current reader on this thread.
+      R reader = factory.createReader(nextToSchedule++);
+      schedulePrefetch();
+      return reader;
+    }
+    Future<R> future = pending.removeFirst();
+    schedulePrefetch();
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private void schedulePrefetch() {
+    while (pending.size() < lookahead && nextToSchedule < numReaders) {
+      if (executor == null) {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("RecordReaderPrefetcher").build());
+      }
+      final int index = nextToSchedule++;
+      pending.add(executor.submit(new Callable<R>() {
+        @Override
+        public R call() throws Exception {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Prefetching record reader for index " + index);
+          }
+          return factory.createReader(index);
+        }
+      }));
+    }
+  }
+
+  /**
+   * Stops prefetching and closes any readers which were opened but not handed
+   * out.
+   */
+  public void close() throws IOException {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    for (Future<R> future : pending) {
+      R reader = null;
+      try {
+        reader = future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        // the reader was never opened
+      }
+      if (reader != null) {
+        factory.closeReader(reader);
+      }
+    }
+    pending.clear();
+    executor = null;
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.common;
+
+/**
+ * Counters reported by split generation and grouping in the AM.
+ */
+public enum SplitGenerationCounter {
+  /** Number of input directories splits were generated for */
+  SPLIT_GENERATION_INPUT_DIRS,
+  /** Wall time taken by the wrapped InputFormat to generate splits */
+  SPLIT_GENERATION_MILLIS,
+  /** Wall time taken to group the generated splits */
+  SPLIT_GROUPING_MILLIS,
+  /** Number of splits generated by the wrapped InputFormat */
+  NUM_ORIGINAL_SPLITS,
+  /** Number of splits after grouping */
+  NUM_GROUPED_SPLITS,
+  /** Number of grouped splits whose data is local to the grouped location */
+  NODE_LOCAL_GROUPED_SPLITS,
+  /** Number of grouped splits whose data is local to the grouped rack */
+  RACK_LOCAL_GROUPED_SPLITS,
+  /** Number of grouped splits without any location information */
+  NON_LOCAL_GROUPED_SPLITS
+}
@@ -64,6 +64,7 @@ import org.apache.hadoop.yarn.util.Apps;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.InputDescriptor;
 import org.apache.tez.dag.api.OutputDescriptor;
 import org.apache.tez.dag.api.TezConfiguration;
@@ -143,12 +144,28 @@ public class MRHelpers {
     }
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   @Private
   public static org.apache.hadoop.mapreduce.InputSplit[] generateNewSplits(
       JobContext jobContext, String inputFormatName, int numTasks) 
           throws ClassNotFoundException, IOException,
       InterruptedException {
+    return generateNewSplits(jobContext, inputFormatName, numTasks, 0, null);
+  }
+
+  /**
+   * Generate new-api mapreduce InputFormat splits, grouping them if an
+   * inputFormatName is specified.
+   * @param numClusterNodes Number of nodes in the cluster, used to balance
+   * grouped splits across nodes. 0 if not known.
+   * @param counters Counters to which split generation statistics are
+   * reported when grouping. May be null.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Private
+  public static org.apache.hadoop.mapreduce.InputSplit[] generateNewSplits(
+      JobContext jobContext, String inputFormatName, int numTasks,
+      int numClusterNodes, TezCounters counters) throws ClassNotFoundException, IOException,
+      InterruptedException {
     Configuration conf = jobContext.getConfiguration();
     InputFormat<?, ?> inputFormat = ReflectionUtils.newInstance(
         jobContext.getInputFormatClass(), conf);
@@ -175,6 +192,8 @@ public class MRHelpers {
       groupedFormat.setConf(conf);
       groupedFormat.setInputFormat(inputFormat);
       groupedFormat.setDesiredNumberOfSplits(numTasks);
+      groupedFormat.setNumClusterNodes(numClusterNodes);
+      groupedFormat.setSplitGenerationCounters(counters);
       finalInputFormat = groupedFormat;
     }
     
@@ -228,10 +247,25 @@ public class MRHelpers {
         splits.length, locationHints, jobContext.getCredentials());
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   @Private
   public static org.apache.hadoop.mapred.InputSplit[] generateOldSplits(
       JobConf jobConf, String inputFormatName, int numTasks) throws IOException {
+    return generateOldSplits(jobConf, inputFormatName, numTasks, 0, null);
+  }
+
+  /**
+   * Generate old-api mapred InputFormat splits, grouping them if an
+   * inputFormatName is specified.
+   * @param numClusterNodes Number of nodes in the cluster, used to balance
+   * grouped splits across nodes. 0 if not known.
+   * @param counters Counters to which split generation statistics are
+   * reported when grouping. May be null.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Private
+  public static org.apache.hadoop.mapred.InputSplit[] generateOldSplits(
+      JobConf jobConf, String inputFormatName, int numTasks,
+      int numClusterNodes, TezCounters counters) throws IOException {
     org.apache.hadoop.mapred.InputFormat inputFormat = jobConf.getInputFormat();
     org.apache.hadoop.mapred.InputFormat finalInputFormat = inputFormat;
     if (inputFormatName != null && !inputFormatName.isEmpty()) {
@@ -253,6 +287,8 @@ public class MRHelpers {
       groupedFormat.setConf(jobConf);
       groupedFormat.setInputFormat(inputFormat);
       groupedFormat.setDesiredNumberOfSplits(numTasks);
+      groupedFormat.setNumClusterNodes(numClusterNodes);
+      groupedFormat.setSplitGenerationCounters(counters);
       finalInputFormat = groupedFormat;
     }
     org.apache.hadoop.mapred.InputSplit[] splits = finalInputFormat
@@ -655,4 +655,14 @@ public interface MRJobConfig {
   public static final String MR_TEZ_SPLITS_VIA_EVENTS = MR_TEZ_PREFIX + "splits.via.events";
   public static final boolean MR_TEZ_SPLITS_VIA_EVENTS_DEFAULT = true;
 
+  /**
+   * Number of split events sent to the vertex in a single batch by the AM
+   * split generator, while the remaining splits are being serialized. A value
+   * <= 0 disables streaming, and all events are sent once split generation
+   * completes.
+   */
+  public static final String MR_TEZ_SPLITS_EVENTS_BATCH_SIZE = MR_TEZ_PREFIX
+      + "splits.events.batch-size";
+  public static final int MR_TEZ_SPLITS_EVENTS_BATCH_SIZE_DEFAULT = 1000;
+
 }
@@ -43,7 +43,10 @@ import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.mapreduce.common.SplitGenerationCounter;
+import org.apache.tez.mapreduce.hadoop.MRHelpers;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -323,4 +326,181 @@ public class TestGroupedSplits {
     
   }
 
+  @Test(timeout=10000)
+  public void testMultipleInputDirs() throws IOException {
+    JobConf job = new JobConf(defaultConf);
+    localFs.delete(workDir, true);
+    Path dir1 = new Path(workDir, "dir1");
+    Path dir2 = new Path(workDir, "dir2");
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      large.append("line ").append(i).append("\n");
+    }
+    writeFile(localFs, new Path(dir1, "part1.txt"), null, large.toString());
+    writeFile(localFs, new Path(dir1, "part2.txt"), null, "a\nb\n");
+    writeFile(localFs, new Path(dir2, "part3.txt"), null, "c\nd\ne\n");
+    FileInputFormat.setInputPaths(job, dir1, dir2);
+    job.setInputFormat(TezGroupedSplitsInputFormat.class);
+    // mapred splits are generated in one call even if threads are configured
+    job.setInt(TezConfiguration.TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS, 4);
+    TextInputFormat wrappedFormat = new TextInputFormat();
+    wrappedFormat.configure(job);
+    TezCounters counters = new TezCounters();
+
+    // generate splits the way the AM does
+    InputSplit[] splits = MRHelpers.generateOldSplits(job,
+        TextInputFormat.class.getName(), 0, 0, counters);
+    Assert.assertEquals(2, counters.findCounter(
+        SplitGenerationCounter.SPLIT_GENERATION_INPUT_DIRS).getValue());
+    Assert.assertEquals(
+        wrappedFormat.getSplits(job, job.getNumMapTasks()).length,
+        counters.findCounter(SplitGenerationCounter.NUM_ORIGINAL_SPLITS)
+            .getValue());
+    TezGroupedSplitsInputFormat<LongWritable, Text> format =
+        new TezGroupedSplitsInputFormat<LongWritable, Text>();
+    format.setConf(job);
+    format.setInputFormat(wrappedFormat);
+    List<Text> results = new ArrayList<Text>();
+    for (InputSplit split : splits) {
+      results.addAll(readSplit(format, split, job));
+    }
+    Assert.assertEquals(105, results.size());
+  }
+
+  @Test(timeout=10000)
+  public void testPrefetchingRecordReader() throws IOException {
+    JobConf job = new JobConf(defaultConf);
+    localFs.delete(workDir, true);
+    writeFile(localFs, new Path(workDir, "part1.txt"), null, "a\nb\nc\n");
+    writeFile(localFs, new Path(workDir, "part2.txt"), null, "d\ne\n");
+    writeFile(localFs, new Path(workDir, "part3.txt"), null, "f\n");
+    writeFile(localFs, new Path(workDir, "part4.txt"), null, "g\nh\n");
+    FileInputFormat.setInputPaths(job, workDir);
+    job.setInt(TezConfiguration.TEZ_TASK_GROUPING_SPLIT_READER_PREFETCH, 2);
+    TextInputFormat wrappedFormat = new TextInputFormat();
+    wrappedFormat.configure(job);
+    TezGroupedSplitsInputFormat<LongWritable, Text> format =
+        new TezGroupedSplitsInputFormat<LongWritable, Text>();
+    format.setConf(job);
+    format.setInputFormat(wrappedFormat);
+    format.setDesiredNumberOfSplits(1);
+
+    InputSplit[] splits = format.getSplits(job, 1);
+    Assert.assertEquals(1, splits.length);
+    List<Text> results = readSplit(format, splits[0], job);
+    Assert.assertEquals(8, results.size());
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test(timeout=10000)
+  public void testGroupedSplitsByNodeCapacity() throws IOException {
+    JobConf job = new JobConf(defaultConf);
+    InputFormat mockWrappedFormat = mock(InputFormat.class);
+    TezGroupedSplitsInputFormat<LongWritable , Text> format = 
+        new TezGroupedSplitsInputFormat<LongWritable, Text>();
+    format.setConf(job);
+    format.setInputFormat(mockWrappedFormat);
+
+    job.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MAX_SIZE, 500*1000*1000l);
+    job.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MIN_SIZE, 1000*1000l);
+    job.setBoolean(TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY,
+        true);
+    // all data is on a single node
+    InputSplit mockSplit1 = mock(InputSplit.class);
+    when(mockSplit1.getLength()).thenReturn(10*1000*1000l);
+    when(mockSplit1.getLocations()).thenReturn(new String[] {"h1"});
+    int numSplits = 8;
+    InputSplit[] mockSplits = new InputSplit[numSplits];
+    for (int i=0; i<numSplits; i++) {
+      mockSplits[i] = mockSplit1;
+    }
+    when(mockWrappedFormat.getSplits((JobConf)anyObject(), anyInt())).thenReturn(mockSplits);
+    format.setDesiredNumberOfSplits(4);
+
+    // without cluster information all groups are node local
+    TezCounters counters = new TezCounters();
+    format.setSplitGenerationCounters(counters);
+    InputSplit[] splits = format.getSplits(job, 0);
+    Assert.assertEquals(4, splits.length);
+    Assert.assertEquals(4, counters.findCounter(
+        SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS).getValue());
+
+    // with 2 nodes, h1 gets only its share of the groups. The rest of the
+    // data is grouped rack local
+    counters = new TezCounters();
+    format.setSplitGenerationCounters(counters);
+    format.setNumClusterNodes(2);
+    splits = format.getSplits(job, 0);
+    long nodeLocal = counters.findCounter(
+        SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS).getValue();
+    long rackLocal = counters.findCounter(
+        SplitGenerationCounter.RACK_LOCAL_GROUPED_SPLITS).getValue();
+    Assert.assertEquals(2, nodeLocal);
+    Assert.assertTrue(rackLocal > 0);
+    Assert.assertEquals(splits.length, nodeLocal + rackLocal);
+  }
+
+  @Test(timeout=10000)
+  public void testMaxGroupsPerNode() throws IOException {
+    JobConf job = new JobConf(defaultConf);
+    InputFormat mockWrappedFormat = mock(InputFormat.class);
+    TezGroupedSplitsInputFormat<LongWritable , Text> format = 
+        new TezGroupedSplitsInputFormat<LongWritable, Text>();
+    format.setConf(job);
+    format.setInputFormat(mockWrappedFormat);
+
+    job.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MAX_SIZE, 500*1000*1000l);
+    job.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MIN_SIZE, 1000*1000l);
+    // 12 splits on h1 and 4 on h2, grouped 2 at a time
+    InputSplit[] mockSplits = new InputSplit[16];
+    for (int i=0; i<mockSplits.length; i++) {
+      mockSplits[i] = mock(InputSplit.class);
+      when(mockSplits[i].getLength()).thenReturn(10*1000*1000l);
+      when(mockSplits[i].getLocations()).thenReturn(
+          new String[] {i < 12 ? "h1" : "h2"});
+    }
+    when(mockWrappedFormat.getSplits((JobConf)anyObject(), anyInt())).thenReturn(mockSplits);
+    format.setDesiredNumberOfSplits(8);
+    format.setNumClusterNodes(4);
+
+    // without the flag h1 gets all the groups for its data
+    TezCounters counters = new TezCounters();
+    format.setSplitGenerationCounters(counters);
+    InputSplit[] splits = format.getSplits(job, 0);
+    Assert.assertEquals(8, splits.length);
+    Assert.assertEquals(8, counters.findCounter(
+        SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(6, countNodeLocalGroups(splits, "h1"));
+
+    // with it, each node gets at most 8 / 4 node local groups
+    job.setBoolean(TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY,
+        true);
+    counters = new TezCounters();
+    format.setSplitGenerationCounters(counters);
+    splits = format.getSplits(job, 0);
+    Assert.assertEquals(2, countNodeLocalGroups(splits, "h1"));
+    Assert.assertEquals(2, countNodeLocalGroups(splits, "h2"));
+    Assert.assertEquals(4, counters.findCounter(
+        SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(splits.length - 4, counters.findCounter(
+        SplitGenerationCounter.RACK_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(0, counters.findCounter(
+        SplitGenerationCounter.NON_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(splits.length, counters.findCounter(
+        SplitGenerationCounter.NUM_GROUPED_SPLITS).getValue());
+  }
+
+  private static int countNodeLocalGroups(InputSplit[] splits, String host)
+      throws IOException {
+    int count = 0;
+    for (InputSplit split : splits) {
+      TezGroupedSplit groupedSplit = (TezGroupedSplit) split;
+      if (groupedSplit.getRack() == null
+          && host.equals(groupedSplit.getLocations()[0])) {
+        count++;
+      }
+    }
+    return count;
+  }
+
 }
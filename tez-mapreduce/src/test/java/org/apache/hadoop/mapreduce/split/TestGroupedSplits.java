@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.split;
+
+import static org.mockito.Mockito.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.mapreduce.common.SplitGenerationCounter;
+import org.apache.tez.mapreduce.hadoop.MRHelpers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGroupedSplits {
+
+  private static Configuration defaultConf = new Configuration();
+  private static FileSystem localFs = null;
+
+  static {
+    try {
+      defaultConf.set("fs.defaultFS", "file:///");
+      localFs = FileSystem.getLocal(defaultConf);
+    } catch (IOException e) {
+      throw new RuntimeException("init failure", e);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static Path workDir =
+    new Path(new Path(System.getProperty("test.build.data", "/tmp")),
+             "TestGroupedSplitsNewApi").makeQualified(localFs);
+
+  private static void writeFile(Path name, String contents)
+      throws IOException {
+    OutputStream stm = localFs.create(name);
+    stm.write(contents.getBytes());
+    stm.close();
+  }
+
+  @Test(timeout=10000)
+  public void testParallelSplitGeneration() throws Exception {
+    localFs.delete(workDir, true);
+    Path dir1 = new Path(workDir, "dir1");
+    Path dir2 = new Path(workDir, "dir2");
+    writeFile(new Path(dir1, "part1.txt"), "a\nb\nc\n");
+    writeFile(new Path(dir1, "part2.txt"), "d\ne\n");
+    writeFile(new Path(dir2, "part3.txt"), "f\ng\nh\ni\n");
+    Job job = Job.getInstance(defaultConf);
+    FileInputFormat.setInputPaths(job, dir1, dir2);
+    Configuration conf = job.getConfiguration();
+    conf.setInt(TezConfiguration.TEZ_AM_GROUPING_SPLIT_GENERATION_THREADS, 4);
+
+    job.setInputFormatClass(TezGroupedSplitsInputFormat.class);
+    TezCounters counters = new TezCounters();
+
+    // generate splits the way the AM does
+    InputSplit[] splits = MRHelpers.generateNewSplits(job,
+        TextInputFormat.class.getName(), 2, 0, counters);
+    TextInputFormat wrappedFormat = new TextInputFormat();
+    Assert.assertEquals(2, counters.findCounter(
+        SplitGenerationCounter.SPLIT_GENERATION_INPUT_DIRS).getValue());
+    // the same splits are generated as for the whole input
+    Assert.assertEquals(wrappedFormat.getSplits(job).size(),
+        counters.findCounter(SplitGenerationCounter.NUM_ORIGINAL_SPLITS)
+            .getValue());
+    long totalLength = 0;
+    for (InputSplit split : splits) {
+      Assert.assertEquals(TezGroupedSplit.class, split.getClass());
+      totalLength += split.getLength();
+    }
+    Assert.assertEquals(18, totalLength);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test(timeout=10000)
+  public void testMaxGroupsPerNode() throws Exception {
+    Job job = Job.getInstance(defaultConf);
+    Configuration conf = job.getConfiguration();
+    InputFormat mockWrappedFormat = mock(InputFormat.class);
+    TezGroupedSplitsInputFormat<LongWritable, Text> format =
+        new TezGroupedSplitsInputFormat<LongWritable, Text>();
+    format.setConf(conf);
+    format.setInputFormat(mockWrappedFormat);
+
+    conf.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MAX_SIZE, 500*1000*1000l);
+    conf.setLong(TezConfiguration.TEZ_AM_GROUPING_SPLIT_MIN_SIZE, 1000*1000l);
+    conf.setBoolean(TezConfiguration.TEZ_AM_GROUPING_SPLIT_BY_NODE_CAPACITY,
+        true);
+    // 12 splits on h1 and 4 on h2, grouped 2 at a time
+    List<InputSplit> mockSplits = new ArrayList<InputSplit>();
+    for (int i = 0; i < 16; i++) {
+      InputSplit mockSplit = mock(InputSplit.class);
+      when(mockSplit.getLength()).thenReturn(10*1000*1000l);
+      when(mockSplit.getLocations()).thenReturn(
+          new String[] {i < 12 ? "h1" : "h2"});
+      mockSplits.add(mockSplit);
+    }
+    when(mockWrappedFormat.getSplits((JobContext) anyObject())).thenReturn(
+        mockSplits);
+    format.setDesiredNumberOfSplits(8);
+    format.setNumClusterNodes(4);
+
+    // each node gets at most 8 / 4 node local groups
+    TezCounters counters = new TezCounters();
+    format.setSplitGenerationCounters(counters);
+    List<InputSplit> splits = format.getSplits(job);
+    int h1Groups = 0;
+    int h2Groups = 0;
+    for (InputSplit split : splits) {
+      TezGroupedSplit groupedSplit = (TezGroupedSplit) split;
+      if (groupedSplit.getRack() == null) {
+        if ("h1".equals(groupedSplit.getLocations()[0])) {
+          h1Groups++;
+        } else if ("h2".equals(groupedSplit.getLocations()[0])) {
+          h2Groups++;
+        }
+      }
+    }
+    Assert.assertEquals(2, h1Groups);
+    Assert.assertEquals(2, h2Groups);
+    Assert.assertEquals(4, counters.findCounter(
+        SplitGenerationCounter.NODE_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(splits.size() - 4, counters.findCounter(
+        SplitGenerationCounter.RACK_LOCAL_GROUPED_SPLITS).getValue());
+    Assert.assertEquals(splits.size(), counters.findCounter(
+        SplitGenerationCounter.NUM_GROUPED_SPLITS).getValue());
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.tez.mapreduce.common.RecordReaderPrefetcher.RecordReaderFactory;
+import org.junit.Test;
+
+public class TestRecordReaderPrefetcher {
+
+  /**
+   * Creates the index as the reader, and fails for the given index.
+   */
+  private static class TestReaderFactory implements
+      RecordReaderFactory<Integer> {
+
+    private final int failingIndex;
+    private final Exception failure;
+    final List<Integer> created =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> closed =
+        Collections.synchronizedList(new ArrayList<Integer>());
+
+    TestReaderFactory(int failingIndex, Exception failure) {
+      this.failingIndex = failingIndex;
+      this.failure = failure;
+    }
+
+    TestReaderFactory() {
+      this(-1, null);
+    }
+
+    @Override
+    public Integer createReader(int index) throws IOException,
+        InterruptedException {
+      created.add(index);
+      if (index == failingIndex) {
+        if (failure instanceof IOException) {
+          throw (IOException) failure;
+        }
+        throw (RuntimeException) failure;
+      }
+      return index;
+    }
+
+    @Override
+    public void closeReader(Integer reader) throws IOException {
+      closed.add(reader);
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testReadersInOrder() throws Exception {
+    TestReaderFactory factory = new TestReaderFactory();
+    RecordReaderPrefetcher<Integer> prefetcher =
+        new RecordReaderPrefetcher<Integer>(factory, 10, 3);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, prefetcher.nextReader().intValue());
+    }
+    assertNull(prefetcher.nextReader());
+    prefetcher.close();
+    // every reader was opened once, in order, and all were handed out
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 10; i++) {
+      expected.add(i);
+    }
+    assertEquals(expected, factory.created);
+    assertTrue(factory.closed.isEmpty());
+  }
+
+  @Test(timeout = 5000)
+  public void testCloseReleasesPrefetchedReaders() throws Exception {
+    TestReaderFactory factory = new TestReaderFactory();
+    RecordReaderPrefetcher<Integer> prefetcher =
+        new RecordReaderPrefetcher<Integer>(factory, 10, 2);
+    assertEquals(0, prefetcher.nextReader().intValue());
+    prefetcher.close();
+    // only the readers opened ahead of time are closed by the prefetcher
+    Collections.sort(factory.closed);
+    assertEquals(2, factory.closed.size());
+    assertEquals(1, factory.closed.get(0).intValue());
+    assertEquals(2, factory.closed.get(1).intValue());
+    assertEquals(3, factory.created.size());
+  }
+
+  @Test(timeout = 5000)
+  public void testIOExceptionPropagated() throws Exception {
+    IOException failure = new IOException("Unable to open split 2");
+    TestReaderFactory factory = new TestReaderFactory(2, failure);
+    RecordReaderPrefetcher<Integer> prefetcher =
+        new RecordReaderPrefetcher<Integer>(factory, 5, 2);
+    assertEquals(0, prefetcher.nextReader().intValue());
+    assertEquals(1, prefetcher.nextReader().intValue());
+    try {
+      prefetcher.nextReader();
+      fail("Expected the failure opening the reader to be rethrown");
+    } catch (IOException e) {
+      assertTrue(e == failure);
+    }
+    prefetcher.close();
+  }
+
+  @Test(timeout = 5000)
+  public void testRuntimeExceptionPropagated() throws Exception {
+    RuntimeException failure = new IllegalStateException("bad split");
+    TestReaderFactory factory = new TestReaderFactory(1, failure);
+    RecordReaderPrefetcher<Integer> prefetcher =
+        new RecordReaderPrefetcher<Integer>(factory, 3, 1);
+    assertEquals(0, prefetcher.nextReader().intValue());
+    try {
+      prefetcher.nextReader();
+      fail("Expected the failure opening the reader to be rethrown");
+    } catch (IllegalStateException e) {
+      assertTrue(e == failure);
+    }
+    prefetcher.close();
+  }
+}
@@ -22,7 +22,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,9 +41,11 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.dag.api.ProcessorDescriptor;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.runtime.api.AsyncInitializedInput;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.Input;
 import org.apache.tez.runtime.api.LogicalIOProcessor;
@@ -96,6 +98,10 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
   
   private final ExecutorService initializerExecutor;
   private final CompletionService<Void> initializerCompletionService;
+  private final List<Future<Void>> asyncInputInitializers =
+      new ArrayList<Future<Void>>();
+  // Created on first use, and shared by the inputs and the outputs
+  private ExecutorService closerExecutor;
 
   private LinkedBlockingQueue<TezEvent> eventsToBeProcessed;
   private Thread eventRouterThread = null;
@@ -144,8 +150,16 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
     int numTasks = 0;
     
     for (InputSpec inputSpec : taskSpec.getInputs()) {
-      this.initializerCompletionService.submit(new InitializeInputCallable(inputSpec));
-      numTasks++;
+      LogicalInput input = createInputInstance(inputSpec);
+      Future<Void> future = this.initializerCompletionService.submit(
+          new InitializeInputCallable(inputSpec));
+      if (input instanceof AsyncInitializedInput) {
+        // The processor gets the input right away, and has to wait for it to
+        // be ready before reading from it.
+        asyncInputInitializers.add(future);
+      } else {
+        numTasks++;
+      }
     }
     
     for (OutputSpec outputSpec : taskSpec.getOutputs()) {
@@ -164,7 +178,9 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
       Future<Void> future = initializerCompletionService.take();
       try {
         future.get();
-        completedTasks++;
+        if (!asyncInputInitializers.contains(future)) {
+          completedTasks++;
+        }
       } catch (ExecutionException e) {
         if (e.getCause() instanceof Exception) {
           throw (Exception) e.getCause();
@@ -207,27 +223,42 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
           "Can only run while in RUNNING state. Current: " + this.state);
       this.state = State.CLOSED;
 
+      // Inputs which were initialized in the background must be done with it
+      // before they are closed.
+      for (Future<Void> future : asyncInputInitializers) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          } else {
+            throw new Exception(e);
+          }
+        }
+      }
+
       // Close the Inputs.
+      List<Callable<Void>> inputClosers = new ArrayList<Callable<Void>>(
+          inputSpecs.size());
       for (InputSpec inputSpec : inputSpecs) {
-        String srcVertexName = inputSpec.getSourceVertexName();
-        List<Event> closeInputEvents = inputsMap.get(srcVertexName).close();
-        sendTaskGeneratedEvents(closeInputEvents,
-            EventProducerConsumerType.INPUT, taskSpec.getVertexName(),
-            srcVertexName, taskSpec.getTaskAttemptID());
+        inputClosers.add(new CloseInputCallable(inputSpec));
       }
+      closeConcurrently(inputClosers);
 
       // Close the Processor.
       processor.close();
 
       // Close the Outputs.
+      List<Callable<Void>> outputClosers = new ArrayList<Callable<Void>>(
+          outputSpecs.size());
       for (OutputSpec outputSpec : outputSpecs) {
-        String destVertexName = outputSpec.getDestinationVertexName();
-        List<Event> closeOutputEvents = outputsMap.get(destVertexName).close();
-        sendTaskGeneratedEvents(closeOutputEvents,
-            EventProducerConsumerType.OUTPUT, taskSpec.getVertexName(),
-            destVertexName, taskSpec.getTaskAttemptID());
+        outputClosers.add(new CloseOutputCallable(outputSpec));
       }
+      closeConcurrently(outputClosers);
     } finally {
+      if (closerExecutor != null) {
+        closerExecutor.shutdown();
+      }
       setTaskDone();
       if (eventRouterThread != null) {
         eventRouterThread.interrupt();
@@ -235,6 +266,89 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
     }
   }
 
+  /**
+   * Run the closers in parallel, since closing an output may include a full
+   * merge of its data. Events are sent as soon as each input or output is
+   * closed. All closers are waited for, and the first failure is rethrown.
+   * A single closer is run in the calling thread.
+   */
+  private void closeConcurrently(List<Callable<Void>> closers)
+      throws Exception {
+    if (closers.isEmpty()) {
+      return;
+    } else if (closers.size() == 1) {
+      closers.get(0).call();
+      return;
+    }
+    if (closerExecutor == null) {
+      closerExecutor = Executors.newFixedThreadPool(
+          Math.max(inputSpecs.size(), outputSpecs.size()),
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Closer %d").build());
+    }
+    Exception firstFailure = null;
+    CompletionService<Void> closerCompletionService =
+        new ExecutorCompletionService<Void>(closerExecutor);
+    for (Callable<Void> closer : closers) {
+      closerCompletionService.submit(closer);
+    }
+    for (int i = 0; i < closers.size(); i++) {
+      Future<Void> future = closerCompletionService.take();
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        Exception cause = e.getCause() instanceof Exception ? (Exception) e
+            .getCause() : new Exception(e);
+        if (firstFailure == null) {
+          firstFailure = cause;
+        } else {
+          LOG.warn("Additional failure while closing", cause);
+        }
+      }
+    }
+    if (firstFailure != null) {
+      throw firstFailure;
+    }
+  }
+
+  private class CloseInputCallable implements Callable<Void> {
+
+    private final InputSpec inputSpec;
+
+    public CloseInputCallable(InputSpec inputSpec) {
+      this.inputSpec = inputSpec;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      String srcVertexName = inputSpec.getSourceVertexName();
+      List<Event> closeInputEvents = inputsMap.get(srcVertexName).close();
+      sendTaskGeneratedEvents(closeInputEvents,
+          EventProducerConsumerType.INPUT, taskSpec.getVertexName(),
+          srcVertexName, taskSpec.getTaskAttemptID());
+      return null;
+    }
+  }
+
+  private class CloseOutputCallable implements Callable<Void> {
+
+    private final OutputSpec outputSpec;
+
+    public CloseOutputCallable(OutputSpec outputSpec) {
+      this.outputSpec = outputSpec;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      String destVertexName = outputSpec.getDestinationVertexName();
+      List<Event> closeOutputEvents = outputsMap.get(destVertexName).close();
+      sendTaskGeneratedEvents(closeOutputEvents,
+          EventProducerConsumerType.OUTPUT, taskSpec.getVertexName(),
+          destVertexName, taskSpec.getTaskAttemptID());
+      return null;
+    }
+  }
+
   private class InitializeInputCallable implements Callable<Void> {
 
     private final InputSpec inputSpec;
@@ -245,17 +359,9 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
 
     @Override
     public Void call() throws Exception {
-      LOG.info("Initializing Input using InputSpec: " + inputSpec);
       String edgeName = inputSpec.getSourceVertexName();
-      LogicalInput input = createInput(inputSpec);
-      TezInputContext inputContext = createInputContext(inputSpec);
-      inputsMap.put(edgeName, input);
-      inputContextMap.put(edgeName, inputContext);
-
-      if (input instanceof LogicalInput) {
-        ((LogicalInput) input).setNumPhysicalInputs(inputSpec
-            .getPhysicalEdgeCount());
-      }
+      LogicalInput input = inputsMap.get(edgeName);
+      TezInputContext inputContext = inputContextMap.get(edgeName);
       LOG.info("Initializing Input with src edge: " + edgeName);
       List<Event> events = input.initialize(inputContext);
       sendTaskGeneratedEvents(events, EventProducerConsumerType.INPUT,
@@ -266,6 +372,21 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
     }
   }
 
+  /**
+   * Create the input and its context, so that the input can be handed to the
+   * processor before it is initialized.
+   */
+  private LogicalInput createInputInstance(InputSpec inputSpec) {
+    LOG.info("Creating Input using InputSpec: " + inputSpec);
+    String edgeName = inputSpec.getSourceVertexName();
+    LogicalInput input = createInput(inputSpec);
+    TezInputContext inputContext = createInputContext(inputSpec);
+    inputsMap.put(edgeName, input);
+    inputContextMap.put(edgeName, inputContext);
+    input.setNumPhysicalInputs(inputSpec.getPhysicalEdgeCount());
+    return input;
+  }
+
   private class InitializeOutputCallable implements Callable<Void> {
 
     private final OutputSpec outputSpec;
@@ -398,49 +519,80 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
     tezUmbilical.addEvents(tezEvents);
   }
 
-  private boolean handleEvent(TezEvent e) {
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("Handling TezEvent in task"
-          + ", taskAttemptId=" + taskSpec.getTaskAttemptID()
-          + ", eventType=" + e.getEventType()
-          + ", eventSourceInfo=" + e.getSourceInfo()
-          + ", eventDestinationInfo=" + e.getDestinationInfo());
+  /**
+   * Deliver a batch of events, with a single handleEvents call for each
+   * destination. Events for the same destination are kept in order.
+   */
+  private boolean routeEvents(List<TezEvent> tezEvents) {
+    long startTime = System.currentTimeMillis();
+    Map<String, List<Event>> eventsByDestination =
+        new LinkedHashMap<String, List<Event>>();
+    Map<String, EventMetaData> destinations =
+        new HashMap<String, EventMetaData>();
+    for (TezEvent e : tezEvents) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Handling TezEvent in task"
+            + ", taskAttemptId=" + taskSpec.getTaskAttemptID()
+            + ", eventType=" + e.getEventType()
+            + ", eventSourceInfo=" + e.getSourceInfo()
+            + ", eventDestinationInfo=" + e.getDestinationInfo());
+      }
+      EventMetaData destination = e.getDestinationInfo();
+      String key = destination.getEventGenerator() + ":"
+          + destination.getEdgeVertexName();
+      List<Event> events = eventsByDestination.get(key);
+      if (events == null) {
+        events = new ArrayList<Event>();
+        eventsByDestination.put(key, events);
+        destinations.put(key, destination);
+      }
+      events.add(e.getEvent());
+    }
+    for (Map.Entry<String, List<Event>> entry : eventsByDestination.entrySet()) {
+      if (!handleEvents(destinations.get(entry.getKey()), entry.getValue())) {
+        return false;
+      }
     }
+    tezCounters.findCounter(TaskCounter.EVENT_ROUTING_BATCHES).increment(1);
+    tezCounters.findCounter(TaskCounter.EVENT_ROUTING_TIME_MILLIS).increment(
+        System.currentTimeMillis() - startTime);
+    return true;
+  }
+
+  private boolean handleEvents(EventMetaData destination, List<Event> events) {
     try {
-      switch (e.getDestinationInfo().getEventGenerator()) {
+      switch (destination.getEventGenerator()) {
       case INPUT:
-        LogicalInput input = inputsMap.get(
-            e.getDestinationInfo().getEdgeVertexName());
+        LogicalInput input = inputsMap.get(destination.getEdgeVertexName());
         if (input != null) {
-          input.handleEvents(Collections.singletonList(e.getEvent()));
+          input.handleEvents(events);
         } else {
-          throw new TezUncheckedException("Unhandled event for invalid target: "
-              + e);
+          throw new TezUncheckedException("Unhandled events for invalid target: "
+              + destination);
         }
         break;
       case OUTPUT:
-        LogicalOutput output = outputsMap.get(
-            e.getDestinationInfo().getEdgeVertexName());
+        LogicalOutput output = outputsMap.get(destination.getEdgeVertexName());
         if (output != null) {
-          output.handleEvents(Collections.singletonList(e.getEvent()));
+          output.handleEvents(events);
         } else {
-          throw new TezUncheckedException("Unhandled event for invalid target: "
-              + e);
+          throw new TezUncheckedException("Unhandled events for invalid target: "
+              + destination);
         }
         break;
       case PROCESSOR:
-        processor.handleEvents(Collections.singletonList(e.getEvent()));
+        processor.handleEvents(events);
         break;
       case SYSTEM:
-        LOG.warn("Trying to send a System event in a Task: " + e);
+        LOG.warn("Trying to send System events in a Task: " + destination);
         break;
       }
     } catch (Throwable t) {
-      LOG.warn("Failed to handle event", t);
-      setFatalError(t, "Failed to handle event");
+      LOG.warn("Failed to handle events", t);
+      setFatalError(t, "Failed to handle events");
       EventMetaData sourceInfo = new EventMetaData(
-          e.getDestinationInfo().getEventGenerator(),
-          taskSpec.getVertexName(), e.getDestinationInfo().getEdgeVertexName(),
+          destination.getEventGenerator(),
+          taskSpec.getVertexName(), destination.getEdgeVertexName(),
           getTaskAttemptID());
       tezUmbilical.signalFatalError(getTaskAttemptID(),
           StringUtils.stringifyException(t), sourceInfo);
@@ -473,10 +625,14 @@ public class LogicalIOProcessorRuntimeTask extends RuntimeTask {
             if (e == null) {
               continue;
             }
+            // Route everything which is queued up in one go
+            List<TezEvent> batch = new ArrayList<TezEvent>();
+            batch.add(e);
+            eventsToBeProcessed.drainTo(batch);
             // TODO TODONEWTEZ
-            if (!handleEvent(e)) {
+            if (!routeEvents(batch)) {
               LOG.warn("Stopping Event Router thread as failed to handle"
-                  + " event: " + e);
+                  + " events");
               return;
             }
           } catch (InterruptedException e) {
@@ -18,14 +18,27 @@
 
 package org.apache.tez.runtime;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.tez.dag.api.TezUncheckedException;
 
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Creates Inputs, Outputs and Processors. Resolved classes and their
+ * constructors are cached for the lifetime of the container, since every
+ * task attempt run in it loads the same classes from the same classpath.
+ */
 public class RuntimeUtils {
 
-  private static final Map<String, Class<?>> CLAZZ_CACHE = new ConcurrentHashMap<String, Class<?>>();
+  @VisibleForTesting
+  static final Map<String, Class<?>> CLAZZ_CACHE = new ConcurrentHashMap<String, Class<?>>();
+  @VisibleForTesting
+  static final Map<Class<?>, Constructor<?>> CONSTRUCTOR_CACHE =
+      new ConcurrentHashMap<Class<?>, Constructor<?>>();
 
   private static Class<?> getClazz(String className) {
     Class<?> clazz = CLAZZ_CACHE.get(className);
@@ -35,6 +48,7 @@ public class RuntimeUtils {
       } catch (ClassNotFoundException e) {
         throw new TezUncheckedException("Unable to load class: " + className, e);
       }
+      CLAZZ_CACHE.put(className, clazz);
     }
     return clazz;
   }
@@ -42,13 +56,29 @@ public class RuntimeUtils {
   private static <T> T getNewInstance(Class<T> clazz) {
     T instance;
     try {
-      instance = clazz.newInstance();
+      @SuppressWarnings("unchecked")
+      Constructor<T> constructor = (Constructor<T>) CONSTRUCTOR_CACHE.get(clazz);
+      if (constructor == null) {
+        constructor = clazz.getDeclaredConstructor();
+        instance = constructor.newInstance();
+        // Only cached once it is known to be accessible
+        CONSTRUCTOR_CACHE.put(clazz, constructor);
+      } else {
+        instance = constructor.newInstance();
+      }
+    } catch (NoSuchMethodException e) {
+      throw new TezUncheckedException(
+          "Unable to instantiate class with 0 arguments: " + clazz.getName(), e);
     } catch (InstantiationException e) {
       throw new TezUncheckedException(
           "Unable to instantiate class with 0 arguments: " + clazz.getName(), e);
     } catch (IllegalAccessException e) {
       throw new TezUncheckedException(
           "Unable to instantiate class with 0 arguments: " + clazz.getName(), e);
+    } catch (InvocationTargetException e) {
+      throw new TezUncheckedException(
+          "Unable to instantiate class with 0 arguments: " + clazz.getName(),
+          e.getCause());
     }
     return instance;
   }
@@ -18,55 +18,194 @@
 
 package org.apache.tez.runtime.common.objectregistry;
 
-import java.util.AbstractMap;
-
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.runtime.common.objectregistry.ObjectLifeCycle;
 import org.apache.tez.runtime.common.objectregistry.ObjectRegistry;
 
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Singleton;
 
+/**
+ * Keeps the objects of each {@link ObjectLifeCycle} in a separate concurrent
+ * cache, each with its own optional memory budget. Objects are evicted least
+ * recently used first once a budget is exceeded.
+ */
 @Singleton
 public class ObjectRegistryImpl implements ObjectRegistry {
 
-  private Map<String, Map.Entry<Object, ObjectLifeCycle>> objectCache =
-      new HashMap<String, Entry<Object, ObjectLifeCycle>>();
+  // Weights are in KB, so that large budgets fit the int weights
+  private static final int DEFAULT_OBJECT_WEIGHT = 1;
+
+  private final Map<ObjectLifeCycle, Cache<String, Object>> caches =
+      new EnumMap<ObjectLifeCycle, Cache<String, Object>>(ObjectLifeCycle.class);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  // Totals at the time counters were last reported
+  private long reportedHits;
+  private long reportedMisses;
+  private long reportedEvictions;
+
+  public ObjectRegistryImpl() {
+    this(new Configuration(false));
+  }
+
+  public ObjectRegistryImpl(Configuration conf) {
+    boolean softValues = conf.getBoolean(
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_SOFT_VALUES,
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_SOFT_VALUES_DEFAULT);
+    caches.put(ObjectLifeCycle.SESSION, createCache(softValues, conf.getInt(
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_SESSION_MAX_SIZE_MB,
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_SESSION_MAX_SIZE_MB_DEFAULT)));
+    caches.put(ObjectLifeCycle.DAG, createCache(softValues, conf.getInt(
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_DAG_MAX_SIZE_MB,
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_DAG_MAX_SIZE_MB_DEFAULT)));
+    caches.put(ObjectLifeCycle.VERTEX, createCache(softValues, conf.getInt(
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_VERTEX_MAX_SIZE_MB,
+        TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_VERTEX_MAX_SIZE_MB_DEFAULT)));
+  }
+
+  private Cache<String, Object> createCache(boolean softValues,
+      int maxSizeMb) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+    if (softValues) {
+      builder.softValues();
+    }
+    if (maxSizeMb >= 0) {
+      // The budget is split between the segments of a cache, so a single
+      // segment is used for large objects to fit in it
+      builder.concurrencyLevel(1);
+      builder.maximumWeight((long) maxSizeMb << 10).weigher(
+          new Weigher<String, Object>() {
+            @Override
+            public int weigh(String key, Object value) {
+              if (!(value instanceof SizedObject)) {
+                return DEFAULT_OBJECT_WEIGHT;
+              }
+              long sizeKb = ((SizedObject) value).getEstimatedSize() >> 10;
+              return (int) Math.max(DEFAULT_OBJECT_WEIGHT,
+                  Math.min(sizeKb, Integer.MAX_VALUE));
+            }
+          });
+    }
+    return builder.removalListener(new RemovalListener<String, Object>() {
+      @Override
+      public void onRemoval(RemovalNotification<String, Object> notification) {
+        if (notification.wasEvicted()) {
+          evictions.incrementAndGet();
+        }
+      }
+    }).build();
+  }
 
   @Override
-  public synchronized Object add(ObjectLifeCycle lifeCycle,
+  public Object add(ObjectLifeCycle lifeCycle,
       String key, Object value) {
-    Map.Entry<Object, ObjectLifeCycle> oldEntry =
-        objectCache.put(key,
-            new AbstractMap.SimpleImmutableEntry<Object, ObjectLifeCycle>(
-                value, lifeCycle));
-    return oldEntry != null ? oldEntry.getKey() : null;
+    Preconditions.checkNotNull(value, "Object must be specified");
+    Object oldValue = null;
+    // There is only one object for a key, whatever its life-cycle
+    for (Map.Entry<ObjectLifeCycle, Cache<String, Object>> entry : caches
+        .entrySet()) {
+      if (entry.getKey() != lifeCycle) {
+        Object removed = entry.getValue().asMap().remove(key);
+        if (removed != null) {
+          oldValue = removed;
+        }
+      }
+    }
+    Object replaced = caches.get(lifeCycle).asMap().put(key, value);
+    return replaced != null ? replaced : oldValue;
   }
 
   @Override
-  public synchronized Object get(String key) {
-    Map.Entry<Object, ObjectLifeCycle> entry =
-        objectCache.get(key);
-    return entry != null ? entry.getKey() : null;
+  public Object get(String key) {
+    Object value = lookup(key);
+    if (value != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return value;
+  }
+
+  private Object lookup(String key) {
+    for (Cache<String, Object> cache : caches.values()) {
+      Object value = cache.asMap().get(key);
+      if (value != null) {
+        return value;
+      }
+    }
+    return null;
   }
 
   @Override
-  public synchronized boolean delete(String key) {
-    return (null != objectCache.remove(key));
+  public Object getOrCreate(ObjectLifeCycle lifeCycle, String key,
+      final Callable<?> creator) throws Exception {
+    Object value = lookup(key);
+    if (value != null) {
+      hits.incrementAndGet();
+      return value;
+    }
+    try {
+      return caches.get(lifeCycle).get(key, new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          misses.incrementAndGet();
+          return creator.call();
+        }
+      });
+    } catch (ExecutionException e) {
+      throw (Exception) e.getCause();
+    } catch (UncheckedExecutionException e) {
+      throw (RuntimeException) e.getCause();
+    }
   }
 
-  public synchronized void clearCache(ObjectLifeCycle lifeCycle) {
-    Iterator<Entry<String, Entry<Object, ObjectLifeCycle>>> it =
-      objectCache.entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<String, Entry<Object, ObjectLifeCycle>> entry = it.next();
-      if (entry.getValue().getValue().equals(lifeCycle)) {
-        it.remove();
-      }
+  @Override
+  public boolean delete(String key) {
+    boolean deleted = false;
+    for (Cache<String, Object> cache : caches.values()) {
+      deleted |= (null != cache.asMap().remove(key));
     }
+    return deleted;
   }
 
+  public void clearCache(ObjectLifeCycle lifeCycle) {
+    caches.get(lifeCycle).invalidateAll();
+  }
+
+  /**
+   * Add the hits, misses and evictions since the last call to the counters of
+   * the task which just ran.
+   */
+  public synchronized void reportCounters(TezCounters counters) {
+    long currentHits = hits.get();
+    long currentMisses = misses.get();
+    long currentEvictions = evictions.get();
+    counters.findCounter(TaskCounter.OBJECT_REGISTRY_HITS).increment(
+        currentHits - reportedHits);
+    counters.findCounter(TaskCounter.OBJECT_REGISTRY_MISSES).increment(
+        currentMisses - reportedMisses);
+    counters.findCounter(TaskCounter.OBJECT_REGISTRY_EVICTIONS).increment(
+        currentEvictions - reportedEvictions);
+    reportedHits = currentHits;
+    reportedMisses = currentMisses;
+    reportedEvictions = currentEvictions;
+  }
 }
@@ -0,0 +1,455 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.ProcessorDescriptor;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.AsyncInitializedInput;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.LogicalIOProcessor;
+import org.apache.tez.runtime.api.LogicalInput;
+import org.apache.tez.runtime.api.LogicalOutput;
+import org.apache.tez.runtime.api.Reader;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.TezProcessorContext;
+import org.apache.tez.runtime.api.Writer;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.impl.EventMetaData;
+import org.apache.tez.runtime.api.impl.EventMetaData.EventProducerConsumerType;
+import org.apache.tez.runtime.api.impl.InputSpec;
+import org.apache.tez.runtime.api.impl.OutputSpec;
+import org.apache.tez.runtime.api.impl.TaskSpec;
+import org.apache.tez.runtime.api.impl.TezEvent;
+import org.apache.tez.runtime.api.impl.TezUmbilical;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLogicalIOProcessorRuntimeTask {
+
+  private static final String FAIL = "fail";
+  private static final String CONCURRENT = "concurrent";
+
+  // what the inputs, outputs and processor did, in order
+  private static final List<String> log =
+      Collections.synchronizedList(new ArrayList<String>());
+  // closers which are marked as concurrent wait for each other
+  private static volatile CyclicBarrier closeBarrier;
+  private static volatile Thread closingThread;
+  // the first call to handleEvents holds up the router thread until released
+  private static volatile CountDownLatch routingStarted;
+  private static volatile CountDownLatch routingGate;
+  // async inputs do not finish initializing until released
+  private static volatile CountDownLatch asyncInitGate;
+  private static volatile CountDownLatch processorRunning;
+
+  private static void close(String name, byte[] payload) throws Exception {
+    String behaviour = payload == null ? "" : new String(payload);
+    if (CONCURRENT.equals(behaviour)) {
+      closeBarrier.await(10, TimeUnit.SECONDS);
+    }
+    if (Thread.currentThread() == closingThread) {
+      name += " inline";
+    }
+    log.add(name);
+    if (FAIL.equals(behaviour)) {
+      throw new IOException("Failed to close " + name);
+    }
+  }
+
+  private static void handleEvents(String name, List<Event> events)
+      throws InterruptedException {
+    List<Integer> sourceIndices = new ArrayList<Integer>();
+    for (Event event : events) {
+      sourceIndices.add(((DataMovementEvent) event).getSourceIndex());
+    }
+    log.add(name + " events " + sourceIndices);
+    CountDownLatch started = routingStarted;
+    if (started != null) {
+      routingStarted = null;
+      started.countDown();
+      routingGate.await(10, TimeUnit.SECONDS);
+    }
+  }
+
+  public static class TestInput implements LogicalInput {
+    private TezInputContext context;
+
+    @Override
+    public List<Event> initialize(TezInputContext inputContext)
+        throws Exception {
+      this.context = inputContext;
+      return null;
+    }
+
+    @Override
+    public Reader getReader() {
+      return null;
+    }
+
+    @Override
+    public void handleEvents(List<Event> inputEvents) throws Exception {
+      TestLogicalIOProcessorRuntimeTask.handleEvents(
+          "input " + context.getSourceVertexName(), inputEvents);
+    }
+
+    @Override
+    public List<Event> close() throws Exception {
+      TestLogicalIOProcessorRuntimeTask.close(
+          "input " + context.getSourceVertexName(), context.getUserPayload());
+      return null;
+    }
+
+    @Override
+    public void setNumPhysicalInputs(int numInputs) {
+    }
+  }
+
+  public static class TestAsyncInput extends TestInput
+      implements AsyncInitializedInput {
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    @Override
+    public List<Event> initialize(TezInputContext inputContext)
+        throws Exception {
+      super.initialize(inputContext);
+      assertTrue(asyncInitGate.await(10, TimeUnit.SECONDS));
+      if (FAIL.equals(new String(inputContext.getUserPayload()))) {
+        throw new IOException("Failed to initialize input "
+            + inputContext.getSourceVertexName());
+      }
+      ready.countDown();
+      return null;
+    }
+
+    @Override
+    public boolean isInputReady() {
+      return ready.getCount() == 0;
+    }
+
+    @Override
+    public void waitForInputReady() throws InterruptedException {
+      ready.await();
+    }
+  }
+
+  public static class TestOutput implements LogicalOutput {
+    private TezOutputContext context;
+
+    @Override
+    public List<Event> initialize(TezOutputContext outputContext) {
+      this.context = outputContext;
+      return null;
+    }
+
+    @Override
+    public Writer getWriter() {
+      return null;
+    }
+
+    @Override
+    public void handleEvents(List<Event> outputEvents) {
+      try {
+        TestLogicalIOProcessorRuntimeTask.handleEvents(
+            "output " + context.getDestinationVertexName(), outputEvents);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public List<Event> close() throws Exception {
+      TestLogicalIOProcessorRuntimeTask.close(
+          "output " + context.getDestinationVertexName(),
+          context.getUserPayload());
+      return null;
+    }
+
+    @Override
+    public void setNumPhysicalOutputs(int numOutputs) {
+    }
+  }
+
+  public static class TestProcessor implements LogicalIOProcessor {
+    @Override
+    public void initialize(TezProcessorContext processorContext) {
+    }
+
+    @Override
+    public void handleEvents(List<Event> processorEvents) {
+    }
+
+    @Override
+    public void close() {
+      log.add("processor");
+    }
+
+    @Override
+    public void run(Map<String, LogicalInput> inputs,
+        Map<String, LogicalOutput> outputs) {
+      CountDownLatch running = processorRunning;
+      if (running != null) {
+        // async inputs are handed over before they are ready
+        for (LogicalInput input : inputs.values()) {
+          if (input instanceof AsyncInitializedInput
+              && ((AsyncInitializedInput) input).isInputReady()) {
+            return;
+          }
+        }
+        running.countDown();
+      }
+    }
+  }
+
+  private static class TestUmbilical implements TezUmbilical {
+    @Override
+    public void addEvents(Collection<TezEvent> events) {
+    }
+
+    @Override
+    public void signalFatalError(TezTaskAttemptID taskAttemptID,
+        String diagnostics, EventMetaData sourceInfo) {
+    }
+
+    @Override
+    public boolean canCommit(TezTaskAttemptID taskAttemptID) {
+      return true;
+    }
+  }
+
+  @Before
+  public void setup() {
+    log.clear();
+    closingThread = Thread.currentThread();
+    routingStarted = null;
+    asyncInitGate = null;
+    processorRunning = null;
+  }
+
+  private static InputSpec createInputSpec(String name, String behaviour) {
+    InputDescriptor descriptor = new InputDescriptor(TestInput.class.getName());
+    descriptor.setUserPayload(behaviour.getBytes());
+    return new InputSpec(name, descriptor, 1);
+  }
+
+  private static InputSpec createAsyncInputSpec(String name,
+      String behaviour) {
+    InputDescriptor descriptor =
+        new InputDescriptor(TestAsyncInput.class.getName());
+    descriptor.setUserPayload(behaviour.getBytes());
+    return new InputSpec(name, descriptor, 1);
+  }
+
+  private static OutputSpec createOutputSpec(String name, String behaviour) {
+    OutputDescriptor descriptor =
+        new OutputDescriptor(TestOutput.class.getName());
+    descriptor.setUserPayload(behaviour.getBytes());
+    return new OutputSpec(name, descriptor, 1);
+  }
+
+  private static LogicalIOProcessorRuntimeTask createTask(
+      List<InputSpec> inputs, List<OutputSpec> outputs) throws IOException {
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(
+        TezTaskID.getInstance(TezVertexID.getInstance(
+            TezDAGID.getInstance("2000", 1, 1), 1), 1), 1);
+    TaskSpec taskSpec = new TaskSpec(taskAttemptID, "vertex",
+        new ProcessorDescriptor(TestProcessor.class.getName()), inputs,
+        outputs);
+    return new LogicalIOProcessorRuntimeTask(taskSpec, 1, new Configuration(),
+        new TestUmbilical(), new HashMap<String, ByteBuffer>());
+  }
+
+  private static TezEvent createEvent(LogicalIOProcessorRuntimeTask task,
+      EventProducerConsumerType destination, String edgeVertexName,
+      int sourceIndex) {
+    TezEvent event = new TezEvent(
+        new DataMovementEvent(sourceIndex, null), null);
+    event.setDestinationInfo(new EventMetaData(destination, "vertex",
+        edgeVertexName, task.getTaskAttemptID()));
+    return event;
+  }
+
+  @Test(timeout = 30000)
+  public void testEventRouting() throws Exception {
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Arrays.asList(createInputSpec("in1", ""), createInputSpec("in2", "")),
+        Collections.singletonList(createOutputSpec("out1", "")));
+    task.initialize();
+
+    // hold up the router thread, so that the next events are routed together
+    CountDownLatch started = new CountDownLatch(1);
+    routingGate = new CountDownLatch(1);
+    routingStarted = started;
+    task.handleEvents(Collections.singletonList(
+        createEvent(task, EventProducerConsumerType.INPUT, "in1", 0)));
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    task.handleEvents(Arrays.asList(
+        createEvent(task, EventProducerConsumerType.INPUT, "in1", 1),
+        createEvent(task, EventProducerConsumerType.INPUT, "in2", 2),
+        createEvent(task, EventProducerConsumerType.INPUT, "in1", 3),
+        createEvent(task, EventProducerConsumerType.OUTPUT, "out1", 4),
+        createEvent(task, EventProducerConsumerType.INPUT, "in2", 5),
+        createEvent(task, EventProducerConsumerType.INPUT, "in1", 6)));
+    Thread.sleep(50);
+    routingGate.countDown();
+
+    TezCounters counters = task.getCounters();
+    while (counters.findCounter(TaskCounter.EVENT_ROUTING_BATCHES)
+        .getValue() < 2) {
+      Thread.sleep(10);
+    }
+    // one call per destination, in the order in which they were first seen,
+    // with the events for each destination in order
+    assertEquals(Arrays.asList("input in1 events [0]",
+        "input in1 events [1, 3, 6]", "input in2 events [2, 5]",
+        "output out1 events [4]"), log);
+    assertEquals(2, counters.findCounter(TaskCounter.EVENT_ROUTING_BATCHES)
+        .getValue());
+    assertTrue(counters.findCounter(TaskCounter.EVENT_ROUTING_TIME_MILLIS)
+        .getValue() >= 50);
+    task.cleanup();
+  }
+
+  @Test(timeout = 30000)
+  public void testCloseOrder() throws Exception {
+    // the two inputs, and the two outputs, have to be closed concurrently to
+    // get past the barrier
+    closeBarrier = new CyclicBarrier(2);
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Arrays.asList(createInputSpec("in1", CONCURRENT),
+            createInputSpec("in2", CONCURRENT)),
+        Arrays.asList(createOutputSpec("out1", CONCURRENT),
+            createOutputSpec("out2", CONCURRENT)));
+    task.initialize();
+    task.run();
+    task.close();
+
+    assertEquals(5, log.size());
+    assertTrue(log.subList(0, 2).containsAll(
+        Arrays.asList("input in1", "input in2")));
+    assertEquals("processor", log.get(2));
+    assertTrue(log.subList(3, 5).containsAll(
+        Arrays.asList("output out1", "output out2")));
+  }
+
+  @Test(timeout = 30000)
+  public void testSingleCloserRunsInline() throws Exception {
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Collections.singletonList(createInputSpec("in1", "")),
+        Collections.singletonList(createOutputSpec("out1", "")));
+    task.initialize();
+    task.run();
+    task.close();
+
+    assertEquals(Arrays.asList("input in1 inline", "processor",
+        "output out1 inline"), log);
+  }
+
+  @Test(timeout = 30000)
+  public void testCloseFailure() throws Exception {
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Arrays.asList(createInputSpec("in1", FAIL),
+            createInputSpec("in2", ""), createInputSpec("in3", "")),
+        Collections.singletonList(createOutputSpec("out1", "")));
+    task.initialize();
+    task.run();
+    try {
+      task.close();
+      fail("Closing should fail");
+    } catch (IOException e) {
+      assertEquals("Failed to close input in1", e.getMessage());
+    }
+    // the other inputs are still closed, but nothing after them
+    assertEquals(3, log.size());
+    assertTrue(log.containsAll(
+        Arrays.asList("input in1", "input in2", "input in3")));
+  }
+
+  @Test(timeout = 30000)
+  public void testRunWhileAsyncInputInitializes() throws Exception {
+    asyncInitGate = new CountDownLatch(1);
+    processorRunning = new CountDownLatch(1);
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Arrays.asList(createAsyncInputSpec("in1", ""),
+            createInputSpec("in2", "")),
+        Collections.singletonList(createOutputSpec("out1", "")));
+    task.initialize();
+    task.run();
+    // the processor ran before the async input was allowed to finish
+    assertEquals(0, processorRunning.getCount());
+
+    asyncInitGate.countDown();
+    task.close();
+    assertEquals(Arrays.asList("input in1", "input in2"),
+        sorted(log.subList(0, 2)));
+    assertEquals(Arrays.asList("processor", "output out1 inline"),
+        log.subList(2, 4));
+  }
+
+  @Test(timeout = 30000)
+  public void testAsyncInputInitFailureOnClose() throws Exception {
+    asyncInitGate = new CountDownLatch(1);
+    LogicalIOProcessorRuntimeTask task = createTask(
+        Collections.singletonList(createAsyncInputSpec("in1", FAIL)),
+        Collections.singletonList(createOutputSpec("out1", "")));
+    task.initialize();
+    task.run();
+
+    asyncInitGate.countDown();
+    try {
+      task.close();
+      fail("Closing should fail");
+    } catch (IOException e) {
+      assertEquals("Failed to initialize input in1", e.getMessage());
+    }
+    // nothing is closed once initialization has failed
+    assertTrue(log.isEmpty());
+  }
+
+  private static List<String> sorted(List<String> list) {
+    List<String> copy = new ArrayList<String>(list);
+    Collections.sort(copy);
+    return copy;
+  }
+}
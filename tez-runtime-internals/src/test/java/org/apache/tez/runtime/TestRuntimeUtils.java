@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Constructor;
+
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.junit.Test;
+
+public class TestRuntimeUtils {
+
+  public static class PublicConstructor {
+    public PublicConstructor() {
+    }
+  }
+
+  public static class PrivateConstructor {
+    private PrivateConstructor() {
+    }
+  }
+
+  public static class FailingConstructor {
+    public FailingConstructor() {
+      throw new IllegalStateException("Failed to construct");
+    }
+  }
+
+  @Test
+  public void testCachedInstantiation() {
+    String className = PublicConstructor.class.getName();
+    PublicConstructor first = RuntimeUtils.createClazzInstance(className);
+    assertSame(PublicConstructor.class,
+        RuntimeUtils.CLAZZ_CACHE.get(className));
+    Constructor<?> constructor =
+        RuntimeUtils.CONSTRUCTOR_CACHE.get(PublicConstructor.class);
+    assertTrue(constructor != null);
+
+    // a new instance each time, from the cached class and constructor
+    PublicConstructor second = RuntimeUtils.createClazzInstance(className);
+    assertNotSame(first, second);
+    assertSame(constructor,
+        RuntimeUtils.CONSTRUCTOR_CACHE.get(PublicConstructor.class));
+  }
+
+  @Test
+  public void testUnknownClass() {
+    String className = "org.apache.tez.runtime.NoSuchClass";
+    try {
+      RuntimeUtils.createClazzInstance(className);
+      fail("Expected the class to not be found");
+    } catch (TezUncheckedException e) {
+      assertEquals("Unable to load class: " + className, e.getMessage());
+    }
+    assertFalse(RuntimeUtils.CLAZZ_CACHE.containsKey(className));
+  }
+
+  @Test
+  public void testInaccessibleConstructor() {
+    String className = PrivateConstructor.class.getName();
+    // each attempt fails the same way, since the constructor is not cached
+    for (int i = 0; i < 2; i++) {
+      try {
+        RuntimeUtils.createClazzInstance(className);
+        fail("Expected the private constructor to not be used");
+      } catch (TezUncheckedException e) {
+        assertTrue(e.getCause() instanceof IllegalAccessException);
+      }
+      assertFalse(RuntimeUtils.CONSTRUCTOR_CACHE.containsKey(
+          PrivateConstructor.class));
+    }
+  }
+
+  @Test
+  public void testFailingConstructor() {
+    String className = FailingConstructor.class.getName();
+    try {
+      RuntimeUtils.createClazzInstance(className);
+      fail("Expected the constructor to fail");
+    } catch (TezUncheckedException e) {
+      assertEquals("Failed to construct", e.getCause().getMessage());
+    }
+  }
+}
@@ -18,6 +18,20 @@
 
 package org.apache.tez.runtime.common.objectregistry;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.TezConfiguration;
+
 import org.apache.tez.runtime.common.objectregistry.ObjectLifeCycle;
 import org.apache.tez.runtime.common.objectregistry.ObjectRegistry;
 import org.apache.tez.runtime.common.objectregistry.ObjectRegistryFactory;
@@ -82,4 +96,91 @@ public class TestObjectRegistry {
     Assert.assertNotNull(objectRegistry.get(one));
     Assert.assertNull(objectRegistry.get(two));
   }
+
+  private static class SizedValue implements SizedObject {
+    private final long size;
+
+    SizedValue(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return size;
+    }
+  }
+
+  @Test
+  public void testEviction() {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_VERTEX_MAX_SIZE_MB, 1);
+    ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl(conf);
+
+    for (int i = 0; i < 64; i++) {
+      objectRegistry.add(ObjectLifeCycle.VERTEX, "v" + i,
+          new SizedValue(128 << 10));
+    }
+    objectRegistry.add(ObjectLifeCycle.DAG, "d", new SizedValue(128 << 10));
+    int retained = 0;
+    for (int i = 0; i < 64; i++) {
+      if (objectRegistry.get("v" + i) != null) {
+        retained++;
+      }
+    }
+    Assert.assertTrue(retained <= 8);
+    // The DAG scope has no budget
+    Assert.assertNotNull(objectRegistry.get("d"));
+
+    TezCounters counters = new TezCounters();
+    objectRegistry.reportCounters(counters);
+    Assert.assertEquals(64 - retained,
+        counters.findCounter(TaskCounter.OBJECT_REGISTRY_EVICTIONS).getValue());
+    Assert.assertEquals(retained + 1,
+        counters.findCounter(TaskCounter.OBJECT_REGISTRY_HITS).getValue());
+    Assert.assertEquals(64 - retained,
+        counters.findCounter(TaskCounter.OBJECT_REGISTRY_MISSES).getValue());
+  }
+
+  @Test
+  public void testGetOrCreate() throws Exception {
+    final ObjectRegistry objectRegistry = new ObjectRegistryImpl();
+    final AtomicInteger creations = new AtomicInteger();
+    final Callable<Object> creator = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        creations.incrementAndGet();
+        Thread.sleep(100);
+        return "value";
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return objectRegistry.getOrCreate(ObjectLifeCycle.DAG, "key", creator);
+        }
+      }));
+    }
+    for (Future<Object> future : futures) {
+      Assert.assertEquals("value", future.get());
+    }
+    executor.shutdown();
+    Assert.assertEquals(1, creations.get());
+
+    try {
+      objectRegistry.getOrCreate(ObjectLifeCycle.DAG, "failed",
+          new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+              throw new IOException("creation failed");
+            }
+          });
+      Assert.fail("Expected the creator's exception");
+    } catch (IOException e) {
+      Assert.assertEquals("creation failed", e.getMessage());
+    }
+    Assert.assertNull(objectRegistry.get("failed"));
+  }
 }
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.api;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.runtime.api.Reader;
+
+/**
+ * A key/value pair based {@link Reader} which exposes the serialized bytes of
+ * keys and values, without deserializing them.
+ * 
+ * The returned buffers are only valid until the next call to {@link #next()},
+ * and must not be modified.
+ * 
+ * Example usage
+ * <code>
+ * while (kvReader.next()) {
+ *   DataInputBuffer key = kvReader.getCurrentRawKey();
+ *   DataInputBuffer value = kvReader.getCurrentRawValue();
+ * </code>
+ *
+ */
+public interface RawKeyValueReader extends Reader {
+
+  /**
+   * Moves to the next key/value pair
+   * 
+   * @return true if another key/value pair exists, false if there are no more.
+   * @throws IOException
+   *           if an error occurs
+   */
+  public boolean next() throws IOException;
+
+  /**
+   * Returns the serialized bytes of the current key, between the position and
+   * the length of the buffer
+   * @return
+   */
+  public DataInputBuffer getCurrentRawKey() throws IOException;
+
+  /**
+   * @return the serialized bytes of the current value
+   * @throws IOException
+   */
+  public DataInputBuffer getCurrentRawValue() throws IOException;
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.api;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.runtime.api.Writer;
+
+/**
+ * A key/value pair based {@link Writer} which accepts keys and values which
+ * are already serialized with the configured key and value serialization.
+ */
+public interface RawKeyValueWriter extends Writer {
+  /**
+   * Writes a serialized key/value pair. The bytes between the position and the
+   * length of each buffer are written, and the buffers can be reused once this
+   * method returns.
+   * 
+   * @param key
+   *          the serialized key to write
+   * @param value
+   *          the serialized value to write
+   * @param partition
+   *          the partition to write the pair to, since the configured
+   *          {@link Partitioner} works on deserialized keys and values
+   * @throws IOException
+   *           if an error occurs
+   */
+  public void write(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException;
+}
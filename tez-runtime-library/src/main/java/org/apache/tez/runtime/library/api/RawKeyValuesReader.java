@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.api;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.runtime.api.Reader;
+
+/**
+ * A key/value(s) pair based {@link Reader} which exposes the serialized bytes
+ * of keys and values, without deserializing them.
+ * 
+ * The returned buffers are only valid until the next call to {@link #next()},
+ * and must not be modified.
+ * 
+ * Example usage
+ * <code>
+ * while (kvReader.next()) {
+ *   DataInputBuffer key = kvReader.getCurrentRawKey();
+ *   Iterable<DataInputBuffer> values = kvReader.getCurrentRawValues();
+ * </code>
+ *
+ */
+public interface RawKeyValuesReader extends Reader {
+
+  /**
+   * Moves to the next key/values(s) pair
+   * 
+   * @return true if another key/value(s) pair exists, false if there are no more.
+   * @throws IOException
+   *           if an error occurs
+   */
+  public boolean next() throws IOException;
+
+  /**
+   * Returns the serialized bytes of the current key, between the position and
+   * the length of the buffer
+   * @return
+   */
+  public DataInputBuffer getCurrentRawKey() throws IOException;
+
+  /**
+   * Returns an Iterable view of the serialized values associated with the
+   * current key. Each buffer is only valid until the iterator is advanced.
+   * @return
+   */
+  public Iterable<DataInputBuffer> getCurrentRawValues() throws IOException;
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.broadcast.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.runtime.common.objectregistry.ObjectLifeCycle;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistry;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryFactory;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.shuffle.common.DiskFetchedInput;
+import org.apache.tez.runtime.library.shuffle.common.FetchedInput;
+import org.apache.tez.runtime.library.shuffle.common.FetchedInputCallback;
+import org.apache.tez.runtime.library.shuffle.common.MappedFetchedInput;
+
+/**
+ * Keeps fetched broadcast inputs around for other tasks which run in the same
+ * container, or on the same node, and consume the same source outputs.
+ * 
+ * Inputs are identified by the path component of the source attempt and the
+ * partition being fetched. Fetched data is moved into a cache directory under
+ * the local dirs of the application, and served from a read-only memory
+ * mapping of the file, so it takes up page cache rather than heap.
+ * 
+ * One instance is kept per container in the {@link ObjectRegistry}, for the
+ * lifetime of the DAG. Since files are published under a fixed name with an
+ * atomic rename, tasks in other containers on the same node find them on disk
+ * as well. The files are removed along with the application's local dirs.
+ */
+public class BroadcastInputCache {
+
+  private static final Log LOG = LogFactory.getLog(BroadcastInputCache.class);
+
+  private static final String REGISTRY_KEY = BroadcastInputCache.class.getName();
+  private static final String CACHE_DIR = "broadcast-cache";
+
+  private final Configuration conf;
+  private final RawLocalFileSystem localFs;
+  private final LocalDirAllocator localDirAllocator;
+  private final ConcurrentMap<String, MappedByteBuffer> buffers =
+      new ConcurrentHashMap<String, MappedByteBuffer>();
+
+  BroadcastInputCache(Configuration conf) throws IOException {
+    this.conf = conf;
+    this.localFs = (RawLocalFileSystem) ((LocalFileSystem) FileSystem
+        .getLocal(conf)).getRaw();
+    this.localDirAllocator = new LocalDirAllocator(TezJobConfig.LOCAL_DIRS);
+  }
+
+  /**
+   * @return the cache of the container, or null if caching is disabled or no
+   *         object registry is available
+   */
+  public static synchronized BroadcastInputCache getInstance(Configuration conf)
+      throws IOException {
+    if (!conf.getBoolean(TezJobConfig.TEZ_RUNTIME_BROADCAST_CACHE_ENABLED,
+        TezJobConfig.TEZ_RUNTIME_BROADCAST_CACHE_ENABLED_DEFAULT)) {
+      return null;
+    }
+    ObjectRegistry objectRegistry = ObjectRegistryFactory.getObjectRegistry();
+    if (objectRegistry == null) {
+      LOG.warn("No ObjectRegistry available, not caching broadcast inputs");
+      return null;
+    }
+    BroadcastInputCache cache = (BroadcastInputCache) objectRegistry
+        .get(REGISTRY_KEY);
+    if (cache == null) {
+      cache = new BroadcastInputCache(conf);
+      objectRegistry.add(ObjectLifeCycle.DAG, REGISTRY_KEY, cache);
+    }
+    return cache;
+  }
+
+  /**
+   * @return the cached input, or null if it has not been fetched before
+   */
+  public FetchedInput get(InputAttemptIdentifier srcAttemptIdentifier,
+      int partition, FetchedInputCallback callback) throws IOException {
+    String key = createKey(srcAttemptIdentifier, partition);
+    MappedByteBuffer buffer = buffers.get(key);
+    if (buffer == null) {
+      // May have been published by another container
+      String relativePath = getRelativePath(key);
+      if (!localDirAllocator.ifExists(relativePath, conf)) {
+        return null;
+      }
+      buffer = map(localDirAllocator.getLocalPathToRead(relativePath, conf));
+      if (buffer == null) {
+        return null;
+      }
+      MappedByteBuffer old = buffers.putIfAbsent(key, buffer);
+      if (old != null) {
+        buffer = old;
+      }
+    }
+    LOG.info("Using cached input for " + srcAttemptIdentifier
+        + ", partition: " + partition);
+    return new MappedFetchedInput(buffer, -1, srcAttemptIdentifier, callback);
+  }
+
+  /**
+   * Moves the data of a committed input into the cache.
+   * 
+   * @return an input which reads the cached data, or null if the input could
+   *         not be cached, in which case the original input is left untouched
+   */
+  public FetchedInput put(InputAttemptIdentifier srcAttemptIdentifier,
+      int partition, DiskFetchedInput fetchedInput,
+      FetchedInputCallback callback) throws IOException {
+    if (fetchedInput.getCompressedSize() > Integer.MAX_VALUE) {
+      return null;
+    }
+    String key = createKey(srcAttemptIdentifier, partition);
+    Path cachePath = localDirAllocator.getLocalPathForWrite(
+        getRelativePath(key), fetchedInput.getCompressedSize(), conf);
+    localFs.mkdirs(cachePath.getParent());
+    if (!localFs.rename(fetchedInput.getOutputPath(), cachePath)) {
+      LOG.warn("Unable to move " + fetchedInput.getOutputPath() + " to "
+          + cachePath + ", not caching it");
+      return null;
+    }
+    MappedByteBuffer buffer = map(cachePath);
+    if (buffer == null) {
+      localFs.rename(cachePath, fetchedInput.getOutputPath());
+      return null;
+    }
+    buffers.put(key, buffer);
+    return new MappedFetchedInput(buffer, fetchedInput.getActualSize(),
+        srcAttemptIdentifier, callback);
+  }
+
+  private MappedByteBuffer map(Path path) throws IOException {
+    File file = localFs.pathToFile(path);
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      if (length > Integer.MAX_VALUE) {
+        return null;
+      }
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      // The mapping stays valid after the file is closed
+      raf.close();
+    }
+  }
+
+  private static String createKey(InputAttemptIdentifier srcAttemptIdentifier,
+      int partition) {
+    return srcAttemptIdentifier.getPathComponent() + "_" + partition;
+  }
+
+  private static String getRelativePath(String key) {
+    return CACHE_DIR + Path.SEPARATOR + key + ".out";
+  }
+}
@@ -28,6 +28,7 @@ import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.api.RawKeyValueReader;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.shuffle.impl.InMemoryReader;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
@@ -35,7 +36,13 @@ import org.apache.tez.runtime.library.shuffle.common.FetchedInput;
 import org.apache.tez.runtime.library.shuffle.common.FetchedInput.Type;
 import org.apache.tez.runtime.library.shuffle.common.MemoryFetchedInput;
 
-public class BroadcastKVReader<K, V> implements KeyValueReader {
+/**
+ * Reads the fetched inputs one after the other. Keys and values are only
+ * deserialized when they are requested, so the same reader can serve as a
+ * {@link RawKeyValueReader} without any per-record object creation.
+ */
+public class BroadcastKVReader<K, V> implements KeyValueReader,
+    RawKeyValueReader {
 
   private static final Log LOG = LogFactory.getLog(BroadcastKVReader.class);
   
@@ -48,6 +55,9 @@ public class BroadcastKVReader<K, V> implements KeyValueReader {
   private final Deserializer<V> valDeserializer;
   private final DataInputBuffer keyIn;
   private final DataInputBuffer valIn;
+  // views over the current record which are not consumed by deserialization
+  private final DataInputBuffer rawKey;
+  private final DataInputBuffer rawValue;
 
   private final boolean ifileReadAhead;
   private final int ifileReadAheadLength;
@@ -55,6 +65,8 @@ public class BroadcastKVReader<K, V> implements KeyValueReader {
   
   private K key;
   private V value;
+  private boolean keyDeserialized;
+  private boolean valueDeserialized;
   
   private FetchedInput currentFetchedInput;
   private IFile.Reader currentReader;
@@ -76,6 +88,8 @@ public class BroadcastKVReader<K, V> implements KeyValueReader {
 
     this.keyIn = new DataInputBuffer();
     this.valIn = new DataInputBuffer();
+    this.rawKey = new DataInputBuffer();
+    this.rawValue = new DataInputBuffer();
 
     SerializationFactory serializationFactory = new SerializationFactory(conf);
 
@@ -116,14 +130,32 @@ public class BroadcastKVReader<K, V> implements KeyValueReader {
 
   @Override
   public Object getCurrentKey() throws IOException {
+    if (!keyDeserialized) {
+      this.key = keyDeserializer.deserialize(this.key);
+      keyDeserialized = true;
+    }
     return (Object) key;
   }
 
   @Override
   public Object getCurrentValue() throws IOException {
+    if (!valueDeserialized) {
+      this.value = valDeserializer.deserialize(this.value);
+      valueDeserialized = true;
+    }
     return value;
   }
 
+  @Override
+  public DataInputBuffer getCurrentRawKey() throws IOException {
+    return rawKey;
+  }
+
+  @Override
+  public DataInputBuffer getCurrentRawValue() throws IOException {
+    return rawValue;
+  }
+
   /**
    * Tries reading the next key and value from the current reader.
    * @return true if the current reader has more records
@@ -137,8 +169,12 @@ public class BroadcastKVReader<K, V> implements KeyValueReader {
       boolean hasMore = this.currentReader.nextRawKey(keyIn);
       if (hasMore) {
         this.currentReader.nextRawValue(valIn);
-        this.key = keyDeserializer.deserialize(this.key);
-        this.value = valDeserializer.deserialize(this.value);
+        rawKey.reset(keyIn.getData(), keyIn.getPosition(),
+            keyIn.getLength() - keyIn.getPosition());
+        rawValue.reset(valIn.getData(), valIn.getPosition(),
+            valIn.getLength() - valIn.getPosition());
+        keyDeserialized = false;
+        valueDeserialized = false;
         return true;
       }
       return false;
@@ -82,9 +82,6 @@ public class BroadcastShuffleInputEventHandler {
   
   
   private void processDataMovementEvent(DataMovementEvent dme) throws IOException {
-    Preconditions.checkArgument(dme.getSourceIndex() == 0,
-        "Unexpected srcIndex: " + dme.getSourceIndex()
-            + " on DataMovementEvent. Can only be 0");
     DataMovementEventPayloadProto shufflePayload;
     try {
       shufflePayload = DataMovementEventPayloadProto.parseFrom(dme.getUserPayload());
@@ -100,12 +97,18 @@ public class BroadcastShuffleInputEventHandler {
           dme.getTargetIndex(), dme.getVersion(),
           shufflePayload.getPathComponent());
       if (shufflePayload.hasData()) {
+        Preconditions.checkArgument(dme.getSourceIndex() == 0,
+            "Unexpected srcIndex: " + dme.getSourceIndex()
+                + " on DataMovementEvent with data. Can only be 0");
         DataProto dataProto = shufflePayload.getData();
         FetchedInput fetchedInput = inputAllocator.allocate(dataProto.getRawLength(), dataProto.getCompressedLength(), srcAttemptIdentifier);
         moveDataToFetchedInput(dataProto, fetchedInput);
         shuffleManager.addCompletedInputWithData(srcAttemptIdentifier, fetchedInput);
       } else {
-        shuffleManager.addKnownInput(shufflePayload.getHost(), shufflePayload.getPort(), srcAttemptIdentifier, 0);
+        // the source index is the partition of the output to be fetched
+        shuffleManager.addKnownInput(shufflePayload.getHost(),
+            shufflePayload.getPort(), srcAttemptIdentifier,
+            dme.getSourceIndex());
       }
     } else {
       shuffleManager.addCompletedInputWithNoData(new InputAttemptIdentifier(dme.getTargetIndex(), dme.getVersion()));
@@ -46,6 +46,8 @@ import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.TezInputContext;
@@ -55,15 +57,16 @@ import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.InputIdentifier;
 import org.apache.tez.runtime.library.common.TezRuntimeUtils;
 import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.shuffle.common.DiskFetchedInput;
 import org.apache.tez.runtime.library.shuffle.common.FetchResult;
 import org.apache.tez.runtime.library.shuffle.common.FetchedInput;
-import org.apache.tez.runtime.library.shuffle.common.FetchedInputAllocator;
 import org.apache.tez.runtime.library.shuffle.common.Fetcher;
 import org.apache.tez.runtime.library.shuffle.common.Fetcher.FetcherBuilder;
 import org.apache.tez.runtime.library.shuffle.common.FetcherCallback;
 import org.apache.tez.runtime.library.shuffle.common.InputHost;
 import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -81,7 +84,7 @@ public class BroadcastShuffleManager implements FetcherCallback {
   private Configuration conf;
   
   private final BroadcastShuffleInputEventHandler inputEventHandler;
-  private final FetchedInputAllocator inputManager;
+  private final BroadcastInputManager inputManager;
   
   private final ExecutorService fetcherRawExecutor;
   private final ListeningExecutorService fetcherExecutor;
@@ -95,6 +98,11 @@ public class BroadcastShuffleManager implements FetcherCallback {
   private final ConcurrentMap<String, InputHost> knownSrcHosts;
   private final BlockingQueue<InputHost> pendingHosts;
   private final Set<InputAttemptIdentifier> obsoletedInputs;
+
+  // Shared with other tasks in the container. null if caching is disabled.
+  private final BroadcastInputCache inputCache;
+  // Partitions being fetched for each input, to be able to cache them
+  private final ConcurrentMap<InputAttemptIdentifier, Integer> fetchedPartitions;
   
   private final AtomicInteger numCompletedInputs = new AtomicInteger(0);
   
@@ -125,6 +133,10 @@ public class BroadcastShuffleManager implements FetcherCallback {
   private final AtomicBoolean isShutdown = new AtomicBoolean(false);
   
   // TODO NEWTEZ Add counters.
+  // Bytes decompressed while fetching, and bytes written to disk as fetched,
+  // which are only decompressed when read.
+  private final TezCounter bytesToMem;
+  private final TezCounter bytesToDisk;
   
   public BroadcastShuffleManager(TezInputContext inputContext, Configuration conf, int numInputs) throws IOException {
     this.inputContext = inputContext;
@@ -152,7 +164,10 @@ public class BroadcastShuffleManager implements FetcherCallback {
     this.ifileBufferSize = conf.getInt("io.file.buffer.size",
         TezJobConfig.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT);
     
-    this.inputManager = new BroadcastInputManager(inputContext.getUniqueIdentifier(), conf);
+    this.inputCache = BroadcastInputCache.getInstance(conf);
+    this.inputManager = new BroadcastInputManager(
+        inputContext.getUniqueIdentifier(), conf);
+    this.fetchedPartitions = new ConcurrentHashMap<InputAttemptIdentifier, Integer>();
     this.inputEventHandler = new BroadcastShuffleInputEventHandler(
         inputContext, this, this.inputManager, codec, ifileReadAhead,
         ifileReadAheadLength);
@@ -188,6 +203,11 @@ public class BroadcastShuffleManager implements FetcherCallback {
             .build());
     this.schedulerExecutor = MoreExecutors.listeningDecorator(schedulerRawExecutor);
     
+    this.bytesToMem = inputContext.getCounters().findCounter(
+        TaskCounter.SHUFFLE_BYTES_TO_MEM);
+    this.bytesToDisk = inputContext.getCounters().findCounter(
+        TaskCounter.SHUFFLE_BYTES_TO_DISK);
+
     this.startTime = System.currentTimeMillis();
     this.lastProgressTime = startTime;
     
@@ -323,8 +343,8 @@ public class BroadcastShuffleManager implements FetcherCallback {
     }
     // TODO NEWTEZ Maybe limit the number of inputs being given to a single
     // fetcher, especially in the case where #hosts < #fetchers
-    fetcherBuilder.assignWork(inputHost.getHost(), inputHost.getPort(), 0,
-        pendingInputsForHost);
+    fetcherBuilder.assignWork(inputHost.getHost(), inputHost.getPort(),
+        inputHost.getPartition(), pendingInputsForHost);
     LOG.info("Created Fetcher for host: " + inputHost.getHost()
         + ", with inputs: " + pendingInputsForHost);
     return fetcherBuilder.build();
@@ -333,11 +353,24 @@ public class BroadcastShuffleManager implements FetcherCallback {
   /////////////////// Methods for InputEventHandler
   
   public void addKnownInput(String hostName, int port,
-      InputAttemptIdentifier srcAttemptIdentifier, int partition) {
-    InputHost host = knownSrcHosts.get(hostName);
+      InputAttemptIdentifier srcAttemptIdentifier, int partition)
+      throws IOException {
+    if (inputCache != null) {
+      FetchedInput cachedInput = inputCache.get(srcAttemptIdentifier,
+          partition, inputManager);
+      if (cachedInput != null) {
+        // Nothing is shuffled for a cached input
+        addCompletedInput(srcAttemptIdentifier, cachedInput, false);
+        return;
+      }
+      fetchedPartitions.put(srcAttemptIdentifier, partition);
+    }
+    String identifier = InputHost.createIdentifier(hostName, partition);
+    InputHost host = knownSrcHosts.get(identifier);
     if (host == null) {
-      host = new InputHost(hostName, port, inputContext.getApplicationId());
-      InputHost old = knownSrcHosts.putIfAbsent(hostName, host);
+      host = new InputHost(hostName, port, inputContext.getApplicationId(),
+          partition);
+      InputHost old = knownSrcHosts.putIfAbsent(identifier, host);
       if (old != null) {
         host = old;
       }
@@ -385,6 +418,11 @@ public class BroadcastShuffleManager implements FetcherCallback {
   public void addCompletedInputWithData(
       InputAttemptIdentifier srcAttemptIdentifier, FetchedInput fetchedInput)
       throws IOException {
+    addCompletedInput(srcAttemptIdentifier, fetchedInput, true);
+  }
+
+  private void addCompletedInput(InputAttemptIdentifier srcAttemptIdentifier,
+      FetchedInput fetchedInput, boolean shuffled) throws IOException {
     InputIdentifier inputIdentifier = srcAttemptIdentifier.getInputIdentifier();
 
     LOG.info("Received Data via Event: " + srcAttemptIdentifier + " to "
@@ -403,6 +441,9 @@ public class BroadcastShuffleManager implements FetcherCallback {
         if (!completedInputSet.contains(inputIdentifier)) {
           fetchedInput.commit();
           committed = true;
+          if (shuffled) {
+            countShuffledBytes(fetchedInput);
+          }
           registerCompletedInput(fetchedInput);
         }
       }
@@ -431,6 +472,11 @@ public class BroadcastShuffleManager implements FetcherCallback {
     inputEventHandler.handleEvents(events);
   }
 
+  @VisibleForTesting
+  InputHost getKnownHost(String hostName, int partition) {
+    return knownSrcHosts.get(InputHost.createIdentifier(hostName, partition));
+  }
+
   /////////////////// End of Methods for InputEventHandler
   /////////////////// Methods from FetcherCallbackHandler
   
@@ -456,7 +502,8 @@ public class BroadcastShuffleManager implements FetcherCallback {
         if (!completedInputSet.contains(inputIdentifier)) {
           fetchedInput.commit();
           committed = true;
-          registerCompletedInput(fetchedInput);
+          countShuffledBytes(fetchedInput);
+          registerCompletedInput(cacheInput(srcAttemptIdentifier, fetchedInput));
         }
       }
     }
@@ -513,6 +560,14 @@ public class BroadcastShuffleManager implements FetcherCallback {
     }
   }
   
+  private void countShuffledBytes(FetchedInput fetchedInput) {
+    if (fetchedInput.getType() == FetchedInput.Type.MEMORY) {
+      bytesToMem.increment(fetchedInput.getActualSize());
+    } else {
+      bytesToDisk.increment(fetchedInput.getCompressedSize());
+    }
+  }
+
   private void registerCompletedInput(FetchedInput fetchedInput) {
     lock.lock();
     try {
@@ -524,6 +579,29 @@ public class BroadcastShuffleManager implements FetcherCallback {
     }
   }
   
+  /**
+   * Moves a fetched input into the cache, if caching is enabled. Only inputs
+   * which were fetched to disk, because they are too large to be kept in
+   * memory, are cached. Smaller inputs are cheap to fetch again.
+   * 
+   * @return the input to be consumed
+   */
+  private FetchedInput cacheInput(InputAttemptIdentifier srcAttemptIdentifier,
+      FetchedInput fetchedInput) throws IOException {
+    Integer partition = fetchedPartitions.remove(srcAttemptIdentifier);
+    if (inputCache == null || partition == null
+        || !(fetchedInput instanceof DiskFetchedInput)) {
+      return fetchedInput;
+    }
+    FetchedInput cachedInput = inputCache.put(srcAttemptIdentifier, partition,
+        (DiskFetchedInput) fetchedInput, inputManager);
+    if (cachedInput == null) {
+      return fetchedInput;
+    }
+    cachedInput.commit();
+    return cachedInput;
+  }
+
   /////////////////// Methods for walking the available inputs
   
   /**
@@ -651,7 +729,8 @@ public class BroadcastShuffleManager implements FetcherCallback {
     public void onSuccess(FetchResult result) {
       Iterable<InputAttemptIdentifier> pendingInputs = result.getPendingInputs();
       if (pendingInputs != null && pendingInputs.iterator().hasNext()) {
-        InputHost inputHost = knownSrcHosts.get(result.getHost());
+        InputHost inputHost = knownSrcHosts.get(InputHost.createIdentifier(
+            result.getHost(), result.getPartition()));
         assert inputHost != null;
         for (InputAttemptIdentifier input : pendingInputs) {
           inputHost.addKnownInput(input);
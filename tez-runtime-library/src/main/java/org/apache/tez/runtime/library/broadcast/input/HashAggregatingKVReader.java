@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.broadcast.input;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.util.Progress;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.api.RawKeyValueReader;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.combine.RawKeyHashTable;
+import org.apache.tez.runtime.library.common.combine.RawValueCombiner;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezMerger;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.apache.tez.runtime.library.hadoop.compat.NullProgressable;
+
+/**
+ * Aggregates the records of an unordered input by key, combining the values
+ * of each key with a {@link RawValueCombiner}.
+ * 
+ * Records are combined in a {@link RawKeyHashTable} on their serialized key
+ * bytes. If all distinct keys fit in memory, the aggregated records are
+ * returned straight from the table, in no particular order. Otherwise the
+ * table is sorted and spilled to a run whenever it fills up, and the runs are
+ * merged, combining the values of equal keys once more, in which case the
+ * records are returned in key order.
+ * 
+ * All records of the underlying reader are consumed on the first call to
+ * {@link #next()}.
+ */
+public class HashAggregatingKVReader<K, V> implements KeyValueReader,
+    RawKeyValueReader {
+
+  private static final Log LOG = LogFactory.getLog(HashAggregatingKVReader.class);
+
+  private static final LocalDirAllocator LOCAL_DIR_ALLOCATOR =
+      new LocalDirAllocator(TezJobConfig.LOCAL_DIRS);
+
+  private final Configuration conf;
+  private final String uniqueIdentifier;
+  private final RawKeyValueReader source;
+  private final RawValueCombiner combiner;
+  private final RawKeyHashTable table;
+  private final RawComparator<K> comparator;
+  private final FileSystem rfs;
+
+  private final Class<K> keyClass;
+  private final Class<V> valClass;
+  private final Deserializer<K> keyDeserializer;
+  private final Deserializer<V> valDeserializer;
+  private final DataInputBuffer keyIn = new DataInputBuffer();
+  private final DataInputBuffer valIn = new DataInputBuffer();
+  private K key;
+  private V value;
+  private boolean keyDeserialized;
+  private boolean valueDeserialized;
+
+  private final TezCounter combineInputCounter;
+  private final TezCounter combineOutputCounter;
+  private final TezCounter spilledRecordsCounter;
+
+  private final List<Path> runs = new ArrayList<Path>();
+  private boolean aggregated = false;
+  private TezRawKeyValueIterator iterator;
+
+  // Used when merging runs. The merged iterator is positioned on a record
+  // which has not been returned yet if pendingRecord is set.
+  private boolean pendingRecord = false;
+  private final DataOutputBuffer currentKeyBytes = new DataOutputBuffer();
+  private DataOutputBuffer currentValueBytes = new DataOutputBuffer();
+  private DataOutputBuffer combinedValueBytes = new DataOutputBuffer();
+  private final DataInputBuffer mergedKey = new DataInputBuffer();
+  private final DataInputBuffer mergedValue = new DataInputBuffer();
+  private final DataInputBuffer rawKey = new DataInputBuffer();
+  private final DataInputBuffer rawValue = new DataInputBuffer();
+
+  public HashAggregatingKVReader(TezInputContext inputContext,
+      Configuration conf, RawKeyValueReader source, RawValueCombiner combiner)
+      throws IOException {
+    this.conf = conf;
+    this.uniqueIdentifier = inputContext.getUniqueIdentifier();
+    this.source = source;
+    this.combiner = combiner;
+    int bufferSizeMb = conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB,
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB_DEFAULT);
+    this.table = new RawKeyHashTable((long) bufferSizeMb << 20, combiner);
+    this.comparator = ConfigUtils.getIntermediateInputKeyComparator(conf);
+    this.rfs = ((LocalFileSystem) FileSystem.getLocal(conf)).getRaw();
+
+    this.keyClass = ConfigUtils.getIntermediateInputKeyClass(conf);
+    this.valClass = ConfigUtils.getIntermediateInputValueClass(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keyDeserializer = serializationFactory.getDeserializer(keyClass);
+    this.keyDeserializer.open(keyIn);
+    this.valDeserializer = serializationFactory.getDeserializer(valClass);
+    this.valDeserializer.open(valIn);
+
+    this.combineInputCounter = inputContext.getCounters().findCounter(
+        TaskCounter.COMBINE_INPUT_RECORDS);
+    this.combineOutputCounter = inputContext.getCounters().findCounter(
+        TaskCounter.COMBINE_OUTPUT_RECORDS);
+    this.spilledRecordsCounter = inputContext.getCounters().findCounter(
+        TaskCounter.SPILLED_RECORDS);
+    LOG.info("Aggregating input with combiner: "
+        + combiner.getClass().getName() + ", bufferSizeMb: " + bufferSizeMb);
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    if (!aggregated) {
+      aggregate();
+      aggregated = true;
+    }
+    boolean hasNext = runs.isEmpty() ? nextFromTable() : nextFromRuns();
+    if (hasNext) {
+      keyDeserialized = false;
+      valueDeserialized = false;
+      combineOutputCounter.increment(1);
+    }
+    return hasNext;
+  }
+
+  @Override
+  public Object getCurrentKey() throws IOException {
+    if (!keyDeserialized) {
+      keyIn.reset(rawKey.getData(), rawKey.getPosition(), rawKey.getLength()
+          - rawKey.getPosition());
+      key = keyDeserializer.deserialize(key);
+      keyDeserialized = true;
+    }
+    return key;
+  }
+
+  @Override
+  public Object getCurrentValue() throws IOException {
+    if (!valueDeserialized) {
+      valIn.reset(rawValue.getData(), rawValue.getPosition(),
+          rawValue.getLength() - rawValue.getPosition());
+      value = valDeserializer.deserialize(value);
+      valueDeserialized = true;
+    }
+    return value;
+  }
+
+  @Override
+  public DataInputBuffer getCurrentRawKey() throws IOException {
+    return rawKey;
+  }
+
+  @Override
+  public DataInputBuffer getCurrentRawValue() throws IOException {
+    return rawValue;
+  }
+
+  private void aggregate() throws IOException {
+    long numRecords = 0;
+    while (source.next()) {
+      DataInputBuffer k = source.getCurrentRawKey();
+      DataInputBuffer v = source.getCurrentRawValue();
+      numRecords++;
+      if (!table.add(k, v)) {
+        spill();
+        if (!table.add(k, v)) {
+          throw new IOException("Record of size "
+              + (k.getLength() - k.getPosition() + v.getLength() - v.getPosition())
+              + " does not fit in the aggregation buffer. Increase "
+              + TezJobConfig.TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB);
+        }
+      }
+    }
+    combineInputCounter.increment(numRecords);
+    if (runs.isEmpty()) {
+      LOG.info("Aggregated " + numRecords + " records into " + table.size()
+          + " keys in memory");
+      iterator = table.iterator();
+      return;
+    }
+
+    spill();
+    LOG.info("Aggregated " + numRecords + " records into " + runs.size()
+        + " runs. Merging");
+    int mergeFactor = conf.getInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_FACTOR,
+        TezJobConfig.DEFAULT_TEZ_RUNTIME_IO_SORT_FACTOR);
+    iterator = TezMerger.merge(conf, rfs, keyClass, valClass, null, false, 0,
+        conf.getInt("io.file.buffer.size",
+            TezJobConfig.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT),
+        runs.toArray(new Path[runs.size()]), true, mergeFactor,
+        new Path(uniqueIdentifier + "_aggregate"), comparator,
+        new NullProgressable(), null, spilledRecordsCounter, new Progress());
+  }
+
+  /**
+   * Writes the table, sorted by key, to a new run and clears it.
+   */
+  private void spill() throws IOException {
+    if (table.isEmpty()) {
+      return;
+    }
+    table.sort(comparator);
+    Path run = LOCAL_DIR_ALLOCATOR.getLocalPathForWrite(uniqueIdentifier
+        + "_aggregate_" + runs.size() + ".out", table.getMemoryUsed(), conf);
+    LOG.info("Spilling " + table.size() + " aggregated records to " + run);
+    FSDataOutputStream out = rfs.create(run);
+    try {
+      IFile.Writer writer = new IFile.Writer(conf, out, keyClass, valClass,
+          null, spilledRecordsCounter);
+      TezRawKeyValueIterator entries = table.iterator();
+      while (entries.next()) {
+        writer.append(entries.getKey(), entries.getValue());
+      }
+      writer.close();
+    } finally {
+      out.close();
+    }
+    runs.add(run);
+    table.clear();
+  }
+
+  private boolean nextFromTable() throws IOException {
+    if (!iterator.next()) {
+      table.clear();
+      return false;
+    }
+    DataInputBuffer k = iterator.getKey();
+    DataInputBuffer v = iterator.getValue();
+    rawKey.reset(k.getData(), k.getPosition(), k.getLength() - k.getPosition());
+    rawValue.reset(v.getData(), v.getPosition(), v.getLength() - v.getPosition());
+    return true;
+  }
+
+  /**
+   * Combines the values of consecutive records of the merged runs which have
+   * the same serialized key.
+   */
+  private boolean nextFromRuns() throws IOException {
+    if (!pendingRecord && !iterator.next()) {
+      iterator.close();
+      return false;
+    }
+    copy(iterator.getKey(), currentKeyBytes);
+    copy(iterator.getValue(), currentValueBytes);
+    pendingRecord = false;
+    while (iterator.next()) {
+      DataInputBuffer k = iterator.getKey();
+      if (WritableComparator.compareBytes(currentKeyBytes.getData(), 0,
+          currentKeyBytes.getLength(), k.getData(), k.getPosition(),
+          k.getLength() - k.getPosition()) != 0) {
+        pendingRecord = true;
+        break;
+      }
+      mergedKey.reset(currentKeyBytes.getData(), 0, currentKeyBytes.getLength());
+      mergedValue.reset(currentValueBytes.getData(), 0,
+          currentValueBytes.getLength());
+      combinedValueBytes.reset();
+      combiner.combine(mergedKey, mergedValue, iterator.getValue(),
+          combinedValueBytes);
+      DataOutputBuffer tmp = currentValueBytes;
+      currentValueBytes = combinedValueBytes;
+      combinedValueBytes = tmp;
+    }
+    rawKey.reset(currentKeyBytes.getData(), 0, currentKeyBytes.getLength());
+    rawValue.reset(currentValueBytes.getData(), 0, currentValueBytes.getLength());
+    return true;
+  }
+
+  private static void copy(DataInputBuffer in, DataOutputBuffer out)
+      throws IOException {
+    out.reset();
+    out.write(in.getData(), in.getPosition(), in.getLength() - in.getPosition());
+  }
+}
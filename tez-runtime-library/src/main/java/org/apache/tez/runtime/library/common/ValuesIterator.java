@@ -24,9 +24,12 @@ import java.util.NoSuchElementException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
 
@@ -35,6 +38,11 @@ import com.google.common.base.Preconditions;
 /**
  * Iterates values while keys match in sorted input.
  * 
+ * Group boundaries are detected on the raw key bytes. A key is only
+ * deserialized when it is requested, and the same values iterator is returned
+ * for every group. Keys and values can also be read in their serialized form
+ * through {@link #getRawKey()} and {@link #getRawValues()}.
+ * 
  * This class is not thread safe. Accessing methods from multiple threads will
  * lead to corrupt data.
  * 
@@ -47,16 +55,50 @@ public class ValuesIterator<KEY,VALUE> {
   //private boolean hasNext;                      // more w/ this key
   private boolean more;                         // more in file
   private RawComparator<KEY> comparator;
+  private final boolean rawComparison;
   private Deserializer<KEY> keyDeserializer;
   private Deserializer<VALUE> valDeserializer;
   private DataInputBuffer keyIn = new DataInputBuffer();
   private DataInputBuffer valueIn = new DataInputBuffer();
+  // raw bytes of the first key of the current group
+  private DataOutputBuffer currentKeyBytes = new DataOutputBuffer();
+  private DataInputBuffer rawKeyIn = new DataInputBuffer();
+  // copy of the current raw value, as the raw iterator moves past it
+  private DataOutputBuffer currentValueBytes = new DataOutputBuffer();
+  private DataInputBuffer rawValueIn = new DataInputBuffer();
+  // whether nextKey holds the deserialized form of the current raw key
+  private boolean nextKeyDeserialized;
+  // whether key holds the deserialized form of currentKeyBytes
+  private boolean keyDeserialized;
   private TezCounter inputKeyCounter;
   private TezCounter inputValueCounter;
   
   private int keyCtr = 0;
   private boolean hasMoreValues; // For the current key.
   private boolean isFirstRecord = true;
+  // whether the iterator is positioned on a group. Unlike more, this stays
+  // set once the values of the last group have been read.
+  private boolean inGroup = false;
+
+  private final GroupIterator<VALUE> valuesIterator = new GroupIterator<VALUE>() {
+    @Override
+    protected VALUE readValue() throws IOException {
+      readNextValue();
+      return value;
+    }
+  };
+  private final GroupIterable<VALUE> valuesIterable =
+      new GroupIterable<VALUE>(valuesIterator);
+
+  private final GroupIterator<DataInputBuffer> rawValuesIterator =
+      new GroupIterator<DataInputBuffer>() {
+    @Override
+    protected DataInputBuffer readValue() throws IOException {
+      return readNextRawValue();
+    }
+  };
+  private final GroupIterable<DataInputBuffer> rawValuesIterable =
+      new GroupIterable<DataInputBuffer>(rawValuesIterator);
   
   public ValuesIterator (TezRawKeyValueIterator in, 
                          RawComparator<KEY> comparator, 
@@ -67,6 +109,9 @@ public class ValuesIterator<KEY,VALUE> {
     throws IOException {
     this.in = in;
     this.comparator = comparator;
+    this.rawComparison = conf.getBoolean(
+        TezJobConfig.TEZ_RUNTIME_GROUP_RAW_COMPARISON,
+        TezJobConfig.DEFAULT_TEZ_RUNTIME_GROUP_RAW_COMPARISON);
     this.inputKeyCounter = inputKeyCounter;
     this.inputValueCounter = inputValueCounter;
     SerializationFactory serializationFactory = new SerializationFactory(conf);
@@ -86,68 +131,109 @@ public class ValuesIterator<KEY,VALUE> {
   public boolean moveToNext() throws IOException {
     if (isFirstRecord) {
       readNextKey();
-      key = nextKey;
-      nextKey = null;
+      if (more) {
+        startGroup();
+      }
       hasMoreValues = more;
       isFirstRecord = false;
     } else {
       nextKey();
     }
+    inGroup = more;
     return more;
   }
   
   /** The current key. */
-  public KEY getKey() { 
+  public KEY getKey() throws IOException {
+    if (!keyDeserialized && inGroup) {
+      keyIn.reset(currentKeyBytes.getData(), 0, currentKeyBytes.getLength());
+      // deserialize into the spare key object, so the previous key is left
+      // untouched as before
+      nextKey = keyDeserializer.deserialize(nextKey);
+      KEY tmpKey = key;
+      key = nextKey;
+      nextKey = tmpKey;
+      keyDeserialized = true;
+    }
     return key; 
   }
+
+  /**
+   * The serialized bytes of the current key. The buffer is only valid until
+   * moveToNext is invoked.
+   */
+  public DataInputBuffer getRawKey() {
+    rawKeyIn.reset(currentKeyBytes.getData(), 0, currentKeyBytes.getLength());
+    return rawKeyIn;
+  }
   
   // TODO NEWTEZ Maybe add another method which returns an iterator instead of iterable
   
   public Iterable<VALUE> getValues() {
-    return new Iterable<VALUE>() {
-
-      @Override
-      public Iterator<VALUE> iterator() {
-        
-        return new Iterator<VALUE>() {
-
-          private final int keyNumber = keyCtr;
-          
-          @Override
-          public boolean hasNext() {
-            return hasMoreValues;
-          }
-
-          @Override
-          public VALUE next() {
-            if (!hasMoreValues) {
-              throw new NoSuchElementException("iterate past last value");
-            }
-            Preconditions
-                .checkState(
-                    keyNumber == keyCtr,
-                    "Cannot use values iterator on the previous K-V pair after moveToNext has been invoked to move to the next K-V pair");
-            
-            try {
-              readNextValue();
-              readNextKey();
-            } catch (IOException ie) {
-              throw new RuntimeException("problem advancing post rec#"+keyCtr, ie);
-            }
-            inputValueCounter.increment(1);
-            return value;
-          }
-
-          @Override
-          public void remove() {
-            throw new UnsupportedOperationException("Cannot remove elements");
-          }
-        };
+    valuesIterator.keyNumber = keyCtr;
+    return valuesIterable;
+  }
+
+  /**
+   * The serialized values for the current key. Each buffer is only valid
+   * until the iterator is advanced.
+   */
+  public Iterable<DataInputBuffer> getRawValues() {
+    rawValuesIterator.keyNumber = keyCtr;
+    return rawValuesIterable;
+  }
+
+  private static class GroupIterable<T> implements Iterable<T> {
+
+    private final Iterator<T> iterator;
+
+    GroupIterable(Iterator<T> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return iterator;
+    }
+  }
+
+  private abstract class GroupIterator<T> implements Iterator<T> {
+
+    private int keyNumber;
+
+    protected abstract T readValue() throws IOException;
+
+    @Override
+    public boolean hasNext() {
+      return hasMoreValues;
+    }
+
+    @Override
+    public T next() {
+      if (!hasMoreValues) {
+        throw new NoSuchElementException("iterate past last value");
       }
-    };
+      Preconditions
+          .checkState(
+              keyNumber == keyCtr,
+              "Cannot use values iterator on the previous K-V pair after moveToNext has been invoked to move to the next K-V pair");
+
+      T result;
+      try {
+        result = readValue();
+        readNextKey();
+      } catch (IOException ie) {
+        throw new RuntimeException("problem advancing post rec#"+keyCtr, ie);
+      }
+      inputValueCounter.increment(1);
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Cannot remove elements");
+    }
   }
-  
-  
 
   /** Start processing next unique key. */
   private void nextKey() throws IOException {
@@ -158,30 +244,70 @@ public class ValuesIterator<KEY,VALUE> {
     if (more) {
       inputKeyCounter.increment(1);
       ++keyCtr;
+      startGroup();
     }
-    
-    // move the next key to the current one
-    KEY tmpKey = key;
-    key = nextKey;
-    nextKey = tmpKey;
     hasMoreValues = more;
   }
 
+  /**
+   * Make the key the iterator is positioned on the current key. The key object
+   * is only deserialized when it is requested, unless that already happened
+   * while comparing it.
+   */
+  private void startGroup() throws IOException {
+    DataInputBuffer nextKeyBytes = in.getKey();
+    int start = nextKeyBytes.getPosition();
+    int length = nextKeyBytes.getLength() - start;
+    currentKeyBytes.reset();
+    currentKeyBytes.write(nextKeyBytes.getData(), start, length);
+    keyDeserialized = nextKeyDeserialized;
+    if (nextKeyDeserialized) {
+      // move the next key to the current one
+      KEY tmpKey = key;
+      key = nextKey;
+      nextKey = tmpKey;
+      nextKeyDeserialized = false;
+    }
+  }
+
   /** 
    * read the next key - which may be the same as the current key.
    */
   private void readNextKey() throws IOException {
     more = in.next();
+    nextKeyDeserialized = false;
     if (more) {      
-      DataInputBuffer nextKeyBytes = in.getKey();
-      keyIn.reset(nextKeyBytes.getData(), nextKeyBytes.getPosition(), nextKeyBytes.getLength());
-      nextKey = keyDeserializer.deserialize(nextKey);
-      hasMoreValues = key != null && (comparator.compare(key, nextKey) == 0);
+      hasMoreValues = !isFirstRecord && isSameGroup(in.getKey());
     } else {
       hasMoreValues = false;
     }
   }
 
+  private boolean isSameGroup(DataInputBuffer nextKeyBytes) throws IOException {
+    byte[] data = nextKeyBytes.getData();
+    int start = nextKeyBytes.getPosition();
+    int length = nextKeyBytes.getLength() - start;
+    if (WritableComparator.compareBytes(currentKeyBytes.getData(), 0,
+        currentKeyBytes.getLength(), data, start, length) == 0) {
+      return true;
+    }
+    if (rawComparison) {
+      return comparator.compare(currentKeyBytes.getData(), 0,
+          currentKeyBytes.getLength(), data, start, length) == 0;
+    }
+    KEY currentKey = getKey();
+    deserializeNextKey(nextKeyBytes);
+    nextKeyDeserialized = true;
+    return comparator.compare(currentKey, nextKey) == 0;
+  }
+
+  private void deserializeNextKey(DataInputBuffer nextKeyBytes)
+      throws IOException {
+    keyIn.reset(nextKeyBytes.getData(), nextKeyBytes.getPosition(),
+        nextKeyBytes.getLength() - nextKeyBytes.getPosition());
+    nextKey = keyDeserializer.deserialize(nextKey);
+  }
+
   /**
    * Read the next value
    * @throws IOException
@@ -191,4 +317,19 @@ public class ValuesIterator<KEY,VALUE> {
     valueIn.reset(nextValueBytes.getData(), nextValueBytes.getPosition(), nextValueBytes.getLength());
     value = valDeserializer.deserialize(value);
   }
+
+  /**
+   * Copy the bytes of the next value, so that they stay valid once the raw
+   * iterator moves on to the next record.
+   */
+  private DataInputBuffer readNextRawValue() throws IOException {
+    DataInputBuffer nextValueBytes = in.getValue();
+    currentValueBytes.reset();
+    currentValueBytes.write(nextValueBytes.getData(),
+        nextValueBytes.getPosition(),
+        nextValueBytes.getLength() - nextValueBytes.getPosition());
+    rawValueIn.reset(currentValueBytes.getData(), 0,
+        currentValueBytes.getLength());
+    return rawValueIn;
+  }
 }
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+
+/**
+ * Combines records with equal serialized keys in memory before they are
+ * written to an {@link ExternalSorter}, so that frequent keys take up less of
+ * the sort buffer and cause fewer spills.
+ * 
+ * Records are held in a {@link RawKeyHashTable} and written to the sorter
+ * whenever the table fills up, and on {@link #flush()}. Each time the table is
+ * flushed, the fraction of records which were combined is checked. If it is
+ * below {@link TezJobConfig#TEZ_RUNTIME_SORT_HASH_COMBINER_MIN_HIT_RATE},
+ * combining is turned off and records are passed straight to the sorter from
+ * then on.
+ */
+@Private
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class HashPreCombiner {
+
+  private static final Log LOG = LogFactory.getLog(HashPreCombiner.class);
+
+  private final ExternalSorter sorter;
+  private final RawKeyHashTable table;
+  private final Partitioner partitioner;
+  private final int numPartitions;
+  private final float minHitRate;
+
+  private final Class keyClass;
+  private final Class valClass;
+  private final Serializer keySerializer;
+  private final Serializer valSerializer;
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+  private final DataOutputBuffer valueBuffer = new DataOutputBuffer();
+  private final DataInputBuffer keyIn = new DataInputBuffer();
+  private final DataInputBuffer valueIn = new DataInputBuffer();
+
+  private final TezCounter inputRecordsCounter;
+  private final TezCounter outputRecordsCounter;
+
+  private boolean enabled = true;
+  // records added since the table was last flushed
+  private long numRecordsAdded = 0;
+
+  /**
+   * @return a pre-combiner for the sorter, or null if none is configured
+   */
+  public static HashPreCombiner create(TezOutputContext outputContext,
+      Configuration conf, ExternalSorter sorter, int numPartitions)
+      throws IOException {
+    Class<? extends RawValueCombiner> combinerClass = conf.getClass(
+        TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_CLASS, null,
+        RawValueCombiner.class);
+    if (combinerClass == null) {
+      return null;
+    }
+    return new HashPreCombiner(outputContext, conf, sorter, numPartitions,
+        ReflectionUtils.newInstance(combinerClass, conf));
+  }
+
+  public HashPreCombiner(TezOutputContext outputContext, Configuration conf,
+      ExternalSorter sorter, int numPartitions, RawValueCombiner combiner)
+      throws IOException {
+    this.sorter = sorter;
+    this.numPartitions = numPartitions;
+    int bufferSizeMb = conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_BUFFER_SIZE_MB,
+        TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_BUFFER_SIZE_MB_DEFAULT);
+    this.table = new RawKeyHashTable((long) bufferSizeMb << 20, combiner);
+    this.minHitRate = conf.getFloat(
+        TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_MIN_HIT_RATE,
+        TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_MIN_HIT_RATE_DEFAULT);
+
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_NUM_EXPECTED_PARTITIONS,
+        numPartitions);
+    this.partitioner = TezRuntimeUtils.instantiatePartitioner(conf);
+    this.keyClass = ConfigUtils.getIntermediateOutputKeyClass(conf);
+    this.valClass = ConfigUtils.getIntermediateOutputValueClass(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keySerializer = serializationFactory.getSerializer(keyClass);
+    this.keySerializer.open(keyBuffer);
+    this.valSerializer = serializationFactory.getSerializer(valClass);
+    this.valSerializer.open(valueBuffer);
+
+    this.inputRecordsCounter = outputContext.getCounters().findCounter(
+        TaskCounter.HASH_COMBINE_INPUT_RECORDS);
+    this.outputRecordsCounter = outputContext.getCounters().findCounter(
+        TaskCounter.HASH_COMBINE_OUTPUT_RECORDS);
+    LOG.info("Using hash pre-combiner: " + combiner.getClass().getName()
+        + ", bufferSizeMb: " + bufferSizeMb + ", minHitRate: " + minHitRate);
+  }
+
+  public void write(Object key, Object value) throws IOException {
+    // checked here as well as in the sorter, since the records held in the
+    // table are only passed on to it in serialized form
+    if (key.getClass() != keyClass) {
+      throw new IOException("Type mismatch in key from map: expected "
+          + keyClass.getName() + ", received " + key.getClass().getName());
+    }
+    if (value.getClass() != valClass) {
+      throw new IOException("Type mismatch in value from map: expected "
+          + valClass.getName() + ", received " + value.getClass().getName());
+    }
+    if (!enabled) {
+      sorter.write(key, value);
+      return;
+    }
+    int partition = partitioner.getPartition(key, value, numPartitions);
+    keyBuffer.reset();
+    keySerializer.serialize(key);
+    valueBuffer.reset();
+    valSerializer.serialize(value);
+    keyIn.reset(keyBuffer.getData(), 0, keyBuffer.getLength());
+    valueIn.reset(valueBuffer.getData(), 0, valueBuffer.getLength());
+    add(keyIn, valueIn, partition);
+  }
+
+  public void write(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    if (!enabled) {
+      sorter.write(key, value, partition);
+      return;
+    }
+    add(key, value, partition);
+  }
+
+  private void add(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    inputRecordsCounter.increment(1);
+    if (table.add(key, value, partition)) {
+      numRecordsAdded++;
+      return;
+    }
+    flush();
+    if (enabled && table.add(key, value, partition)) {
+      numRecordsAdded++;
+    } else {
+      // combining got turned off, or the record is larger than the table
+      outputRecordsCounter.increment(1);
+      sorter.write(key, value, partition);
+    }
+  }
+
+  /**
+   * Writes all records held in memory to the sorter.
+   */
+  public void flush() throws IOException {
+    if (table.isEmpty()) {
+      return;
+    }
+    int numEntries = table.size();
+    RawKeyHashTable.EntryIterator entries = table.iterator();
+    while (entries.next()) {
+      sorter.write(entries.getKey(), entries.getValue(),
+          entries.getPartition());
+    }
+    outputRecordsCounter.increment(numEntries);
+    table.clear();
+
+    float hitRate = 1 - (float) numEntries / numRecordsAdded;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Flushed " + numEntries + " combined records out of "
+          + numRecordsAdded + ", hitRate: " + hitRate);
+    }
+    numRecordsAdded = 0;
+    if (enabled && hitRate < minHitRate) {
+      LOG.info("Disabling hash pre-combiner, as only " + (hitRate * 100)
+          + "% of the records were combined");
+      enabled = false;
+    }
+  }
+}
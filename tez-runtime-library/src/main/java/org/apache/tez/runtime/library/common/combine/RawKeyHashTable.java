@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An open addressing hash table of serialized key-value pairs. Values of keys
+ * with identical serialized bytes, within the same partition, are combined
+ * with a {@link RawValueCombiner} as they are added.
+ * 
+ * Entries are stored back to back in a single byte array, and the table only
+ * holds int offsets into it, so no objects are created per record. All
+ * allocations are accounted against a fixed memory limit. Once the limit is
+ * reached, {@link #add(DataInputBuffer, DataInputBuffer)} fails and the caller
+ * is expected to drain the table with {@link #iterator()} and
+ * {@link #clear()} it.
+ * 
+ * This class is not thread safe.
+ */
+@Private
+public class RawKeyHashTable {
+
+  // Entry layout: hash, index, partition, key length, value length, value
+  // capacity, followed by the key and value bytes
+  private static final int HASH = 0;
+  private static final int INDEX = 4;
+  private static final int PARTITION = 8;
+  private static final int KEY_LENGTH = 12;
+  private static final int VALUE_LENGTH = 16;
+  private static final int VALUE_CAPACITY = 20;
+  private static final int HEADER_LENGTH = 24;
+
+  private static final int EMPTY = -1;
+  private static final int MIN_SLOTS = 1024;
+  private static final int MIN_ARENA_LENGTH = 64 << 10;
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  private final long memoryLimit;
+  private final RawValueCombiner combiner;
+
+  private byte[] arena = new byte[0];
+  private int arenaLength = 0;
+  // offsets of entries in the arena, indexed by hash
+  private int[] slots;
+  // offsets of entries in the arena, in insertion order
+  private int[] entries;
+  private int numEntries = 0;
+
+  private final DataInputBuffer currentKey = new DataInputBuffer();
+  private final DataInputBuffer currentValue = new DataInputBuffer();
+  private final DataOutputBuffer combined = new DataOutputBuffer();
+
+  public RawKeyHashTable(long memoryLimit, RawValueCombiner combiner) {
+    Preconditions.checkArgument(memoryLimit >= 8 * MIN_SLOTS,
+        "Memory limit of " + memoryLimit + " bytes is too small");
+    this.memoryLimit = memoryLimit;
+    this.combiner = combiner;
+    this.slots = new int[MIN_SLOTS];
+    Arrays.fill(slots, EMPTY);
+    this.entries = new int[MIN_SLOTS / 2];
+  }
+
+  /**
+   * Adds a record, combining it with the existing value of the key if there
+   * is one.
+   * 
+   * @return false if there is not enough memory left for the record. The
+   *         table is left unchanged in that case.
+   */
+  public boolean add(DataInputBuffer key, DataInputBuffer value)
+      throws IOException {
+    return add(key, value, 0);
+  }
+
+  /**
+   * Adds a record to the given partition, combining it with the existing
+   * value of the key in that partition if there is one.
+   * 
+   * @return false if there is not enough memory left for the record. The
+   *         table is left unchanged in that case.
+   */
+  public boolean add(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    byte[] keyData = key.getData();
+    int keyStart = key.getPosition();
+    int keyLength = key.getLength() - keyStart;
+    int hash = 31 * WritableComparator.hashBytes(keyData, keyStart, keyLength)
+        + partition;
+
+    int slot = findSlot(hash, partition, keyData, keyStart, keyLength);
+    int offset = slots[slot];
+    if (offset != EMPTY) {
+      return combine(offset, value);
+    }
+
+    if (numEntries == entries.length) {
+      if (!growIndex()) {
+        return false;
+      }
+      slot = findSlot(hash, partition, keyData, keyStart, keyLength);
+    }
+    int valueLength = value.getLength() - value.getPosition();
+    offset = allocate(HEADER_LENGTH + keyLength + valueLength);
+    if (offset == EMPTY) {
+      return false;
+    }
+    writeInt(offset + HASH, hash);
+    writeInt(offset + INDEX, numEntries);
+    writeInt(offset + PARTITION, partition);
+    writeInt(offset + KEY_LENGTH, keyLength);
+    writeInt(offset + VALUE_LENGTH, valueLength);
+    writeInt(offset + VALUE_CAPACITY, valueLength);
+    System.arraycopy(keyData, keyStart, arena, offset + HEADER_LENGTH,
+        keyLength);
+    System.arraycopy(value.getData(), value.getPosition(), arena, offset
+        + HEADER_LENGTH + keyLength, valueLength);
+    slots[slot] = offset;
+    entries[numEntries++] = offset;
+    return true;
+  }
+
+  private boolean combine(int offset, DataInputBuffer value)
+      throws IOException {
+    int keyLength = readInt(offset + KEY_LENGTH);
+    int valueStart = offset + HEADER_LENGTH + keyLength;
+    currentKey.reset(arena, offset + HEADER_LENGTH, keyLength);
+    currentValue.reset(arena, valueStart, readInt(offset + VALUE_LENGTH));
+    combined.reset();
+    combiner.combine(currentKey, currentValue, value, combined);
+
+    int combinedLength = combined.getLength();
+    if (combinedLength <= readInt(offset + VALUE_CAPACITY)) {
+      System.arraycopy(combined.getData(), 0, arena, valueStart,
+          combinedLength);
+      writeInt(offset + VALUE_LENGTH, combinedLength);
+      return true;
+    }
+
+    // The combined value has outgrown the entry. Move the entry to the end of
+    // the arena, leaving the old bytes unused until the table is cleared.
+    // Values which keep growing get twice the space, to bound the number of
+    // moves.
+    int newCapacity = (int) Math.min(2L * combinedLength, MAX_ARRAY_LENGTH);
+    int newOffset = allocate(HEADER_LENGTH + keyLength + newCapacity);
+    if (newOffset == EMPTY) {
+      newCapacity = combinedLength;
+      newOffset = allocate(HEADER_LENGTH + keyLength + newCapacity);
+      if (newOffset == EMPTY) {
+        return false;
+      }
+    }
+    System.arraycopy(arena, offset, arena, newOffset, HEADER_LENGTH
+        + keyLength);
+    writeInt(newOffset + VALUE_LENGTH, combinedLength);
+    writeInt(newOffset + VALUE_CAPACITY, newCapacity);
+    System.arraycopy(combined.getData(), 0, arena, newOffset + HEADER_LENGTH
+        + keyLength, combinedLength);
+    entries[readInt(offset + INDEX)] = newOffset;
+    slots[findSlot(readInt(offset + HASH), readInt(offset + PARTITION), arena,
+        offset + HEADER_LENGTH, keyLength)] = newOffset;
+    return true;
+  }
+
+  private int findSlot(int hash, int partition, byte[] keyData, int keyStart,
+      int keyLength) {
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    while (true) {
+      int offset = slots[slot];
+      if (offset == EMPTY) {
+        return slot;
+      }
+      if (readInt(offset + HASH) == hash
+          && readInt(offset + PARTITION) == partition
+          && readInt(offset + KEY_LENGTH) == keyLength
+          && WritableComparator.compareBytes(arena, offset + HEADER_LENGTH,
+              keyLength, keyData, keyStart, keyLength) == 0) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Doubles the slots and the entry index, keeping the load factor at 0.5.
+   */
+  private boolean growIndex() {
+    long newIndexMemory = 4L * (slots.length * 2 + entries.length * 2);
+    if (newIndexMemory + arena.length > memoryLimit
+        || slots.length * 2 > MAX_ARRAY_LENGTH) {
+      return false;
+    }
+    entries = Arrays.copyOf(entries, entries.length * 2);
+    slots = new int[slots.length * 2];
+    Arrays.fill(slots, EMPTY);
+    int mask = slots.length - 1;
+    for (int i = 0; i < numEntries; i++) {
+      int slot = readInt(entries[i] + HASH) & mask;
+      while (slots[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = entries[i];
+    }
+    return true;
+  }
+
+  /**
+   * @return the offset of the allocated bytes, or EMPTY if the memory limit
+   *         does not allow for them
+   */
+  private int allocate(int length) {
+    long required = (long) arenaLength + length;
+    if (required > arena.length) {
+      long available = memoryLimit - 4L * (slots.length + entries.length);
+      long newLength = Math.max(Math.max(MIN_ARENA_LENGTH, 2L * arena.length),
+          required);
+      newLength = Math.min(Math.min(newLength, available), MAX_ARRAY_LENGTH);
+      if (newLength < required) {
+        return EMPTY;
+      }
+      arena = Arrays.copyOf(arena, (int) newLength);
+    }
+    int offset = arenaLength;
+    arenaLength += length;
+    return offset;
+  }
+
+  /**
+   * Sorts the entries by key, which changes the order in which
+   * {@link #iterator()} returns them.
+   */
+  public void sort(final RawComparator<?> comparator) {
+    new QuickSort().sort(new IndexedSortable() {
+      @Override
+      public int compare(int i, int j) {
+        int offset1 = entries[i];
+        int offset2 = entries[j];
+        return comparator.compare(arena, offset1 + HEADER_LENGTH,
+            readInt(offset1 + KEY_LENGTH), arena, offset2 + HEADER_LENGTH,
+            readInt(offset2 + KEY_LENGTH));
+      }
+
+      @Override
+      public void swap(int i, int j) {
+        int tmp = entries[i];
+        entries[i] = entries[j];
+        entries[j] = tmp;
+      }
+    }, 0, numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      writeInt(entries[i] + INDEX, i);
+    }
+  }
+
+  /**
+   * @return an iterator over the entries. The table must not be modified
+   *         while it is in use.
+   */
+  public EntryIterator iterator() {
+    return new EntryIterator();
+  }
+
+  /**
+   * Iterates the entries of the table, along with their partition.
+   */
+  public class EntryIterator implements TezRawKeyValueIterator {
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private int current = -1;
+
+    private EntryIterator() {
+    }
+
+    @Override
+    public DataInputBuffer getKey() throws IOException {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() throws IOException {
+      return value;
+    }
+
+    public int getPartition() {
+      return readInt(entries[current] + PARTITION);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if (++current >= numEntries) {
+        return false;
+      }
+      int offset = entries[current];
+      int keyLength = readInt(offset + KEY_LENGTH);
+      key.reset(arena, offset + HEADER_LENGTH, keyLength);
+      value.reset(arena, offset + HEADER_LENGTH + keyLength,
+          readInt(offset + VALUE_LENGTH));
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public Progress getProgress() {
+      return null;
+    }
+  }
+
+  /**
+   * Removes all entries. Memory which has been allocated is kept for reuse.
+   */
+  public void clear() {
+    Arrays.fill(slots, EMPTY);
+    arenaLength = 0;
+    numEntries = 0;
+  }
+
+  public int size() {
+    return numEntries;
+  }
+
+  public boolean isEmpty() {
+    return numEntries == 0;
+  }
+
+  /**
+   * @return the number of bytes allocated by the table
+   */
+  public long getMemoryUsed() {
+    return arena.length + 4L * (slots.length + entries.length);
+  }
+
+  private int readInt(int offset) {
+    return WritableComparator.readInt(arena, offset);
+  }
+
+  private void writeInt(int offset, int value) {
+    arena[offset] = (byte) (value >>> 24);
+    arena[offset + 1] = (byte) (value >>> 16);
+    arena[offset + 2] = (byte) (value >>> 8);
+    arena[offset + 3] = (byte) value;
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience.Public;
+import org.apache.hadoop.classification.InterfaceStability.Unstable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Combines two serialized values of the same key into one. Used by the hash
+ * based aggregation stages, which combine records as they arrive instead of
+ * over sorted runs.
+ * 
+ * The combine function must be associative and commutative, since values are
+ * combined in no particular order, and possibly more than once per key.
+ * 
+ * Implementations need to provide a 0 argument constructor, and may implement
+ * {@link org.apache.hadoop.conf.Configurable} to receive the configuration.
+ */
+@Public
+@Unstable
+public interface RawValueCombiner {
+
+  /**
+   * @param key the serialized key, between its position and length
+   * @param value1 the first serialized value
+   * @param value2 the second serialized value
+   * @param result buffer to write the combined serialized value to. It is
+   *          reset before the call.
+   */
+  public void combine(DataInputBuffer key, DataInputBuffer value1,
+      DataInputBuffer value2, DataOutputBuffer result) throws IOException;
+}
@@ -27,6 +27,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,18 +38,22 @@ import javax.net.ssl.HttpsURLConnection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.security.ssl.SSLFactory;
 import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.runtime.api.TezInputContext;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.impl.MapOutput.Type;
 import org.apache.tez.runtime.library.common.sort.impl.IFileInputStream;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -82,6 +87,10 @@ class Fetcher extends Thread {
   // Decompression of map-outputs
   private final CompressionCodec codec;
   private final Decompressor decompressor;
+  // Bytes decompressed while fetching, and bytes written to disk as fetched,
+  // which are only decompressed when merged.
+  private final TezCounter bytesToMem;
+  private final TezCounter bytesToDisk;
   private final SecretKey jobTokenSecret;
 
   private volatile boolean stopped = false;
@@ -120,6 +129,11 @@ class Fetcher extends Thread {
     wrongReduceErrs = inputContext.getCounters().findCounter(SHUFFLE_ERR_GRP_NAME,
         ShuffleErrors.WRONG_REDUCE.toString());
 
+    bytesToMem = inputContext.getCounters().findCounter(
+        TaskCounter.SHUFFLE_BYTES_TO_MEM);
+    bytesToDisk = inputContext.getCounters().findCounter(
+        TaskCounter.SHUFFLE_BYTES_TO_DISK);
+
     this.ifileReadAhead = ifileReadAhead;
     this.ifileReadAheadLength = ifileReadAheadLength;
     
@@ -182,6 +196,10 @@ class Fetcher extends Thread {
       return;
     } catch (Throwable t) {
       shuffle.reportException(t);
+    } finally {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+      }
     }
   }
 
@@ -237,6 +255,11 @@ class Fetcher extends Thread {
     
     // List of maps to be fetched yet
     remaining = new LinkedHashSet<InputAttemptIdentifier>(srcAttempts);
+
+    if (isLocalShuffle(host)) {
+      copyFromLocalHost(host);
+      return;
+    }
     
     // Construct the url and connect
     DataInputStream input;
@@ -346,6 +369,67 @@ class Fetcher extends Thread {
     }
   }
   
+  private static boolean isLocalShuffle(MapHost host)
+      throws MalformedURLException {
+    return new URL(host.getBaseUrl()).getPort() == ShuffleUtils.LOCAL_SHUFFLE_PORT;
+  }
+
+  /**
+   * Read map-outputs which are not served by a shuffle service directly from
+   * the local dirs, as in local mode.
+   */
+  private void copyFromLocalHost(MapHost host) {
+    try {
+      for (Iterator<InputAttemptIdentifier> iter = remaining.iterator();
+          iter.hasNext();) {
+        InputAttemptIdentifier srcAttemptId = iter.next();
+        MapOutput mapOutput = null;
+        try {
+          long startTime = System.currentTimeMillis();
+          TezIndexRecord indexRecord = ShuffleUtils.getLocalOutputIndexRecord(
+              job, srcAttemptId.getPathComponent(), host.getPartitionId());
+          mapOutput = merger.reserve(srcAttemptId, indexRecord.getRawLength(),
+              id);
+          if (mapOutput.getType() == Type.WAIT) {
+            LOG.info("fetcher#" + id + " - MergerManager returned Status.WAIT ...");
+            return;
+          }
+          FSDataInputStream input = ShuffleUtils.openLocalOutput(job,
+              srcAttemptId.getPathComponent(), indexRecord);
+          try {
+            if (mapOutput.getType() == Type.MEMORY) {
+              shuffleToMemory(host, mapOutput, input,
+                  (int) indexRecord.getRawLength(),
+                  (int) indexRecord.getPartLength());
+            } else {
+              shuffleToDisk(host, mapOutput, input, indexRecord.getPartLength());
+            }
+          } finally {
+            IOUtils.cleanup(LOG, input);
+          }
+          scheduler.copySucceeded(srcAttemptId, host,
+              indexRecord.getPartLength(),
+              System.currentTimeMillis() - startTime, mapOutput);
+          iter.remove();
+          metrics.successFetch();
+        } catch (IOException ioe) {
+          ioErrs.increment(1);
+          LOG.warn("Failed to read local output of " + srcAttemptId, ioe);
+          if (mapOutput != null) {
+            mapOutput.abort();
+          }
+          metrics.failedFetch();
+          iter.remove();
+          scheduler.copyFailed(srcAttemptId, host, true);
+        }
+      }
+    } finally {
+      for (InputAttemptIdentifier left : remaining) {
+        scheduler.putBackKnownMapOutput(host, left);
+      }
+    }
+  }
+
   private static InputAttemptIdentifier[] EMPTY_ATTEMPT_ID_ARRAY = new InputAttemptIdentifier[0];
   
   private InputAttemptIdentifier[] copyMapOutput(MapHost host,
@@ -579,6 +663,7 @@ class Fetcher extends Thread {
     try {
       IOUtils.readFully(input, shuffleData, 0, shuffleData.length);
       metrics.inputBytes(shuffleData.length);
+      bytesToMem.increment(shuffleData.length);
       LOG.info("Read " + shuffleData.length + " bytes from map-output for " +
                mapOutput.getAttemptIdentifier());
     } catch (IOException ioe) {      
@@ -617,6 +702,7 @@ class Fetcher extends Thread {
                mapOutput.getAttemptIdentifier());
 
       output.close();
+      bytesToDisk.increment(compressedLength - bytesLeft);
     } catch (IOException ioe) {
       // Close the streams
       IOUtils.cleanup(LOG, input, output);
@@ -58,6 +58,8 @@ import org.apache.tez.runtime.library.common.sort.impl.TezMerger.Segment;
 import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutputFiles;
 import org.apache.tez.runtime.library.hadoop.compat.NullProgressable;
 
+import com.google.common.annotations.VisibleForTesting;
+
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
 @SuppressWarnings(value={"rawtypes"})
@@ -296,6 +298,11 @@ public class MergeManager {
         primaryMapOutput);
   }
   
+  @VisibleForTesting
+  synchronized long getUsedMemory() {
+    return usedMemory;
+  }
+
   synchronized void unreserve(long size) {
     commitMemory -= size;
     usedMemory -= size;
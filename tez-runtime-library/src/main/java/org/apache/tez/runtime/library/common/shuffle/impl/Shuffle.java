@@ -138,9 +138,6 @@ public class Shuffle implements ExceptionReporter {
           shuffledMapsCounter,
           reduceShuffleBytes,
           failedShuffleCounter);
-    eventHandler= new ShuffleInputEventHandler(
-          inputContext,
-          scheduler);
     merger = new MergeManager(
           this.conf,
           localFS,
@@ -151,6 +148,11 @@ public class Shuffle implements ExceptionReporter {
           reduceCombineInputCounter,
           mergedMapOutputsCounter,
           this);
+    eventHandler= new ShuffleInputEventHandler(
+          inputContext,
+          scheduler,
+          merger,
+          codec);
   }
 
   public void handleEvents(List<Event> events) {
@@ -18,18 +18,27 @@
 
 package org.apache.tez.runtime.library.common.shuffle.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.TezInputContext;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
 import org.apache.tez.runtime.api.events.InputFailedEvent;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.impl.MapOutput.Type;
+import org.apache.tez.runtime.library.common.sort.impl.IFileInputStream;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -39,13 +48,17 @@ public class ShuffleInputEventHandler {
 
   private final ShuffleScheduler scheduler;
   private final TezInputContext inputContext;
+  private final MergeManager merger;
+  private final CompressionCodec codec;
 
   private int maxMapRuntime = 0;
   
   public ShuffleInputEventHandler(TezInputContext inputContext,
-      ShuffleScheduler scheduler) {
+      ShuffleScheduler scheduler, MergeManager merger, CompressionCodec codec) {
     this.inputContext = inputContext;
     this.scheduler = scheduler;
+    this.merger = merger;
+    this.codec = codec;
   }
 
   public void handleEvents(List<Event> events) {
@@ -75,8 +88,13 @@ public class ShuffleInputEventHandler {
     int partitionId = dmEvent.getSourceIndex();
     URI baseUri = getBaseURI(shufflePayload.getHost(), shufflePayload.getPort(), partitionId);
     InputAttemptIdentifier srcAttemptIdentifier = new InputAttemptIdentifier(dmEvent.getTargetIndex(), dmEvent.getVersion(), shufflePayload.getPathComponent());
-    LOG.info("DataMovementEvent baseUri:" + baseUri + ", src: " + srcAttemptIdentifier);
-    scheduler.addKnownMapOutput(shufflePayload.getHost(), partitionId, baseUri.toString(), srcAttemptIdentifier);
+    if (shufflePayload.hasData()
+        && copyInlineData(srcAttemptIdentifier, shufflePayload.getData())) {
+      LOG.info("DataMovementEvent with inline data, src: " + srcAttemptIdentifier);
+    } else {
+      LOG.info("DataMovementEvent baseUri:" + baseUri + ", src: " + srcAttemptIdentifier);
+      scheduler.addKnownMapOutput(shufflePayload.getHost(), partitionId, baseUri.toString(), srcAttemptIdentifier);
+    }
     
     // TODO NEWTEZ See if this duration hack can be removed.
     int duration = shufflePayload.getRunDuration();
@@ -86,6 +104,59 @@ public class ShuffleInputEventHandler {
     }
   }
   
+  /**
+   * Copy the partition sent inside the event straight into memory.
+   * 
+   * @return false if the data could not be copied, in which case it has to be
+   *         fetched from the producer
+   */
+  private boolean copyInlineData(InputAttemptIdentifier srcAttemptIdentifier,
+      DataProto data) {
+    if (scheduler.isInputFinished(
+        srcAttemptIdentifier.getInputIdentifier().getSrcTaskIndex())) {
+      // A duplicate or late event. Nothing to copy, or to fetch.
+      LOG.info("Ignoring inline data of " + srcAttemptIdentifier
+          + ", the input has already been copied");
+      return true;
+    }
+    MapOutput mapOutput = null;
+    try {
+      mapOutput = merger.reserve(srcAttemptIdentifier, data.getRawLength(), 0);
+      if (mapOutput.getType() != Type.MEMORY) {
+        // Don't wait for memory on the event thread, or spill small segments
+        if (mapOutput.getType() == Type.DISK) {
+          mapOutput.abort();
+        }
+        return false;
+      }
+      InputStream input = new IFileInputStream(data.getData().newInput(),
+          data.getCompressedLength(), false, 0);
+      Decompressor decompressor = null;
+      try {
+        if (codec != null) {
+          decompressor = CodecPool.getDecompressor(codec);
+          input = codec.createInputStream(input, decompressor);
+        }
+        byte[] shuffleData = mapOutput.getMemory();
+        IOUtils.readFully(input, shuffleData, 0, shuffleData.length);
+      } finally {
+        if (decompressor != null) {
+          CodecPool.returnDecompressor(decompressor);
+        }
+      }
+      scheduler.copySucceeded(srcAttemptIdentifier, null,
+          data.getCompressedLength(), 0, mapOutput);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to copy inline data of " + srcAttemptIdentifier
+          + ", fetching it instead", e);
+      if (mapOutput != null && mapOutput.getType() == Type.MEMORY) {
+        mapOutput.abort();
+      }
+      return false;
+    }
+  }
+
   private void processTaskFailedEvent(InputFailedEvent ifEvent) {
     InputAttemptIdentifier taIdentifier = new InputAttemptIdentifier(ifEvent.getSourceIndex(), ifEvent.getVersion());
     scheduler.obsoleteMapOutput(taIdentifier);
@@ -134,7 +134,10 @@ class ShuffleScheduler {
                                          ) throws IOException {
     String taskIdentifier = TezRuntimeUtils.getTaskAttemptIdentifier(srcAttemptIdentifier.getInputIdentifier().getSrcTaskIndex(), srcAttemptIdentifier.getAttemptNumber());
     failureCounts.remove(taskIdentifier);
-    hostFailures.remove(host.getHostName());
+    // host is null for data which was sent inside the event
+    if (host != null) {
+      hostFailures.remove(host.getHostName());
+    }
     
     if (!isInputFinished(srcAttemptIdentifier.getInputIdentifier().getSrcTaskIndex())) {
       output.commit();
@@ -155,8 +158,13 @@ class ShuffleScheduler {
                 inputContext.getSourceVertexName(), srcAttemptIdentifier.getInputIdentifier().getSrcTaskIndex(),
                 srcAttemptIdentifier.getAttemptNumber()) + " done");
       }
+    } else {
+      // Another attempt of the input has already been copied, e.g. through a
+      // duplicate or late event. Release the memory or disk reserved for it.
+      LOG.info("Discarding copy of " + srcAttemptIdentifier
+          + ", the input has already been copied");
+      output.abort();
     }
-    // TODO NEWTEZ Should this be releasing the output, if not committed ? Possible memory leak in case of speculation.
   }
 
   private void logProgress() {
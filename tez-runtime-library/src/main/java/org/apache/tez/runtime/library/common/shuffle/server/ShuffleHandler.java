@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -66,6 +67,10 @@ import org.apache.hadoop.yarn.server.api.AuxiliaryService;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.security.JobTokenIdentifier;
 import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.common.objectregistry.ObjectLifeCycle;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistry;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryFactory;
+import org.apache.tez.runtime.common.objectregistry.SizedObject;
 import org.apache.tez.runtime.library.common.security.JobTokenSecretManager;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleHeader;
@@ -101,6 +106,7 @@ import org.jboss.netty.handler.stream.ChunkedStream;
 import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 import org.jboss.netty.util.CharsetUtil;
 
+import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class ShuffleHandler extends AuxiliaryService {
@@ -136,8 +142,12 @@ public class ShuffleHandler extends AuxiliaryService {
 
   public static final int DEFAULT_SUFFLE_SSL_FILE_BUFFER_SIZE = 60 * 1024;
 
-  private ExternalSorter sorter;
-  
+  // Prefix of the ObjectRegistry keys of the outputs served from memory
+  private static final String SERVED_OUTPUT_KEY_PREFIX =
+      ShuffleHandler.class.getName() + ".output.";
+
+  private static ShuffleHandler containerInstance;
+
   @Metrics(about="Shuffle output metrics", context="mapred")
   static class ShuffleMetrics implements ChannelFutureListener {
     @Metric("Shuffle output in bytes")
@@ -160,16 +170,117 @@ public class ShuffleHandler extends AuxiliaryService {
     }
   }
 
+  /**
+   * An output served from memory, along with the partitions which have not
+   * been fetched yet. It is weighed like the sorter holding the data.
+   */
+  static class ServedOutput implements SizedObject {
+    final ExternalSorter sorter;
+    private final Set<Integer> pendingPartitions =
+        Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    ServedOutput(ExternalSorter sorter, int numPartitions) {
+      this.sorter = sorter;
+      for (int i = 0; i < numPartitions; ++i) {
+        pendingPartitions.add(i);
+      }
+    }
+
+    /**
+     * @return true once every partition of the output has been fetched
+     */
+    boolean partitionFetched(int partition) {
+      pendingPartitions.remove(partition);
+      return pendingPartitions.isEmpty();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return sorter instanceof SizedObject ?
+          ((SizedObject) sorter).getEstimatedSize() : 0;
+    }
+  }
+
   final ShuffleMetrics metrics;
+  private final ObjectRegistry objectRegistry;
 
-  ShuffleHandler(MetricsSystem ms) {
+  ShuffleHandler(MetricsSystem ms, ObjectRegistry objectRegistry) {
     super("httpshuffle");
     metrics = ms.register(new ShuffleMetrics());
+    this.objectRegistry = objectRegistry;
+  }
+
+  private ShuffleHandler() {
+    this(DefaultMetricsSystem.instance(),
+        ObjectRegistryFactory.getObjectRegistry());
+  }
+
+  /**
+   * Get the shuffle server shared by all tasks run in this container, starting
+   * it on first use. Outputs registered with it are served from memory until
+   * all of their partitions have been fetched, or the container moves on to
+   * another DAG, unless they are evicted from the {@link ObjectRegistry} once
+   * its DAG budget is exceeded.
+   */
+  public static synchronized ShuffleHandler getContainerInstance(
+      TezOutputContext outputContext, Configuration conf) throws IOException {
+    if (containerInstance == null) {
+      ShuffleHandler shuffleHandler = new ShuffleHandler();
+      shuffleHandler.initialize(outputContext, conf);
+      shuffleHandler.start();
+      containerInstance = shuffleHandler;
+    }
+    return containerInstance;
+  }
+
+  /**
+   * Outputs are held in the {@link ObjectRegistry} of the container, so they
+   * cannot be served from memory without one.
+   */
+  public boolean canServeFromMemory() {
+    return objectRegistry != null;
+  }
+
+  /**
+   * Serve the sorted output of a task to requests for the given path
+   * component, until each of its partitions has been fetched once.
+   */
+  public void registerOutput(String pathComponent, ExternalSorter sorter,
+      int numPartitions) {
+    Preconditions.checkState(canServeFromMemory(),
+        "No ObjectRegistry to hold served outputs");
+    objectRegistry.add(ObjectLifeCycle.DAG,
+        SERVED_OUTPUT_KEY_PREFIX + pathComponent,
+        new ServedOutput(sorter, numPartitions));
+  }
+
+  public void unregisterOutput(String pathComponent) {
+    objectRegistry.delete(SERVED_OUTPUT_KEY_PREFIX + pathComponent);
+  }
+
+  ExternalSorter getOutput(String pathComponent) {
+    ServedOutput output = getServedOutput(pathComponent);
+    return output == null ? null : output.sorter;
   }
 
-  public ShuffleHandler(ExternalSorter sorter) {
-    this(DefaultMetricsSystem.instance());
-    this.sorter = sorter;
+  /**
+   * Release the output once all of its partitions have been fetched.
+   */
+  void partitionFetched(String pathComponent, int partition) {
+    ServedOutput output = getServedOutput(pathComponent);
+    if (output != null && output.partitionFetched(partition)) {
+      LOG.info("All partitions of " + pathComponent
+          + " have been fetched, releasing it");
+      unregisterOutput(pathComponent);
+    }
+  }
+
+  private ServedOutput getServedOutput(String pathComponent) {
+    if (objectRegistry == null) {
+      return null;
+    }
+    return (ServedOutput) objectRegistry.get(
+        SERVED_OUTPUT_KEY_PREFIX + pathComponent);
   }
 
   /**
@@ -255,9 +366,11 @@ public class ShuffleHandler extends AuxiliaryService {
   public synchronized void serviceInit(Configuration conf) {
     ThreadFactory bossFactory = new ThreadFactoryBuilder()
       .setNameFormat("ShuffleHandler Netty Boss #%d")
+      .setDaemon(true)
       .build();
     ThreadFactory workerFactory = new ThreadFactoryBuilder()
       .setNameFormat("ShuffleHandler Netty Worker #%d")
+      .setDaemon(true)
       .build();
     
     selector = new NioServerSocketChannelFactory(
@@ -505,8 +618,14 @@ public class ShuffleHandler extends AuxiliaryService {
     }
 
     protected ChannelFuture sendMapOutput(ChannelHandlerContext ctx, Channel ch,
-        String user, String jobId, String mapId, int reduce)
+        String user, String jobId, final String mapId, final int reduce)
         throws IOException {
+      final ExternalSorter sorter = getOutput(mapId);
+      if (sorter == null) {
+        // The task is gone, or its output was evicted.
+        LOG.info("No output available for " + mapId);
+        return null;
+      }
       final ShuffleHeader header = sorter.getShuffleHeader(reduce);
       final DataOutputBuffer dob = new DataOutputBuffer();
       header.write(dob);
@@ -518,6 +637,14 @@ public class ShuffleHandler extends AuxiliaryService {
                   sorter.getSortedStream(reduce), sslFileBufferSize
                   )
               );
+      writeFuture.addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+          if (future.isSuccess()) {
+            partitionFetched(mapId, reduce);
+          }
+        }
+      });
       metrics.shuffleConnections.incr();
       metrics.shuffleOutputBytes.incr(header.getCompressedLength()); // optimistic
       return writeFuture;
@@ -30,6 +30,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
@@ -62,6 +63,15 @@ public abstract class ExternalSorter {
   public abstract void flush() throws IOException;
 
   public abstract void write(Object key, Object value) throws IOException;
+
+  /**
+   * Write a key/value pair which is already serialized to the given partition.
+   */
+  public void write(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    throw new UnsupportedOperationException(getClass().getName()
+        + " does not support writing serialized key/value pairs");
+  }
   
   protected Progressable nullProgressable = new NullProgressable();
   protected TezOutputContext outputContext;
@@ -40,6 +40,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.HashComparator;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.util.IndexedSortable;
 import org.apache.hadoop.util.IndexedSorter;
 import org.apache.hadoop.util.Progress;
@@ -80,6 +81,9 @@ public class PipelinedSorter extends ExternalSorter {
   int numSpills = 0;
   int minSpillsForCombine;
   private HashComparator hasher;
+  // only used to hash keys handed over in serialized form
+  private Deserializer rawKeyDeserializer;
+  private final DataInputBuffer rawKeyIn = new DataInputBuffer();
   // SortSpans  
   private SortSpan span;
   private ByteBuffer largeBuffer;
@@ -253,6 +257,80 @@ public class PipelinedSorter extends ExternalSorter {
     mapOutputByteCounter.increment(valend - keystart);
   }
 
+  @Override
+  public void write(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    collect(key, value, partition);
+  }
+
+  /**
+   * Copy an already serialized key, value to intermediate storage.
+   * When this method returns, kvindex must refer to sufficient unused
+   * storage to store one METADATA.
+   */
+  synchronized void collect(DataInputBuffer key, DataInputBuffer value,
+      final int partition) throws IOException {
+    if (partition < 0 || partition >= partitions) {
+      throw new IOException("Illegal partition " + partition
+          + ", TotalPartitions: " + partitions);
+    }
+    if(span.kvmeta.remaining() < METASIZE) {
+      this.sort();
+    }
+    final int keylen = key.getLength() - key.getPosition();
+    final int vallen = value.getLength() - value.getPosition();
+    int keystart = span.kvbuffer.position();
+    int valstart = -1;
+    try {
+      span.kvbuffer.put(key.getData(), key.getPosition(), keylen);
+      valstart = span.kvbuffer.position();
+      span.kvbuffer.put(value.getData(), value.getPosition(), vallen);
+    } catch(BufferOverflowException overflow) {
+      // restore limit
+      span.kvbuffer.position(keystart);
+      this.sort();
+      // try again
+      this.collect(key, value, partition);
+      return;
+    }
+
+    int prefix = 0;
+
+    if(hasher != null) {
+      prefix = hasher.getHashCode(deserializeKey(key));
+    }
+
+    prefix = (partition << (32 - partitionBits)) | (prefix >>> partitionBits);
+
+    /* maintain order as in PARTITION, KEYSTART, VALSTART, VALLEN */
+    span.kvmeta.put(prefix);
+    span.kvmeta.put(keystart);
+    span.kvmeta.put(valstart);
+    span.kvmeta.put(vallen);
+    if(keylen > span.keymax) {
+      span.keymax = keylen;
+    }
+    if(vallen > span.valmax) {
+      span.valmax = vallen;
+    }
+    mapOutputRecordCounter.increment(1);
+    mapOutputByteCounter.increment(keylen + vallen);
+  }
+
+  /**
+   * The HashComparator works on key objects, so serialized keys have to be
+   * read back before their hash prefix can be computed.
+   */
+  private Object deserializeKey(DataInputBuffer key) throws IOException {
+    if (rawKeyDeserializer == null) {
+      rawKeyDeserializer = serializationFactory.getDeserializer(keyClass);
+      rawKeyDeserializer.open(rawKeyIn);
+    }
+    rawKeyIn.reset(key.getData(), key.getPosition(),
+        key.getLength() - key.getPosition());
+    return rawKeyDeserializer.deserialize(null);
+  }
+
   public void spill() throws IOException { 
     // create spill file
     final long size = largeBuffer.capacity() + 
@@ -209,6 +209,77 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
           partition + ")" + ", TotalPartitions: " + partitions);
     }
     checkSpillException();
+    reserveRecordSpace();
+
+    try {
+      // serialize key bytes into buffer
+      int keystart = bufindex;
+      keySerializer.serialize(key);
+      if (bufindex < keystart) {
+        // wrapped the key; must make contiguous
+        bb.shiftBufferedKey();
+        keystart = 0;
+      }
+      // serialize value bytes into buffer
+      final int valstart = bufindex;
+      valSerializer.serialize(value);
+      markRecord(keystart, valstart, partition);
+    } catch (MapBufferTooSmallException e) {
+      LOG.info("Record too large for in-memory buffer: " + e.getMessage());
+      spillSingleRecord(key, value, false, partition);
+      mapOutputRecordCounter.increment(1);
+      return;
+    }
+  }
+
+  @Override
+  public void write(DataInputBuffer key, DataInputBuffer value, int partition)
+      throws IOException {
+    collect(key, value, partition);
+  }
+
+  /**
+   * Copy an already serialized key, value to intermediate storage.
+   * When this method returns, kvindex must refer to sufficient unused
+   * storage to store one METADATA.
+   */
+  synchronized void collect(DataInputBuffer key, DataInputBuffer value,
+      final int partition) throws IOException {
+    if (partition < 0 || partition >= partitions) {
+      throw new IOException("Illegal partition " + partition
+          + ", TotalPartitions: " + partitions);
+    }
+    checkSpillException();
+    reserveRecordSpace();
+
+    try {
+      // copy key bytes into buffer
+      int keystart = bufindex;
+      bb.write(key.getData(), key.getPosition(),
+          key.getLength() - key.getPosition());
+      if (bufindex < keystart) {
+        // wrapped the key; must make contiguous
+        bb.shiftBufferedKey();
+        keystart = 0;
+      }
+      // copy value bytes into buffer
+      final int valstart = bufindex;
+      bb.write(value.getData(), value.getPosition(),
+          value.getLength() - value.getPosition());
+      markRecord(keystart, valstart, partition);
+    } catch (MapBufferTooSmallException e) {
+      LOG.info("Record too large for in-memory buffer: " + e.getMessage());
+      spillSingleRecord(key, value, true, partition);
+      mapOutputRecordCounter.increment(1);
+      return;
+    }
+  }
+
+  /**
+   * Account for the metadata of the next record, starting a spill if the
+   * soft limit has been reached.
+   */
+  private void reserveRecordSpace() throws IOException {
     bufferRemaining -= METASIZE;
     if (bufferRemaining <= 0) {
       // start spill if the thread is not running and the soft limit has been
@@ -268,48 +339,37 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
         spillLock.unlock();
       }
     }
+  }
 
-    try {
-      // serialize key bytes into buffer
-      int keystart = bufindex;
-      keySerializer.serialize(key);
-      if (bufindex < keystart) {
-        // wrapped the key; must make contiguous
-        bb.shiftBufferedKey();
-        keystart = 0;
-      }
-      // serialize value bytes into buffer
-      final int valstart = bufindex;
-      valSerializer.serialize(value);
-      // It's possible for records to have zero length, i.e. the serializer
-      // will perform no writes. To ensure that the boundary conditions are
-      // checked and that the kvindex invariant is maintained, perform a
-      // zero-length write into the buffer. The logic monitoring this could be
-      // moved into collect, but this is cleaner and inexpensive. For now, it
-      // is acceptable.
-      bb.write(b0, 0, 0);
-
-      // the record must be marked after the preceding write, as the metadata
-      // for this record are not yet written
-      int valend = bb.markRecord();
-
-      mapOutputRecordCounter.increment(1);
-      mapOutputByteCounter.increment(
-          distanceTo(keystart, valend, bufvoid));
-
-      // write accounting info
-      kvmeta.put(kvindex + INDEX, kvindex);
-      kvmeta.put(kvindex + PARTITION, partition);
-      kvmeta.put(kvindex + KEYSTART, keystart);
-      kvmeta.put(kvindex + VALSTART, valstart);
-      // advance kvindex
-      kvindex = (kvindex - NMETA + kvmeta.capacity()) % kvmeta.capacity();
-    } catch (MapBufferTooSmallException e) {
-      LOG.info("Record too large for in-memory buffer: " + e.getMessage());
-      spillSingleRecord(key, value, partition);
-      mapOutputRecordCounter.increment(1);
-      return;
-    }
+  /**
+   * Write the metadata for a record whose key and value have been written to
+   * the buffer.
+   */
+  private void markRecord(int keystart, int valstart, int partition)
+      throws IOException {
+    // It's possible for records to have zero length, i.e. the serializer
+    // will perform no writes. To ensure that the boundary conditions are
+    // checked and that the kvindex invariant is maintained, perform a
+    // zero-length write into the buffer. The logic monitoring this could be
+    // moved into collect, but this is cleaner and inexpensive. For now, it
+    // is acceptable.
+    bb.write(b0, 0, 0);
+
+    // the record must be marked after the preceding write, as the metadata
+    // for this record are not yet written
+    int valend = bb.markRecord();
+
+    mapOutputRecordCounter.increment(1);
+    mapOutputByteCounter.increment(
+        distanceTo(keystart, valend, bufvoid));
+
+    // write accounting info
+    kvmeta.put(kvindex + INDEX, kvindex);
+    kvmeta.put(kvindex + PARTITION, partition);
+    kvmeta.put(kvindex + KEYSTART, keystart);
+    kvmeta.put(kvindex + VALSTART, valstart);
+    // advance kvindex
+    kvindex = (kvindex - NMETA + kvmeta.capacity()) % kvmeta.capacity();
   }
 
   /**
@@ -631,6 +691,14 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
     } catch (InterruptedException e) {
       throw new IOException("Spill failed", e);
     }
+    finalizeOutput();
+  }
+
+  /**
+   * Merge the spills into the final output file, once all records have been
+   * spilled.
+   */
+  protected void finalizeOutput() throws IOException {
     // release sort buffer before the merge
     //FIXME
     //kvbuffer = null;
@@ -827,7 +895,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
    * directly to a spill file. Consider this "losing".
    */
   private void spillSingleRecord(final Object key, final Object value,
-                                 int partition) throws IOException {
+                                 boolean raw, int partition) throws IOException {
     long size = kvbuffer.length + partitions * APPROX_HEADER_LENGTH;
     FSDataOutputStream out = null;
     try {
@@ -848,7 +916,11 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
 
           if (i == partition) {
             final long recordStart = out.getPos();
-            writer.append(key, value);
+            if (raw) {
+              writer.append((DataInputBuffer) key, (DataInputBuffer) value);
+            } else {
+              writer.append(key, value);
+            }
             // Note that our map byte count will not be accurate with
             // compression
             mapOutputByteCounter.increment(out.getPos() - recordStart);
@@ -30,11 +30,18 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.common.objectregistry.SizedObject;
 import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleHeader;
 import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 
-public class InMemoryShuffleSorter extends DefaultSorter {
+/**
+ * A sorter which keeps its output in the sort buffer, and serves it from
+ * there through the shuffle server of the container. If the output does not
+ * fit in the sort buffer, it is spilled and merged to disk like with the
+ * {@link DefaultSorter}, and served by the NodeManager.
+ */
+public class InMemoryShuffleSorter extends DefaultSorter implements SizedObject {
 
   private static final Log LOG = LogFactory.getLog(InMemoryShuffleSorter.class);
   
@@ -45,22 +52,31 @@ public class InMemoryShuffleSorter extends DefaultSorter {
   private List<Integer> spillIndices = new ArrayList<Integer>();
   private List<ShuffleHeader> shuffleHeaders = new ArrayList<ShuffleHeader>();
 
-  ShuffleHandler shuffleHandler = new ShuffleHandler(this);
+  ShuffleHandler shuffleHandler;
   
   byte[] kvbuffer;
   IntBuffer kvmeta;
 
+  // Whether the output is kept in the sort buffer, rather than on disk
+  private volatile boolean servedFromMemory = false;
+
   @Override
   public void initialize(TezOutputContext outputContext, Configuration conf, int numOutputs) throws IOException {
     super.initialize(outputContext, conf, numOutputs);
-    shuffleHandler.initialize(outputContext, conf);
+    shuffleHandler = ShuffleHandler.getContainerInstance(outputContext, conf);
   }
 
   @Override
   protected void spill(int mstart, int mend) 
       throws IOException, InterruptedException {
-    // Start the shuffleHandler
-    shuffleHandler.start();
+    if (Thread.currentThread() == spillThread || numSpills > 0
+        || !shuffleHandler.canServeFromMemory()) {
+      // The buffer filled up before the final flush, or some records are on
+      // disk already. The whole output has to go to disk.
+      super.spill(mstart, mend);
+      return;
+    }
+    servedFromMemory = true;
 
     // Don't spill!
     
@@ -101,6 +117,26 @@ public class InMemoryShuffleSorter extends DefaultSorter {
     
     LOG.info("Saved " + spillIndices.size() + " spill-indices and " + 
         shuffleHeaders.size() + " shuffle headers");
+
+    // The output stays available once the task completes, until each
+    // partition has been fetched
+    shuffleHandler.registerOutput(outputContext.getUniqueIdentifier(), this,
+        partitions);
+  }
+
+  @Override
+  protected void finalizeOutput() throws IOException {
+    if (!servedFromMemory) {
+      super.finalizeOutput();
+    }
+  }
+
+  /**
+   * @return true if the output is served from memory by the shuffle server of
+   *         the container, false if it was written to disk
+   */
+  public boolean isServedFromMemory() {
+    return servedFromMemory;
   }
 
   @Override
@@ -123,4 +159,16 @@ public class InMemoryShuffleSorter extends DefaultSorter {
     return spillIndices.get(partition);
   }
 
+  /**
+   * @return the port of the shuffle server which serves this output
+   */
+  public int getShufflePort() {
+    return shuffleHandler.getPort();
+  }
+
+  @Override
+  public long getEstimatedSize() {
+    return kvbuffer == null ? 0 : kvbuffer.length;
+  }
+
 }
@@ -21,6 +21,7 @@ package org.apache.tez.runtime.library.common.sort.impl.dflt;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -58,7 +59,8 @@ import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter.InMemV
     this.recIndex = sorter.getSpillIndex(partition);
     this.kvbuffer = sorter.kvbuffer;
     this.kvmeta = sorter.kvmeta;
-    out = new DualBufferOutputStream(null, 0, 0, dualBuf);
+    // The buffers to read into are set on each read
+    out = new DualBufferOutputStream(new byte[0], 0, 0, dualBuf);
     sortOutput = new InMemoryWriter(out);
   }
   
@@ -88,11 +90,9 @@ import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter.InMemV
     // Check if there is residual data in the dualBuf
     int residualLen = out.getCurrent();
     if (residualLen > 0) {
-      int readable = Math.min(currentLength, residualLen);
-      System.arraycopy(dualBuf, 0, b, currentOffset, readable);
+      int readable = out.readResidual(b, currentOffset, currentLength);
       currentOffset += readable;
       currentReadBytes += readable;
-      out.setCurrentPointer(-readable);
       
       // buffer has less capacity
       currentLength -= readable;
@@ -250,22 +250,32 @@ import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter.InMemV
         super.write(b, off, len);
       } else {
         super.write(b, off, available);
-        System.arraycopy(b, off+available, dualBuf, currentPointer, len-available);
-        currentPointer += (len - available);
+        int overflow = len - available;
+        if (currentPointer + overflow > dualBuf.length) {
+          // a record larger than what is left of the buffer being read into
+          dualBuf = Arrays.copyOf(dualBuf,
+              Math.max(2 * dualBuf.length, currentPointer + overflow));
+        }
+        System.arraycopy(b, off+available, dualBuf, currentPointer, overflow);
+        currentPointer += overflow;
       }
     }
     
     int getCurrent() {
       return currentPointer;
     }
-    
-    void setCurrentPointer(int delta) {
-      if ((currentPointer + delta) > dualBuf.length) {
-        throw new IndexOutOfBoundsException("Trying to set dualBuf 'current'" +
-        		" marker to " + (currentPointer+delta) + " when " +
-        		" dualBuf.length is " + dualBuf.length);
-      }
-      currentPointer = (currentPointer + delta) % dualBuf.length;
+
+    /**
+     * Move residual data to the given buffer, keeping whatever does not fit
+     * at the start of dualBuf for the next read.
+     * @return the number of bytes moved
+     */
+    int readResidual(byte[] b, int off, int len) {
+      int readable = Math.min(len, currentPointer);
+      System.arraycopy(dualBuf, 0, b, off, readable);
+      System.arraycopy(dualBuf, readable, dualBuf, 0, currentPointer - readable);
+      currentPointer -= readable;
+      return readable;
     }
   }
 }
@@ -0,0 +1,443 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.common.writers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutput;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes partitioned key-value pairs without sorting them.
+ * 
+ * Records are serialized into one buffer per partition. When the memory
+ * allocated to the buffers exceeds the configured size they are spilled to a single IFile with one
+ * segment per partition. On close, the spills are concatenated partition by
+ * partition into the final output, which is laid out and indexed exactly like
+ * the output of the sorter so that it can be served by the regular shuffle.
+ */
+public class UnorderedPartitionedKVWriter implements KeyValueWriter {
+
+  private static final Log LOG = LogFactory.getLog(UnorderedPartitionedKVWriter.class);
+
+  public static final int INDEX_RECORD_LENGTH = 24;
+  // Approximate size of the IFile header and checksum, per segment
+  private static final int APPROX_HEADER_LENGTH = 150;
+
+  private final Configuration conf;
+  private final int numPartitions;
+  private final FileSystem rfs;
+  private final TezTaskOutput outputFileManager;
+  private final Partitioner partitioner;
+
+  @SuppressWarnings("rawtypes")
+  private final Class keyClass;
+  @SuppressWarnings("rawtypes")
+  private final Class valClass;
+  @SuppressWarnings("rawtypes")
+  private final Serializer keySerializer;
+  @SuppressWarnings("rawtypes")
+  private final Serializer valSerializer;
+  private final CompressionCodec codec;
+
+  private final boolean ifileReadAhead;
+  private final int ifileReadAheadLength;
+  private final int ifileBufferSize;
+
+  // Serialized records, as <vint keyLength, vint valueLength, key, value>
+  private final DataOutputBuffer[] buffers;
+  private final DataOutputBuffer serializationBuffer = new DataOutputBuffer();
+  private final long bufferLimit;
+  private long bufferedBytes = 0;
+  // Capacity of the buffers, which grow by doubling and can be well above
+  // the number of bytes they hold
+  private long allocatedBytes = 0;
+
+  private final long[] numRecordsPerPartition;
+  private final List<Path> spillFiles = new ArrayList<Path>();
+  private final List<TezSpillRecord> spillRecords = new ArrayList<TezSpillRecord>();
+
+  private final DataInputBuffer keyBuffer = new DataInputBuffer();
+  private final DataInputBuffer valueBuffer = new DataInputBuffer();
+  private final DataInputBuffer lengthBuffer = new DataInputBuffer();
+
+  private final TezCounter outputRecordsCounter;
+  private final TezCounter outputBytesCounter;
+  private final TezCounter outputMaterializedBytesCounter;
+  private final TezCounter spilledRecordsCounter;
+
+  private boolean closed = false;
+
+  @SuppressWarnings("unchecked")
+  public UnorderedPartitionedKVWriter(TezOutputContext outputContext,
+      Configuration conf, int numPartitions) throws IOException {
+    Preconditions.checkArgument(numPartitions > 0,
+        "Number of partitions must be positive");
+    this.conf = conf;
+    this.numPartitions = numPartitions;
+    this.rfs = ((LocalFileSystem) FileSystem.getLocal(this.conf)).getRaw();
+
+    keyClass = ConfigUtils.getIntermediateOutputKeyClass(this.conf);
+    valClass = ConfigUtils.getIntermediateOutputValueClass(this.conf);
+    SerializationFactory serializationFactory = new SerializationFactory(this.conf);
+    keySerializer = serializationFactory.getSerializer(keyClass);
+    keySerializer.open(serializationBuffer);
+    valSerializer = serializationFactory.getSerializer(valClass);
+    valSerializer.open(serializationBuffer);
+
+    if (ConfigUtils.shouldCompressIntermediateOutput(this.conf)) {
+      Class<? extends CompressionCodec> codecClass = ConfigUtils
+          .getIntermediateOutputCompressorClass(this.conf, DefaultCodec.class);
+      codec = ReflectionUtils.newInstance(codecClass, this.conf);
+    } else {
+      codec = null;
+    }
+
+    this.ifileReadAhead = this.conf.getBoolean(
+        TezJobConfig.TEZ_RUNTIME_IFILE_READAHEAD,
+        TezJobConfig.TEZ_RUNTIME_IFILE_READAHEAD_DEFAULT);
+    if (this.ifileReadAhead) {
+      this.ifileReadAheadLength = conf.getInt(
+          TezJobConfig.TEZ_RUNTIME_IFILE_READAHEAD_BYTES,
+          TezJobConfig.TEZ_RUNTIME_IFILE_READAHEAD_BYTES_DEFAULT);
+    } else {
+      this.ifileReadAheadLength = 0;
+    }
+    this.ifileBufferSize = conf.getInt("io.file.buffer.size",
+        TezJobConfig.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT);
+
+    this.outputFileManager = TezRuntimeUtils.instantiateTaskOutputManager(
+        this.conf, outputContext);
+    this.conf.setInt(TezJobConfig.TEZ_RUNTIME_NUM_EXPECTED_PARTITIONS,
+        numPartitions);
+    this.partitioner = TezRuntimeUtils.instantiatePartitioner(this.conf);
+
+    int bufferSizeMb = this.conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB,
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB_DEFAULT);
+    Preconditions.checkArgument(bufferSizeMb > 0,
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB
+            + " should be larger than 0");
+    this.bufferLimit = (long) bufferSizeMb << 20;
+
+    this.buffers = new DataOutputBuffer[numPartitions];
+    allocateBuffers();
+    this.numRecordsPerPartition = new long[numPartitions];
+
+    outputRecordsCounter = outputContext.getCounters().findCounter(
+        TaskCounter.MAP_OUTPUT_RECORDS);
+    outputBytesCounter = outputContext.getCounters().findCounter(
+        TaskCounter.MAP_OUTPUT_BYTES);
+    outputMaterializedBytesCounter = outputContext.getCounters().findCounter(
+        TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES);
+    spilledRecordsCounter = outputContext.getCounters().findCounter(
+        TaskCounter.SPILLED_RECORDS);
+
+    LOG.info("Created " + getClass().getSimpleName() + " -> numPartitions: "
+        + numPartitions + ", bufferSizeMb: " + bufferSizeMb
+        + ", compressionCodec: "
+        + (codec == null ? "NoCompressionCodec" : codec.getClass().getName()));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void write(Object key, Object value) throws IOException {
+    Preconditions.checkState(!closed, "Writer has already been closed");
+    if (key.getClass() != keyClass) {
+      throw new IOException("Type mismatch in key from map: expected "
+          + keyClass.getName() + ", received " + key.getClass().getName());
+    }
+    if (value.getClass() != valClass) {
+      throw new IOException("Type mismatch in value from map: expected "
+          + valClass.getName() + ", received " + value.getClass().getName());
+    }
+    int partition = partitioner.getPartition(key, value, numPartitions);
+    if (partition < 0 || partition >= numPartitions) {
+      throw new IOException("Illegal partition for " + key + " (" + partition
+          + ")" + ", TotalPartitions: " + numPartitions);
+    }
+
+    serializationBuffer.reset();
+    keySerializer.serialize(key);
+    int keyLength = serializationBuffer.getLength();
+    valSerializer.serialize(value);
+    int valueLength = serializationBuffer.getLength() - keyLength;
+
+    DataOutputBuffer buffer = buffers[partition];
+    int startLength = buffer.getLength();
+    int startCapacity = buffer.getData().length;
+    WritableUtils.writeVInt(buffer, keyLength);
+    WritableUtils.writeVInt(buffer, valueLength);
+    buffer.write(serializationBuffer.getData(), 0,
+        serializationBuffer.getLength());
+    bufferedBytes += buffer.getLength() - startLength;
+    allocatedBytes += buffer.getData().length - startCapacity;
+
+    numRecordsPerPartition[partition]++;
+    outputRecordsCounter.increment(1);
+    outputBytesCounter.increment(keyLength + valueLength);
+
+    if (allocatedBytes >= bufferLimit) {
+      spill();
+    }
+  }
+
+  /**
+   * Writes out the remaining buffered records and the index of the final
+   * output.
+   * 
+   * @return true if any output was generated. false otherwise
+   * @throws IOException
+   */
+  public boolean close() throws IOException {
+    if (closed) {
+      return hasOutput();
+    }
+    closed = true;
+
+    Path outputPath;
+    Path indexPath;
+    TezSpillRecord finalSpillRecord;
+    if (spillFiles.isEmpty()) {
+      // Everything fit in memory. Write the buffers straight to the output.
+      outputPath = outputFileManager.getOutputFileForWrite(
+          getExpectedFileSize());
+      finalSpillRecord = writePartitions(outputPath);
+      indexPath = outputFileManager.getOutputIndexFileForWrite(
+          numPartitions * INDEX_RECORD_LENGTH);
+    } else {
+      if (bufferedBytes > 0) {
+        spill();
+      }
+      if (spillFiles.size() == 1) {
+        outputPath = outputFileManager.getOutputFileForWriteInVolume(
+            spillFiles.get(0));
+        rfs.mkdirs(outputPath.getParent());
+        if (!rfs.rename(spillFiles.get(0), outputPath)) {
+          throw new IOException("Unable to rename " + spillFiles.get(0)
+              + " to " + outputPath);
+        }
+        finalSpillRecord = spillRecords.get(0);
+        indexPath = outputFileManager.getOutputIndexFileForWriteInVolume(
+            outputPath);
+      } else {
+        outputPath = outputFileManager.getOutputFileForWrite(
+            getTotalSpillSize());
+        finalSpillRecord = mergeSpills(outputPath);
+        indexPath = outputFileManager.getOutputIndexFileForWrite(
+            numPartitions * INDEX_RECORD_LENGTH);
+      }
+    }
+    outputMaterializedBytesCounter.increment(
+        rfs.getFileStatus(outputPath).getLen());
+    LOG.info("Writing index file: " + indexPath);
+    finalSpillRecord.writeToFile(indexPath, conf);
+    releaseBuffers();
+    return hasOutput();
+  }
+
+  /**
+   * @return true if the given partition received any records. Only available
+   *         after the writer has been closed.
+   */
+  public boolean isPartitionEmpty(int partition) {
+    Preconditions.checkState(closed,
+        "Only available after the Writer has been closed");
+    return numRecordsPerPartition[partition] == 0;
+  }
+
+  public int getNumPartitions() {
+    return numPartitions;
+  }
+
+  private boolean hasOutput() {
+    for (long numRecords : numRecordsPerPartition) {
+      if (numRecords > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long getExpectedFileSize() {
+    return bufferedBytes + (long) numPartitions * APPROX_HEADER_LENGTH;
+  }
+
+  private void spill() throws IOException {
+    int spillNumber = spillFiles.size();
+    Path spillPath = outputFileManager.getSpillFileForWrite(spillNumber,
+        getExpectedFileSize());
+    LOG.info("Spilling " + bufferedBytes + " bytes to " + spillPath);
+    TezSpillRecord spillRecord = writePartitions(spillPath);
+    spillFiles.add(spillPath);
+    spillRecords.add(spillRecord);
+    // Buffers never shrink, so start over with new ones rather than keep the
+    // capacity each partition reached
+    allocateBuffers();
+    bufferedBytes = 0;
+  }
+
+  private void allocateBuffers() {
+    allocatedBytes = 0;
+    for (int i = 0; i < numPartitions; i++) {
+      buffers[i] = new DataOutputBuffer();
+      allocatedBytes += buffers[i].getData().length;
+    }
+  }
+
+  @VisibleForTesting
+  long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Writes the buffered records of every partition to one segment each.
+   */
+  private TezSpillRecord writePartitions(Path path) throws IOException {
+    TezSpillRecord spillRecord = new TezSpillRecord(numPartitions);
+    FSDataOutputStream out = rfs.create(path);
+    try {
+      for (int i = 0; i < numPartitions; i++) {
+        long segmentStart = out.getPos();
+        IFile.Writer writer = new IFile.Writer(conf, out, keyClass, valClass,
+            codec, spilledRecordsCounter);
+        appendBuffer(buffers[i], writer);
+        writer.close();
+        spillRecord.putIndex(new TezIndexRecord(segmentStart,
+            writer.getRawLength(), writer.getCompressedLength()), i);
+      }
+    } finally {
+      out.close();
+    }
+    return spillRecord;
+  }
+
+  private void appendBuffer(DataOutputBuffer buffer, IFile.Writer writer)
+      throws IOException {
+    byte[] data = buffer.getData();
+    int end = buffer.getLength();
+    int offset = 0;
+    while (offset < end) {
+      lengthBuffer.reset(data, offset, end - offset);
+      int keyLength = WritableUtils.readVInt(lengthBuffer);
+      int valueLength = WritableUtils.readVInt(lengthBuffer);
+      int keyStart = lengthBuffer.getPosition();
+      keyBuffer.reset(data, keyStart, keyLength);
+      valueBuffer.reset(data, keyStart + keyLength, valueLength);
+      writer.append(keyBuffer, valueBuffer);
+      offset = keyStart + keyLength + valueLength;
+    }
+  }
+
+  /**
+   * Concatenates the segments of each partition across all spills into the
+   * final output file. No sorting or merging of records is required.
+   */
+  private TezSpillRecord mergeSpills(Path outputPath) throws IOException {
+    LOG.info("Merging " + spillFiles.size() + " spills into " + outputPath);
+
+    TezSpillRecord finalSpillRecord = new TezSpillRecord(numPartitions);
+    FSDataOutputStream out = rfs.create(outputPath);
+    try {
+      for (int i = 0; i < numPartitions; i++) {
+        long segmentStart = out.getPos();
+        IFile.Writer writer = new IFile.Writer(conf, out, keyClass, valClass,
+            codec, spilledRecordsCounter);
+        if (numRecordsPerPartition[i] > 0) {
+          for (int j = 0; j < spillFiles.size(); j++) {
+            appendSegment(spillFiles.get(j), spillRecords.get(j).getIndex(i),
+                writer);
+          }
+        }
+        writer.close();
+        finalSpillRecord.putIndex(new TezIndexRecord(segmentStart,
+            writer.getRawLength(), writer.getCompressedLength()), i);
+      }
+    } finally {
+      out.close();
+    }
+    for (Path spillFile : spillFiles) {
+      rfs.delete(spillFile, false);
+    }
+    return finalSpillRecord;
+  }
+
+  private long getTotalSpillSize() throws IOException {
+    long size = 0;
+    for (Path spillFile : spillFiles) {
+      size += rfs.getFileStatus(spillFile).getLen();
+    }
+    return size;
+  }
+
+  private void appendSegment(Path spillFile, TezIndexRecord indexRecord,
+      IFile.Writer writer) throws IOException {
+    FSDataInputStream in = rfs.open(spillFile);
+    in.seek(indexRecord.getStartOffset());
+    IFile.Reader reader = new IFile.Reader(in, indexRecord.getPartLength(),
+        codec, null, ifileReadAhead, ifileReadAheadLength, ifileBufferSize);
+    try {
+      while (reader.nextRawKey(keyBuffer)) {
+        reader.nextRawValue(valueBuffer);
+        writer.append(keyBuffer, valueBuffer);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void releaseBuffers() {
+    for (int i = 0; i < numPartitions; i++) {
+      buffers[i] = null;
+    }
+    bufferedBytes = 0;
+    allocatedBytes = 0;
+  }
+}
@@ -34,7 +34,8 @@ import org.apache.tez.runtime.library.common.localshuffle.LocalShuffle;
 public class LocalMergedInput extends ShuffledMergedInputLegacy {
 
   @Override
-  public List<Event> initialize(TezInputContext inputContext) throws IOException {
+  protected List<Event> initializeInput(TezInputContext inputContext)
+      throws IOException {
     this.inputContext = inputContext;
     this.conf = TezUtils.createConfFromUserPayload(inputContext.getUserPayload());
 
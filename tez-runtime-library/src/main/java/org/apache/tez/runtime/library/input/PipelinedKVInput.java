@@ -0,0 +1,126 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.LogicalInput;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.InputFailedEvent;
+import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.pipelined.PipelinedKVReader;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Input for EPHEMERAL edges with CONCURRENT scheduling, which reads the
+ * records pushed by a {@link org.apache.tez.runtime.library.output.PipelinedKVOutput}
+ * while the producers are running. Records are returned in arrival order.
+ * 
+ * The data of a producer is gone once it has been read, so a producer which
+ * fails cannot be replaced by another attempt. The input fails instead.
+ */
+public class PipelinedKVInput implements LogicalInput {
+
+  private static final Log LOG = LogFactory.getLog(PipelinedKVInput.class);
+
+  private int numInputs = -1;
+  @SuppressWarnings("rawtypes")
+  private PipelinedKVReader kvReader;
+
+  public PipelinedKVInput() {
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public List<Event> initialize(TezInputContext inputContext) throws Exception {
+    Preconditions.checkArgument(numInputs != -1, "Number of Inputs has not been set");
+    Configuration conf = TezUtils.createConfFromUserPayload(inputContext
+        .getUserPayload());
+    ByteBuffer tokenBytes = inputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID);
+    SecretKey secret = tokenBytes == null ? null : ShuffleUtils
+        .getJobTokenSecretFromTokenBytes(tokenBytes);
+    this.kvReader = new PipelinedKVReader(conf, secret, numInputs,
+        inputContext.getCounters().findCounter(
+            TaskCounter.REDUCE_INPUT_RECORDS));
+    return null;
+  }
+
+  @Override
+  public KeyValueReader getReader() throws Exception {
+    return kvReader;
+  }
+
+  @Override
+  public void handleEvents(List<Event> inputEvents) throws IOException {
+    for (Event event : inputEvents) {
+      if (event instanceof DataMovementEvent) {
+        DataMovementEvent dme = (DataMovementEvent) event;
+        DataMovementEventPayloadProto payload;
+        try {
+          payload = DataMovementEventPayloadProto.parseFrom(dme
+              .getUserPayload());
+        } catch (InvalidProtocolBufferException e) {
+          throw new TezUncheckedException(
+              "Unable to parse DataMovementEvent payload", e);
+        }
+        LOG.info("Reading partition " + dme.getSourceIndex() + " of "
+            + payload.getPathComponent() + " from " + payload.getHost() + ":"
+            + payload.getPort());
+        kvReader.addSource(payload.getHost(), payload.getPort(),
+            payload.getPathComponent(), dme.getSourceIndex());
+      } else if (event instanceof InputFailedEvent) {
+        InputFailedEvent ife = (InputFailedEvent) event;
+        throw new IOException("Producer " + ife.getTargetIndex()
+            + ", attempt " + ife.getVersion()
+            + " of a pipelined input has failed");
+      }
+    }
+  }
+
+  @Override
+  public List<Event> close() throws Exception {
+    if (kvReader != null) {
+      kvReader.close();
+    }
+    return null;
+  }
+
+  @Override
+  public void setNumPhysicalInputs(int numInputs) {
+    this.numInputs = numInputs;
+  }
+}
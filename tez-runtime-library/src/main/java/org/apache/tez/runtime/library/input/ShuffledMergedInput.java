@@ -18,21 +18,26 @@
 package org.apache.tez.runtime.library.input;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.api.AsyncInitializedInput;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.LogicalInput;
 import org.apache.tez.runtime.api.TezInputContext;
 import org.apache.tez.runtime.library.api.KeyValuesReader;
+import org.apache.tez.runtime.library.api.RawKeyValuesReader;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.ValuesIterator;
 import org.apache.tez.runtime.library.common.shuffle.impl.Shuffle;
@@ -47,9 +52,10 @@ import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
  * by the Tez framework. Input is not consumable until the Copy and Merge are
  * complete. Methods are provided to check for this, as well as to wait for
  * completion. Attempting to get a reader on a non-complete input will block.
+ * The input may be handed to the processor before it is initialized.
  *
  */
-public class ShuffledMergedInput implements LogicalInput {
+public class ShuffledMergedInput implements AsyncInitializedInput {
 
   static final Log LOG = LogFactory.getLog(ShuffledMergedInput.class);
 
@@ -64,8 +70,48 @@ public class ShuffledMergedInput implements LogicalInput {
   private TezCounter inputKeyCounter;
   private TezCounter inputValueCounter;
 
+  // Released once initialize has returned, since the framework may hand this
+  // input to the processor before that
+  private final CountDownLatch initLatch = new CountDownLatch(1);
+  private volatile Throwable initFailure;
+
+  // Events received before initialize has returned, which are handed to the
+  // shuffle once it has been started. Guarded by itself, as is initialized.
+  private final List<Event> pendingEvents = new ArrayList<Event>();
+  private boolean initialized = false;
+
   @Override
   public List<Event> initialize(TezInputContext inputContext) throws IOException {
+    try {
+      List<Event> events = initializeInput(inputContext);
+      deliverPendingEvents();
+      return events;
+    } catch (IOException e) {
+      initFailure = e;
+      throw e;
+    } catch (RuntimeException e) {
+      initFailure = e;
+      throw e;
+    } finally {
+      initLatch.countDown();
+    }
+  }
+
+  private void deliverPendingEvents() {
+    synchronized (pendingEvents) {
+      initialized = true;
+      // subclasses which read local data do not start a shuffle
+      if (shuffle != null && !pendingEvents.isEmpty()) {
+        LOG.info("Delivering " + pendingEvents.size()
+            + " events received during initialization");
+        shuffle.handleEvents(new ArrayList<Event>(pendingEvents));
+      }
+      pendingEvents.clear();
+    }
+  }
+
+  protected List<Event> initializeInput(TezInputContext inputContext)
+      throws IOException {
     this.inputContext = inputContext;
     this.conf = TezUtils.createConfFromUserPayload(inputContext.getUserPayload());
 
@@ -92,20 +138,38 @@ public class ShuffledMergedInput implements LogicalInput {
    *         processing fetching the input. false if the shuffle and merge are
    *         still in progress
    */
+  @Override
   public boolean isInputReady() {
-    if (this.numInputs == 0) {
+    if (initLatch.getCount() > 0) {
+      return false;
+    }
+    if (this.numInputs == 0 || initFailure != null || rawIter != null) {
       return true;
     }
     return shuffle.isInputReady();
   }
 
+  /**
+   * Waits for initialize to complete.
+   * @throws IOException if the initialization failed
+   */
+  private void waitForInitialization() throws IOException,
+      InterruptedException {
+    initLatch.await();
+    if (initFailure != null) {
+      throw new IOException("Input failed to initialize", initFailure);
+    }
+  }
+
   /**
    * Waits for the input to become ready for consumption
    * @throws IOException
    * @throws InterruptedException
    */
+  @Override
   public void waitForInputReady() throws IOException, InterruptedException {
-    if (this.numInputs == 0) {
+    waitForInitialization();
+    if (this.numInputs == 0 || rawIter != null) {
       return;
     }
     rawIter = shuffle.waitForInput();
@@ -152,14 +216,7 @@ public class ShuffledMergedInput implements LogicalInput {
         }
       };
     }
-    if (rawIter == null) {
-      try {
-        waitForInputReady();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        throw new IOException("Interrupted while waiting for input ready", e);
-      }
-    }
+    ensureInputReady();
     return new KeyValuesReader() {
 
       @Override
@@ -178,12 +235,88 @@ public class ShuffledMergedInput implements LogicalInput {
     };
   }
 
+  /**
+   * Get a reader over the serialized keys and values of the Input, for
+   * consumers which do not need deserialized objects. This method will block
+   * until the input is ready, like {@link #getReader()}.
+   *
+   * The raw reader and the reader returned by {@link #getReader()} share the
+   * same position, so only one of them should be used.
+   *
+   * @return a raw KVReader over the sorted input.
+   */
+  public RawKeyValuesReader getRawReader() throws IOException {
+    if (this.numInputs == 0) {
+      return new RawKeyValuesReader() {
+        @Override
+        public boolean next() throws IOException {
+          return false;
+        }
+
+        @Override
+        public DataInputBuffer getCurrentRawKey() throws IOException {
+          throw new RuntimeException("No data available in Input");
+        }
+
+        @Override
+        public Iterable<DataInputBuffer> getCurrentRawValues() throws IOException {
+          throw new RuntimeException("No data available in Input");
+        }
+      };
+    }
+    ensureInputReady();
+    return new RawKeyValuesReader() {
+
+      @Override
+      public boolean next() throws IOException {
+        return vIter.moveToNext();
+      }
+
+      @Override
+      public DataInputBuffer getCurrentRawKey() throws IOException {
+        return vIter.getRawKey();
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public Iterable<DataInputBuffer> getCurrentRawValues() throws IOException {
+        return vIter.getRawValues();
+      }
+    };
+  }
+
+  private void ensureInputReady() throws IOException {
+    if (rawIter == null) {
+      try {
+        waitForInputReady();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for input ready", e);
+      }
+    }
+  }
+
+  /**
+   * Events which arrive before the input has been initialized are queued, and
+   * handed to the shuffle once it has been started, without blocking the
+   * caller.
+   */
   @Override
   public void handleEvents(List<Event> inputEvents) {
     if (numInputs == 0) {
       throw new RuntimeException("No input events expected as numInputs is 0");
     }
-    shuffle.handleEvents(inputEvents);
+    if (initFailure != null) {
+      throw new RuntimeException("Input failed to initialize", initFailure);
+    }
+    synchronized (pendingEvents) {
+      if (!initialized) {
+        pendingEvents.addAll(inputEvents);
+        return;
+      }
+      // under the lock, so that these are not handled before queued events
+      shuffle.handleEvents(inputEvents);
+    }
   }
 
   @Override
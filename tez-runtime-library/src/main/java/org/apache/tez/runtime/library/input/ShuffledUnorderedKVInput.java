@@ -24,14 +24,19 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.LogicalInput;
 import org.apache.tez.runtime.api.TezInputContext;
 import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.api.RawKeyValueReader;
 import org.apache.tez.runtime.library.broadcast.input.BroadcastKVReader;
 import org.apache.tez.runtime.library.broadcast.input.BroadcastShuffleManager;
+import org.apache.tez.runtime.library.broadcast.input.HashAggregatingKVReader;
+import org.apache.tez.runtime.library.common.combine.RawValueCombiner;
 
 import com.google.common.base.Preconditions;
 
@@ -44,6 +49,8 @@ public class ShuffledUnorderedKVInput implements LogicalInput {
   private BroadcastShuffleManager shuffleManager;
   @SuppressWarnings("rawtypes")
   private BroadcastKVReader kvReader;
+  @SuppressWarnings("rawtypes")
+  private HashAggregatingKVReader aggregatingReader;
   
   public ShuffledUnorderedKVInput() {
   }
@@ -62,6 +69,14 @@ public class ShuffledUnorderedKVInput implements LogicalInput {
         numInputs);
     this.shuffleManager.run();
     this.kvReader = this.shuffleManager.createReader();
+
+    Class<? extends RawValueCombiner> combinerClass = conf.getClass(
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_INPUT_COMBINER_CLASS, null,
+        RawValueCombiner.class);
+    if (combinerClass != null) {
+      this.aggregatingReader = new HashAggregatingKVReader(inputContext, conf,
+          kvReader, ReflectionUtils.newInstance(combinerClass, conf));
+    }
     return null;
   }
 
@@ -85,6 +100,39 @@ public class ShuffledUnorderedKVInput implements LogicalInput {
         }
       };
     }
+    if (aggregatingReader != null) {
+      return aggregatingReader;
+    }
+    return this.kvReader;
+  }
+
+  /**
+   * Get a reader over the serialized keys and values of the Input, for
+   * consumers which do not need deserialized objects. The raw reader and the
+   * reader returned by {@link #getReader()} share the same position.
+   */
+  public RawKeyValueReader getRawReader() throws Exception {
+    if (numInputs == 0) {
+      return new RawKeyValueReader() {
+        @Override
+        public boolean next() throws IOException {
+          return false;
+        }
+
+        @Override
+        public DataInputBuffer getCurrentRawKey() throws IOException {
+          throw new RuntimeException("No data available in Input");
+        }
+
+        @Override
+        public DataInputBuffer getCurrentRawValue() throws IOException {
+          throw new RuntimeException("No data available in Input");
+        }
+      };
+    }
+    if (aggregatingReader != null) {
+      return aggregatingReader;
+    }
     return this.kvReader;
   }
 
@@ -21,32 +21,59 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.LogicalOutput;
 import org.apache.tez.runtime.api.Output;
 import org.apache.tez.runtime.api.TezOutputContext;
 import org.apache.tez.runtime.api.Writer;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
 import org.apache.tez.runtime.library.api.KeyValueWriter;
 import org.apache.tez.runtime.library.common.sort.impl.dflt.InMemoryShuffleSorter;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+
+import com.google.common.collect.Lists;
 
 /**
  * {@link InMemorySortedOutput} is an {@link Output} which sorts key/value pairs 
- * written to it and persists it to a file.
+ * written to it and keeps them in memory. The sorted data is served to the
+ * consumers by the shuffle server of the container, and stays available while
+ * the container runs tasks of the same DAG.
+ * 
+ * If the data does not fit in the sort buffer, configured through the output's
+ * payload like for {@link OnFileSortedOutput}, it is written to disk and
+ * served by the NodeManager instead.
  */
 public class InMemorySortedOutput implements LogicalOutput {
+
+  private static final Log LOG = LogFactory.getLog(InMemorySortedOutput.class);
   
   protected InMemoryShuffleSorter sorter;
+  protected Configuration conf;
   protected int numTasks;
   protected TezOutputContext outputContext;
+  private long startTime;
+  private long endTime;
   
 
   @Override
   public List<Event> initialize(TezOutputContext outputContext)
       throws IOException {
+    this.startTime = System.nanoTime();
     this.outputContext = outputContext;
     this.sorter = new InMemoryShuffleSorter();
-    sorter.initialize(outputContext, TezUtils.createConfFromUserPayload(outputContext.getUserPayload()), numTasks);
+    this.conf = TezUtils.createConfFromUserPayload(outputContext.getUserPayload());
+    // Needed if the output has to be written to disk
+    this.conf.setStrings(TezJobConfig.LOCAL_DIRS, outputContext.getWorkDirs());
+    sorter.initialize(outputContext, conf, numTasks);
     return Collections.emptyList();
   }
 
@@ -75,7 +102,41 @@ public class InMemorySortedOutput implements LogicalOutput {
   public List<Event> close() throws IOException {
     sorter.flush();
     sorter.close();
-    // TODO NEWTEZ Event generation
-    return null;
+    this.endTime = System.nanoTime();
+    return generateEventsOnClose();
+  }
+
+  protected List<Event> generateEventsOnClose() throws IOException {
+    String host = ShuffleUtils.getShuffleHost();
+    int shufflePort;
+    if (sorter.isServedFromMemory()) {
+      shufflePort = sorter.getShufflePort();
+    } else {
+      LOG.info("Output did not fit in memory, serving it from disk");
+      shufflePort = ShuffleUtils.getShufflePort(conf, outputContext);
+    }
+
+    DataMovementEventPayloadProto.Builder payloadBuilder = DataMovementEventPayloadProto
+        .newBuilder();
+    payloadBuilder.setHost(host);
+    payloadBuilder.setPort(shufflePort);
+    payloadBuilder.setPathComponent(outputContext.getUniqueIdentifier());
+    payloadBuilder.setRunDuration((int) ((endTime - startTime) / 1000));
+    byte[] payloadBytes = payloadBuilder.build().toByteArray();
+
+    long outputSize = outputContext.getCounters()
+        .findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue();
+    VertexManagerEventPayloadProto.Builder vmBuilder = VertexManagerEventPayloadProto
+        .newBuilder();
+    vmBuilder.setOutputSize(outputSize);
+    VertexManagerEvent vmEvent = new VertexManagerEvent(
+        outputContext.getDestinationVertexName(), vmBuilder.build().toByteArray());
+
+    List<Event> events = Lists.newArrayListWithCapacity(numTasks + 1);
+    events.add(vmEvent);
+    for (int i = 0; i < numTasks; i++) {
+      events.add(new DataMovementEvent(i, payloadBytes));
+    }
+    return events;
   }
 }
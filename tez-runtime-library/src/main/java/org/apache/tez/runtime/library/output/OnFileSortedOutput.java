@@ -18,12 +18,16 @@
 package org.apache.tez.runtime.library.output;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.common.counters.TaskCounter;
@@ -33,21 +37,32 @@ import org.apache.tez.runtime.api.TezOutputContext;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
 import org.apache.tez.runtime.api.events.VertexManagerEvent;
 import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.RawKeyValueWriter;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.combine.HashPreCombiner;
 import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutput;
 import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
 
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 
 /**
  * <code>OnFileSortedOutput</code> is an {@link LogicalOutput} which sorts key/value pairs 
  * written to it and persists it to a file.
  */
 public class OnFileSortedOutput implements LogicalOutput {
+
+  private static final Log LOG = LogFactory.getLog(OnFileSortedOutput.class);
   
   protected ExternalSorter sorter;
+  protected HashPreCombiner preCombiner;
   protected Configuration conf;
   protected int numOutputs;
   protected TezOutputContext outputContext;
@@ -67,6 +82,8 @@ public class OnFileSortedOutput implements LogicalOutput {
     // TezMerger, etc.
     this.conf.setStrings(TezJobConfig.LOCAL_DIRS, outputContext.getWorkDirs());
     sorter.initialize(outputContext, conf, numOutputs);
+    preCombiner = HashPreCombiner.create(outputContext, conf, sorter,
+        numOutputs);
     return Collections.emptyList();
   }
 
@@ -75,7 +92,30 @@ public class OnFileSortedOutput implements LogicalOutput {
     return new KeyValueWriter() {
       @Override
       public void write(Object key, Object value) throws IOException {
-        sorter.write(key, value);
+        if (preCombiner != null) {
+          preCombiner.write(key, value);
+        } else {
+          sorter.write(key, value);
+        }
+      }
+    };
+  }
+
+  /**
+   * Get a writer which accepts already serialized keys and values, along with
+   * their partition. The records are sorted on their raw bytes with the
+   * configured comparator, like the ones written through {@link #getWriter()}.
+   */
+  public RawKeyValueWriter getRawWriter() throws IOException {
+    return new RawKeyValueWriter() {
+      @Override
+      public void write(DataInputBuffer key, DataInputBuffer value,
+          int partition) throws IOException {
+        if (preCombiner != null) {
+          preCombiner.write(key, value, partition);
+        } else {
+          sorter.write(key, value, partition);
+        }
       }
     };
   }
@@ -92,6 +132,9 @@ public class OnFileSortedOutput implements LogicalOutput {
 
   @Override
   public List<Event> close() throws IOException {
+    if (preCombiner != null) {
+      preCombiner.flush();
+    }
     sorter.flush();
     sorter.close();
     this.endTime = System.nanoTime();
@@ -100,11 +143,8 @@ public class OnFileSortedOutput implements LogicalOutput {
   }
   
   protected List<Event> generateEventsOnClose() throws IOException {
-    String host = System.getenv(ApplicationConstants.Environment.NM_HOST
-        .toString());
-    ByteBuffer shuffleMetadata = outputContext
-        .getServiceProviderMetaData(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID);
-    int shufflePort = ShuffleUtils.deserializeShuffleProviderMetaData(shuffleMetadata);
+    String host = ShuffleUtils.getShuffleHost();
+    int shufflePort = ShuffleUtils.getShufflePort(conf, outputContext);
 
     DataMovementEventPayloadProto.Builder payloadBuilder = DataMovementEventPayloadProto
         .newBuilder();
@@ -114,6 +154,7 @@ public class OnFileSortedOutput implements LogicalOutput {
     payloadBuilder.setRunDuration((int) ((endTime - startTime) / 1000));
     DataMovementEventPayloadProto payloadProto = payloadBuilder.build();
     byte[] payloadBytes = payloadProto.toByteArray();
+    DataProto[] inlineData = readInlineData();
 
     long outputSize = outputContext.getCounters()
         .findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue();
@@ -127,9 +168,70 @@ public class OnFileSortedOutput implements LogicalOutput {
     events.add(vmEvent);
 
     for (int i = 0; i < numOutputs; i++) {
-      DataMovementEvent event = new DataMovementEvent(i, payloadBytes);
+      byte[] eventPayload = payloadBytes;
+      if (inlineData != null && inlineData[i] != null) {
+        eventPayload = DataMovementEventPayloadProto.newBuilder(payloadProto)
+            .setData(inlineData[i]).build().toByteArray();
+      }
+      DataMovementEvent event = new DataMovementEvent(i, eventPayload);
       events.add(event);
     }
     return events;
   }
+
+  /**
+   * Read the partitions which are small enough to be sent to the consumers
+   * inside their events, up to the configured total size.
+   * 
+   * @return the data of each partition, or null for the partitions which need
+   *         to be fetched. null if no partitions are sent inline.
+   */
+  private DataProto[] readInlineData() throws IOException {
+    if (!conf.getBoolean(TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_ENABLED,
+        TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_ENABLED_DEFAULT)) {
+      return null;
+    }
+    int maxPartitionSize = conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_PARTITION_SIZE,
+        TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_PARTITION_SIZE_DEFAULT);
+    long remaining = conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_TOTAL_SIZE,
+        TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_TOTAL_SIZE_DEFAULT);
+
+    TezTaskOutput outputFiles = TezRuntimeUtils.instantiateTaskOutputManager(
+        conf, outputContext);
+    TezSpillRecord spillRecord = new TezSpillRecord(
+        outputFiles.getOutputIndexFile(), conf);
+    DataProto[] inlineData = new DataProto[numOutputs];
+    int numInline = 0;
+    FSDataInputStream in = null;
+    try {
+      for (int i = 0; i < numOutputs; i++) {
+        TezIndexRecord indexRecord = spillRecord.getIndex(i);
+        long partLength = indexRecord.getPartLength();
+        if (partLength > maxPartitionSize || partLength > remaining) {
+          continue;
+        }
+        if (in == null) {
+          in = FileSystem.getLocal(conf).getRaw().open(
+              outputFiles.getOutputFile());
+        }
+        // The IFile segment, as it would be served by the shuffle service
+        byte[] data = new byte[(int) partLength];
+        in.readFully(indexRecord.getStartOffset(), data);
+        inlineData[i] = DataProto.newBuilder()
+            .setData(ByteString.copyFrom(data))
+            .setRawLength((int) indexRecord.getRawLength())
+            .setCompressedLength((int) partLength)
+            .build();
+        remaining -= partLength;
+        numInline++;
+      }
+    } finally {
+      IOUtils.cleanup(LOG, in);
+    }
+    LOG.info("Sending " + numInline + " of " + numOutputs
+        + " partitions inside events");
+    return numInline == 0 ? null : inlineData;
+  }
 }
@@ -18,7 +18,6 @@
 
 package org.apache.tez.runtime.library.output;
 
-import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 
@@ -26,7 +25,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.dag.api.TezUncheckedException;
@@ -115,10 +113,7 @@ public class OnFileUnorderedKVOutput implements LogicalOutput {
     }
 
     String host = getHost();
-    ByteBuffer shuffleMetadata = outputContext
-        .getServiceProviderMetaData(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID);
-    int shufflePort = ShuffleUtils
-        .deserializeShuffleProviderMetaData(shuffleMetadata);
+    int shufflePort = ShuffleUtils.getShufflePort(conf, outputContext);
     payloadBuilder.setOutputGenerated(outputGenerated);
     if (outputGenerated) {
       payloadBuilder.setHost(host);
@@ -143,7 +138,7 @@ public class OnFileUnorderedKVOutput implements LogicalOutput {
   @VisibleForTesting
   @Private
   String getHost() {
-    return System.getenv(ApplicationConstants.Environment.NM_HOST.toString());
+    return ShuffleUtils.getShuffleHost();
   }
 
 }
@@ -0,0 +1,117 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.output;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.LogicalOutput;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.common.writers.UnorderedPartitionedKVWriter;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+
+/**
+ * Partitions key-value pairs without sorting them. Each partition is
+ * consumed by a single destination task, which fetches it with
+ * {@link org.apache.tez.runtime.library.input.ShuffledUnorderedKVInput}.
+ */
+public class OnFileUnorderedPartitionedKVOutput implements LogicalOutput {
+
+  private static final Log LOG = LogFactory.getLog(OnFileUnorderedPartitionedKVOutput.class);
+
+  private TezOutputContext outputContext;
+  private Configuration conf;
+  private int numPhysicalOutputs;
+  private UnorderedPartitionedKVWriter kvWriter;
+
+  public OnFileUnorderedPartitionedKVOutput() {
+  }
+
+  @Override
+  public List<Event> initialize(TezOutputContext outputContext)
+      throws Exception {
+    this.outputContext = outputContext;
+    this.conf = TezUtils.createConfFromUserPayload(outputContext
+        .getUserPayload());
+    this.conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        outputContext.getWorkDirs());
+    this.kvWriter = new UnorderedPartitionedKVWriter(outputContext, conf,
+        numPhysicalOutputs);
+    return Collections.emptyList();
+  }
+
+  @Override
+  public KeyValueWriter getWriter() throws Exception {
+    return kvWriter;
+  }
+
+  @Override
+  public void handleEvents(List<Event> outputEvents) {
+    throw new TezUncheckedException("Not expecting any events");
+  }
+
+  @Override
+  public List<Event> close() throws Exception {
+    boolean outputGenerated = kvWriter.close();
+    LOG.info("Closing " + getClass().getSimpleName() + ", outputGenerated: "
+        + outputGenerated);
+
+    String host = getHost();
+    int shufflePort = ShuffleUtils.getShufflePort(conf, outputContext);
+    List<Event> events = Lists.newArrayListWithCapacity(numPhysicalOutputs);
+    for (int i = 0; i < numPhysicalOutputs; i++) {
+      DataMovementEventPayloadProto.Builder payloadBuilder = DataMovementEventPayloadProto
+          .newBuilder();
+      boolean partitionGenerated = !kvWriter.isPartitionEmpty(i);
+      payloadBuilder.setOutputGenerated(partitionGenerated);
+      if (partitionGenerated) {
+        payloadBuilder.setHost(host);
+        payloadBuilder.setPort(shufflePort);
+        payloadBuilder.setPathComponent(outputContext.getUniqueIdentifier());
+      }
+      events.add(new DataMovementEvent(i, payloadBuilder.build().toByteArray()));
+    }
+    return events;
+  }
+
+  @Override
+  public void setNumPhysicalOutputs(int numOutputs) {
+    this.numPhysicalOutputs = numOutputs;
+  }
+
+  @VisibleForTesting
+  @Private
+  String getHost() {
+    return ShuffleUtils.getShuffleHost();
+  }
+}
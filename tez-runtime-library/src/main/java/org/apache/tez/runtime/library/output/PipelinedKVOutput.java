@@ -0,0 +1,128 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.output;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.LogicalOutput;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.pipelined.PipelinedChannelServer;
+import org.apache.tez.runtime.library.pipelined.PipelinedKVWriter;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Output for EPHEMERAL edges with CONCURRENT scheduling. Records are pushed
+ * directly to the consumer tasks while the producer is running, and are not
+ * written to local disk. The consumers are located through the
+ * DataMovementEvents sent when the output is initialized, and {@link #close()}
+ * only returns once all of them have received their data.
+ * 
+ * Works with ONE_TO_ONE and SCATTER_GATHER edges, where every physical output
+ * is read by exactly one consumer.
+ */
+public class PipelinedKVOutput implements LogicalOutput {
+
+  private static final Log LOG = LogFactory.getLog(PipelinedKVOutput.class);
+
+  private int numPhysicalOutputs = -1;
+  private PipelinedChannelServer server;
+  private PipelinedKVWriter kvWriter;
+
+  public PipelinedKVOutput() {
+  }
+
+  @Override
+  public List<Event> initialize(TezOutputContext outputContext)
+      throws Exception {
+    Configuration conf = TezUtils.createConfFromUserPayload(outputContext
+        .getUserPayload());
+    ByteBuffer tokenBytes = outputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID);
+    SecretKey secret = tokenBytes == null ? null : ShuffleUtils
+        .getJobTokenSecretFromTokenBytes(tokenBytes);
+    String connectionId = outputContext.getUniqueIdentifier();
+
+    this.server = new PipelinedChannelServer(connectionId, secret,
+        numPhysicalOutputs, conf.getInt(
+            TezJobConfig.TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT,
+            TezJobConfig.TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT_DEFAULT),
+        conf.getInt(TezJobConfig.TEZ_RUNTIME_PIPELINED_ACK_TIMEOUT,
+            TezJobConfig.TEZ_RUNTIME_PIPELINED_ACK_TIMEOUT_DEFAULT));
+    this.kvWriter = new PipelinedKVWriter(conf, server, numPhysicalOutputs,
+        outputContext.getCounters().findCounter(TaskCounter.MAP_OUTPUT_RECORDS),
+        outputContext.getCounters().findCounter(TaskCounter.MAP_OUTPUT_BYTES));
+
+    // Let the consumers know where to connect right away, instead of once the
+    // output is complete
+    DataMovementEventPayloadProto payloadProto = DataMovementEventPayloadProto
+        .newBuilder()
+        .setOutputGenerated(true)
+        .setHost(ShuffleUtils.getShuffleHost())
+        .setPort(server.getPort())
+        .setPathComponent(connectionId)
+        .build();
+    byte[] payload = payloadProto.toByteArray();
+    List<Event> events = Lists.newArrayListWithCapacity(numPhysicalOutputs);
+    for (int i = 0; i < numPhysicalOutputs; i++) {
+      events.add(new DataMovementEvent(i, payload));
+    }
+    LOG.info("Initialized pipelined output " + connectionId + " on port "
+        + server.getPort());
+    return events;
+  }
+
+  @Override
+  public KeyValueWriter getWriter() throws Exception {
+    return kvWriter;
+  }
+
+  @Override
+  public void handleEvents(List<Event> outputEvents) {
+    throw new TezUncheckedException("Not expecting any events");
+  }
+
+  @Override
+  public List<Event> close() throws Exception {
+    kvWriter.close();
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void setNumPhysicalOutputs(int numOutputs) {
+    this.numPhysicalOutputs = numOutputs;
+  }
+}
@@ -0,0 +1,350 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.pipelined;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Serves the partitions of a pipelined output to the consumer tasks, which
+ * run concurrently with the producer. Each consumer connects for its
+ * partition, and data is pushed to it while it is being produced, without
+ * being written to local disk.
+ * 
+ * Consumers identify themselves with the connection id of the output, the
+ * partition and a hash of both computed with the job token. Data is sent as
+ * blocks of serialized records, each preceded by its length. A length of
+ * {@link #EOF_MARKER} ends the partition, which the consumer acknowledges
+ * before the connection is closed.
+ * 
+ * A consumer which stops reading early, after reading as much as it needs,
+ * sends {@link #CONSUMER_DONE} instead of the acknowledgement. No more data
+ * is pushed to it, and its partition is considered complete.
+ * 
+ * Connections are accepted on a separate thread, and each handshake is read
+ * on a pooled thread, bounded by the connect timeout, so that a slow or
+ * stalled client does not hold up the other consumers.
+ */
+public class PipelinedChannelServer {
+
+  private static final Log LOG = LogFactory.getLog(PipelinedChannelServer.class);
+
+  static final int EOF_MARKER = -1;
+  static final int ACK = 1;
+  static final int CONSUMER_DONE = 2;
+
+  private final String connectionId;
+  private final SecretKey secret;
+  private final long connectTimeout;
+  private final long ackTimeout;
+  private final ServerSocket serverSocket;
+  private final Thread acceptor;
+  private final ExecutorService handshakeExecutor;
+
+  private final Socket[] sockets;
+  private final DataOutputStream[] outputs;
+  private final DataInputStream[] inputs;
+  // Only accessed by the thread writing the data
+  private final boolean[] consumersDone;
+  private boolean closed = false;
+
+  public PipelinedChannelServer(String connectionId, SecretKey secret,
+      int numPartitions, long connectTimeout, long ackTimeout)
+      throws IOException {
+    Preconditions.checkArgument(numPartitions > 0,
+        "Number of partitions must be positive");
+    this.connectionId = connectionId;
+    this.secret = secret;
+    this.connectTimeout = connectTimeout;
+    this.ackTimeout = ackTimeout;
+    this.sockets = new Socket[numPartitions];
+    this.outputs = new DataOutputStream[numPartitions];
+    this.inputs = new DataInputStream[numPartitions];
+    this.consumersDone = new boolean[numPartitions];
+    this.serverSocket = new ServerSocket(0);
+    this.handshakeExecutor = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("PipelinedChannelServer [" + connectionId + "] #%d")
+            .build());
+
+    this.acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    }, "PipelinedChannelServer [" + connectionId + "]");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+    LOG.info("Serving pipelined output " + connectionId + " with "
+        + numPartitions + " partitions on port " + getPort());
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  static String getHashMessage(String connectionId, int partition) {
+    return connectionId + ":" + partition;
+  }
+
+  private void acceptConnections() {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketException e) {
+        // The server socket has been closed
+        return;
+      } catch (IOException e) {
+        LOG.warn("Failed to accept connection for " + connectionId, e);
+        continue;
+      }
+      try {
+        handshakeExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            handshake(socket);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // The server has been closed
+        IOUtils.closeSocket(socket);
+        return;
+      }
+    }
+  }
+
+  private void handshake(Socket socket) {
+    try {
+      register(socket);
+    } catch (IOException e) {
+      LOG.warn("Rejecting connection from " + socket.getRemoteSocketAddress()
+          + " for " + connectionId, e);
+      IOUtils.closeSocket(socket);
+    }
+  }
+
+  private void register(Socket socket) throws IOException {
+    socket.setSoTimeout((int) connectTimeout);
+    socket.setTcpNoDelay(true);
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    String requestedId = in.readUTF();
+    int partition = in.readInt();
+    String hash = in.readUTF();
+    if (!connectionId.equals(requestedId)) {
+      throw new IOException("Unexpected connection id: " + requestedId);
+    }
+    if (partition < 0 || partition >= sockets.length) {
+      throw new IOException("Invalid partition: " + partition);
+    }
+    if (secret != null) {
+      SecureShuffleUtils.verifyReply(hash,
+          getHashMessage(connectionId, partition), secret);
+    }
+    // Data is only read back for the acknowledgement, which is bounded by
+    // the ack timeout in close()
+    socket.setSoTimeout(0);
+
+    synchronized (this) {
+      if (closed) {
+        throw new IOException("Output has already been closed");
+      }
+      if (sockets[partition] != null) {
+        throw new IOException("Partition " + partition
+            + " is already being consumed");
+      }
+      sockets[partition] = socket;
+      inputs[partition] = in;
+      outputs[partition] = new DataOutputStream(new BufferedOutputStream(
+          socket.getOutputStream()));
+      notifyAll();
+    }
+    LOG.info("Consumer connected from " + socket.getRemoteSocketAddress()
+        + " for partition " + partition + " of " + connectionId);
+  }
+
+  /**
+   * Wait for the consumer of a partition to connect.
+   */
+  private synchronized DataOutputStream getOutput(int partition)
+      throws IOException {
+    long deadline = System.currentTimeMillis() + connectTimeout;
+    while (outputs[partition] == null) {
+      if (closed) {
+        throw new IOException("Output has already been closed");
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new IOException("Timed out waiting for the consumer of partition "
+            + partition + " of " + connectionId + " to connect");
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the consumer of "
+            + "partition " + partition + " of " + connectionId, e);
+      }
+    }
+    return outputs[partition];
+  }
+
+  /**
+   * Push a block of serialized records to the consumer of a partition,
+   * waiting for it to connect if required.
+   */
+  public void writeBlock(int partition, byte[] data, int length)
+      throws IOException {
+    DataOutputStream out = getOutput(partition);
+    if (isConsumerDone(partition)) {
+      return;
+    }
+    try {
+      out.writeInt(length);
+      out.write(data, 0, length);
+      out.flush();
+    } catch (IOException e) {
+      if (!isConsumerDoneAfterFailure(partition, e)) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Check whether the consumer of a partition has told us that it does not
+   * need any more data, without blocking. The consumer sends nothing else
+   * before the end of the partition.
+   */
+  private boolean isConsumerDone(int partition) throws IOException {
+    if (!consumersDone[partition] && inputs[partition].available() > 0) {
+      int message = inputs[partition].read();
+      if (message != CONSUMER_DONE) {
+        throw new IOException("Unexpected message " + message
+            + " from the consumer of partition " + partition + " of "
+            + connectionId);
+      }
+      LOG.info("Consumer of partition " + partition + " of " + connectionId
+          + " is done, dropping the rest of its data");
+      consumersDone[partition] = true;
+    }
+    return consumersDone[partition];
+  }
+
+  /**
+   * A consumer which has closed its connection after saying it is done
+   * fails writes to it, which is not an error.
+   */
+  private boolean isConsumerDoneAfterFailure(int partition,
+      IOException failure) {
+    try {
+      return isConsumerDone(partition);
+    } catch (IOException e) {
+      LOG.debug("Failed to read from the consumer of partition " + partition
+          + " of " + connectionId + " after " + failure, e);
+      return false;
+    }
+  }
+
+  /**
+   * End all the partitions and wait for the consumers to acknowledge that they
+   * have received all the data, or that they are done. Fails if they have not
+   * all done so within the ack timeout.
+   */
+  public void close() throws IOException {
+    try {
+      for (int i = 0; i < sockets.length; i++) {
+        DataOutputStream out = getOutput(i);
+        try {
+          out.writeInt(EOF_MARKER);
+          out.flush();
+        } catch (IOException e) {
+          if (!isConsumerDoneAfterFailure(i, e)) {
+            throw e;
+          }
+        }
+      }
+      long deadline = System.currentTimeMillis() + ackTimeout;
+      for (int i = 0; i < sockets.length; i++) {
+        if (consumersDone[i]) {
+          continue;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new IOException("Timed out waiting for the consumer of "
+              + "partition " + i + " of " + connectionId
+              + " to acknowledge the end of the data");
+        }
+        sockets[i].setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+        int ack;
+        try {
+          ack = inputs[i].read();
+        } catch (SocketTimeoutException e) {
+          throw new IOException("Timed out waiting for the consumer of "
+              + "partition " + i + " of " + connectionId
+              + " to acknowledge the end of the data", e);
+        }
+        if (ack != ACK && ack != CONSUMER_DONE) {
+          throw new IOException("Consumer of partition " + i + " of "
+              + connectionId + " did not acknowledge the end of the data");
+        }
+      }
+    } finally {
+      abort();
+    }
+  }
+
+  /**
+   * Close all the connections without waiting for the consumers.
+   */
+  public void abort() {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close server socket for " + connectionId, e);
+    }
+    handshakeExecutor.shutdownNow();
+    synchronized (this) {
+      closed = true;
+      for (int i = 0; i < sockets.length; i++) {
+        IOUtils.closeSocket(sockets[i]);
+      }
+      notifyAll();
+    }
+  }
+}
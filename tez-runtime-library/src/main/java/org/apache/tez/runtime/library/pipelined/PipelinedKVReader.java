@@ -0,0 +1,324 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.pipelined;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+
+/**
+ * Reads the key-value pairs pushed by the producers of a pipelined edge, while
+ * they are running.
+ * 
+ * Each source is read by its own thread into a bounded queue of blocks, so
+ * that a slow or blocked producer does not prevent the others from making
+ * progress. Records from different sources are returned in the order in which
+ * their blocks arrive.
+ * 
+ * A reader which is closed before it has read all the data tells the
+ * producers that it is done, and discards whatever they send until they end
+ * the partition, so that closing a consumer early does not fail its producers.
+ */
+public class PipelinedKVReader<K, V> implements KeyValueReader {
+
+  private static final Log LOG = LogFactory.getLog(PipelinedKVReader.class);
+
+  private static final int UNIT_CONNECT_TIMEOUT = 60 * 1000;
+  private static final long CONNECT_RETRY_INTERVAL = 1000;
+
+  // Marks the end of the data of a source in the queue of blocks
+  private static final byte[] END_OF_SOURCE = new byte[0];
+
+  private final SecretKey secret;
+  private final int numSources;
+  private final int connectTimeout;
+  private final BlockingQueue<byte[]> blocks;
+  private final List<Thread> sourceThreads = new ArrayList<Thread>();
+  private final List<SourceConnection> connections =
+      new ArrayList<SourceConnection>();
+  private volatile Throwable sourceError;
+  private volatile boolean closed = false;
+  private int numFinishedSources = 0;
+
+  private final Deserializer<K> keyDeserializer;
+  private final Deserializer<V> valDeserializer;
+  private final DataInputBuffer blockIn = new DataInputBuffer();
+  private final DataInputBuffer keyIn = new DataInputBuffer();
+  private final DataInputBuffer valIn = new DataInputBuffer();
+  private K key;
+  private V value;
+
+  private final TezCounter inputRecordsCounter;
+
+  public PipelinedKVReader(Configuration conf, SecretKey secret,
+      int numSources, TezCounter inputRecordsCounter) throws IOException {
+    this.secret = secret;
+    this.numSources = numSources;
+    this.inputRecordsCounter = inputRecordsCounter;
+    this.connectTimeout = conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT,
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT_DEFAULT);
+    this.blocks = new LinkedBlockingQueue<byte[]>(conf.getInt(
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_QUEUE_SIZE,
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_QUEUE_SIZE_DEFAULT));
+
+    Class<K> keyClass = ConfigUtils.getIntermediateInputKeyClass(conf);
+    Class<V> valClass = ConfigUtils.getIntermediateInputValueClass(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keyDeserializer = serializationFactory.getDeserializer(keyClass);
+    this.keyDeserializer.open(keyIn);
+    this.valDeserializer = serializationFactory.getDeserializer(valClass);
+    this.valDeserializer.open(valIn);
+  }
+
+  /**
+   * Start reading the given partition from a producer.
+   */
+  public synchronized void addSource(final String host, final int port,
+      final String connectionId, final int partition) {
+    // Sources added after the reader is closed are still connected to, so
+    // that their producer is told that its data is not needed
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        readSource(host, port, connectionId, partition);
+      }
+    }, "PipelinedKVReader [" + connectionId + ":" + partition + "]");
+    thread.setDaemon(true);
+    sourceThreads.add(thread);
+    thread.start();
+  }
+
+  /**
+   * The connection to a producer. The end of the data is reported to the
+   * producer exactly once, either as an acknowledgement once it has all been
+   * read, or as the reader being done when it is closed early.
+   */
+  private static class SourceConnection {
+    private final DataOutputStream out;
+    private boolean finished = false;
+
+    SourceConnection(DataOutputStream out) {
+      this.out = out;
+    }
+
+    synchronized boolean finish(int message) throws IOException {
+      if (finished) {
+        return false;
+      }
+      finished = true;
+      out.write(message);
+      out.flush();
+      return true;
+    }
+  }
+
+  private void readSource(String host, int port, String connectionId,
+      int partition) {
+    Socket socket = null;
+    try {
+      socket = connect(host, port);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          socket.getInputStream()));
+      String msg = PipelinedChannelServer.getHashMessage(connectionId,
+          partition);
+      out.writeUTF(connectionId);
+      out.writeInt(partition);
+      out.writeUTF(secret == null ? "" : SecureShuffleUtils.hashFromString(
+          msg, secret));
+      out.flush();
+
+      SourceConnection connection = new SourceConnection(out);
+      boolean closedBeforeConnect;
+      synchronized (this) {
+        connections.add(connection);
+        closedBeforeConnect = closed;
+      }
+      if (closedBeforeConnect) {
+        connection.finish(PipelinedChannelServer.CONSUMER_DONE);
+      }
+
+      long numBytes = 0;
+      while (true) {
+        int length = in.readInt();
+        if (length == PipelinedChannelServer.EOF_MARKER) {
+          break;
+        }
+        if (closed) {
+          // Drain the data, so that the producer is not blocked or failed
+          // writing it before it sees that the reader is done
+          IOUtils.skipFully(in, length);
+          continue;
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        numBytes += length;
+        try {
+          blocks.put(block);
+        } catch (InterruptedException e) {
+          // Reader closed, drain the rest
+        }
+      }
+      if (connection.finish(PipelinedChannelServer.ACK)) {
+        LOG.info("Read " + numBytes + " bytes from " + host + ":" + port
+            + " for partition " + partition + " of " + connectionId);
+        if (!closed) {
+          blocks.put(END_OF_SOURCE);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Reader closed
+    } catch (Throwable t) {
+      if (closed) {
+        LOG.debug("Failed to drain partition " + partition + " of "
+            + connectionId + " from " + host + ":" + port, t);
+        return;
+      }
+      LOG.warn("Failed to read partition " + partition + " of "
+          + connectionId + " from " + host + ":" + port, t);
+      sourceError = t;
+      // Wake up the reader, if it is waiting.
+      blocks.offer(END_OF_SOURCE);
+    } finally {
+      IOUtils.closeSocket(socket);
+    }
+  }
+
+  private Socket connect(String host, int port) throws IOException,
+      InterruptedException {
+    long deadline = System.currentTimeMillis() + connectTimeout;
+    while (true) {
+      Socket socket = new Socket();
+      long remaining = deadline - System.currentTimeMillis();
+      try {
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port),
+            (int) Math.max(1, Math.min(remaining, UNIT_CONNECT_TIMEOUT)));
+        return socket;
+      } catch (IOException e) {
+        IOUtils.closeSocket(socket);
+        if (System.currentTimeMillis() + CONNECT_RETRY_INTERVAL >= deadline) {
+          throw e;
+        }
+        LOG.info("Failed to connect to " + host + ":" + port + ", retrying");
+        Thread.sleep(CONNECT_RETRY_INTERVAL);
+      }
+    }
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    while (blockIn.getPosition() >= blockIn.getLength()) {
+      if (numFinishedSources == numSources) {
+        return false;
+      }
+      byte[] block;
+      try {
+        block = blocks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for input", e);
+      }
+      if (sourceError != null) {
+        throw new IOException("Failed to read pipelined input", sourceError);
+      }
+      if (block == END_OF_SOURCE) {
+        numFinishedSources++;
+      } else {
+        blockIn.reset(block, block.length);
+      }
+    }
+
+    int keyLength = WritableUtils.readVInt(blockIn);
+    int valueLength = WritableUtils.readVInt(blockIn);
+    byte[] data = blockIn.getData();
+    int keyStart = blockIn.getPosition();
+    int valueStart = keyStart + keyLength;
+    int end = valueStart + valueLength;
+    keyIn.reset(data, keyStart, keyLength);
+    valIn.reset(data, valueStart, valueLength);
+    blockIn.reset(data, end, blockIn.getLength() - end);
+
+    key = keyDeserializer.deserialize(key);
+    value = valDeserializer.deserialize(value);
+    inputRecordsCounter.increment(1);
+    return true;
+  }
+
+  @Override
+  public Object getCurrentKey() throws IOException {
+    return key;
+  }
+
+  @Override
+  public Object getCurrentValue() throws IOException {
+    return value;
+  }
+
+  /**
+   * Stop reading from all the sources. Producers which have not ended their
+   * partition yet are told that the reader is done, and their remaining data
+   * is discarded in the background.
+   */
+  public void close() {
+    List<SourceConnection> openConnections;
+    List<Thread> threads;
+    synchronized (this) {
+      closed = true;
+      openConnections = new ArrayList<SourceConnection>(connections);
+      threads = new ArrayList<Thread>(sourceThreads);
+    }
+    for (SourceConnection connection : openConnections) {
+      try {
+        connection.finish(PipelinedChannelServer.CONSUMER_DONE);
+      } catch (IOException e) {
+        LOG.debug("Failed to notify a producer that the reader is done", e);
+      }
+    }
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.runtime.library.pipelined;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes key-value pairs to the consumers of a pipelined edge as they are
+ * produced.
+ * 
+ * Records are serialized into a block per partition, as
+ * <vint keyLength, vint valueLength, key, value>. A block is pushed to the
+ * consumer of its partition once it reaches the configured block size, and
+ * any remaining blocks are pushed on close.
+ */
+public class PipelinedKVWriter implements KeyValueWriter {
+
+  private static final Log LOG = LogFactory.getLog(PipelinedKVWriter.class);
+
+  private final PipelinedChannelServer server;
+  private final int numPartitions;
+  private final Partitioner partitioner;
+
+  @SuppressWarnings("rawtypes")
+  private final Class keyClass;
+  @SuppressWarnings("rawtypes")
+  private final Class valClass;
+  @SuppressWarnings("rawtypes")
+  private final Serializer keySerializer;
+  @SuppressWarnings("rawtypes")
+  private final Serializer valSerializer;
+
+  private final DataOutputBuffer[] blocks;
+  private final DataOutputBuffer serializationBuffer = new DataOutputBuffer();
+  private final int blockSize;
+
+  private final TezCounter outputRecordsCounter;
+  private final TezCounter outputBytesCounter;
+
+  private boolean closed = false;
+
+  @SuppressWarnings("unchecked")
+  public PipelinedKVWriter(Configuration conf, PipelinedChannelServer server,
+      int numPartitions, TezCounter outputRecordsCounter,
+      TezCounter outputBytesCounter) throws IOException {
+    Preconditions.checkArgument(numPartitions > 0,
+        "Number of partitions must be positive");
+    this.server = server;
+    this.numPartitions = numPartitions;
+    this.outputRecordsCounter = outputRecordsCounter;
+    this.outputBytesCounter = outputBytesCounter;
+
+    keyClass = ConfigUtils.getIntermediateOutputKeyClass(conf);
+    valClass = ConfigUtils.getIntermediateOutputValueClass(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    keySerializer = serializationFactory.getSerializer(keyClass);
+    keySerializer.open(serializationBuffer);
+    valSerializer = serializationFactory.getSerializer(valClass);
+    valSerializer.open(serializationBuffer);
+
+    if (numPartitions > 1) {
+      conf.setInt(TezJobConfig.TEZ_RUNTIME_NUM_EXPECTED_PARTITIONS,
+          numPartitions);
+      this.partitioner = TezRuntimeUtils.instantiatePartitioner(conf);
+    } else {
+      this.partitioner = null;
+    }
+
+    this.blockSize = conf.getInt(TezJobConfig.TEZ_RUNTIME_PIPELINED_BLOCK_SIZE,
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_BLOCK_SIZE_DEFAULT);
+    Preconditions.checkArgument(blockSize > 0,
+        TezJobConfig.TEZ_RUNTIME_PIPELINED_BLOCK_SIZE
+            + " should be larger than 0");
+    this.blocks = new DataOutputBuffer[numPartitions];
+    for (int i = 0; i < numPartitions; i++) {
+      blocks[i] = new DataOutputBuffer(blockSize);
+    }
+
+    LOG.info("Created " + getClass().getSimpleName() + " -> numPartitions: "
+        + numPartitions + ", blockSize: " + blockSize);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void write(Object key, Object value) throws IOException {
+    Preconditions.checkState(!closed, "Writer has already been closed");
+    if (key.getClass() != keyClass) {
+      throw new IOException("Type mismatch in key: expected "
+          + keyClass.getName() + ", received " + key.getClass().getName());
+    }
+    if (value.getClass() != valClass) {
+      throw new IOException("Type mismatch in value: expected "
+          + valClass.getName() + ", received " + value.getClass().getName());
+    }
+    int partition = 0;
+    if (partitioner != null) {
+      partition = partitioner.getPartition(key, value, numPartitions);
+      if (partition < 0 || partition >= numPartitions) {
+        throw new IOException("Illegal partition for " + key + " ("
+            + partition + ")" + ", TotalPartitions: " + numPartitions);
+      }
+    }
+
+    serializationBuffer.reset();
+    keySerializer.serialize(key);
+    int keyLength = serializationBuffer.getLength();
+    valSerializer.serialize(value);
+    int valueLength = serializationBuffer.getLength() - keyLength;
+
+    DataOutputBuffer block = blocks[partition];
+    WritableUtils.writeVInt(block, keyLength);
+    WritableUtils.writeVInt(block, valueLength);
+    block.write(serializationBuffer.getData(), 0,
+        serializationBuffer.getLength());
+
+    outputRecordsCounter.increment(1);
+    outputBytesCounter.increment(keyLength + valueLength);
+
+    if (block.getLength() >= blockSize) {
+      pushBlock(partition);
+    }
+  }
+
+  private void pushBlock(int partition) throws IOException {
+    DataOutputBuffer block = blocks[partition];
+    server.writeBlock(partition, block.getData(), block.getLength());
+    block.reset();
+  }
+
+  /**
+   * Push the remaining records and wait for all consumers to receive them.
+   */
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (int i = 0; i < numPartitions; i++) {
+      if (blocks[i].getLength() > 0) {
+        pushBlock(i);
+      }
+    }
+    server.close();
+  }
+}
@@ -66,6 +66,13 @@ public class DiskFetchedInput extends FetchedInput {
     return localFS.open(outputPath);
   }
   
+  /**
+   * @return the path of the fetched data once it has been committed
+   */
+  public Path getOutputPath() {
+    return outputPath;
+  }
+
   @Override
   public void commit() throws IOException {
     if (state == State.PENDING) {
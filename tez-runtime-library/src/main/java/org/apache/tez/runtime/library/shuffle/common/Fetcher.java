@@ -40,14 +40,18 @@ import javax.net.ssl.HttpsURLConnection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.security.ssl.SSLFactory;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleHeader;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.shuffle.common.FetchedInput.Type;
 
 import com.google.common.base.Preconditions;
@@ -65,6 +69,7 @@ public class Fetcher implements Callable<FetchResult> {
 
   // Configurable fields.
   private CompressionCodec codec;
+  private Decompressor decompressor;
   private int connectionTimeout;
   private int readTimeout;
 
@@ -76,6 +81,7 @@ public class Fetcher implements Callable<FetchResult> {
   private final FetcherCallback fetcherCallback;
   private final FetchedInputAllocator inputManager;
   private final ApplicationId appId;
+  private final Configuration conf;
 
   private static boolean sslShuffle = false;
   private static SSLFactory sslFactory;
@@ -104,6 +110,7 @@ public class Fetcher implements Callable<FetchResult> {
     this.inputManager = inputManager;
     this.shuffleSecret = shuffleSecret;
     this.appId = appId;
+    this.conf = conf;
     this.pathToAttemptMap = new HashMap<String, InputAttemptIdentifier>();
 
     this.fetcherIdentifier = fetcherIdGen.getAndIncrement();
@@ -135,12 +142,32 @@ public class Fetcher implements Callable<FetchResult> {
       return new FetchResult(host, port, partition, srcAttempts);
     }
 
+    // A single decompressor is used for all the inputs fetched from the host
+    if (codec != null) {
+      decompressor = CodecPool.getDecompressor(codec);
+    }
+    try {
+      return fetchFromHost();
+    } finally {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+        decompressor = null;
+      }
+    }
+  }
+
+  private FetchResult fetchFromHost() throws IOException {
     for (InputAttemptIdentifier in : srcAttempts) {
       pathToAttemptMap.put(in.getPathComponent(), in);
     }
 
     remaining = new LinkedHashSet<InputAttemptIdentifier>(srcAttempts);
 
+    if (port == ShuffleUtils.LOCAL_SHUFFLE_PORT) {
+      fetchFromLocalHost();
+      return new FetchResult(host, port, partition, remaining);
+    }
+
     HttpURLConnection connection;
     try {
       connection = connectToShuffleHandler(host, port, partition, srcAttempts);
@@ -203,6 +230,55 @@ public class Fetcher implements Callable<FetchResult> {
 
   }
 
+  /**
+   * Read inputs which are not served by a shuffle service directly from the
+   * local dirs, as in local mode.
+   */
+  private void fetchFromLocalHost() {
+    for (Iterator<InputAttemptIdentifier> iter = remaining.iterator();
+        iter.hasNext();) {
+      InputAttemptIdentifier srcAttemptId = iter.next();
+      FetchedInput fetchedInput = null;
+      try {
+        long startTime = System.currentTimeMillis();
+        TezIndexRecord indexRecord = ShuffleUtils.getLocalOutputIndexRecord(
+            conf, srcAttemptId.getPathComponent(), partition);
+        fetchedInput = inputManager.allocate(indexRecord.getRawLength(),
+            indexRecord.getPartLength(), srcAttemptId);
+        FSDataInputStream input = ShuffleUtils.openLocalOutput(conf,
+            srcAttemptId.getPathComponent(), indexRecord);
+        try {
+          if (fetchedInput.getType() == Type.MEMORY) {
+            ShuffleUtils.shuffleToMemory((MemoryFetchedInput) fetchedInput,
+                input, (int) indexRecord.getRawLength(),
+                (int) indexRecord.getPartLength(), codec, decompressor,
+                ifileReadAhead, ifileReadAheadLength, LOG);
+          } else {
+            ShuffleUtils.shuffleToDisk((DiskFetchedInput) fetchedInput, input,
+                indexRecord.getPartLength(), LOG);
+          }
+        } finally {
+          IOUtils.cleanup(LOG, input);
+        }
+        fetcherCallback.fetchSucceeded(host, srcAttemptId, fetchedInput,
+            indexRecord.getPartLength(),
+            System.currentTimeMillis() - startTime);
+        iter.remove();
+      } catch (IOException e) {
+        LOG.warn("Failed to read local output of " + srcAttemptId, e);
+        if (fetchedInput != null) {
+          try {
+            fetchedInput.abort();
+          } catch (IOException e2) {
+            LOG.info("Failure to cleanup fetchedInput: " + fetchedInput);
+          }
+        }
+        fetcherCallback.fetchFailed(host, srcAttemptId, false);
+        iter.remove();
+      }
+    }
+  }
+
   private InputAttemptIdentifier[] fetchInputs(DataInputStream input) {
     FetchedInput fetchedInput = null;
     InputAttemptIdentifier srcAttemptId = null;
@@ -267,7 +343,7 @@ public class Fetcher implements Callable<FetchResult> {
       if (fetchedInput.getType() == Type.MEMORY) {
         ShuffleUtils.shuffleToMemory((MemoryFetchedInput) fetchedInput,
             input, (int) decompressedLength, (int) compressedLength, codec,
-            ifileReadAhead, ifileReadAheadLength, LOG);
+            decompressor, ifileReadAhead, ifileReadAheadLength, LOG);
       } else {
         ShuffleUtils.shuffleToDisk((DiskFetchedInput) fetchedInput, input,
             compressedLength, LOG);
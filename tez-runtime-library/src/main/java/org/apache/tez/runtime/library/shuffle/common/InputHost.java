@@ -30,12 +30,30 @@ public class InputHost {
 
   private final String host;
   private final int port;
+  private final int partition;
 
   private final BlockingQueue<InputAttemptIdentifier> inputs = new LinkedBlockingQueue<InputAttemptIdentifier>();
 
   public InputHost(String hostName, int port, ApplicationId appId) {
+    this(hostName, port, appId, 0);
+  }
+
+  public InputHost(String hostName, int port, ApplicationId appId,
+      int partition) {
     this.host = hostName;
     this.port = port;
+    this.partition = partition;
+  }
+
+  /**
+   * Build the key identifying the inputs of a partition on a host.
+   */
+  public static String createIdentifier(String hostName, int partition) {
+    return hostName + ":" + partition;
+  }
+
+  public String getIdentifier() {
+    return createIdentifier(host, partition);
   }
 
   public String getHost() {
@@ -46,6 +64,10 @@ public class InputHost {
     return this.port;
   }
 
+  public int getPartition() {
+    return this.partition;
+  }
+
   public int getNumPendingInputs() {
     return inputs.size();
   }
@@ -67,6 +89,7 @@ public class InputHost {
     int result = 1;
     result = prime * result + ((host == null) ? 0 : host.hashCode());
     result = prime * result + port;
+    result = prime * result + partition;
     return result;
   }
 
@@ -86,16 +109,19 @@ public class InputHost {
       return false;
     if (port != other.port)
       return false;
+    if (partition != other.partition)
+      return false;
     return true;
   }
 
   public String toDetailedString() {
-    return "InputHost [host=" + host + ", port=" + port + ", inputs=" + inputs
-        + "]";
+    return "InputHost [host=" + host + ", port=" + port + ", partition="
+        + partition + ", inputs=" + inputs + "]";
   }
   
   @Override
   public String toString() {
-    return "InputHost [host=" + host + ", port=" + port + "]";
+    return "InputHost [host=" + host + ", port=" + port + ", partition="
+        + partition + "]";
   }
 }
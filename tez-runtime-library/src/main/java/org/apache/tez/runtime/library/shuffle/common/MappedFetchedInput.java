@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.shuffle.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A previously fetched input which is read from a memory-mapped file. The
+ * mapped buffer is owned by whoever created it, and is not released when the
+ * input is freed.
+ * 
+ * Reported as {@link FetchedInput.Type#DISK}, since it does not use any of
+ * the memory reserved for fetched inputs.
+ */
+public class MappedFetchedInput extends FetchedInput {
+
+  private final ByteBuffer buffer;
+
+  public MappedFetchedInput(ByteBuffer buffer, long actualSize,
+      InputAttemptIdentifier inputAttemptIdentifier,
+      FetchedInputCallback callbackHandler) {
+    super(Type.DISK, actualSize, buffer.limit(), inputAttemptIdentifier,
+        callbackHandler);
+    this.buffer = buffer;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    throw new UnsupportedOperationException(
+        "MappedFetchedInput can only be read from");
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return new ByteBufferInputStream(buffer.duplicate());
+  }
+
+  @Override
+  public void commit() throws IOException {
+    if (state == State.PENDING) {
+      state = State.COMMITTED;
+      notifyFetchComplete();
+    }
+  }
+
+  @Override
+  public void abort() throws IOException {
+    if (state == State.PENDING) {
+      state = State.ABORTED;
+      notifyFetchFailure();
+    }
+  }
+
+  @Override
+  public void free() {
+    Preconditions.checkState(
+        state == State.COMMITTED || state == State.ABORTED,
+        "FetchedInput can only be freed after it is committed or aborted");
+    if (state == State.COMMITTED) {
+      state = State.FREED;
+      notifyFreedResource();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MappedFetchedInput [inputAttemptIdentifier="
+        + inputAttemptIdentifier + ", actualSize=" + actualSize
+        + ",compressedSize=" + compressedSize + ", type=" + type + ", id="
+        + id + ", state=" + state + "]";
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return buffer.remaining();
+    }
+  }
+}
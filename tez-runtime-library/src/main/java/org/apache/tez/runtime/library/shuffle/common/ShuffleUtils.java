@@ -21,11 +21,17 @@ package org.apache.tez.runtime.library.shuffle.common;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 import javax.crypto.SecretKey;
 
 import org.apache.commons.logging.Log;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputByteBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
@@ -33,15 +39,27 @@ import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.api.TezOutputContext;
 import org.apache.tez.runtime.library.common.security.JobTokenSecretManager;
 import org.apache.tez.runtime.library.common.sort.impl.IFileInputStream;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutputFiles;
 
 public class ShuffleUtils {
 
   public static String SHUFFLE_HANDLER_SERVICE_ID = "mapreduce_shuffle";
 
+  /**
+   * Port published for outputs which are not served by a shuffle service, as
+   * in local mode. Consumers read such outputs from the local dirs directly.
+   */
+  public static final int LOCAL_SHUFFLE_PORT = 0;
+
   public static SecretKey getJobTokenSecretFromTokenBytes(ByteBuffer meta)
       throws IOException {
     DataInputByteBuffer in = new DataInputByteBuffer();
@@ -72,11 +90,106 @@ public class ShuffleUtils {
     }
   }
   
-  @SuppressWarnings("resource")
+  /**
+   * The port on which the outputs of this task are served. In local mode,
+   * where no shuffle service is running, this is {@link #LOCAL_SHUFFLE_PORT}.
+   * 
+   * @param conf the configuration of the output, which is checked for
+   *          {@link TezConfiguration#TEZ_LOCAL_MODE}
+   * @throws IOException if the shuffle service is not running, and the output
+   *           is not running in local mode
+   */
+  public static int getShufflePort(Configuration conf,
+      TezOutputContext outputContext) throws IOException {
+    ByteBuffer shuffleMetadata = outputContext
+        .getServiceProviderMetaData(SHUFFLE_HANDLER_SERVICE_ID);
+    if (shuffleMetadata == null) {
+      if (conf.getBoolean(TezConfiguration.TEZ_LOCAL_MODE,
+          TezConfiguration.TEZ_LOCAL_MODE_DEFAULT)) {
+        return LOCAL_SHUFFLE_PORT;
+      }
+      throw new IOException("No metadata for shuffle service "
+          + SHUFFLE_HANDLER_SERVICE_ID + ", and not running in local mode");
+    }
+    return deserializeShuffleProviderMetaData(shuffleMetadata);
+  }
+
+  /**
+   * The host of the NodeManager running this task, or the local host when
+   * the task is not running in a NodeManager container.
+   */
+  public static String getShuffleHost() {
+    String host = System.getenv(ApplicationConstants.Environment.NM_HOST
+        .toString());
+    if (host == null) {
+      try {
+        host = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        host = "localhost";
+      }
+    }
+    return host;
+  }
+
+  /**
+   * Find a partition of an output which was written to the local dirs of this
+   * node, for outputs published with {@link #LOCAL_SHUFFLE_PORT}.
+   */
+  public static TezIndexRecord getLocalOutputIndexRecord(Configuration conf,
+      String pathComponent, int partition) throws IOException {
+    Path indexFile = new TezTaskOutputFiles(conf, pathComponent)
+        .getOutputIndexFile();
+    return new TezSpillRecord(indexFile, conf).getIndex(partition);
+  }
+
+  /**
+   * Open an output which was written to the local dirs of this node,
+   * positioned at the start of the partition described by the index record.
+   */
+  public static FSDataInputStream openLocalOutput(Configuration conf,
+      String pathComponent, TezIndexRecord indexRecord) throws IOException {
+    Path outputFile = new TezTaskOutputFiles(conf, pathComponent)
+        .getOutputFile();
+    FSDataInputStream in = FileSystem.getLocal(conf).getRaw().open(outputFile);
+    try {
+      in.seek(indexRecord.getStartOffset());
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+    return in;
+  }
+
   public static void shuffleToMemory(MemoryFetchedInput fetchedInput,
       InputStream input, int decompressedLength, int compressedLength,
       CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength,
       Log LOG) throws IOException {
+    Decompressor decompressor = null;
+    if (codec != null) {
+      decompressor = CodecPool.getDecompressor(codec);
+    }
+    try {
+      shuffleToMemory(fetchedInput, input, decompressedLength,
+          compressedLength, codec, decompressor, ifileReadAhead,
+          ifileReadAheadLength, LOG);
+    } finally {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+      }
+    }
+  }
+
+  /**
+   * Decompress an input into its memory buffer, using a decompressor owned by
+   * the caller. Fetchers hold on to a single decompressor for all the inputs
+   * they fetch, instead of going to the {@link CodecPool} for each of them.
+   */
+  @SuppressWarnings("resource")
+  public static void shuffleToMemory(MemoryFetchedInput fetchedInput,
+      InputStream input, int decompressedLength, int compressedLength,
+      CompressionCodec codec, Decompressor decompressor,
+      boolean ifileReadAhead, int ifileReadAheadLength, Log LOG)
+      throws IOException {
     IFileInputStream checksumIn = new IFileInputStream(input, compressedLength,
         ifileReadAhead, ifileReadAheadLength);
 
@@ -84,7 +197,6 @@ public class ShuffleUtils {
 
     // Are map-outputs compressed?
     if (codec != null) {
-      Decompressor decompressor = CodecPool.getDecompressor(codec);
       decompressor.reset();
       input = codec.createInputStream(input, decompressor);
     }
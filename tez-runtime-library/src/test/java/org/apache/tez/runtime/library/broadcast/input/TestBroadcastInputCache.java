@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.runtime.library.broadcast.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryImpl;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryModule;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.common.Constants;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.output.OnFileUnorderedKVOutput;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+
+public class TestBroadcastInputCache {
+
+  private static final ApplicationId APP_ID = ApplicationId.newInstance(1, 1);
+  private static final String SOURCE = "attempt_source";
+
+  private File workDir;
+  private Configuration conf;
+
+  @Before
+  public void setup() throws Exception {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        getClass().getName());
+    FileUtil.fullyDelete(workDir);
+    // created up front, as the allocator of the local dirs does not create
+    // them again once it has seen them
+    workDir.mkdirs();
+    conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.getAbsolutePath());
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_VALUE_CLASS,
+        Text.class, Object.class);
+    conf.setBoolean(TezJobConfig.TEZ_RUNTIME_BROADCAST_CACHE_ENABLED, true);
+    // a fresh registry, as for a new container
+    Guice.createInjector(new ObjectRegistryModule(new ObjectRegistryImpl()));
+  }
+
+  @After
+  public void cleanup() {
+    FileUtil.fullyDelete(workDir);
+  }
+
+  /**
+   * Writes a broadcast output, which is read from the local dirs by the
+   * consumers since no shuffle service is running.
+   */
+  private void writeOutput(int numRecords) throws Exception {
+    Configuration outputConf = new Configuration();
+    outputConf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+    outputConf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class, Object.class);
+    outputConf.setClass(
+        TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS, Text.class,
+        Object.class);
+    TezOutputContext outputContext = mock(TezOutputContext.class);
+    when(outputContext.getUserPayload()).thenReturn(
+        TezUtils.createUserPayloadFromConf(outputConf));
+    when(outputContext.getWorkDirs()).thenReturn(
+        new String[] { workDir.getAbsolutePath() });
+    when(outputContext.getUniqueIdentifier()).thenReturn(SOURCE);
+    when(outputContext.getCounters()).thenReturn(new TezCounters());
+    when(outputContext.getApplicationId()).thenReturn(APP_ID);
+
+    OnFileUnorderedKVOutput output = new OnFileUnorderedKVOutput();
+    output.initialize(outputContext);
+    KeyValueWriter writer = output.getWriter();
+    for (int i = 0; i < numRecords; i++) {
+      writer.write(new Text("key" + i), new Text("value" + i));
+    }
+    output.close();
+  }
+
+  private BroadcastShuffleManager createShuffleManager(String name,
+      TezCounters counters, long taskMemory) throws IOException {
+    TezInputContext inputContext = mock(TezInputContext.class);
+    when(inputContext.getCounters()).thenReturn(counters);
+    when(inputContext.getUniqueIdentifier()).thenReturn(name);
+    when(inputContext.getApplicationId()).thenReturn(APP_ID);
+    when(inputContext.getSourceVertexName()).thenReturn("source");
+    when(inputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID)).thenReturn(
+        ShuffleUtils.convertJobTokenToBytes(new Token<JobTokenIdentifier>(
+            new byte[0], "password".getBytes(), new Text("kind"),
+            new Text("service"))));
+    Configuration inputConf = new Configuration(conf);
+    // decides whether inputs are fetched to memory or to disk
+    inputConf.setLong(Constants.TEZ_RUNTIME_TASK_MEMORY, taskMemory);
+    return new BroadcastShuffleManager(inputContext, inputConf, 1);
+  }
+
+  /**
+   * Adds the output as a known input, runs the manager and reads all records.
+   */
+  private int readInput(BroadcastShuffleManager shuffleManager)
+      throws Exception {
+    shuffleManager.addKnownInput("localhost", ShuffleUtils.LOCAL_SHUFFLE_PORT,
+        new InputAttemptIdentifier(0, 0, SOURCE), 0);
+    shuffleManager.run();
+    try {
+      BroadcastKVReader<?, ?> reader = shuffleManager.createReader();
+      int numRecords = 0;
+      while (reader.next()) {
+        assertEquals("key" + numRecords, reader.getCurrentKey().toString());
+        assertEquals("value" + numRecords,
+            reader.getCurrentValue().toString());
+        numRecords++;
+      }
+      return numRecords;
+    } finally {
+      shuffleManager.shutdown();
+    }
+  }
+
+  private static long getCounter(TezCounters counters, TaskCounter counter) {
+    return counters.findCounter(counter).getValue();
+  }
+
+  private File getCacheDir() {
+    return new File(workDir, "broadcast-cache");
+  }
+
+  @Test(timeout = 20000)
+  public void testCacheHitAcrossTasks() throws Exception {
+    writeOutput(1000);
+
+    // fetched to disk, since it is larger than the shuffle memory
+    TezCounters counters1 = new TezCounters();
+    assertEquals(1000,
+        readInput(createShuffleManager("input1", counters1, 1000)));
+    assertTrue(getCounter(counters1, TaskCounter.SHUFFLE_BYTES_TO_DISK) > 0);
+    assertEquals(1, getCacheDir().list().length);
+
+    // a later task in the same container reads the cached input
+    TezCounters counters2 = new TezCounters();
+    assertEquals(1000,
+        readInput(createShuffleManager("input2", counters2, 1000)));
+    assertEquals(0, getCounter(counters2, TaskCounter.SHUFFLE_BYTES_TO_DISK));
+    assertEquals(0, getCounter(counters2, TaskCounter.SHUFFLE_BYTES_TO_MEM));
+  }
+
+  @Test(timeout = 20000)
+  public void testCacheHitOnDisk() throws Exception {
+    writeOutput(1000);
+    assertEquals(1000,
+        readInput(createShuffleManager("input1", new TezCounters(), 1000)));
+
+    // another container on the same node finds the published file
+    Guice.createInjector(new ObjectRegistryModule(new ObjectRegistryImpl()));
+    BroadcastInputCache cache = new BroadcastInputCache(conf);
+    assertNotNull(cache.get(new InputAttemptIdentifier(0, 0, SOURCE), 0,
+        null));
+    TezCounters counters = new TezCounters();
+    assertEquals(1000,
+        readInput(createShuffleManager("input2", counters, 1000)));
+    assertEquals(0, getCounter(counters, TaskCounter.SHUFFLE_BYTES_TO_DISK));
+
+    // other partitions are not cached
+    assertNull(cache.get(new InputAttemptIdentifier(0, 0, SOURCE), 1, null));
+  }
+
+  @Test(timeout = 20000)
+  public void testSmallInputsNotCached() throws Exception {
+    writeOutput(10);
+
+    // fits in memory, so it is not worth caching
+    TezCounters counters1 = new TezCounters();
+    assertEquals(10, readInput(createShuffleManager("input1", counters1,
+        100 << 20)));
+    assertTrue(getCounter(counters1, TaskCounter.SHUFFLE_BYTES_TO_MEM) > 0);
+    assertFalse(getCacheDir().exists());
+
+    TezCounters counters2 = new TezCounters();
+    assertEquals(10, readInput(createShuffleManager("input2", counters2,
+        100 << 20)));
+    assertTrue(getCounter(counters2, TaskCounter.SHUFFLE_BYTES_TO_MEM) > 0);
+  }
+
+  @Test(timeout = 20000)
+  public void testCachingDisabled() throws Exception {
+    conf.setBoolean(TezJobConfig.TEZ_RUNTIME_BROADCAST_CACHE_ENABLED, false);
+    assertNull(BroadcastInputCache.getInstance(conf));
+    writeOutput(1000);
+
+    TezCounters counters1 = new TezCounters();
+    assertEquals(1000,
+        readInput(createShuffleManager("input1", counters1, 1000)));
+    long bytesToDisk = getCounter(counters1,
+        TaskCounter.SHUFFLE_BYTES_TO_DISK);
+    assertTrue(bytesToDisk > 0);
+    assertFalse(getCacheDir().exists());
+
+    // each task fetches the input again
+    TezCounters counters2 = new TezCounters();
+    assertEquals(1000,
+        readInput(createShuffleManager("input2", counters2, 1000)));
+    assertEquals(bytesToDisk,
+        getCounter(counters2, TaskCounter.SHUFFLE_BYTES_TO_DISK));
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.broadcast.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.shuffle.common.InputHost;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.junit.Test;
+
+public class TestBroadcastShuffleInputEventHandler {
+
+  private static final String HOST = "host";
+  private static final int PORT = 13562;
+
+  private BroadcastShuffleManager shuffleManager;
+  private BroadcastShuffleInputEventHandler handler;
+
+  private void setupHandler() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        "/tmp/" + getClass().getName());
+    TezInputContext inputContext = TestBroadcastShuffleManager
+        .createInputContext(new TezCounters());
+    shuffleManager = new BroadcastShuffleManager(inputContext, conf, 2);
+    handler = new BroadcastShuffleInputEventHandler(inputContext,
+        shuffleManager, new BroadcastInputManager(UUID.randomUUID()
+            .toString(), conf), null, false, 0);
+  }
+
+  private static Event createDataMovementEvent(int sourceIndex,
+      int targetIndex, boolean outputGenerated) {
+    DataMovementEventPayloadProto.Builder builder =
+        DataMovementEventPayloadProto.newBuilder();
+    builder.setOutputGenerated(outputGenerated);
+    if (outputGenerated) {
+      builder.setHost(HOST);
+      builder.setPort(PORT);
+      builder.setPathComponent("attempt" + targetIndex);
+    }
+    return new DataMovementEvent(sourceIndex, targetIndex,
+        builder.build().toByteArray());
+  }
+
+  @Test(timeout = 10000)
+  public void testSourceIndexIsPartition() throws IOException {
+    setupHandler();
+    // partition 3 of the output of source task 1
+    handler.handleEvents(Collections.singletonList(
+        createDataMovementEvent(3, 1, true)));
+
+    assertNull(shuffleManager.getKnownHost(HOST, 0));
+    InputHost inputHost = shuffleManager.getKnownHost(HOST, 3);
+    assertEquals(3, inputHost.getPartition());
+    assertEquals(PORT, inputHost.getPort());
+    List<InputAttemptIdentifier> inputs = inputHost.clearAndGetPendingInputs();
+    assertEquals(1, inputs.size());
+    assertEquals(1, inputs.get(0).getInputIdentifier().getSrcTaskIndex());
+    assertEquals("attempt1", inputs.get(0).getPathComponent());
+  }
+
+  @Test(timeout = 10000)
+  public void testEmptyPartitionNotFetched() throws IOException {
+    setupHandler();
+    handler.handleEvents(Collections.singletonList(
+        createDataMovementEvent(3, 1, false)));
+    assertNull(shuffleManager.getKnownHost(HOST, 3));
+  }
+}
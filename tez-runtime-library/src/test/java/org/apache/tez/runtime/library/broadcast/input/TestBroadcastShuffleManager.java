@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.broadcast.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.shuffle.common.FetchedInput;
+import org.apache.tez.runtime.library.shuffle.common.InputHost;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.junit.Test;
+
+public class TestBroadcastShuffleManager {
+
+  static TezInputContext createInputContext(TezCounters counters)
+      throws IOException {
+    TezInputContext inputContext = mock(TezInputContext.class);
+    when(inputContext.getCounters()).thenReturn(counters);
+    when(inputContext.getUniqueIdentifier()).thenReturn("input");
+    when(inputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID)).thenReturn(
+        ShuffleUtils.convertJobTokenToBytes(new Token<JobTokenIdentifier>(
+            new byte[0], "password".getBytes(), new Text("kind"),
+            new Text("service"))));
+    return inputContext;
+  }
+
+  @Test(timeout = 10000)
+  public void testShuffledBytesCounters() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        "/tmp/" + getClass().getName());
+    TezCounters counters = new TezCounters();
+    TezInputContext inputContext = createInputContext(counters);
+
+    BroadcastShuffleManager shuffleManager =
+        new BroadcastShuffleManager(inputContext, conf, 3);
+    BroadcastInputManager inputManager =
+        new BroadcastInputManager(UUID.randomUUID().toString(), conf);
+
+    // fetched from the source
+    InputAttemptIdentifier fetched = new InputAttemptIdentifier(0, 0);
+    shuffleManager.fetchSucceeded("host", fetched,
+        inputManager.allocate(100, 60, fetched), 60, 10);
+    assertEquals(100, getBytesToMem(counters));
+
+    // fetched again through another attempt, which is not used
+    InputAttemptIdentifier refetched = new InputAttemptIdentifier(0, 1);
+    shuffleManager.fetchSucceeded("host", refetched,
+        inputManager.allocate(100, 60, refetched), 60, 10);
+    assertEquals(100, getBytesToMem(counters));
+
+    // sent along with the event
+    InputAttemptIdentifier inline = new InputAttemptIdentifier(1, 0);
+    FetchedInput inlineInput = inputManager.allocate(50, 30, inline);
+    shuffleManager.addCompletedInputWithData(inline, inlineInput);
+    assertEquals(150, getBytesToMem(counters));
+    assertEquals(0, counters.findCounter(TaskCounter.SHUFFLE_BYTES_TO_DISK)
+        .getValue());
+  }
+
+  @Test(timeout = 10000)
+  public void testKnownInputsKeyedByPartition() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        "/tmp/" + getClass().getName());
+    BroadcastShuffleManager shuffleManager = new BroadcastShuffleManager(
+        createInputContext(new TezCounters()), conf, 3);
+
+    // different partitions on the same host are fetched separately
+    shuffleManager.addKnownInput("host", 13562,
+        new InputAttemptIdentifier(0, 0, "attempt0"), 0);
+    shuffleManager.addKnownInput("host", 13562,
+        new InputAttemptIdentifier(1, 0, "attempt1"), 1);
+    shuffleManager.addKnownInput("host", 13562,
+        new InputAttemptIdentifier(2, 0, "attempt2"), 0);
+
+    InputHost partition0 = shuffleManager.getKnownHost("host", 0);
+    InputHost partition1 = shuffleManager.getKnownHost("host", 1);
+    assertNotSame(partition0, partition1);
+    assertEquals(0, partition0.getPartition());
+    assertEquals(2, partition0.getNumPendingInputs());
+    assertEquals(1, partition1.getPartition());
+    assertEquals(1, partition1.getNumPendingInputs());
+    assertEquals("attempt1", partition1.clearAndGetPendingInputs().get(0)
+        .getPathComponent());
+    assertNull(shuffleManager.getKnownHost("host", 2));
+  }
+
+  private static long getBytesToMem(TezCounters counters) {
+    return counters.findCounter(TaskCounter.SHUFFLE_BYTES_TO_MEM).getValue();
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.broadcast.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.library.api.RawKeyValueReader;
+import org.apache.tez.runtime.library.common.combine.RawValueCombiner;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHashAggregatingKVReader {
+
+  /**
+   * Sums LongWritable values.
+   */
+  private static class SumCombiner implements RawValueCombiner {
+    private final LongWritable value1 = new LongWritable();
+    private final LongWritable value2 = new LongWritable();
+
+    @Override
+    public void combine(DataInputBuffer key, DataInputBuffer v1,
+        DataInputBuffer v2, DataOutputBuffer result) throws IOException {
+      value1.readFields(v1);
+      value2.readFields(v2);
+      new LongWritable(value1.get() + value2.get()).write(result);
+    }
+  }
+
+  /**
+   * Returns serialized Text keys and LongWritable values from a list.
+   */
+  private static class ListReader implements RawKeyValueReader {
+    private final List<byte[]> keys = new ArrayList<byte[]>();
+    private final List<byte[]> values = new ArrayList<byte[]>();
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private int index = -1;
+
+    void add(String k, long v) throws IOException {
+      DataOutputBuffer out = new DataOutputBuffer();
+      new Text(k).write(out);
+      keys.add(copy(out));
+      out.reset();
+      new LongWritable(v).write(out);
+      values.add(copy(out));
+    }
+
+    private static byte[] copy(DataOutputBuffer out) {
+      byte[] bytes = new byte[out.getLength()];
+      System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+      return bytes;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if (++index >= keys.size()) {
+        return false;
+      }
+      key.reset(keys.get(index), keys.get(index).length);
+      value.reset(values.get(index), values.get(index).length);
+      return true;
+    }
+
+    @Override
+    public DataInputBuffer getCurrentRawKey() throws IOException {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getCurrentRawValue() throws IOException {
+      return value;
+    }
+  }
+
+  private Configuration conf;
+  private TezCounters counters;
+  private TezInputContext inputContext;
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS,
+        "/tmp/" + getClass().getName());
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_VALUE_CLASS,
+        LongWritable.class, Object.class);
+    conf.setInt(
+        TezJobConfig.TEZ_RUNTIME_UNORDERED_INPUT_AGGREGATION_BUFFER_SIZE_MB, 1);
+    counters = new TezCounters();
+    inputContext = mock(TezInputContext.class);
+    when(inputContext.getCounters()).thenReturn(counters);
+    when(inputContext.getUniqueIdentifier()).thenReturn("input");
+  }
+
+  @Test(timeout = 10000)
+  public void testAggregateInMemory() throws IOException {
+    ListReader source = new ListReader();
+    for (int i = 0; i < 100; i++) {
+      for (int k = 0; k < 10; k++) {
+        source.add("key" + k, i);
+      }
+    }
+    HashAggregatingKVReader<Text, LongWritable> reader =
+        new HashAggregatingKVReader<Text, LongWritable>(inputContext, conf,
+            source, new SumCombiner());
+
+    Map<String, Long> result = new HashMap<String, Long>();
+    while (reader.next()) {
+      Text key = (Text) reader.getCurrentKey();
+      LongWritable value = (LongWritable) reader.getCurrentValue();
+      assertFalse(result.containsKey(key.toString()));
+      result.put(key.toString(), value.get());
+    }
+    assertFalse(reader.next());
+    assertEquals(10, result.size());
+    for (int k = 0; k < 10; k++) {
+      assertEquals(Long.valueOf(4950), result.get("key" + k));
+    }
+    assertEquals(1000, getCounter(TaskCounter.COMBINE_INPUT_RECORDS));
+    assertEquals(10, getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS));
+    assertEquals(0, getCounter(TaskCounter.SPILLED_RECORDS));
+  }
+
+  @Test(timeout = 20000)
+  public void testSpillAndMerge() throws IOException {
+    // more distinct keys than fit in the 1MB buffer, so the table is spilled
+    // several times and each key shows up in more than one run
+    int numKeys = 50000;
+    int rounds = 3;
+    ListReader source = new ListReader();
+    for (int i = 0; i < rounds; i++) {
+      for (int k = 0; k < numKeys; k++) {
+        source.add(String.format("key%08d", k), k);
+      }
+    }
+    HashAggregatingKVReader<Text, LongWritable> reader =
+        new HashAggregatingKVReader<Text, LongWritable>(inputContext, conf,
+            source, new SumCombiner());
+
+    int count = 0;
+    Text key = new Text();
+    LongWritable value = new LongWritable();
+    while (reader.next()) {
+      // records of merged runs come out in key order
+      assertEquals(String.format("key%08d", count),
+          reader.getCurrentKey().toString());
+      assertEquals((long) rounds * count,
+          ((LongWritable) reader.getCurrentValue()).get());
+      // the raw bytes match the deserialized record
+      key.readFields(reader.getCurrentRawKey());
+      value.readFields(reader.getCurrentRawValue());
+      assertEquals(String.format("key%08d", count), key.toString());
+      assertEquals((long) rounds * count, value.get());
+      count++;
+    }
+    assertEquals(numKeys, count);
+    assertEquals(rounds * numKeys,
+        getCounter(TaskCounter.COMBINE_INPUT_RECORDS));
+    assertEquals(numKeys, getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS));
+    assertTrue(getCounter(TaskCounter.SPILLED_RECORDS) > 0);
+  }
+
+  private long getCounter(TaskCounter counter) {
+    return counters.findCounter(counter).getValue();
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.Progress;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.GenericCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.junit.Test;
+
+public class TestValuesIterator {
+
+  private static final String[] KEYS = { "a", "a", "a", "b", "c", "c", "d" };
+
+  /**
+   * Serves serialized records out of a single shared buffer, so that the key
+   * bytes are overwritten by every call to next().
+   */
+  private static class BufferRawIterator implements TezRawKeyValueIterator {
+    private final List<byte[]> keys = new ArrayList<byte[]>();
+    private final List<byte[]> values = new ArrayList<byte[]>();
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private final byte[] keyData = new byte[64];
+    private int index = -1;
+
+    BufferRawIterator(String[] keyStrings) throws IOException {
+      DataOutputBuffer out = new DataOutputBuffer();
+      for (int i = 0; i < keyStrings.length; i++) {
+        out.reset();
+        new Text(keyStrings[i]).write(out);
+        keys.add(copy(out));
+        out.reset();
+        new IntWritable(i).write(out);
+        values.add(copy(out));
+      }
+    }
+
+    private static byte[] copy(DataOutputBuffer out) {
+      byte[] bytes = new byte[out.getLength()];
+      System.arraycopy(out.getData(), 0, bytes, 0, out.getLength());
+      return bytes;
+    }
+
+    @Override
+    public DataInputBuffer getKey() throws IOException {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() throws IOException {
+      return value;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if (++index >= keys.size()) {
+        return false;
+      }
+      byte[] k = keys.get(index);
+      System.arraycopy(k, 0, keyData, 0, k.length);
+      key.reset(keyData, k.length);
+      value.reset(values.get(index), values.get(index).length);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public Progress getProgress() {
+      return new Progress();
+    }
+  }
+
+  private void verifyGrouping(boolean rawComparison) throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(TezJobConfig.TEZ_RUNTIME_GROUP_RAW_COMPARISON, rawComparison);
+    TezCounter keyCounter = new GenericCounter("keys", "keys");
+    TezCounter valueCounter = new GenericCounter("values", "values");
+    @SuppressWarnings("unchecked")
+    ValuesIterator<Text, IntWritable> iter = new ValuesIterator<Text, IntWritable>(
+        new BufferRawIterator(KEYS), WritableComparator.get(Text.class),
+        Text.class, IntWritable.class, conf, keyCounter, valueCounter);
+
+    String[] expectedKeys = { "a", "b", "c", "d" };
+    int[][] expectedValues = { { 0, 1, 2 }, { 3 }, { 4, 5 }, { 6 } };
+    Iterable<IntWritable> firstValues = null;
+    int group = 0;
+    while (iter.moveToNext()) {
+      assertEquals(expectedKeys[group], iter.getKey().toString());
+      Iterable<IntWritable> values = iter.getValues();
+      if (firstValues == null) {
+        firstValues = values;
+      } else {
+        assertSame(firstValues, values);
+      }
+      List<Integer> actual = new ArrayList<Integer>();
+      for (IntWritable value : values) {
+        actual.add(value.get());
+      }
+      assertEquals(expectedValues[group].length, actual.size());
+      for (int i = 0; i < actual.size(); i++) {
+        assertEquals(expectedValues[group][i], actual.get(i).intValue());
+      }
+      group++;
+    }
+    assertEquals(expectedKeys.length, group);
+    // the first group is not counted by the key counter
+    assertEquals(expectedKeys.length - 1, keyCounter.getValue());
+    assertEquals(KEYS.length, valueCounter.getValue());
+  }
+
+  @Test(timeout = 5000)
+  public void testRawGrouping() throws IOException {
+    verifyGrouping(true);
+  }
+
+  @Test(timeout = 5000)
+  public void testObjectGrouping() throws IOException {
+    verifyGrouping(false);
+  }
+
+  @Test(timeout = 5000)
+  public void testRawKeysAndValues() throws IOException {
+    @SuppressWarnings("unchecked")
+    ValuesIterator<Text, IntWritable> iter = new ValuesIterator<Text, IntWritable>(
+        new BufferRawIterator(KEYS), WritableComparator.get(Text.class),
+        Text.class, IntWritable.class, new Configuration(),
+        new GenericCounter("keys", "keys"), new GenericCounter("values", "values"));
+
+    Text key = new Text();
+    IntWritable value = new IntWritable();
+    List<String> keys = new ArrayList<String>();
+    int numValues = 0;
+    while (iter.moveToNext()) {
+      key.readFields(iter.getRawKey());
+      keys.add(key.toString());
+      for (DataInputBuffer rawValue : iter.getRawValues()) {
+        value.readFields(rawValue);
+        assertEquals(numValues++, value.get());
+      }
+    }
+    assertEquals(4, keys.size());
+    assertEquals("a", keys.get(0));
+    assertEquals("d", keys.get(3));
+    assertEquals(KEYS.length, numValues);
+  }
+
+  @Test(timeout = 5000)
+  public void testPartiallyConsumedGroups() throws IOException {
+    @SuppressWarnings("unchecked")
+    ValuesIterator<Text, IntWritable> iter = new ValuesIterator<Text, IntWritable>(
+        new BufferRawIterator(KEYS), WritableComparator.get(Text.class),
+        Text.class, IntWritable.class, new Configuration(),
+        new GenericCounter("keys", "keys"), new GenericCounter("values", "values"));
+
+    assertTrue(iter.moveToNext());
+    Iterator<IntWritable> stale = iter.getValues().iterator();
+    assertEquals(0, stale.next().get());
+    // skip the rest of the first group
+    assertTrue(iter.moveToNext());
+    assertEquals("b", iter.getKey().toString());
+    try {
+      stale.next();
+      fail("Stale values iterator should not be usable");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(3, iter.getValues().iterator().next().get());
+    assertTrue(iter.moveToNext());
+    assertEquals("c", iter.getKey().toString());
+    assertTrue(iter.moveToNext());
+    assertEquals("d", iter.getKey().toString());
+    assertFalse(iter.moveToNext());
+  }
+
+  @Test(timeout = 5000)
+  public void testKeyAfterLastGroupConsumed() throws IOException {
+    @SuppressWarnings("unchecked")
+    ValuesIterator<Text, IntWritable> iter = new ValuesIterator<Text, IntWritable>(
+        new BufferRawIterator(KEYS), WritableComparator.get(Text.class),
+        Text.class, IntWritable.class, new Configuration(),
+        new GenericCounter("keys", "keys"), new GenericCounter("values", "values"));
+
+    String lastKey = null;
+    while (iter.moveToNext()) {
+      for (IntWritable value : iter.getValues()) {
+        // drain the values before looking at the key
+      }
+      lastKey = iter.getKey().toString();
+    }
+    assertEquals("d", lastKey);
+  }
+}
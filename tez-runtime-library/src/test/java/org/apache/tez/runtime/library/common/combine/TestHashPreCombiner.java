@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.PipelinedSorter;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHashPreCombiner {
+
+  private static final int NUM_PARTITIONS = 2;
+
+  public static class KeyHashPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  /**
+   * Sums LongWritable values.
+   */
+  private static class SumCombiner implements RawValueCombiner {
+    private final LongWritable value1 = new LongWritable();
+    private final LongWritable value2 = new LongWritable();
+
+    @Override
+    public void combine(DataInputBuffer key, DataInputBuffer v1,
+        DataInputBuffer v2, DataOutputBuffer result) throws IOException {
+      value1.readFields(v1);
+      value2.readFields(v2);
+      new LongWritable(value1.get() + value2.get()).write(result);
+    }
+  }
+
+  private File workDir;
+  private Configuration conf;
+  private TezCounters counters;
+  private TezOutputContext outputContext;
+
+  @Before
+  public void setup() {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        getClass().getName());
+    FileUtil.fullyDelete(workDir);
+    conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.getAbsolutePath());
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        LongWritable.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        KeyHashPartitioner.class, Partitioner.class);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_MB, 4);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_SORT_HASH_COMBINER_BUFFER_SIZE_MB, 1);
+    counters = new TezCounters();
+    outputContext = mock(TezOutputContext.class);
+    when(outputContext.getCounters()).thenReturn(counters);
+    when(outputContext.getUniqueIdentifier()).thenReturn("output");
+  }
+
+  @After
+  public void cleanup() {
+    FileUtil.fullyDelete(workDir);
+  }
+
+  @Test(timeout = 10000)
+  public void testFlushToPipelinedSorter() throws IOException {
+    ExternalSorter sorter = new PipelinedSorter();
+    sorter.initialize(outputContext, conf, NUM_PARTITIONS);
+    HashPreCombiner preCombiner = new HashPreCombiner(outputContext, conf,
+        sorter, NUM_PARTITIONS, new SumCombiner());
+
+    for (int i = 0; i < 100; i++) {
+      for (int k = 0; k < 10; k++) {
+        preCombiner.write(new Text("key" + k), new LongWritable(i));
+      }
+    }
+    // the combined records reach the sorter through its raw write
+    preCombiner.flush();
+    sorter.flush();
+    sorter.close();
+
+    Map<String, Long> result = readOutput(sorter.getMapOutput());
+    assertEquals(10, result.size());
+    for (int k = 0; k < 10; k++) {
+      assertEquals(Long.valueOf(4950), result.get("key" + k));
+    }
+    assertEquals(1000,
+        counters.findCounter(TaskCounter.HASH_COMBINE_INPUT_RECORDS).getValue());
+    assertEquals(10,
+        counters.findCounter(TaskCounter.HASH_COMBINE_OUTPUT_RECORDS).getValue());
+    assertEquals(10,
+        counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue());
+  }
+
+  @Test(timeout = 10000)
+  public void testTypeMismatch() throws IOException {
+    ExternalSorter sorter = new PipelinedSorter();
+    sorter.initialize(outputContext, conf, NUM_PARTITIONS);
+    HashPreCombiner preCombiner = new HashPreCombiner(outputContext, conf,
+        sorter, NUM_PARTITIONS, new SumCombiner());
+    try {
+      preCombiner.write(new IntWritable(1), new LongWritable(1));
+      fail("Expected a type mismatch in the key");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Type mismatch in key"));
+    }
+    try {
+      preCombiner.write(new Text("key"), new IntWritable(1));
+      fail("Expected a type mismatch in the value");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Type mismatch in value"));
+    }
+    preCombiner.flush();
+    assertEquals(0,
+        counters.findCounter(TaskCounter.HASH_COMBINE_INPUT_RECORDS).getValue());
+    sorter.close();
+  }
+
+  /**
+   * Reads all records of the sorted output. Each key is expected once.
+   */
+  private Map<String, Long> readOutput(TezTaskOutput outputFiles)
+      throws IOException {
+    FileSystem rfs = FileSystem.getLocal(conf).getRaw();
+    TezSpillRecord spillRecord = new TezSpillRecord(
+        outputFiles.getOutputIndexFile(), conf);
+    Map<String, Long> result = new HashMap<String, Long>();
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valueIn = new DataInputBuffer();
+    Text key = new Text();
+    LongWritable value = new LongWritable();
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      TezIndexRecord indexRecord = spillRecord.getIndex(i);
+      FSDataInputStream in = rfs.open(outputFiles.getOutputFile());
+      in.seek(indexRecord.getStartOffset());
+      IFile.Reader reader = new IFile.Reader(in, indexRecord.getPartLength(),
+          null, null, false, 0, -1);
+      try {
+        while (reader.nextRawKey(keyIn)) {
+          reader.nextRawValue(valueIn);
+          key.readFields(keyIn);
+          value.readFields(valueIn);
+          assertFalse(result.containsKey(key.toString()));
+          result.put(key.toString(), value.get());
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return result;
+  }
+}
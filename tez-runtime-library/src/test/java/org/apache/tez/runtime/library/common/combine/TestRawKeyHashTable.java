@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.junit.Test;
+
+public class TestRawKeyHashTable {
+
+  /**
+   * Concatenates Text values, so that combined values grow and entries have
+   * to be moved within the table.
+   */
+  private static class ConcatCombiner implements RawValueCombiner {
+    private final Text value1 = new Text();
+    private final Text value2 = new Text();
+
+    @Override
+    public void combine(DataInputBuffer key, DataInputBuffer v1,
+        DataInputBuffer v2, DataOutputBuffer result) throws IOException {
+      value1.readFields(v1);
+      value2.readFields(v2);
+      value1.append(value2.getBytes(), 0, value2.getLength());
+      value1.write(result);
+    }
+  }
+
+  private static DataInputBuffer serialize(String s) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new Text(s).write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    return in;
+  }
+
+  private static Map<String, String> readAll(RawKeyHashTable table)
+      throws IOException {
+    Map<String, String> result = new HashMap<String, String>();
+    TezRawKeyValueIterator iter = table.iterator();
+    Text key = new Text();
+    Text value = new Text();
+    while (iter.next()) {
+      key.readFields(iter.getKey());
+      value.readFields(iter.getValue());
+      result.put(key.toString(), value.toString());
+    }
+    return result;
+  }
+
+  @Test(timeout = 5000)
+  public void testCombine() throws IOException {
+    RawKeyHashTable table = new RawKeyHashTable(1 << 20, new ConcatCombiner());
+    for (int i = 0; i < 10; i++) {
+      for (int k = 0; k < 5000; k++) {
+        assertTrue(table.add(serialize("key" + k), serialize("" + i)));
+      }
+    }
+    assertEquals(5000, table.size());
+    Map<String, String> result = readAll(table);
+    assertEquals(5000, result.size());
+    assertEquals("0123456789", result.get("key0"));
+    assertEquals("0123456789", result.get("key4999"));
+
+    table.clear();
+    assertTrue(table.isEmpty());
+    assertTrue(readAll(table).isEmpty());
+  }
+
+  @Test(timeout = 5000)
+  public void testMemoryLimit() throws IOException {
+    RawKeyHashTable table = new RawKeyHashTable(64 << 10, new ConcatCombiner());
+    int added = 0;
+    while (table.add(serialize("key" + added), serialize("value"))) {
+      added++;
+    }
+    assertTrue(added > 0);
+    assertTrue(table.getMemoryUsed() <= 64 << 10);
+    assertEquals(added, table.size());
+    // a failed add leaves the table unchanged
+    assertFalse(table.add(serialize("key" + added), serialize("value")));
+    assertEquals(added, readAll(table).size());
+  }
+
+  @Test(timeout = 5000)
+  public void testSort() throws IOException {
+    RawKeyHashTable table = new RawKeyHashTable(1 << 20, new ConcatCombiner());
+    String[] keys = { "d", "b", "e", "a", "c", "b", "a" };
+    for (String key : keys) {
+      table.add(serialize(key), serialize(key));
+    }
+    table.sort(WritableComparator.get(Text.class));
+    // entries can still be combined once sorted
+    table.add(serialize("c"), serialize("c"));
+
+    TezRawKeyValueIterator iter = table.iterator();
+    Text key = new Text();
+    Text value = new Text();
+    String[] expectedKeys = { "a", "b", "c", "d", "e" };
+    String[] expectedValues = { "aa", "bb", "cc", "d", "e" };
+    for (int i = 0; i < expectedKeys.length; i++) {
+      assertTrue(iter.next());
+      key.readFields(iter.getKey());
+      value.readFields(iter.getValue());
+      assertEquals(expectedKeys[i], key.toString());
+      assertEquals(expectedValues[i], value.toString());
+    }
+    assertFalse(iter.next());
+  }
+
+  @Test(timeout = 5000)
+  public void testPartitions() throws IOException {
+    RawKeyHashTable table = new RawKeyHashTable(1 << 20, new ConcatCombiner());
+    table.add(serialize("a"), serialize("0"), 0);
+    table.add(serialize("a"), serialize("1"), 1);
+    table.add(serialize("a"), serialize("2"), 0);
+    assertEquals(2, table.size());
+
+    RawKeyHashTable.EntryIterator iter = table.iterator();
+    Text value = new Text();
+    assertTrue(iter.next());
+    assertEquals(0, iter.getPartition());
+    value.readFields(iter.getValue());
+    assertEquals("02", value.toString());
+    assertTrue(iter.next());
+    assertEquals(1, iter.getPartition());
+    value.readFields(iter.getValue());
+    assertEquals("1", value.toString());
+    assertFalse(iter.next());
+  }
+}
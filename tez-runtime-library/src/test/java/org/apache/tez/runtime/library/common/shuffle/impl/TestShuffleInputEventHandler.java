@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.GenericCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.common.Constants;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestShuffleInputEventHandler {
+
+  private static final int NUM_INPUTS = 2;
+
+  private File workDir;
+  private Configuration conf;
+  private TezCounter shuffledInputs;
+  private ShuffleScheduler scheduler;
+  private MergeManager merger;
+  private ShuffleInputEventHandler handler;
+
+  @Before
+  public void setup() throws IOException {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        getClass().getName());
+    FileUtil.fullyDelete(workDir);
+    conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.getAbsolutePath());
+    conf.setLong(Constants.TEZ_RUNTIME_TASK_MEMORY, 16 << 20);
+    TezInputContext inputContext = mock(TezInputContext.class);
+    when(inputContext.getUniqueIdentifier()).thenReturn("input");
+    when(inputContext.getSourceVertexName()).thenReturn("source");
+    when(inputContext.getApplicationId()).thenReturn(
+        ApplicationId.newInstance(1, 1));
+
+    shuffledInputs = new GenericCounter("shuffled", "shuffled");
+    scheduler = new ShuffleScheduler(inputContext, conf, NUM_INPUTS, null,
+        shuffledInputs, new GenericCounter("bytes", "bytes"),
+        new GenericCounter("failed", "failed"));
+    merger = new MergeManager(conf, FileSystem.getLocal(conf),
+        new LocalDirAllocator(TezJobConfig.LOCAL_DIRS), inputContext, null,
+        new GenericCounter("spilled", "spilled"),
+        new GenericCounter("combined", "combined"),
+        new GenericCounter("merged", "merged"), null);
+    handler = new ShuffleInputEventHandler(inputContext, scheduler, merger,
+        null);
+  }
+
+  @After
+  public void cleanup() throws InterruptedException {
+    scheduler.close();
+    FileUtil.fullyDelete(workDir);
+  }
+
+  @Test(timeout = 10000)
+  public void testInlineCopy() throws IOException {
+    DataProto data = createData(10);
+    handler.handleEvents(Collections.<Event>singletonList(
+        createEvent(0, 0, data)));
+
+    assertTrue(scheduler.isInputFinished(0));
+    assertFalse(scheduler.isInputFinished(1));
+    assertEquals(1, shuffledInputs.getValue());
+    assertEquals(data.getRawLength(), merger.getUsedMemory());
+  }
+
+  @Test(timeout = 10000)
+  public void testDuplicateInlineEvent() throws IOException {
+    DataProto data = createData(10);
+    handler.handleEvents(Collections.<Event>singletonList(
+        createEvent(0, 0, data)));
+    // the same data from another attempt, or the same event once more
+    handler.handleEvents(Collections.<Event>singletonList(
+        createEvent(0, 1, data)));
+    handler.handleEvents(Collections.<Event>singletonList(
+        createEvent(0, 0, data)));
+
+    assertEquals(1, shuffledInputs.getValue());
+    // no memory is held for the ignored copies
+    assertEquals(data.getRawLength(), merger.getUsedMemory());
+  }
+
+  @Test(timeout = 10000)
+  public void testLateCopyReleased() throws IOException {
+    DataProto data = createData(10);
+    handler.handleEvents(Collections.<Event>singletonList(
+        createEvent(0, 0, data)));
+
+    // a copy of another attempt which completes after the input is finished,
+    // e.g. a fetch which was already in progress
+    InputAttemptIdentifier lateAttempt = new InputAttemptIdentifier(0, 1);
+    MapOutput lateOutput = merger.reserve(lateAttempt, 100, 0);
+    assertEquals(MapOutput.Type.MEMORY, lateOutput.getType());
+    assertEquals(data.getRawLength() + 100, merger.getUsedMemory());
+    scheduler.copySucceeded(lateAttempt, null, 100, 0, lateOutput);
+
+    assertEquals(1, shuffledInputs.getValue());
+    assertEquals(data.getRawLength(), merger.getUsedMemory());
+  }
+
+  private static DataMovementEvent createEvent(int input, int version,
+      DataProto data) {
+    DataMovementEventPayloadProto payload = DataMovementEventPayloadProto
+        .newBuilder()
+        .setHost("localhost")
+        .setPort(13562)
+        .setPathComponent("attempt_" + input + "_" + version)
+        .setData(data)
+        .build();
+    DataMovementEvent event = new DataMovementEvent(0, input,
+        payload.toByteArray());
+    event.setVersion(version);
+    return event;
+  }
+
+  /**
+   * @return an IFile segment, as sent by the producer inside the event
+   */
+  private DataProto createData(int numRecords) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FSDataOutputStream out = new FSDataOutputStream(bytes, null);
+    IFile.Writer writer = new IFile.Writer(conf, out, Text.class, Text.class,
+        null, null);
+    for (int i = 0; i < numRecords; i++) {
+      writer.append(new Text("key" + i), new Text("value" + i));
+    }
+    writer.close();
+    out.close();
+    return DataProto.newBuilder()
+        .setData(ByteString.copyFrom(bytes.toByteArray()))
+        .setRawLength((int) writer.getRawLength())
+        .setCompressedLength((int) writer.getCompressedLength())
+        .build();
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.impl.MetricsSystemImpl;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.common.objectregistry.ObjectLifeCycle;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryImpl;
+import org.apache.tez.runtime.common.objectregistry.SizedObject;
+import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.junit.Test;
+
+public class TestShuffleHandler {
+
+  private static class TestSorter extends ExternalSorter
+      implements SizedObject {
+    private final long size;
+
+    TestSorter(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+
+    @Override
+    public void write(Object key, Object value) throws IOException {
+    }
+
+    @Override
+    public long getEstimatedSize() {
+      return size;
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testRegisterFetchRelease() {
+    ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl();
+    ShuffleHandler shuffleHandler =
+        new ShuffleHandler(new MetricsSystemImpl(), objectRegistry);
+    assertTrue(shuffleHandler.canServeFromMemory());
+
+    TestSorter sorter = new TestSorter(1 << 20);
+    shuffleHandler.registerOutput("attempt_0", sorter, 3);
+    assertSame(sorter, shuffleHandler.getOutput("attempt_0"));
+
+    shuffleHandler.partitionFetched("attempt_0", 0);
+    shuffleHandler.partitionFetched("attempt_0", 2);
+    // fetching a partition again does not count twice
+    shuffleHandler.partitionFetched("attempt_0", 2);
+    assertSame(sorter, shuffleHandler.getOutput("attempt_0"));
+
+    shuffleHandler.partitionFetched("attempt_0", 1);
+    assertNull(shuffleHandler.getOutput("attempt_0"));
+    assertNull(objectRegistry.get(
+        ShuffleHandler.class.getName() + ".output.attempt_0"));
+
+    // late fetches of a released output are ignored
+    shuffleHandler.partitionFetched("attempt_0", 1);
+  }
+
+  @Test(timeout = 5000)
+  public void testUnregisterAndDAGChange() {
+    ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl();
+    ShuffleHandler shuffleHandler =
+        new ShuffleHandler(new MetricsSystemImpl(), objectRegistry);
+
+    shuffleHandler.registerOutput("attempt_0", new TestSorter(0), 1);
+    shuffleHandler.registerOutput("attempt_1", new TestSorter(0), 1);
+    shuffleHandler.unregisterOutput("attempt_0");
+    assertNull(shuffleHandler.getOutput("attempt_0"));
+
+    objectRegistry.clearCache(ObjectLifeCycle.DAG);
+    assertNull(shuffleHandler.getOutput("attempt_1"));
+  }
+
+  @Test(timeout = 5000)
+  public void testOutputsBoundedByDAGBudget() {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TezConfiguration.TEZ_TASK_OBJECT_REGISTRY_DAG_MAX_SIZE_MB, 3);
+    ObjectRegistryImpl objectRegistry = new ObjectRegistryImpl(conf);
+    ShuffleHandler shuffleHandler =
+        new ShuffleHandler(new MetricsSystemImpl(), objectRegistry);
+
+    for (int i = 0; i < 4; ++i) {
+      shuffleHandler.registerOutput("attempt_" + i, new TestSorter(1 << 20), 1);
+    }
+    int served = 0;
+    for (int i = 0; i < 4; ++i) {
+      if (shuffleHandler.getOutput("attempt_" + i) != null) {
+        ++served;
+      }
+    }
+    assertEquals(3, served);
+    assertNull(shuffleHandler.getOutput("attempt_0"));
+  }
+
+  @Test(timeout = 5000)
+  public void testNoObjectRegistry() {
+    ShuffleHandler shuffleHandler =
+        new ShuffleHandler(new MetricsSystemImpl(), null);
+    assertFalse(shuffleHandler.canServeFromMemory());
+    assertNull(shuffleHandler.getOutput("attempt_0"));
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.writers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.impl.TezOutputContextImpl;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnorderedPartitionedKVWriter {
+
+  private static final int NUM_PARTITIONS = 3;
+
+  private static Configuration defaultConf = new Configuration();
+  private static FileSystem localFs = null;
+  private static Path workDir = null;
+
+  static {
+    defaultConf.set("fs.defaultFS", "file:///");
+    try {
+      localFs = FileSystem.getLocal(defaultConf);
+      workDir = new Path(
+          new Path(System.getProperty("test.build.data", "/tmp")),
+          TestUnorderedPartitionedKVWriter.class.getName()).makeQualified(
+          localFs.getUri(), localFs.getWorkingDirectory());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Sends even values to partition 0 and odd values to partition 1. The last
+   * partition never receives any records.
+   */
+  public static class ParityPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return ((IntWritable) value).get() % 2;
+    }
+  }
+
+  @Before
+  public void setup() throws Exception {
+    localFs.delete(workDir, true);
+    // the local dir allocator does not create dirs it has already seen
+    localFs.mkdirs(workDir);
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    localFs.delete(workDir, true);
+  }
+
+  @Test(timeout = 30000)
+  public void testInMemoryOutput() throws Exception {
+    verifyOutput(1000);
+  }
+
+  @Test(timeout = 30000)
+  public void testSpilledOutput() throws Exception {
+    // Enough records to spill the 1MB buffer more than once
+    verifyOutput(250000);
+  }
+
+  @Test(timeout = 30000)
+  public void testAllocatedBytesBounded() throws Exception {
+    Configuration conf = createConf();
+    UnorderedPartitionedKVWriter writer = new UnorderedPartitionedKVWriter(
+        createOutputContext(conf), conf, NUM_PARTITIONS);
+    Text key = new Text();
+    IntWritable value = new IntWritable();
+    for (int i = 0; i < 250000; i++) {
+      key.set("key" + i);
+      value.set(i);
+      writer.write(key, value);
+      // capacity is released by spilling, not just the bytes written
+      assertTrue(writer.getAllocatedBytes() < (1 << 20));
+    }
+    writer.close();
+  }
+
+  private Configuration createConf() {
+    Configuration conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        ParityPartitioner.class.getName());
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB, 1);
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.toString());
+    return conf;
+  }
+
+  private void verifyOutput(int numRecords) throws Exception {
+    Configuration conf = createConf();
+    TezOutputContext outputContext = createOutputContext(conf);
+    UnorderedPartitionedKVWriter writer = new UnorderedPartitionedKVWriter(
+        outputContext, conf, NUM_PARTITIONS);
+    Text key = new Text();
+    IntWritable value = new IntWritable();
+    for (int i = 0; i < numRecords; i++) {
+      key.set("key" + i);
+      value.set(i);
+      writer.write(key, value);
+    }
+    assertTrue(writer.close());
+    assertFalse(writer.isPartitionEmpty(0));
+    assertFalse(writer.isPartitionEmpty(1));
+    assertTrue(writer.isPartitionEmpty(2));
+
+    TezTaskOutput taskOutput = TezRuntimeUtils.instantiateTaskOutputManager(
+        conf, outputContext);
+    TezSpillRecord spillRecord = new TezSpillRecord(
+        taskOutput.getOutputIndexFile(), conf);
+    Path outputFile = taskOutput.getOutputFile();
+    int total = 0;
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      TezIndexRecord indexRecord = spillRecord.getIndex(i);
+      int count = 0;
+      int lastValue = -1;
+      FSDataInputStream in = localFs.open(outputFile);
+      in.seek(indexRecord.getStartOffset());
+      IFile.Reader reader = new IFile.Reader(in, indexRecord.getPartLength(),
+          null, null, false, 0, 4096);
+      DataInputBuffer keyIn = new DataInputBuffer();
+      DataInputBuffer valueIn = new DataInputBuffer();
+      while (reader.nextRawKey(keyIn)) {
+        reader.nextRawValue(valueIn);
+        key.readFields(keyIn);
+        value.readFields(valueIn);
+        assertEquals(i, value.get() % 2);
+        assertEquals("key" + value.get(), key.toString());
+        // records keep the order in which they were written
+        assertTrue(value.get() > lastValue);
+        lastValue = value.get();
+        count++;
+      }
+      reader.close();
+      assertEquals(i == 2 ? 0 : numRecords / 2, count);
+      total += count;
+    }
+    assertEquals(numRecords, total);
+  }
+
+  private TezOutputContext createOutputContext(Configuration conf)
+      throws IOException {
+    TezDAGID dagID = TezDAGID.getInstance("2000", 1, 1);
+    TezVertexID vertexID = TezVertexID.getInstance(dagID, 1);
+    TezTaskID taskID = TezTaskID.getInstance(vertexID, 1);
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(taskID, 1);
+    return new TezOutputContextImpl(conf, 1, null, "currentVertex",
+        "destinationVertex", taskAttemptID, new TezCounters(),
+        TezUtils.createUserPayloadFromConf(conf), null, null,
+        new HashMap<String, String>());
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezInputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.api.KeyValuesReader;
+import org.apache.tez.runtime.library.common.Constants;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestShuffledMergedInput {
+
+  private File workDir;
+  private Configuration conf;
+  private TezInputContext inputContext;
+
+  @Before
+  public void setup() throws IOException {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        getClass().getName());
+    FileUtil.fullyDelete(workDir);
+    conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_VALUE_CLASS,
+        Text.class.getName());
+    conf.setLong(Constants.TEZ_RUNTIME_TASK_MEMORY, 16 << 20);
+
+    inputContext = mock(TezInputContext.class);
+    when(inputContext.getDAGName()).thenReturn("dag");
+    when(inputContext.getTaskVertexName()).thenReturn("vertex");
+    when(inputContext.getTaskIndex()).thenReturn(0);
+    when(inputContext.getUniqueIdentifier()).thenReturn("input");
+    when(inputContext.getSourceVertexName()).thenReturn("source");
+    when(inputContext.getApplicationId()).thenReturn(
+        ApplicationId.newInstance(1, 1));
+    when(inputContext.getCounters()).thenReturn(new TezCounters());
+    when(inputContext.getWorkDirs()).thenReturn(
+        new String[] { workDir.getAbsolutePath() });
+    when(inputContext.getUserPayload()).thenReturn(
+        TezUtils.createUserPayloadFromConf(conf));
+    when(inputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID)).thenReturn(
+        ShuffleUtils.convertJobTokenToBytes(new Token<JobTokenIdentifier>(
+            new byte[0], "password".getBytes(), new Text("kind"),
+            new Text("service"))));
+  }
+
+  @After
+  public void cleanup() {
+    FileUtil.fullyDelete(workDir);
+  }
+
+  @Test(timeout = 10000)
+  public void testEventsBeforeInitialize() throws IOException {
+    ShuffledMergedInput input = new ShuffledMergedInput();
+    input.setNumPhysicalInputs(2);
+
+    // the events may be routed before the framework has initialized the input
+    input.handleEvents(Collections.<Event>singletonList(createEvent(0, 0, 10)));
+    assertFalse(input.isInputReady());
+
+    input.initialize(inputContext);
+    input.handleEvents(Collections.<Event>singletonList(createEvent(1, 10, 5)));
+
+    KeyValuesReader reader = input.getReader();
+    assertTrue(input.isInputReady());
+    int numRecords = 0;
+    while (reader.next()) {
+      numRecords++;
+      assertTrue(reader.getCurrentValues().iterator().hasNext());
+    }
+    assertEquals(15, numRecords);
+    input.close();
+  }
+
+  @Test(timeout = 10000)
+  public void testEventsAfterFailedInitialize() throws IOException {
+    ShuffledMergedInput input = new ShuffledMergedInput();
+    input.setNumPhysicalInputs(1);
+    // fails the start of the shuffle
+    when(inputContext.getCounters()).thenReturn(null);
+    try {
+      input.initialize(inputContext);
+      fail("Expected the initialization to fail");
+    } catch (RuntimeException e) {
+    } catch (IOException e) {
+    }
+    assertTrue(input.isInputReady());
+
+    try {
+      input.handleEvents(Collections.<Event>singletonList(
+          createEvent(0, 0, 10)));
+      fail("Expected events to be rejected");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("failed to initialize"));
+    }
+  }
+
+  private DataMovementEvent createEvent(int input, int firstKey,
+      int numRecords) throws IOException {
+    DataMovementEventPayloadProto payload = DataMovementEventPayloadProto
+        .newBuilder()
+        .setHost("localhost")
+        .setPort(13562)
+        .setPathComponent("attempt_" + input)
+        .setData(createData(firstKey, numRecords))
+        .build();
+    DataMovementEvent event = new DataMovementEvent(0, input,
+        payload.toByteArray());
+    event.setVersion(0);
+    return event;
+  }
+
+  /**
+   * @return an IFile segment, as sent by the producer inside the event
+   */
+  private DataProto createData(int firstKey, int numRecords)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FSDataOutputStream out = new FSDataOutputStream(bytes, null);
+    IFile.Writer writer = new IFile.Writer(conf, out, Text.class, Text.class,
+        null, null);
+    for (int i = firstKey; i < firstKey + numRecords; i++) {
+      writer.append(new Text(String.format("key%03d", i)),
+          new Text("value" + i));
+    }
+    writer.close();
+    out.close();
+    return DataProto.newBuilder()
+        .setData(ByteString.copyFrom(bytes.toByteArray()))
+        .setRawLength((int) writer.getRawLength())
+        .setCompressedLength((int) writer.getCompressedLength())
+        .build();
+  }
+}
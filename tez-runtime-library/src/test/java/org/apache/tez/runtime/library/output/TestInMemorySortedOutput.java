@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.common.objectregistry.ObjectRegistryModule;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.security.JobTokenSecretManager;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleHeader;
+import org.apache.tez.runtime.library.common.shuffle.server.ShuffleHandler;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutputFiles;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+
+public class TestInMemorySortedOutput {
+
+  private static final int NUM_PARTITIONS = 3;
+  private static final ApplicationId APP_ID = ApplicationId.newInstance(1, 1);
+  private static final byte[] PASSWORD = "password".getBytes();
+
+  public static class KeyHashPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  private File workDir;
+  private Configuration conf;
+  private TezCounters counters;
+  // appended to each value
+  private String padding;
+
+  @BeforeClass
+  public static void setupObjectRegistry() {
+    // as done by the container, so that outputs can be served from memory
+    Guice.createInjector(new ObjectRegistryModule());
+  }
+
+  @Before
+  public void setup() {
+    workDir = new File(System.getProperty("test.build.data", "/tmp"),
+        getClass().getName());
+    FileUtil.fullyDelete(workDir);
+    // created up front, as the allocator of the local dirs does not create
+    // them again once it has seen them
+    workDir.mkdirs();
+    conf = new Configuration();
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.getAbsolutePath());
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        KeyHashPartitioner.class, Partitioner.class);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_MB, 1);
+    counters = new TezCounters();
+    padding = "";
+  }
+
+  @After
+  public void cleanup() {
+    FileUtil.fullyDelete(workDir);
+  }
+
+  private TezOutputContext createOutputContext(String uniqueIdentifier)
+      throws IOException {
+    TezOutputContext outputContext = mock(TezOutputContext.class);
+    when(outputContext.getCounters()).thenReturn(counters);
+    when(outputContext.getUniqueIdentifier()).thenReturn(uniqueIdentifier);
+    when(outputContext.getDestinationVertexName()).thenReturn("destination");
+    when(outputContext.getApplicationId()).thenReturn(APP_ID);
+    when(outputContext.getWorkDirs()).thenReturn(
+        new String[] { workDir.getAbsolutePath() });
+    when(outputContext.getUserPayload()).thenReturn(
+        TezUtils.createUserPayloadFromConf(conf));
+    when(outputContext.getServiceConsumerMetaData(
+        ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID)).thenReturn(
+        ShuffleUtils.convertJobTokenToBytes(new Token<JobTokenIdentifier>(
+            new byte[0], PASSWORD, new Text("kind"), new Text("service"))));
+    return outputContext;
+  }
+
+  private InMemorySortedOutput writeOutput(String uniqueIdentifier,
+      int numRecords) throws IOException {
+    InMemorySortedOutput output = new InMemorySortedOutput();
+    output.setNumPhysicalOutputs(NUM_PARTITIONS);
+    output.initialize(createOutputContext(uniqueIdentifier));
+    KeyValueWriter writer = (KeyValueWriter) output.getWriter();
+    for (int i = 0; i < numRecords; i++) {
+      writer.write(new Text(String.format("key%06d", i)),
+          new Text("value" + i + padding));
+    }
+    return output;
+  }
+
+  @Test(timeout = 30000)
+  public void testServedFromMemory() throws IOException {
+    InMemorySortedOutput output = writeOutput("attempt_memory", 10000);
+    List<Event> events = output.close();
+    assertTrue(output.sorter.isServedFromMemory());
+    // the final merge was skipped, nothing was written to disk
+    try {
+      new TezTaskOutputFiles(conf, "attempt_memory").getOutputFile();
+      fail("Expected no output file");
+    } catch (IOException e) {
+    }
+
+    int port = checkEvents(events, "attempt_memory");
+    assertEquals(output.sorter.getShufflePort(), port);
+    int numRecords = 0;
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      numRecords += readPartition(fetchPartition(port, "attempt_memory", i),
+          i);
+    }
+    assertEquals(10000, numRecords);
+  }
+
+  @Test(timeout = 30000)
+  public void testLargeRecordsServedFromMemory() throws IOException {
+    // records which are larger than the buffers the shuffle server reads into
+    char[] chars = new char[100000];
+    Arrays.fill(chars, 'x');
+    padding = new String(chars);
+    InMemorySortedOutput output = writeOutput("attempt_large", 5);
+    List<Event> events = output.close();
+    assertTrue(output.sorter.isServedFromMemory());
+
+    int port = checkEvents(events, "attempt_large");
+    int numRecords = 0;
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      numRecords += readPartition(fetchPartition(port, "attempt_large", i), i);
+    }
+    assertEquals(5, numRecords);
+  }
+
+  @Test(timeout = 30000)
+  public void testServedFromDisk() throws IOException {
+    // no shuffle service is running, outputs are read from the local dirs
+    conf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+    // more than the sort buffer, so that the spill thread spills before the
+    // final flush
+    InMemorySortedOutput output = writeOutput("attempt_disk", 50000);
+    List<Event> events = output.close();
+    assertFalse(output.sorter.isServedFromMemory());
+
+    // served by the shuffle service, from the merged output
+    int port = checkEvents(events, "attempt_disk");
+    assertEquals(ShuffleUtils.LOCAL_SHUFFLE_PORT, port);
+    int numRecords = 0;
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      TezIndexRecord indexRecord =
+          ShuffleUtils.getLocalOutputIndexRecord(conf, "attempt_disk", i);
+      IFile.Reader reader = new IFile.Reader(
+          ShuffleUtils.openLocalOutput(conf, "attempt_disk", indexRecord),
+          indexRecord.getPartLength(), null, null, false, 0, -1);
+      numRecords += readPartition(reader, i);
+    }
+    assertEquals(50000, numRecords);
+  }
+  @Test(timeout = 30000)
+  public void testServedFromDiskWithoutShuffleService() throws IOException {
+    InMemorySortedOutput output = writeOutput("attempt_noshuffle", 50000);
+    try {
+      output.close();
+      fail("Expected the missing shuffle service to be reported");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("local mode"));
+    }
+  }
+
+
+  /**
+   * Checks the events generated on close, and returns the shuffle port they
+   * point at.
+   */
+  private int checkEvents(List<Event> events, String pathComponent)
+      throws IOException {
+    assertEquals(NUM_PARTITIONS + 1, events.size());
+    VertexManagerEvent vmEvent = (VertexManagerEvent) events.get(0);
+    assertEquals("destination", vmEvent.getTargetVertexName());
+    long outputSize = VertexManagerEventPayloadProto.parseFrom(
+        vmEvent.getUserPayload()).getOutputSize();
+    assertTrue(outputSize > 0);
+    assertEquals(counters.findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue(),
+        outputSize);
+
+    int port = -1;
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      DataMovementEvent dmEvent = (DataMovementEvent) events.get(i + 1);
+      assertEquals(i, dmEvent.getSourceIndex());
+      DataMovementEventPayloadProto payload =
+          DataMovementEventPayloadProto.parseFrom(dmEvent.getUserPayload());
+      assertEquals(ShuffleUtils.getShuffleHost(), payload.getHost());
+      assertEquals(pathComponent, payload.getPathComponent());
+      if (i > 0) {
+        assertEquals(port, payload.getPort());
+      }
+      port = payload.getPort();
+    }
+    return port;
+  }
+
+  /**
+   * Fetches a partition from the in-memory shuffle server, the way the
+   * Fetcher does.
+   */
+  private IFile.Reader fetchPartition(int port, String pathComponent,
+      int partition) throws IOException {
+    URL url = new URL(ShuffleUtils.constructBaseURIForShuffleHandler(
+        "localhost", port, partition, APP_ID).append(pathComponent)
+        .toString());
+    SecretKey secret = JobTokenSecretManager.createSecretKey(PASSWORD);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.addRequestProperty(SecureShuffleUtils.HTTP_HEADER_URL_HASH,
+        SecureShuffleUtils.hashFromString(
+            SecureShuffleUtils.buildMsgFrom(url), secret));
+    connection.addRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    connection.addRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+    assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+
+    InputStream in = new DataInputStream(connection.getInputStream());
+    ShuffleHeader header = new ShuffleHeader();
+    header.readFields((DataInputStream) in);
+    assertEquals(pathComponent, header.getMapId());
+    assertEquals(partition, header.getPartition());
+    return new IFile.Reader(in, header.getCompressedLength(), null, null,
+        false, 0, -1);
+  }
+
+  /**
+   * Reads a partition, checking that its keys are sorted and belong to it.
+   * @return the number of records in the partition
+   */
+  private int readPartition(IFile.Reader reader, int partition)
+      throws IOException {
+    KeyHashPartitioner partitioner = new KeyHashPartitioner();
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valueIn = new DataInputBuffer();
+    Text key = new Text();
+    Text value = new Text();
+    String previousKey = null;
+    int numRecords = 0;
+    try {
+      while (reader.nextRawKey(keyIn)) {
+        reader.nextRawValue(valueIn);
+        key.readFields(keyIn);
+        value.readFields(valueIn);
+        assertEquals(partition,
+            partitioner.getPartition(key, value, NUM_PARTITIONS));
+        assertTrue(previousKey == null
+            || previousKey.compareTo(key.toString()) < 0);
+        assertEquals("value" + Integer.parseInt(key.toString().substring(3))
+            + padding, value.toString());
+        previousKey = key.toString();
+        numRecords++;
+      }
+    } finally {
+      reader.close();
+    }
+    return numRecords;
+  }
+}
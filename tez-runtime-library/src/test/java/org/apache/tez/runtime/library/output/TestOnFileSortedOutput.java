@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.yarn.util.AuxiliaryServiceHelper;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.api.impl.TezOutputContextImpl;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOnFileSortedOutput {
+
+  private static final Log LOG = LogFactory.getLog(TestOnFileSortedOutput.class);
+
+  private static final int MAX_PARTITION_SIZE = 1000;
+  private static final int MAX_TOTAL_SIZE = 200;
+
+  private static Configuration defaultConf = new Configuration();
+  private static FileSystem localFs = null;
+  private static Path workDir = null;
+
+  static {
+    defaultConf.set("fs.defaultFS", "file:///");
+    try {
+      localFs = FileSystem.getLocal(defaultConf);
+      workDir = new Path(
+          new Path(System.getProperty("test.build.data", "/tmp")), TestOnFileSortedOutput.class.getName())
+          .makeQualified(localFs.getUri(), localFs.getWorkingDirectory());
+      LOG.info("Using workDir: " + workDir);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Values are written as partition * 10000 + n
+  public static class ValuePartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return ((IntWritable) value).get() / 10000;
+    }
+  }
+
+  @Before
+  public void setup() throws Exception {
+    localFs.delete(workDir, true);
+    localFs.mkdirs(workDir);
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    localFs.delete(workDir, true);
+  }
+
+  @Test
+  public void testDataViaEvents() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS, Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS, IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        ValuePartitioner.class.getName());
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_MB, 1);
+    conf.setBoolean(TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_ENABLED, true);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_PARTITION_SIZE,
+        MAX_PARTITION_SIZE);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_SORTED_DATA_VIA_EVENTS_MAX_TOTAL_SIZE,
+        MAX_TOTAL_SIZE);
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.toString());
+
+    TezDAGID dagID = TezDAGID.getInstance("2000", 1, 1);
+    TezVertexID vertexID = TezVertexID.getInstance(dagID, 1);
+    TezTaskID taskID = TezTaskID.getInstance(vertexID, 1);
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(taskID, 1);
+    byte[] userPayload = TezUtils.createUserPayloadFromConf(conf);
+
+    int shufflePort = 2112;
+    Map<String, String> auxEnv = new HashMap<String, String>();
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    bb.putInt(shufflePort);
+    bb.position(0);
+    AuxiliaryServiceHelper.setServiceDataIntoEnv(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID, bb, auxEnv);
+
+    TezOutputContext outputContext = new TezOutputContextImpl(conf, 1, null,
+        "currentVertex", "destinationVertex", taskAttemptID,
+        new TezCounters(), userPayload, null, null, auxEnv);
+
+    OnFileSortedOutput sortedOutput = new OnFileSortedOutput();
+    sortedOutput.setNumPhysicalOutputs(4);
+    sortedOutput.initialize(outputContext);
+
+    // a small partition, one which is small but too large for what is left
+    // of the total, another small one, and one which is too large by itself
+    int[] numRecords = new int[] { 1, 30, 1, 200 };
+    KeyValueWriter kvWriter = sortedOutput.getWriter();
+    for (int partition = 0; partition < numRecords.length; partition++) {
+      for (int n = 0; n < numRecords[partition]; n++) {
+        kvWriter.write(new Text("key" + n),
+            new IntWritable(partition * 10000 + n));
+      }
+    }
+    List<Event> events = sortedOutput.close();
+
+    TezSpillRecord spillRecord = new TezSpillRecord(
+        TezRuntimeUtils.instantiateTaskOutputManager(sortedOutput.conf,
+            outputContext).getOutputIndexFile(), sortedOutput.conf);
+    long[] partLengths = new long[numRecords.length];
+    for (int i = 0; i < numRecords.length; i++) {
+      partLengths[i] = spillRecord.getIndex(i).getPartLength();
+    }
+    assertTrue(partLengths[0] + partLengths[2] <= MAX_TOTAL_SIZE);
+    assertTrue(partLengths[0] + partLengths[1] > MAX_TOTAL_SIZE);
+    assertTrue(partLengths[1] <= MAX_PARTITION_SIZE);
+    assertTrue(partLengths[3] > MAX_PARTITION_SIZE);
+
+    assertEquals(5, events.size());
+    assertTrue(events.get(0) instanceof VertexManagerEvent);
+    boolean[] expectInline = new boolean[] { true, false, true, false };
+    for (int i = 0; i < numRecords.length; i++) {
+      DataMovementEvent dmEvent = (DataMovementEvent) events.get(i + 1);
+      assertEquals(i, dmEvent.getSourceIndex());
+      DataMovementEventPayloadProto shufflePayload = DataMovementEventPayloadProto
+          .parseFrom(dmEvent.getUserPayload());
+      // every partition can still be fetched
+      assertEquals(outputContext.getUniqueIdentifier(), shufflePayload.getPathComponent());
+      assertEquals(shufflePort, shufflePayload.getPort());
+      assertEquals("Partition " + i, expectInline[i], shufflePayload.hasData());
+      if (expectInline[i]) {
+        TezIndexRecord indexRecord = spillRecord.getIndex(i);
+        DataProto data = shufflePayload.getData();
+        assertEquals(indexRecord.getPartLength(), data.getCompressedLength());
+        assertEquals(indexRecord.getRawLength(), data.getRawLength());
+        assertEquals(indexRecord.getPartLength(), data.getData().size());
+      }
+    }
+  }
+
+  @Test
+  public void testDataViaEventsDisabled() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS, Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS, IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        ValuePartitioner.class.getName());
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_IO_SORT_MB, 1);
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.toString());
+
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(
+        TezTaskID.getInstance(TezVertexID.getInstance(
+            TezDAGID.getInstance("2000", 1, 1), 1), 1), 1);
+    Map<String, String> auxEnv = new HashMap<String, String>();
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    bb.putInt(2112);
+    bb.position(0);
+    AuxiliaryServiceHelper.setServiceDataIntoEnv(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID, bb, auxEnv);
+    TezOutputContext outputContext = new TezOutputContextImpl(conf, 1, null,
+        "currentVertex", "destinationVertex", taskAttemptID,
+        new TezCounters(), TezUtils.createUserPayloadFromConf(conf), null,
+        null, auxEnv);
+
+    OnFileSortedOutput sortedOutput = new OnFileSortedOutput();
+    sortedOutput.setNumPhysicalOutputs(1);
+    sortedOutput.initialize(outputContext);
+    sortedOutput.getWriter().write(new Text("key"), new IntWritable(1));
+    List<Event> events = sortedOutput.close();
+
+    assertEquals(2, events.size());
+    DataMovementEventPayloadProto shufflePayload = DataMovementEventPayloadProto
+        .parseFrom(((DataMovementEvent) events.get(1)).getUserPayload());
+    assertFalse(shufflePayload.hasData());
+  }
+}
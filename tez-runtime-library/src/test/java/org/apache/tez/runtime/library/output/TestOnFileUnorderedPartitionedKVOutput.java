@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.yarn.util.AuxiliaryServiceHelper;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.TezOutputContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.impl.TezOutputContextImpl;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.shuffle.common.ShuffleUtils;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOnFileUnorderedPartitionedKVOutput {
+
+  private static final Log LOG = LogFactory.getLog(TestOnFileUnorderedPartitionedKVOutput.class);
+
+  private static Configuration defaultConf = new Configuration();
+  private static FileSystem localFs = null;
+  private static Path workDir = null;
+
+  static {
+    defaultConf.set("fs.defaultFS", "file:///");
+    try {
+      localFs = FileSystem.getLocal(defaultConf);
+      workDir = new Path(
+          new Path(System.getProperty("test.build.data", "/tmp")), TestOnFileUnorderedPartitionedKVOutput.class.getName())
+          .makeQualified(localFs.getUri(), localFs.getWorkingDirectory());
+      LOG.info("Using workDir: " + workDir);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Even values go to the first partition, odd values to the last one
+  public static class FirstAndLastPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return ((IntWritable) value).get() % 2 == 0 ? 0 : numPartitions - 1;
+    }
+  }
+
+  @Before
+  @After
+  public void cleanup() throws Exception {
+    localFs.delete(workDir, true);
+  }
+
+  @Test
+  public void testGeneratedDataMovementEvents() throws Exception {
+    OnFileUnorderedPartitionedKVOutput kvOutput =
+        new OnFileUnorderedPartitionedKVOutputForTest();
+
+    Configuration conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS, Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS, IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        FirstAndLastPartitioner.class.getName());
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, workDir.toString());
+
+    TezDAGID dagID = TezDAGID.getInstance("2000", 1, 1);
+    TezVertexID vertexID = TezVertexID.getInstance(dagID, 1);
+    TezTaskID taskID = TezTaskID.getInstance(vertexID, 1);
+    TezTaskAttemptID taskAttemptID = TezTaskAttemptID.getInstance(taskID, 1);
+    byte[] userPayload = TezUtils.createUserPayloadFromConf(conf);
+
+    int shufflePort = 2112;
+    Map<String, String> auxEnv = new HashMap<String, String>();
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    bb.putInt(shufflePort);
+    bb.position(0);
+    AuxiliaryServiceHelper.setServiceDataIntoEnv(ShuffleUtils.SHUFFLE_HANDLER_SERVICE_ID, bb, auxEnv);
+
+    TezOutputContext outputContext = new TezOutputContextImpl(conf, 1, null,
+        "currentVertex", "destinationVertex", taskAttemptID,
+        new TezCounters(), userPayload, null, null, auxEnv);
+
+    kvOutput.setNumPhysicalOutputs(3);
+    List<Event> events = kvOutput.initialize(outputContext);
+    assertTrue(events != null && events.size() == 0);
+
+    KeyValueWriter kvWriter = kvOutput.getWriter();
+    for (int i = 0; i < 10; i++) {
+      kvWriter.write(new Text("key" + i), new IntWritable(i));
+    }
+
+    // one event per partition, with the partition as its source index
+    events = kvOutput.close();
+    assertEquals(3, events.size());
+    for (int i = 0; i < 3; i++) {
+      DataMovementEvent dmEvent = (DataMovementEvent) events.get(i);
+      assertEquals("Invalid source index", i, dmEvent.getSourceIndex());
+      DataMovementEventPayloadProto shufflePayload = DataMovementEventPayloadProto
+          .parseFrom(dmEvent.getUserPayload());
+      if (i == 1) {
+        // nothing to fetch for the empty partition
+        assertFalse(shufflePayload.getOutputGenerated());
+        assertFalse(shufflePayload.hasHost());
+        assertFalse(shufflePayload.hasPathComponent());
+      } else {
+        assertTrue(shufflePayload.getOutputGenerated());
+        assertEquals(outputContext.getUniqueIdentifier(), shufflePayload.getPathComponent());
+        assertEquals(shufflePort, shufflePayload.getPort());
+        assertEquals("host", shufflePayload.getHost());
+      }
+    }
+  }
+
+  private static class OnFileUnorderedPartitionedKVOutputForTest extends
+      OnFileUnorderedPartitionedKVOutput {
+    @Override
+    String getHost() {
+      return "host";
+    }
+  }
+}
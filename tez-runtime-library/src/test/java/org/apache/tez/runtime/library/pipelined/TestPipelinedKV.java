@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.pipelined;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.GenericCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.security.JobTokenSecretManager;
+import org.junit.Test;
+
+public class TestPipelinedKV {
+
+  private static final String CONNECTION_ID = "attempt_1_0001_1_00_000000_0";
+  private static final SecretKey SECRET = JobTokenSecretManager
+      .createSecretKey("secret".getBytes());
+
+  public static class ParityPartitioner implements Partitioner {
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+      return ((IntWritable) value).get() % 2;
+    }
+  }
+
+  private Configuration createConf() {
+    Configuration conf = new Configuration();
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_KEY_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_OUTPUT_VALUE_CLASS,
+        IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_INTERMEDIATE_INPUT_VALUE_CLASS,
+        IntWritable.class.getName());
+    conf.set(TezJobConfig.TEZ_RUNTIME_PARTITIONER_CLASS,
+        ParityPartitioner.class.getName());
+    // Small blocks and queues, to exercise back pressure
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_PIPELINED_BLOCK_SIZE, 128);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_PIPELINED_QUEUE_SIZE, 2);
+    conf.setInt(TezJobConfig.TEZ_RUNTIME_PIPELINED_CONNECT_TIMEOUT, 10000);
+    return conf;
+  }
+
+  @Test(timeout = 30000)
+  public void testPushPartitions() throws Exception {
+    final Configuration conf = createConf();
+    final int numRecords = 10000;
+    final PipelinedChannelServer server = new PipelinedChannelServer(
+        CONNECTION_ID, SECRET, 2, 10000, 10000);
+    TezCounter outputRecords = new GenericCounter("records", "records");
+    PipelinedKVWriter writer = new PipelinedKVWriter(conf, server, 2,
+        outputRecords, new GenericCounter("bytes", "bytes"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<List<Integer>>> results = new ArrayList<Future<List<Integer>>>();
+    for (int i = 0; i < 2; i++) {
+      final int partition = i;
+      results.add(executor.submit(new Callable<List<Integer>>() {
+        @Override
+        public List<Integer> call() throws Exception {
+          PipelinedKVReader<Text, IntWritable> reader =
+              new PipelinedKVReader<Text, IntWritable>(conf, SECRET, 1,
+                  new GenericCounter("records", "records"));
+          reader.addSource("localhost", server.getPort(), CONNECTION_ID,
+              partition);
+          List<Integer> values = new ArrayList<Integer>();
+          while (reader.next()) {
+            int value = ((IntWritable) reader.getCurrentValue()).get();
+            assertEquals("key" + value, reader.getCurrentKey().toString());
+            values.add(value);
+          }
+          reader.close();
+          return values;
+        }
+      }));
+    }
+
+    Text key = new Text();
+    IntWritable value = new IntWritable();
+    for (int i = 0; i < numRecords; i++) {
+      key.set("key" + i);
+      value.set(i);
+      writer.write(key, value);
+    }
+    // returns once both consumers have acknowledged all the data
+    writer.close();
+    executor.shutdown();
+
+    assertEquals(numRecords, outputRecords.getValue());
+    for (int partition = 0; partition < 2; partition++) {
+      List<Integer> values = results.get(partition).get();
+      assertEquals(numRecords / 2, values.size());
+      for (int i = 0; i < values.size(); i++) {
+        assertEquals(partition + 2 * i, values.get(i).intValue());
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testMultipleSources() throws Exception {
+    Configuration conf = createConf();
+    List<PipelinedChannelServer> servers = new ArrayList<PipelinedChannelServer>();
+    PipelinedKVReader<Text, IntWritable> reader =
+        new PipelinedKVReader<Text, IntWritable>(conf, SECRET, 3,
+            new GenericCounter("records", "records"));
+    for (int i = 0; i < 3; i++) {
+      PipelinedChannelServer server = new PipelinedChannelServer(
+          CONNECTION_ID + i, SECRET, 1, 10000, 10000);
+      servers.add(server);
+      reader.addSource("localhost", server.getPort(), CONNECTION_ID + i, 0);
+    }
+
+    // Sources which have no data are ended right away
+    PipelinedKVWriter writer = new PipelinedKVWriter(conf, servers.get(1), 1,
+        new GenericCounter("records", "records"),
+        new GenericCounter("bytes", "bytes"));
+    writer.write(new Text("key1"), new IntWritable(1));
+    writer.close();
+    servers.get(0).close();
+    servers.get(2).close();
+
+    assertTrue(reader.next());
+    assertEquals("key1", reader.getCurrentKey().toString());
+    assertEquals(1, ((IntWritable) reader.getCurrentValue()).get());
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  @Test(timeout = 30000)
+  public void testConsumerClosedEarly() throws Exception {
+    final Configuration conf = createConf();
+    final PipelinedChannelServer server = new PipelinedChannelServer(
+        CONNECTION_ID, SECRET, 2, 10000, 10000);
+    PipelinedKVWriter writer = new PipelinedKVWriter(conf, server, 2,
+        new GenericCounter("records", "records"),
+        new GenericCounter("bytes", "bytes"));
+
+    // one consumer reads everything, the other stops after the first record
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < 2; i++) {
+      final int partition = i;
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          PipelinedKVReader<Text, IntWritable> reader =
+              new PipelinedKVReader<Text, IntWritable>(conf, SECRET, 1,
+                  new GenericCounter("records", "records"));
+          reader.addSource("localhost", server.getPort(), CONNECTION_ID,
+              partition);
+          int numRecords = 0;
+          while (reader.next()) {
+            numRecords++;
+            if (partition == 1) {
+              break;
+            }
+          }
+          reader.close();
+          return numRecords;
+        }
+      }));
+    }
+
+    IntWritable value = new IntWritable();
+    for (int i = 0; i < 10000; i++) {
+      value.set(i);
+      writer.write(new Text("key" + i), value);
+    }
+    // the consumer which closed early does not fail the producer
+    writer.close();
+    executor.shutdown();
+
+    assertEquals(5000, results.get(0).get().intValue());
+    assertEquals(1, results.get(1).get().intValue());
+  }
+
+  @Test(timeout = 30000)
+  public void testInvalidHash() throws Exception {
+    Configuration conf = createConf();
+    PipelinedChannelServer server = new PipelinedChannelServer(CONNECTION_ID,
+        SECRET, 1, 10000, 10000);
+    PipelinedKVReader<Text, IntWritable> reader =
+        new PipelinedKVReader<Text, IntWritable>(conf,
+            JobTokenSecretManager.createSecretKey("other".getBytes()), 1,
+            new GenericCounter("records", "records"));
+    reader.addSource("localhost", server.getPort(), CONNECTION_ID, 0);
+    try {
+      reader.next();
+      fail("Reading with an invalid job token should fail");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      reader.close();
+      server.abort();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testAckTimeout() throws Exception {
+    PipelinedChannelServer server = new PipelinedChannelServer(CONNECTION_ID,
+        null, 1, 10000, 500);
+    // a consumer which reads the data but never acknowledges it
+    Socket socket = new Socket("localhost", server.getPort());
+    try {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeUTF(CONNECTION_ID);
+      out.writeInt(0);
+      out.writeUTF("");
+      out.flush();
+      server.writeBlock(0, new byte[16], 16);
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      assertEquals(16, in.readInt());
+      in.readFully(new byte[16]);
+      try {
+        server.close();
+        fail("Closing without an acknowledgement should fail");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("Timed out"));
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testStalledHandshake() throws Exception {
+    Configuration conf = createConf();
+    // the stalled client would block the consumer for the whole connect
+    // timeout if handshakes were read on the acceptor thread
+    PipelinedChannelServer server = new PipelinedChannelServer(CONNECTION_ID,
+        SECRET, 1, 60000, 10000);
+    Socket stalled = new Socket("localhost", server.getPort());
+    try {
+      PipelinedKVReader<Text, IntWritable> reader =
+          new PipelinedKVReader<Text, IntWritable>(conf, SECRET, 1,
+              new GenericCounter("records", "records"));
+      reader.addSource("localhost", server.getPort(), CONNECTION_ID, 0);
+      PipelinedKVWriter writer = new PipelinedKVWriter(conf, server, 1,
+          new GenericCounter("records", "records"),
+          new GenericCounter("bytes", "bytes"));
+      writer.write(new Text("key1"), new IntWritable(1));
+      writer.close();
+      assertTrue(reader.next());
+      assertEquals("key1", reader.getCurrentKey().toString());
+      assertFalse(reader.next());
+      reader.close();
+    } finally {
+      stalled.close();
+    }
+  }
+}